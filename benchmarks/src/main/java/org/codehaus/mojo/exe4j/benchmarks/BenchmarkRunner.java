@@ -0,0 +1,49 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so every result reports
+ * the allocation rate alongside the timing. Accepts the standard JMH command
+ * line options.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public final class BenchmarkRunner
+{
+    private BenchmarkRunner()
+    {
+    }
+
+    /**
+     * @param args the JMH command line options
+     * @throws Exception if the benchmarks cannot be run
+     */
+    public static void main( String[] args )
+        throws Exception
+    {
+        CommandLineOptions options = new CommandLineOptions( args );
+
+        new Runner( new OptionsBuilder().parent( options ).addProfiler( GCProfiler.class ).build() ).run();
+    }
+
+}
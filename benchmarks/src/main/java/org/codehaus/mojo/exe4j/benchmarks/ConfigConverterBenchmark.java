@@ -0,0 +1,135 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.mojo.exe4j.Exe4JMojo;
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigConverter;
+import org.codehaus.plexus.component.configurator.ComponentConfigurationException;
+import org.codehaus.plexus.component.configurator.converters.lookup.ConverterLookup;
+import org.codehaus.plexus.component.configurator.converters.lookup.DefaultConverterLookup;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluator;
+import org.codehaus.plexus.configuration.PlexusConfiguration;
+import org.codehaus.plexus.configuration.xml.XmlPlexusConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures converting a POM classPath configuration into a ConfigClassPath.
+ * Every value is passed through the expression evaluator, which here returns
+ * it unchanged, so the benchmark measures the converter rather than Maven's
+ * expression evaluation.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ConfigConverterBenchmark
+{
+    /**
+     * the number of class path entries
+     */
+    @Param( { "10", "100", "1000", "10000" } )
+    private int entries;
+
+    /**
+     * the converter
+     */
+    private ConfigConverter converter;
+
+    /**
+     * the converter lookup
+     */
+    private ConverterLookup lookup;
+
+    /**
+     * the classPath configuration
+     */
+    private PlexusConfiguration configuration;
+
+    /**
+     * returns expressions unchanged
+     */
+    private ExpressionEvaluator evaluator;
+
+    /**
+     * builds the configuration
+     */
+    @Setup
+    public void setUp()
+    {
+        converter = new ConfigConverter();
+
+        lookup = new DefaultConverterLookup();
+
+        XmlPlexusConfiguration classPath = new XmlPlexusConfiguration( "classPath" );
+
+        for ( int i = 0; i < entries; i++ )
+        {
+            XmlPlexusConfiguration archive = new XmlPlexusConfiguration( "archive" );
+
+            archive.setAttribute( "failIfNotFound", i % 2 == 0 ? "true" : "false" );
+            archive.setValue( "lib/dependency-" + i + "-1.0.jar" );
+
+            classPath.addChild( archive );
+        }
+
+        configuration = classPath;
+
+        evaluator = new ExpressionEvaluator()
+        {
+            public Object evaluate( String expression )
+            {
+                return expression;
+            }
+
+            public File alignToBaseDirectory( File file )
+            {
+                return file;
+            }
+        };
+    }
+
+    /**
+     * @return the converted class path
+     * @throws ComponentConfigurationException never
+     */
+    @Benchmark
+    public Object fromConfiguration()
+        throws ComponentConfigurationException
+    {
+        return converter.fromConfiguration( lookup, configuration, ConfigClassPath.class, Exe4JMojo.class,
+                                            getClass().getClassLoader(), evaluator, null );
+    }
+
+}
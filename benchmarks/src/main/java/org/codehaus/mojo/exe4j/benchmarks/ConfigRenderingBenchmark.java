@@ -0,0 +1,180 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.benchmarks;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigStatusLine;
+import org.codehaus.plexus.configuration.PlexusConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering the Config* parameters to exe4j XML. The quoted inputs
+ * put a double quote in every value, the pathological case for escaping.
+ * The legacy benchmark renders the class path the way it was rendered before
+ * writeTo(Appendable), with a StringBuffer per entry and a regular
+ * expression replacement per value.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ConfigRenderingBenchmark
+{
+    /**
+     * the number of class path entries, and the status line text length
+     */
+    @Param( { "10", "100", "1000", "10000" } )
+    private int size;
+
+    /**
+     * put a double quote in every value
+     */
+    @Param( { "false", "true" } )
+    private boolean quoted;
+
+    /**
+     * the class path
+     */
+    private ConfigClassPath classPath;
+
+    /**
+     * the status line
+     */
+    private ConfigStatusLine statusLine;
+
+    /**
+     * reused by the writeTo benchmarks
+     */
+    private StringBuilder buffer = new StringBuilder();
+
+    /**
+     * builds the parameters
+     *
+     * @throws PlexusConfigurationException never
+     */
+    @Setup
+    public void setUp()
+        throws PlexusConfigurationException
+    {
+        classPath = new ConfigClassPath();
+
+        for ( int i = 0; i < size; i++ )
+        {
+            String value = "lib/" + ( quoted ? "\"quoted\"-" : "" ) + "dependency-" + i + "-1.0.jar";
+
+            classPath.addLocation( new ConfigClassPath.ClassPathLocation( ConfigClassPath.ClassPathLocation.ARCHIVE_TYPE,
+                                                                          value, true ) );
+        }
+
+        StringBuilder text = new StringBuilder();
+
+        for ( int i = 0; i < size; i++ )
+        {
+            text.append( quoted && i % 8 == 0 ? '"' : (char) ( 'a' + i % 26 ) );
+        }
+
+        statusLine = new ConfigStatusLine( "0.0.0", "Arial", 8, 500, text.toString(), 20, 20 );
+    }
+
+    /**
+     * @return the class path XML
+     */
+    @Benchmark
+    public String classPathToString()
+    {
+        return classPath.toString();
+    }
+
+    /**
+     * @return the class path XML, written to a reused buffer
+     * @throws IOException never
+     */
+    @Benchmark
+    public int classPathWriteTo()
+        throws IOException
+    {
+        buffer.setLength( 0 );
+
+        classPath.writeTo( buffer );
+
+        return buffer.length();
+    }
+
+    /**
+     * @return the class path XML rendered as it was before writeTo
+     */
+    @Benchmark
+    public String legacyClassPathToString()
+    {
+        StringBuffer xml = new StringBuffer();
+
+        xml.append( "<classPath>" );
+
+        Iterator itr = classPath.getLocations().iterator();
+
+        while ( itr.hasNext() )
+        {
+            ConfigClassPath.ClassPathLocation location = (ConfigClassPath.ClassPathLocation) itr.next();
+
+            StringBuffer entry = new StringBuffer();
+
+            entry.append( "<" );
+            entry.append( location.getType() );
+            entry.append( " location=\"" );
+            entry.append( location.getValue().replaceAll( "\\\"", "&quot;" ) );
+            entry.append( "\"" );
+            entry.append( " failOnError=\"" );
+            entry.append( location.isFailIfNotFound() );
+            entry.append( "\"" );
+            entry.append( "/>" );
+
+            xml.append( entry.toString() );
+        }
+
+        xml.append( "</classPath>" );
+
+        return xml.toString();
+    }
+
+    /**
+     * @return the status line XML
+     */
+    @Benchmark
+    public String statusLineToString()
+    {
+        return statusLine.toString();
+    }
+
+}
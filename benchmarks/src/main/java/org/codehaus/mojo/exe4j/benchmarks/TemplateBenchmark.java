@@ -0,0 +1,170 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.mojo.exe4j.Exe4JMojo;
+import org.codehaus.mojo.exe4j.util.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures template substitution. The template is made up of placeholders
+ * separated by literal text, a placeholder in ten has no value.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TemplateBenchmark
+{
+    /**
+     * the number of placeholders in the template
+     */
+    @Param( { "10", "100", "1000" } )
+    private int placeholders;
+
+    /**
+     * the length of the literal text between placeholders
+     */
+    @Param( { "16", "1024" } )
+    private int literalLength;
+
+    /**
+     * the template content
+     */
+    private String content;
+
+    /**
+     * the compiled template
+     */
+    private Template template;
+
+    /**
+     * the substitution values
+     */
+    private Properties properties;
+
+    /**
+     * a writer that discards its output
+     */
+    private Writer sink;
+
+    /**
+     * builds the template and its values
+     */
+    @Setup
+    public void setUp()
+    {
+        StringBuilder buffer = new StringBuilder( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<exe4j>" );
+
+        StringBuilder literal = new StringBuilder();
+
+        for ( int i = 0; i < literalLength; i++ )
+        {
+            literal.append( (char) ( 'a' + i % 26 ) );
+        }
+
+        properties = new Properties();
+
+        for ( int i = 0; i < placeholders; i++ )
+        {
+            buffer.append( literal ).append( "${property" ).append( i ).append( '}' );
+
+            if ( i % 10 != 0 )
+            {
+                properties.setProperty( "property" + i, "value " + i );
+            }
+        }
+
+        buffer.append( "</exe4j>" );
+
+        content = buffer.toString();
+
+        template = Template.compile( content );
+
+        sink = new Writer()
+        {
+            public void write( char[] cbuf, int off, int len )
+            {
+            }
+
+            public void write( String str, int off, int len )
+            {
+            }
+
+            public void flush()
+            {
+            }
+
+            public void close()
+            {
+            }
+        };
+    }
+
+    /**
+     * @return the rendered template, looked up in the template cache by
+     *         content digest
+     */
+    @Benchmark
+    public String replaceAll()
+    {
+        return Exe4JMojo.replaceAll( content, properties );
+    }
+
+    /**
+     * @return the rendered template
+     */
+    @Benchmark
+    public String render()
+    {
+        return template.render( properties );
+    }
+
+    /**
+     * @param blackhole consumes the writer
+     * @throws IOException never
+     */
+    @Benchmark
+    public void renderToWriter( Blackhole blackhole )
+        throws IOException
+    {
+        template.render( properties, sink );
+
+        blackhole.consume( sink );
+    }
+
+}
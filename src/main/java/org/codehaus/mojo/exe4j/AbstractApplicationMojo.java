@@ -0,0 +1,283 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.maven.project.MavenProject;
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigNativeLibraries;
+import org.codehaus.mojo.exe4j.configuration.ConfigQuotedString;
+
+/**
+ * Base class for the mojos that describe the application an exe4j executable
+ * launches, its main class, class path and JVM options. The exe4j goal
+ * builds the executable from them and the benchmark-startup goal launches
+ * the application with them, configure them at the plugin level so both
+ * goals see the same values. The exe4jc parameters only apply to the exe4j
+ * goal.
+ * 
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public abstract class AbstractApplicationMojo
+    extends AbstractExecuteMojo
+{
+    /**
+     * The maven project.
+     * 
+     * @parameter expression="${project}"
+     * @required
+     * @readonly
+     */
+    protected MavenProject project;
+
+    /**
+     * Executable name. The desired executable name without the trailing .exe
+     * extension
+     * 
+     * @parameter expression="${executableName}"
+     *            default-value="${project.artifactId}"
+     * @required
+     */
+    protected String executableName;
+
+    /**
+     * The distribution source directory conatins is the reference point for
+     * relative directories. If necessary, other specified directories will be
+     * converted to be relative to this location.
+     * 
+     * @parameter expression="${distributionSourceDirectory}"
+     *            default-value="${project.build.directory}"
+     * @required
+     */
+    protected File distributionSourceDirectory;
+
+    /**
+     * The generated executable will be copied to the executable directory. The
+     * executable directory must be below the distribution source directory.
+     * 
+     * @parameter expression="${executableDirectory}" default-value="."
+     * @required
+     */
+    protected String executableDirectory;
+
+    /**
+     * For some applications (especially GUI applications) you might want to
+     * change the working directory to a specific directory relative to the
+     * executable, for example to read config files that are in a fixed
+     * location. To do so, set working directory to a directory relative to the
+     * executableDirectory. To change the current directory to the same
+     * directory where the executable is located, enter a single dot.
+     * 
+     * @parameter expression="${workingDirectory}" default-value="."
+     * @required
+     */
+    protected String workingDirectory;
+
+    /**
+     * Fully qualified main class of your application.
+     * 
+     * @parameter expression="${mainClass}"
+     * @required
+     */
+    protected String mainClass;
+
+    /**
+     * class path entries can be scanDirectory, directory, archive or envVar.
+     * Specify a lit of ClassPathEntry objects. If unspecified this will default
+     * to a scanDirectory entry configured to search the workingDirectory
+     * 
+     * Note: You can use environment variables in the text field with the
+     * following syntax: ${VARIABLE_NAME} where you replace VARIABLE_NAME with
+     * the desired system environment variable.
+     * 
+     * Note: Not available if the "JAR in EXE" mode is being used.
+     * 
+     * @parameter expression="${classPath}"
+     */
+    protected ConfigClassPath classPath;
+
+    /**
+     * Set to true to expand scanDirectory class path entries, and archive
+     * entries containing the wildcards * and ?, into the archives they match
+     * when the executable is built. The launcher then no longer lists the
+     * directories each time the application starts and the class path order
+     * is reproducible, the archives matched by each entry are ordered by
+     * path. Entries that reference environment variables, or directories
+     * that don't exist at build time, are left as they are.
+     * 
+     * @parameter expression="${expandClassPath}" default-value="false"
+     * @required
+     */
+    protected boolean expandClassPath;
+
+    /**
+     * Set to true to add the project's resolved dependencies to the class
+     * path. The dependency archives are copied to the dependencyDirectory and
+     * added as archive entries after any classPath entries, in which case the
+     * default scanDirectory entry is not used. Artifacts that resolve to the
+     * same file are only added once and the entries are in the order Maven
+     * resolved them, the order of the project's own class path.
+     *
+     * @parameter expression="${useDependencyClassPath}" default-value="false"
+     * @required
+     */
+    protected boolean useDependencyClassPath;
+
+    /**
+     * The scope of the dependencies added to the class path, compile, runtime
+     * or test.
+     *
+     * @parameter expression="${dependencyClassPathScope}" default-value="runtime"
+     * @required
+     */
+    protected String dependencyClassPathScope;
+
+    /**
+     * groupId:artifactId[:type[:classifier]] patterns, in which * matches any
+     * sequence of characters, a dependency must match one of to be added to
+     * the class path. All dependencies are added if unspecified.
+     *
+     * @parameter
+     */
+    protected List dependencyIncludes;
+
+    /**
+     * groupId:artifactId[:type[:classifier]] patterns of dependencies that
+     * are not added to the class path.
+     *
+     * @parameter
+     */
+    protected List dependencyExcludes;
+
+    /**
+     * The directory, relative to the executable directory, the dependency
+     * archives are copied to.
+     *
+     * @parameter expression="${dependencyDirectory}" default-value="lib"
+     * @required
+     */
+    protected String dependencyDirectory;
+
+    /**
+     * If your application uses native libraries that you would lke to load with
+     * a System.loadLibrary() call, the directory where the .dll is located must
+     * be included in the PATH environment variable. You can add such
+     * directories to the path by specifying them in this list of strings
+     * 
+     * @parameter expression="${nativeLibraries}"
+     */
+    protected ConfigNativeLibraries nativeLibraries;
+
+    /**
+     * JVM parameters you want to specify for the invocation of your Java
+     * application (e.g. -Dmyapp.myproperty=true or -Xmx256m). There are two
+     * runtime-variables you can use to specify runtime directories:
+     * 
+     * %EXE4J_EXEDIR% This is the directory where the executable is located.
+     * %EXE4J_TEMPDIR% For the "JAR in EXE" mode, this variable will contain the
+     * location of the temporary directory for the JAR files. In "regular mode"
+     * this variable is not used.
+     * 
+     * In addition to these VM parameters, a parameter file in the same
+     * directory as the executable is read and its contents are added to the
+     * existing VM parameters. The name of this parameter file is the same as
+     * the exe file with the extension .vmoptions. For example, if your exe file
+     * is named hello.exe, the name of the VM parameter file is hello.vmoptions.
+     * In this file, each line is interpreted as a single VM parameter. For
+     * example, the contents of the VM parameter file could be: -Xmx128m -Xms32m
+     * 
+     * @parameter expression="${jvmParameters}"
+     */
+    protected ConfigQuotedString jvmParameters;
+
+    /**
+     * A JVM tuning profile whose options are added before jvmParameters,
+     * "small-footprint", "low-latency" or "throughput". The profile is
+     * expanded to the options supported by every Java version from
+     * minJavaVersion to maxJavaVersion, it is an error if it cannot be. When
+     * a profile is set, or writeVmOptionsFile is, the options of the profile,
+     * jvmParameters and a variant's jvmParameters are merged, the last to set
+     * an option, or the garbage collector, wins, rather than a variant's
+     * jvmParameters replacing the mojo's.
+     * 
+     * @parameter expression="${jvmProfile}"
+     */
+    protected String jvmProfile;
+
+    /**
+     * Minimum java version
+     * 
+     * @parameter expression="${minJavaVersion}" default-value="1.3"
+     * @required
+     */
+    protected String minJavaVersion;
+
+    /**
+     * Maximum java version
+     * 
+     * @parameter expression="${maxJavaVersion}" default-value=""
+     */
+    protected String maxJavaVersion;
+
+    /**
+     * Set to true to run the application once at build time to record the
+     * classes it loads into a class data sharing archive. The archive is
+     * written to the executable directory and a matching
+     * -XX:SharedArchiveFile (or -XX:AOTCache) flag referencing
+     * %EXE4J_EXEDIR% is added to jvmParameters, variants that override
+     * jvmParameters must add it themselves unless jvmProfile or
+     * writeVmOptionsFile is set. The archive is only regenerated when the
+     * class path, mainClass or training settings change.
+     * 
+     * The training JVM should be the same version as the JRE the executable
+     * runs with, a JVM that cannot use the archive, for example because the
+     * class path differs, ignores it and starts as before.
+     * 
+     * @parameter expression="${generateSharedArchive}" default-value="false"
+     * @required
+     */
+    protected boolean generateSharedArchive;
+
+    /**
+     * The shared archive kind, "cds" for a dynamic AppCDS archive (JDK 13+)
+     * or "aot" for an AOT cache (JDK 25+).
+     * 
+     * @parameter expression="${sharedArchiveMode}" default-value="cds"
+     * @required
+     */
+    protected String sharedArchiveMode;
+
+    /**
+     * The shared archive file name, relative to the executable directory.
+     * Defaults to ${executableName}.jsa, or ${executableName}.aot in "aot"
+     * mode.
+     * 
+     * @parameter expression="${sharedArchiveName}"
+     */
+    protected String sharedArchiveName;
+
+    /**
+     * Arguments for your main class. Arguments passed to the executable will be
+     * appended to these arguments.
+     * 
+     * @parameter expression="${arguments}"
+     */
+    protected ConfigQuotedString arguments;
+
+}
@@ -17,10 +17,17 @@
 package org.codehaus.mojo.exe4j;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.mojo.exe4j.tasks.CompilerLimiter;
 import org.codehaus.mojo.exe4j.tasks.CompilerTask;
+import org.codehaus.mojo.exe4j.tasks.Exe4JInstallation;
+import org.codehaus.mojo.exe4j.tasks.HostCompilerSlots;
+import org.codehaus.mojo.exe4j.util.Timings;
 
 /**
  * Base class for exe4j mojos
@@ -47,6 +54,259 @@ public abstract class AbstractExecuteMojo
      */
     private boolean trialRun;
 
+    /**
+     * Set to true to run the exe4j compiler inside the Maven JVM rather than
+     * forking exe4jc, this saves a JVM start up per executable. The compiler
+     * jar is loaded into an isolated class loader that is reused for the rest
+     * of the build. If the compiler cannot be run in-process exe4jc is forked
+     * as usual.
+     * 
+     * Only supported on Java 17 and earlier, where it relies on the
+     * deprecated security manager to trap System.exit(). The system streams
+     * and security manager are JVM wide, so inProcess is ignored when the
+     * build runs executions concurrently, in a parallel (-T) build or when
+     * variants are generated concurrently.
+     * 
+     * @parameter expression="${inProcess}" default-value="false"
+     * @required
+     */
+    private boolean inProcess;
+
+    /**
+     * The exe4j compiler jar used when inProcess is set. Defaults to
+     * lib/exe4j.jar in the exe4j installation exe4jcExe belongs to.
+     * 
+     * @parameter expression="${compilerJar}"
+     */
+    private File compilerJar;
+
+    /**
+     * The exe4j compiler class used when inProcess is set, its main method is
+     * passed the exe4jc command line arguments.
+     * 
+     * @parameter expression="${compilerMainClass}"
+     *            default-value="com.exe4j.Exe4JCompiler"
+     * @required
+     */
+    private String compilerMainClass;
+
+    /**
+     * The timing report, a JSON document recording the wall and CPU time of
+     * each phase of the execution, the bytes written and the exe4jc exit
+     * codes. A one line summary is also logged. Defaults to
+     * exe4j-timings-&lt;goal&gt;-&lt;name&gt;.json in the build directory,
+     * the name being the executableName of the exe4j goal or the config file
+     * name of the execute goal, so each execution writes its own report.
+     * 
+     * @parameter expression="${timingReportFile}"
+     */
+    private File timingReportFile;
+
+    /**
+     * The build directory the timing report is written to by default.
+     * 
+     * @parameter expression="${project.build.directory}"
+     * @readonly
+     */
+    private File buildDirectory;
+
+    /**
+     * The number of trailing exe4jc error lines included in the failure
+     * message when exe4jc fails. Every line is logged as it is output.
+     * 
+     * @parameter expression="${errorTailLines}" default-value="50"
+     * @required
+     */
+    private int errorTailLines;
+
+    /**
+     * The number of seconds exe4jc may run for before it, and the processes
+     * it started, are killed and the build fails. 0, the default, for no
+     * limit. Only applies when exe4jc is forked.
+     * 
+     * @parameter expression="${exe4jcTimeout}" default-value="0"
+     * @required
+     */
+    private int exe4jcTimeout;
+
+    /**
+     * The number of seconds exe4jc may output nothing for before it is
+     * killed and the build fails. 0 for no limit, exe4jc is quiet unless
+     * the build is run with debug output. Only applies when exe4jc is
+     * forked.
+     * 
+     * @parameter expression="${exe4jcIdleTimeout}" default-value="0"
+     * @required
+     */
+    private int exe4jcIdleTimeout;
+
+    /**
+     * The maximum number of exe4jc processes run at once by all the modules
+     * of a parallel build. 0 runs one per processor, fewer if the physical
+     * memory, or the container's limit, less the build's own heap cannot hold
+     * them, and logs the derived limit. The first execution in the build
+     * sets the limit for the rest of the build.
+     * 
+     * @parameter expression="${exe4jcMaxConcurrency}" default-value="0"
+     * @required
+     */
+    private int exe4jcMaxConcurrency;
+
+    /**
+     * A directory shared by the builds on the host, if set the number of
+     * exe4jc processes run at once by all those builds is limited to
+     * exe4jcHostSlots. Slots are held by locking files in the directory, a
+     * crashed build's slot is freed by the operating system.
+     * 
+     * @parameter expression="${exe4jcHostSlotDirectory}"
+     */
+    private File exe4jcHostSlotDirectory;
+
+    /**
+     * The maximum number of exe4jc processes run at once by the builds
+     * sharing exe4jcHostSlotDirectory. 0 uses the number recorded in the
+     * directory, the first build to use it records one per processor, fewer
+     * if there isn't enough memory for them, delete slots.count from the
+     * directory to derive it again. Every build sharing the directory should
+     * use the same number.
+     * 
+     * @parameter expression="${exe4jcHostSlots}" default-value="0"
+     * @required
+     */
+    private int exe4jcHostSlots;
+
+    /**
+     * The number of seconds to wait in turn for a host slot, after which
+     * exe4jc is run without one. 0 to wait for as long as it takes.
+     * 
+     * @parameter expression="${exe4jcHostSlotTimeout}" default-value="3600"
+     * @required
+     */
+    private int exe4jcHostSlotTimeout;
+
+    /**
+     * The build session, the exe4jc concurrency limit is shared by the
+     * session.
+     * 
+     * @parameter expression="${session}"
+     * @readonly
+     */
+    private MavenSession session;
+
+    /**
+     * the execution's timings
+     */
+    private Timings timings = new Timings();
+
+    /**
+     * trialRun accessor
+     * 
+     * @return true if exe4jc will not actually generate the executable
+     */
+    protected boolean isTrialRun()
+    {
+        return trialRun;
+    }
+
+    /**
+     * @return the execution's timings
+     */
+    protected Timings getTimings()
+    {
+        return timings;
+    }
+
+    /**
+     * Logs the timing summary and writes the timing report, a report that
+     * cannot be written is only warned about so it never fails the build.
+     * 
+     * @param name names the default report file, the goal and what the
+     *            execution built
+     */
+    protected void reportTimings( String name )
+    {
+        getLog().info( "exe4j timings: " + timings.getSummary() );
+
+        File file = timingReportFile;
+
+        if ( file == null && buildDirectory != null )
+        {
+            file = new File( buildDirectory, "exe4j-timings-" + name + ".json" );
+        }
+
+        if ( file != null )
+        {
+            try
+            {
+                timings.write( file );
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Unable to write the exe4j timing report: " + e.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * @return the build session's exe4jc concurrency limiter
+     */
+    private CompilerLimiter getLimiter()
+    {
+        // without a session the limiter is shared by the plugin's executions
+
+        CompilerLimiter limiter = CompilerLimiter.getInstance( session != null ? (Object) session
+                        : CompilerLimiter.class, exe4jcMaxConcurrency );
+
+        if ( exe4jcMaxConcurrency > 0 && exe4jcMaxConcurrency != limiter.getLimit() )
+        {
+            getLog().debug( "The build already runs at most " + limiter.getLimit() + " exe4jc processes at once" );
+        }
+
+        if ( limiter.report() )
+        {
+            long memory = CompilerLimiter.getPhysicalMemory();
+
+            getLog().info( "Running at most " + limiter.getLimit() + " exe4jc processes at once, for "
+                + Runtime.getRuntime().availableProcessors() + " processors and "
+                + ( memory < 0 ? "unknown" : memory / ( 1024 * 1024 ) + " MB of" ) + " memory" );
+        }
+
+        return limiter;
+    }
+
+    /**
+     * @return true if other executions may run in this JVM at the same time,
+     *         as in a parallel build
+     */
+    protected boolean isConcurrent()
+    {
+        if ( session == null )
+        {
+            return false;
+        }
+
+        try
+        {
+            Method isParallel = session.getClass().getMethod( "isParallel", new Class[0] );
+
+            return Boolean.TRUE.equals( isParallel.invoke( session, new Object[0] ) );
+        }
+        catch ( Exception e )
+        {
+            // Maven 2 builds one module at a time
+
+            return false;
+        }
+    }
+
+    /**
+     * @return the exe4j installation exe4jcExe, or compilerJar, belongs to
+     */
+    protected Exe4JInstallation getInstallation()
+    {
+        return new Exe4JInstallation( exe4jcExe, compilerJar );
+    }
+
     /**
      * Runs the exe4j compiler task using the supplied config file
      * 
@@ -56,6 +316,24 @@ public abstract class AbstractExecuteMojo
     public void runExe4J( File configFile )
         throws MojoExecutionException
     {
+        runExe4J( configFile, null, null, null );
+    }
+
+    /**
+     * Runs the exe4j compiler task using the supplied config file,
+     * overriding the output directory and version it specifies
+     * 
+     * @param configFile the exe4j XMl config file
+     * @param outputDirectoryOverride the output directory or null to use the
+     *            config file's
+     * @param versionOverride the version or null to use the config file's
+     * @param executableName qualifies the timed phase names, may be null
+     * @throws MojoExecutionException
+     */
+    public void runExe4J( File configFile, String outputDirectoryOverride, String versionOverride,
+                          String executableName )
+        throws MojoExecutionException
+    {
 
         if ( !configFile.canRead() )
         {
@@ -70,6 +348,66 @@ public abstract class AbstractExecuteMojo
 
         executor.setTrialRun( trialRun );
 
+        executor.setOutputDirectoryOverride( outputDirectoryOverride );
+
+        executor.setVersionOverride( versionOverride );
+
+        if ( inProcess && isConcurrent() )
+        {
+            getLog().warn( "inProcess is ignored as executions run concurrently, forking exe4jc instead" );
+        }
+        else if ( inProcess )
+        {
+            File jar = getInstallation().getCompilerJar();
+
+            if ( jar != null )
+            {
+                executor.setCompilerJar( jar );
+
+                executor.setCompilerMainClass( compilerMainClass );
+            }
+            else
+            {
+                getLog().warn( "Unable to locate the exe4j compiler jar, forking exe4jc instead" );
+            }
+        }
+
+        executor.setTimings( timings );
+
+        executor.setExecutableName( executableName );
+
+        executor.setErrorTailLines( errorTailLines );
+
+        executor.setTimeout( exe4jcTimeout );
+
+        executor.setLimiter( getLimiter() );
+
+        if ( exe4jcHostSlotDirectory != null )
+        {
+            int slots = exe4jcHostSlots;
+
+            if ( slots <= 0 )
+            {
+                slots = CompilerLimiter.getDefaultLimit();
+
+                try
+                {
+                    slots = HostCompilerSlots.getRecordedSlots( exe4jcHostSlotDirectory, slots );
+                }
+                catch ( IOException e )
+                {
+                    getLog().warn( "Unable to record the number of exe4jc host slots in " + exe4jcHostSlotDirectory
+                        + ", using " + slots + ": " + e.getMessage() );
+                }
+            }
+
+            executor.setHostSlots( new HostCompilerSlots( exe4jcHostSlotDirectory, slots ) );
+
+            executor.setHostSlotTimeout( exe4jcHostSlotTimeout );
+        }
+
+        executor.setIdleTimeout( exe4jcIdleTimeout );
+
         executor.execute();
 
     }
@@ -0,0 +1,612 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigNativeLibraries;
+import org.codehaus.mojo.exe4j.configuration.ConfigQuotedString;
+import org.codehaus.mojo.exe4j.tasks.StartupBenchmarkTask;
+import org.codehaus.mojo.exe4j.tasks.TrainingRunTask;
+import org.codehaus.mojo.exe4j.util.AtomicFileWriter;
+import org.codehaus.mojo.exe4j.util.ClassPathExpander;
+import org.codehaus.mojo.exe4j.util.DependencyClassPath;
+import org.codehaus.mojo.exe4j.util.JvmOptions;
+import org.codehaus.mojo.exe4j.util.Timings;
+import org.codehaus.plexus.configuration.PlexusConfigurationException;
+
+/**
+ * Measures the start up of the application an exe4j executable launches. The
+ * application is launched directly with java, using the mainClass, classPath,
+ * nativeLibraries, jvmParameters and arguments the executable uses, so the
+ * goal runs on build agents without Windows or a display. The class path and
+ * JVM options are resolved as the exe4j goal resolves them, with the
+ * dependency class path, class path expansion, JVM tuning profile and shared
+ * archive. After the warm up runs, which prime the operating system's file
+ * cache, each run records the JVM uptime at main, the uptime at the marker
+ * class and the peak resident set size (Linux only). Their percentiles are
+ * logged and written to a JSON report.
+ *
+ * Configure the parameters shared with the exe4j goal at the plugin level so
+ * both goals see the same values, and run the exe4j goal first so the
+ * distribution holds the archives it copies and generates. Dependency
+ * archives the exe4j goal hasn't copied yet are loaded from the local
+ * repository and the shared archive is only used if it exists and
+ * jvmParameters doesn't name one. Class path entries that reference
+ * environment variables are ignored, nativeLibraries is passed as
+ * java.library.path and %EXE4J_EXEDIR% is replaced by the executable
+ * directory.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ * @goal benchmark-startup
+ * @requiresDependencyResolution test
+ * @configurator override
+ */
+public class BenchmarkStartupMojo
+    extends AbstractApplicationMojo
+{
+    /**
+     * the reported percentiles
+     */
+    private static final int[] PERCENTILES = { 50, 90, 99 };
+
+    /**
+     * The java executable the application is launched with.
+     *
+     * @parameter expression="${benchmarkJava}" default-value="${java.home}/bin/java"
+     * @required
+     */
+    private File benchmarkJava;
+
+    /**
+     * If set each run ends once this class has been loaded and the time it
+     * took is reported, otherwise each run ends once the main class has been
+     * loaded and the peak resident set size only covers the JVM's bootstrap.
+     *
+     * @parameter expression="${benchmarkMarkerClass}"
+     */
+    private String benchmarkMarkerClass;
+
+    /**
+     * The number of measured runs.
+     *
+     * @parameter expression="${benchmarkRuns}" default-value="10"
+     * @required
+     */
+    private int benchmarkRuns;
+
+    /**
+     * The number of unmeasured warm up runs.
+     *
+     * @parameter expression="${benchmarkWarmupRuns}" default-value="3"
+     * @required
+     */
+    private int benchmarkWarmupRuns;
+
+    /**
+     * The maximum time in seconds a run may take to load the marker class.
+     *
+     * @parameter expression="${benchmarkTimeout}" default-value="60"
+     * @required
+     */
+    private int benchmarkTimeout;
+
+    /**
+     * Set to true to launch the application with java.awt.headless set, so
+     * it runs on build agents without a display.
+     *
+     * @parameter expression="${benchmarkHeadless}" default-value="true"
+     * @required
+     */
+    private boolean benchmarkHeadless;
+
+    /**
+     * The JSON report file.
+     *
+     * @parameter expression="${benchmarkReportFile}"
+     *            default-value="${project.build.directory}/exe4j-startup-benchmark.json"
+     * @required
+     */
+    private File benchmarkReportFile;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.maven.plugin.Mojo#execute()
+     */
+    public void execute()
+        throws MojoExecutionException
+    {
+        if ( benchmarkRuns < 1 )
+        {
+            throw new MojoExecutionException( "benchmarkRuns must be at least 1" );
+        }
+
+        File executableDir = new File( distributionSourceDirectory, executableDirectory );
+
+        StartupBenchmarkTask task = new StartupBenchmarkTask( benchmarkJava.getPath(), getJvmArguments( executableDir ),
+                                                              getClassPath( executableDir ), mainClass, getLog() );
+
+        task.setArguments( splitArguments( arguments, executableDir ) );
+        task.setMarkerClass( benchmarkMarkerClass );
+        task.setTimeout( benchmarkTimeout );
+        task.setWorkingDirectory( new File( executableDir, workingDirectory ) );
+
+        for ( int i = 0; i < benchmarkWarmupRuns; i++ )
+        {
+            getLog().debug( "Warm up run " + ( i + 1 ) + " of " + benchmarkWarmupRuns );
+
+            task.run();
+        }
+
+        List samples = new ArrayList();
+
+        for ( int i = 0; i < benchmarkRuns; i++ )
+        {
+            getLog().debug( "Run " + ( i + 1 ) + " of " + benchmarkRuns );
+
+            samples.add( task.run() );
+        }
+
+        long[] timeToMain = new long[samples.size()];
+        long[] timeToMarker = new long[samples.size()];
+        long[] peakRss = new long[samples.size()];
+
+        for ( int i = 0; i < samples.size(); i++ )
+        {
+            StartupBenchmarkTask.Sample sample = (StartupBenchmarkTask.Sample) samples.get( i );
+
+            timeToMain[i] = sample.getTimeToMain();
+            timeToMarker[i] = sample.getTimeToMarker();
+            peakRss[i] = sample.getPeakRss();
+        }
+
+        getLog().info( "Start up of " + mainClass + " over " + samples.size() + " runs, JVM uptime:" );
+        getLog().info( "  time to main (ms): " + summarise( timeToMain, 1e6 ) );
+
+        if ( benchmarkMarkerClass != null )
+        {
+            getLog().info( "  time to " + benchmarkMarkerClass + " (ms): " + summarise( timeToMarker, 1e6 ) );
+        }
+
+        if ( isAvailable( peakRss ) )
+        {
+            getLog().info( "  peak RSS to " + ( benchmarkMarkerClass != null ? benchmarkMarkerClass : "main" )
+                + " (kB): " + summarise( peakRss, 1 ) );
+        }
+
+        writeReport( timeToMain, timeToMarker, peakRss );
+    }
+
+    /**
+     * @param executableDir the executable directory
+     * @return the files on the application class path
+     * @throws MojoExecutionException if the class path cannot be created
+     */
+    private List getClassPath( File executableDir )
+        throws MojoExecutionException
+    {
+        ConfigClassPath path = classPath;
+
+        List files = new ArrayList();
+
+        try
+        {
+            // as the exe4j goal, the default is only used if there are no
+            // dependencies
+
+            if ( path == null )
+            {
+                path = new ConfigClassPath();
+            }
+
+            if ( classPath == null && !useDependencyClassPath )
+            {
+                path.addLocation( new ConfigClassPath.ClassPathLocation(
+                                                                         ConfigClassPath.ClassPathLocation.SCAN_DIRECTORY_TYPE,
+                                                                         workingDirectory, true ) );
+            }
+
+            if ( expandClassPath )
+            {
+                path = new ClassPathExpander( executableDir, Runtime.getRuntime().availableProcessors() )
+                    .expand( path );
+            }
+        }
+        catch ( PlexusConfigurationException e )
+        {
+            // really shouldn't happen, unless a directory can't be expanded
+
+            throw new MojoExecutionException( "Unable to initialise the classPath", e );
+        }
+
+        files.addAll( new ClassPathExpander( executableDir, 1 ).resolve( path ) );
+
+        if ( useDependencyClassPath )
+        {
+            List artifacts = DependencyClassPath.getArtifacts( project, dependencyClassPathScope,
+                                                               dependencyIncludes, dependencyExcludes );
+
+            List names = DependencyClassPath.getFileNames( artifacts );
+
+            File directory = new File( executableDir, dependencyDirectory );
+
+            for ( int i = 0; i < artifacts.size(); i++ )
+            {
+                File file = new File( directory, (String) names.get( i ) );
+
+                files.add( file.isFile() ? file : ( (Artifact) artifacts.get( i ) ).getFile() );
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * @param executableDir the executable directory
+     * @return the JVM arguments the application is launched with
+     * @throws MojoExecutionException if the JVM tuning profile cannot be
+     *             used
+     */
+    private List getJvmArguments( File executableDir )
+        throws MojoExecutionException
+    {
+        ConfigQuotedString parameters = jvmParameters;
+
+        if ( jvmProfile != null )
+        {
+            JvmOptions options = new JvmOptions();
+
+            try
+            {
+                options.addProfile( jvmProfile, minJavaVersion, maxJavaVersion );
+                options.addAll( jvmParameters == null ? null : jvmParameters.getValue() );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                throw new MojoExecutionException( e.getMessage(), e );
+            }
+
+            parameters = new ConfigQuotedString( options.toString() );
+        }
+
+        List jvmArguments = splitArguments( parameters, executableDir );
+
+        if ( generateSharedArchive )
+        {
+            String name = sharedArchiveName != null ? sharedArchiveName : TrainingRunTask
+                .getArchiveName( sharedArchiveMode, executableName );
+
+            File archiveFile = new File( executableDir, name );
+
+            String option = TrainingRunTask.getArchiveOption( sharedArchiveMode, "" );
+
+            if ( hasOption( jvmArguments, option ) )
+            {
+                getLog().debug( "jvmParameters already names a shared archive" );
+            }
+            else if ( archiveFile.isFile() )
+            {
+                jvmArguments.add( option + archiveFile.getAbsolutePath() );
+            }
+            else
+            {
+                getLog().warn( "Shared archive " + archiveFile + " doesn't exist, run the exe4j goal first, "
+                    + "benchmarking without it" );
+            }
+        }
+
+        if ( nativeLibraries != null && !nativeLibraries.getLocations().isEmpty() )
+        {
+            StringBuffer path = new StringBuffer();
+
+            Iterator itr = nativeLibraries.getLocations().iterator();
+
+            while ( itr.hasNext() )
+            {
+                String value = ( (ConfigNativeLibraries.NativeLibraryLocation) itr.next() ).getValue();
+
+                File directory = new File( value );
+
+                if ( path.length() > 0 )
+                {
+                    path.append( File.pathSeparatorChar );
+                }
+
+                path.append( directory.isAbsolute() ? directory : new File( executableDir, value ) );
+            }
+
+            jvmArguments.add( "-Djava.library.path=" + path );
+        }
+
+        if ( benchmarkHeadless )
+        {
+            jvmArguments.add( "-Djava.awt.headless=true" );
+        }
+
+        return jvmArguments;
+    }
+
+    /**
+     * @param arguments the JVM arguments
+     * @param prefix the option and its = separator
+     * @return true if one of the arguments sets the option
+     */
+    static boolean hasOption( List arguments, String prefix )
+    {
+        Iterator itr = arguments.iterator();
+
+        while ( itr.hasNext() )
+        {
+            if ( ( (String) itr.next() ).startsWith( prefix ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Splits a command line into arguments, double quoted sections are kept
+     * together and %EXE4J_EXEDIR% is replaced by the executable directory.
+     *
+     * @param line the command line, may be null
+     * @param executableDir the executable directory
+     * @return the arguments
+     */
+    static List splitArguments( ConfigQuotedString line, File executableDir )
+    {
+        List split = new ArrayList();
+
+        if ( line == null || line.getValue() == null )
+        {
+            return split;
+        }
+
+        String value = line.getValue().replace( "%EXE4J_EXEDIR%", executableDir.getAbsolutePath().replace( '\\', '/' ) );
+
+        StringBuffer argument = null;
+
+        boolean quoted = false;
+
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+
+            if ( c == '"' )
+            {
+                quoted = !quoted;
+
+                if ( argument == null )
+                {
+                    argument = new StringBuffer();
+                }
+            }
+            else if ( Character.isWhitespace( c ) && !quoted )
+            {
+                if ( argument != null )
+                {
+                    split.add( argument.toString() );
+
+                    argument = null;
+                }
+            }
+            else
+            {
+                if ( argument == null )
+                {
+                    argument = new StringBuffer();
+                }
+
+                argument.append( c );
+            }
+        }
+
+        if ( argument != null )
+        {
+            split.add( argument.toString() );
+        }
+
+        return split;
+    }
+
+    /**
+     * @param values the measurements
+     * @return true if the measurements were taken
+     */
+    private static boolean isAvailable( long[] values )
+    {
+        return values.length > 0 && values[0] >= 0;
+    }
+
+    /**
+     * @param values the measurements
+     * @param scale the divisor that converts the measurements to the
+     *            reported unit
+     * @return the min, percentiles and max of the measurements
+     */
+    private static String summarise( long[] values, double scale )
+    {
+        long[] sorted = values.clone();
+
+        Arrays.sort( sorted );
+
+        DecimalFormat format = getFormat();
+
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append( "min " ).append( format.format( sorted[0] / scale ) );
+
+        for ( int i = 0; i < PERCENTILES.length; i++ )
+        {
+            buffer.append( ", p" ).append( PERCENTILES[i] ).append( ' ' );
+            buffer.append( format.format( percentile( sorted, PERCENTILES[i] ) / scale ) );
+        }
+
+        buffer.append( ", max " ).append( format.format( sorted[sorted.length - 1] / scale ) );
+
+        return buffer.toString();
+    }
+
+    /**
+     * @param sorted the sorted measurements
+     * @param percentile the percentile
+     * @return the nearest rank percentile
+     */
+    static long percentile( long[] sorted, int percentile )
+    {
+        int rank = (int) Math.ceil( percentile / 100.0 * sorted.length );
+
+        return sorted[Math.max( 0, rank - 1 )];
+    }
+
+    /**
+     * writes the JSON report
+     *
+     * @param timeToMain the times to main
+     * @param timeToMarker the times to the marker class
+     * @param peakRss the peak resident set sizes
+     * @throws MojoExecutionException if the report cannot be written
+     */
+    private void writeReport( long[] timeToMain, long[] timeToMarker, long[] peakRss )
+        throws MojoExecutionException
+    {
+        benchmarkReportFile.getAbsoluteFile().getParentFile().mkdirs();
+
+        try
+        {
+            AtomicFileWriter writer = new AtomicFileWriter( benchmarkReportFile, "UTF-8" );
+
+            try
+            {
+                writer.write( "{\n" );
+                writer.write( "  \"mainClass\": " + Timings.quote( mainClass ) + ",\n" );
+
+                if ( benchmarkMarkerClass != null )
+                {
+                    writer.write( "  \"markerClass\": " + Timings.quote( benchmarkMarkerClass ) + ",\n" );
+                }
+
+                writer.write( "  \"runs\": " + timeToMain.length + ",\n" );
+                writer.write( "  \"warmupRuns\": " + benchmarkWarmupRuns + ",\n" );
+
+                writeMetric( writer, "timeToMainMillis", timeToMain, 1e6 );
+
+                if ( isAvailable( timeToMarker ) )
+                {
+                    writer.write( ",\n" );
+
+                    writeMetric( writer, "timeToMarkerMillis", timeToMarker, 1e6 );
+                }
+
+                if ( isAvailable( peakRss ) )
+                {
+                    writer.write( ",\n" );
+
+                    // without a marker class the run ends at main, so it
+                    // only covers the JVM's bootstrap
+
+                    writeMetric( writer, benchmarkMarkerClass != null ? "peakRssKilobytes"
+                                    : "peakRssToMainKilobytes", peakRss, 1 );
+                }
+
+                writer.write( "\n}\n" );
+
+                writer.commit();
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to write " + benchmarkReportFile, e );
+        }
+
+        getLog().info( "Start up benchmark report written to " + benchmarkReportFile );
+    }
+
+    /**
+     * writes a measurement's statistics and samples as a JSON object member
+     *
+     * @param writer the report writer
+     * @param name the member name
+     * @param values the measurements
+     * @param scale the divisor that converts the measurements to the
+     *            reported unit
+     * @throws IOException if the report cannot be written
+     */
+    private static void writeMetric( Writer writer, String name, long[] values, double scale )
+        throws IOException
+    {
+        long[] sorted = values.clone();
+
+        Arrays.sort( sorted );
+
+        double total = 0;
+
+        for ( int i = 0; i < sorted.length; i++ )
+        {
+            total += sorted[i];
+        }
+
+        DecimalFormat format = getFormat();
+
+        writer.write( "  \"" + name + "\": {\n" );
+        writer.write( "    \"min\": " + format.format( sorted[0] / scale ) + ",\n" );
+
+        for ( int i = 0; i < PERCENTILES.length; i++ )
+        {
+            writer.write( "    \"p" + PERCENTILES[i] + "\": "
+                + format.format( percentile( sorted, PERCENTILES[i] ) / scale ) + ",\n" );
+        }
+
+        writer.write( "    \"max\": " + format.format( sorted[sorted.length - 1] / scale ) + ",\n" );
+        writer.write( "    \"mean\": " + format.format( total / sorted.length / scale ) + ",\n" );
+        writer.write( "    \"samples\": [" );
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            writer.write( ( i > 0 ? ", " : "" ) + format.format( values[i] / scale ) );
+        }
+
+        writer.write( "]\n  }" );
+    }
+
+    /**
+     * @return the number format used in the report and log
+     */
+    private static DecimalFormat getFormat()
+    {
+        return new DecimalFormat( "0.###", new DecimalFormatSymbols( Locale.US ) );
+    }
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigExecutableMode;
+import org.codehaus.mojo.exe4j.configuration.ConfigJRESearchPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigJarExeMode;
+import org.codehaus.mojo.exe4j.configuration.ConfigNativeLibraries;
+import org.codehaus.mojo.exe4j.configuration.ConfigQuotedString;
+import org.codehaus.mojo.exe4j.configuration.ConfigStatusLine;
+import org.codehaus.mojo.exe4j.configuration.ConfigVersionLine;
+import org.codehaus.mojo.exe4j.configuration.ConfigVersionString;
+import org.codehaus.mojo.exe4j.util.XmlStreamWriter;
+
+/**
+ * The exe4j config document of one executable, written straight from the
+ * Mojo parameters rather than through the config template. The elements and
+ * attributes are those of the default template, always written in the same
+ * order, so the same parameters always give the same bytes. Parameters with
+ * no value are written as empty attributes, as the template leaves them.
+ *
+ * The fields are set by Exe4JMojo, with a variant's values in place of the
+ * Mojo's.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+class Exe4JDocument
+{
+    /**
+     * the document encoding
+     */
+    static final String ENCODING = "UTF-8";
+
+    /**
+     * the exe4j launcher messages, id and text
+     */
+    private static final String[][] MESSAGES = {
+        { "JVM_IN_PATH",
+            "The JVM found in your path is damaged.\\nPlease reinstall or define EXE4J_JAVA_HOME\\nto point to an installed JDK or JRE." },
+        { "JVM_ENV_VAR", "The %ENV_VAR_NAME% envionment variable does not\\npoint to a working JDK or JRE." },
+        { "JVM_DEFINED_PATH",
+            "The JVM found at %DEFINED_PATH% is damaged.\\nPlease reinstall or define EXE4J_JAVA_HOME\\nto point to an installed JDK or JRE." },
+        { "JVM_START", "The JVM could not be started. The main method may have thrown an exception." },
+        { "FILE_NOT_FOUND", "File or directory %FILE_NAME% not found or empty\\n" },
+        { "WRONG_PARAMETERS", "Wrong Parameter Usage" },
+        { "ENV_VAR_NOT_DEFINED", "The environment variable %ENV_VAR_NAME% has to be defined" },
+        { "INTERNAL_ERROR", "An internal error occurred (error code: %ERROR_CODE%)" },
+        { "ERROR_DIALOG_CAPTION", "Error" },
+        { "ERROR_DIALOG_OK", "Ok" },
+        { "ERROR_DIALOG_TEXT", "An error occurred while starting up %APPLICATION_NAME%:" },
+        { "MAIN_CLASS_NOT_FOUND", "Couldn't load main class." },
+        { "MAIN_METHOD_NOT_FOUND", "Main method not found." },
+        { "MESSAGE_BOX_TITLE", "Error" },
+        { "NO_JVM_FOUND",
+            "No JVM could be found on your system.\\nPlease define EXE4J_JAVA_HOME\\nto point to an installed JDK or JRE or download a JRE from www.java.com." } };
+
+    // the Mojo parameters of the same names, files as absolute paths
+
+    String applicationShortName;
+
+    String applicationShortInternalName;
+
+    String distributionSourceDirectory;
+
+    String executableName;
+
+    ConfigJarExeMode jarExeMode;
+
+    boolean useExecutableIcon;
+
+    String executableIconFile;
+
+    String executableDirectory;
+
+    boolean redirectStdErr;
+
+    String stdErrRedirectionFile;
+
+    boolean redirectStdOut;
+
+    String stdOutRedirectionFile;
+
+    ConfigExecutableMode executableMode;
+
+    String workingDirectory;
+
+    boolean singleInstanceOnly;
+
+    boolean generateVersionInfo;
+
+    ConfigVersionString fileVersion;
+
+    ConfigVersionString productVersion;
+
+    String companyName;
+
+    String fileDescription;
+
+    String legalCopyrightText;
+
+    boolean useSplashScreen;
+
+    boolean hideSplashScreenOnStart;
+
+    boolean splashScreenOnTop;
+
+    String splashScreenFile;
+
+    ConfigStatusLine statusLine;
+
+    ConfigVersionLine versionLine;
+
+    String mainClass;
+
+    ConfigQuotedString jvmParameters;
+
+    ConfigQuotedString arguments;
+
+    boolean allowJvmPassThrough;
+
+    String minJavaVersion;
+
+    String maxJavaVersion;
+
+    String preferredVM;
+
+    boolean allowBetaJREs;
+
+    boolean allowOnlyJDKSs;
+
+    ConfigJRESearchPath jreSearchPath;
+
+    ConfigClassPath classPath;
+
+    ConfigNativeLibraries nativeLibraries;
+
+    /**
+     * writes the document
+     *
+     * @param out the output, encoded with ENCODING
+     * @throws IOException if the output cannot be written to
+     */
+    public void write( Writer out )
+        throws IOException
+    {
+        XmlStreamWriter xml = new XmlStreamWriter( out );
+
+        xml.writeStartDocument( ENCODING );
+
+        xml.writeStartElement( "exe4j" );
+        xml.writeAttribute( "version", "3.1" );
+
+        xml.writeStartElement( "directoryPresets" );
+        xml.writeAttribute( "config", distributionSourceDirectory );
+        xml.writeEndElement();
+
+        xml.writeStartElement( "application" );
+        xml.writeAttribute( "name", applicationShortName );
+        xml.writeAttribute( "distributionSourceDir", distributionSourceDirectory );
+        xml.writeEndElement();
+
+        writeExecutable( xml );
+
+        xml.writeStartElement( "splashScreen" );
+        xml.writeAttribute( "show", useSplashScreen );
+        xml.writeAttribute( "autoOff", hideSplashScreenOnStart );
+        xml.writeAttribute( "alwaysOnTop", splashScreenOnTop );
+        xml.writeAttribute( "width", "0" );
+        xml.writeAttribute( "height", "0" );
+        xml.writeAttribute( "bitmapFile", splashScreenFile );
+        xml.writeStartElement( "text" );
+        xml.writeFragment( statusLine );
+        xml.writeFragment( versionLine );
+        xml.writeEndElement();
+        xml.writeEndElement();
+
+        xml.writeStartElement( "java" );
+        xml.writeAttribute( "mainClass", mainClass );
+        xml.writeAttribute( "vmParameters", jvmParameters );
+        xml.writeAttribute( "arguments", arguments );
+        xml.writeAttribute( "allowVMPassthroughParameters", allowJvmPassThrough );
+        xml.writeAttribute( "minVersion", minJavaVersion );
+        xml.writeAttribute( "maxVersion", maxJavaVersion );
+        xml.writeAttribute( "preferredVM", preferredVM );
+        xml.writeAttribute( "allowBetaVM", allowBetaJREs );
+        xml.writeAttribute( "jdkOnly", allowOnlyJDKSs );
+        xml.writeFragment( jreSearchPath );
+        xml.writeFragment( classPath );
+        xml.writeFragment( nativeLibraries );
+        xml.writeEndElement();
+
+        xml.writeStartElement( "includedFiles" );
+        xml.writeEndElement();
+
+        xml.writeEndDocument();
+    }
+
+    /**
+     * writes the executable element
+     *
+     * @param xml the XML writer
+     * @throws IOException if the output cannot be written to
+     */
+    private void writeExecutable( XmlStreamWriter xml )
+        throws IOException
+    {
+        xml.writeStartElement( "executable" );
+        xml.writeAttribute( "name", executableName );
+        xml.writeAttribute( "type", jarExeMode );
+        xml.writeAttribute( "iconSet", useExecutableIcon );
+        xml.writeAttribute( "iconFile", executableIconFile );
+        xml.writeAttribute( "executableDir", executableDirectory );
+        xml.writeAttribute( "redirectStderr", redirectStdErr );
+        xml.writeAttribute( "stderrFile", stdErrRedirectionFile );
+        xml.writeAttribute( "redirectStdout", redirectStdOut );
+        xml.writeAttribute( "stdoutFile", stdOutRedirectionFile );
+        xml.writeAttribute( "failOnStderrOutput", true );
+        xml.writeAttribute( "executableMode", executableMode );
+        xml.writeAttribute( "changeWorkingDirectory", true );
+        xml.writeAttribute( "workingDirectory", workingDirectory );
+        xml.writeAttribute( "singleInstance", singleInstanceOnly );
+        xml.writeAttribute( "serviceStartType", "2" );
+        xml.writeAttribute( "serviceDependencies", "" );
+        xml.writeAttribute( "serviceDescription", "" );
+        xml.writeAttribute( "jreLocation", "" );
+
+        xml.writeStartElement( "messageSet" );
+        xml.writeAttribute( "language", "English" );
+
+        for ( int i = 0; i < MESSAGES.length; i++ )
+        {
+            xml.writeStartElement( "message" );
+            xml.writeAttribute( "id", MESSAGES[i][0] );
+            xml.writeAttribute( "text", MESSAGES[i][1] );
+            xml.writeEndElement();
+        }
+
+        xml.writeEndElement();
+
+        xml.writeStartElement( "versionInfo" );
+        xml.writeAttribute( "include", generateVersionInfo );
+        xml.writeAttribute( "fileVersion", fileVersion );
+        xml.writeAttribute( "companyName", companyName );
+        xml.writeAttribute( "fileDescription", fileDescription );
+        xml.writeAttribute( "legalCopyright", legalCopyrightText );
+        xml.writeAttribute( "productVersion", productVersion );
+        xml.writeAttribute( "internalName", applicationShortInternalName );
+        xml.writeEndElement();
+
+        xml.writeEndElement();
+    }
+
+    /**
+     * @return the document
+     */
+    public String toString()
+    {
+        StringWriter writer = new StringWriter( 4096 );
+
+        try
+        {
+            write( writer );
+        }
+        catch ( IOException e )
+        {
+            // a StringWriter doesn't throw
+            throw new IllegalStateException( e.toString() );
+        }
+
+        return writer.toString();
+    }
+
+}
@@ -17,15 +17,20 @@
 package org.codehaus.mojo.exe4j;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Dictionary;
-import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
@@ -38,6 +43,22 @@ import org.codehaus.mojo.exe4j.configuration.ConfigStatusLine;
 import org.codehaus.mojo.exe4j.configuration.ConfigVersionLine;
 import org.codehaus.mojo.exe4j.configuration.ConfigVersionString;
 import org.codehaus.mojo.exe4j.configuration.ConfigJRESearchPath.JREPathLocation;
+import org.codehaus.mojo.exe4j.tasks.TrainingRunTask;
+import org.codehaus.mojo.exe4j.util.AtomicFileWriter;
+import org.codehaus.mojo.exe4j.util.BuildCache;
+import org.codehaus.mojo.exe4j.util.ClassLoadTrace;
+import org.codehaus.mojo.exe4j.util.ClassPathExpander;
+import org.codehaus.mojo.exe4j.util.ClassShrinker;
+import org.codehaus.mojo.exe4j.util.DependencyClassPath;
+import org.codehaus.mojo.exe4j.util.Fingerprint;
+import org.codehaus.mojo.exe4j.util.ImageAssets;
+import org.codehaus.mojo.exe4j.util.JarRepacker;
+import org.codehaus.mojo.exe4j.util.JvmOptions;
+import org.codehaus.mojo.exe4j.util.LazyProperties;
+import org.codehaus.mojo.exe4j.util.PropertySource;
+import org.codehaus.mojo.exe4j.util.Template;
+import org.codehaus.mojo.exe4j.util.Timings;
+import org.codehaus.mojo.exe4j.util.XmlFiles;
 import org.codehaus.plexus.configuration.PlexusConfigurationException;
 
 /**
@@ -50,10 +71,11 @@ import org.codehaus.plexus.configuration.PlexusConfigurationException;
  * @goal exe4j
  * @phase package
  * @requiresDependencyResolution test
+ * @threadSafe
  * @configurator override 
  */
 public class Exe4JMojo
-    extends AbstractExecuteMojo
+    extends AbstractApplicationMojo
 {
     /**
      * resource directory location
@@ -84,26 +106,6 @@ public class Exe4JMojo
      */
     private String applicationShortName;
 
-    /**
-     * The distribution source directory conatins is the reference point for
-     * relative directories. If necessary, other specified directories will be
-     * converted to be relative to this location.
-     * 
-     * @parameter expression="${distributionSourceDirectory}"
-     *            default-value="${project.build.directory}"
-     * @required
-     */
-    private File distributionSourceDirectory;
-
-    /**
-     * The generated executable will be copied to the executable directory. The
-     * executable directory must be below the distribution source directory.
-     * 
-     * @parameter expression="${executableDirectory}" default-value="."
-     * @required
-     */
-    private String executableDirectory;
-
     /**
      * Executable mode can be either "gui", "console" or "service".
      * 
@@ -143,16 +145,6 @@ public class Exe4JMojo
      */
     private File resourcesDirectory;
 
-    /**
-     * Executable name. The desired executable name without the trailing .exe
-     * extension
-     * 
-     * @parameter expression="${executableName}"
-     *            default-value="${project.artifactId}"
-     * @required
-     */
-    private String executableName;
-
     /**
      * Set to true to use an executable icon
      * 
@@ -171,17 +163,24 @@ public class Exe4JMojo
     private File executableIconFile;
 
     /**
-     * For some applications (especially GUI applications) you might want to
-     * change the working directory to a specific directory relative to the
-     * executable, for example to read config files that are in a fixed
-     * location. To do so, set working directory to a directory relative to the
-     * executableDirectory. To change the current directory to the same
-     * directory where the executable is located, enter a single dot.
+     * An image (PNG, or any other format javax.imageio reads) to generate the
+     * executable icon from. If set, and useExecutableIcon is true, an icon
+     * holding the image at each of the executableIconSizes is generated in
+     * assetDirectory and used in place of executableIconFile.
+     * 
+     * @parameter expression="${executableIconSourceFile}"
+     */
+    private File executableIconSourceFile;
+
+    /**
+     * The resolutions, in pixels, of the icon generated from
+     * executableIconSourceFile, separated by commas. The largest an icon can
+     * hold is 256.
      * 
-     * @parameter expression="${workingDirectory}" default-value="."
+     * @parameter expression="${executableIconSizes}" default-value="16,24,32,48,256"
      * @required
      */
-    private String workingDirectory;
+    private String executableIconSizes;
 
     /**
      * If you true the generated exe4j executable can only be started once.
@@ -331,42 +330,16 @@ public class Exe4JMojo
     private String legalCopyrightText;
 
     /**
-     * Fully qualified main class of your application.
+     * Set to true to write the merged JVM options to the .vmoptions file
+     * next to each executable, one per line, rather than into the exe4j
+     * config, so they can be changed without rebuilding the executable.
+     * Options referencing %EXE4J_EXEDIR% or %EXE4J_TEMPDIR% stay in the
+     * config as the launcher only expands them there.
      * 
-     * @parameter expression="${mainClass}"
+     * @parameter expression="${writeVmOptionsFile}" default-value="false"
      * @required
      */
-    private String mainClass;
-
-    /**
-     * JVM parameters you want to specify for the invocation of your Java
-     * application (e.g. -Dmyapp.myproperty=true or -Xmx256m). There are two
-     * runtime-variables you can use to specify runtime directories:
-     * 
-     * %EXE4J_EXEDIR% This is the directory where the executable is located.
-     * %EXE4J_TEMPDIR% For the "JAR in EXE" mode, this variable will contain the
-     * location of the temporary directory for the JAR files. In "regular mode"
-     * this variable is not used.
-     * 
-     * In addition to these VM parameters, a parameter file in the same
-     * directory as the executable is read and its contents are added to the
-     * existing VM parameters. The name of this parameter file is the same as
-     * the exe file with the extension .vmoptions. For example, if your exe file
-     * is named hello.exe, the name of the VM parameter file is hello.vmoptions.
-     * In this file, each line is interpreted as a single VM parameter. For
-     * example, the contents of the VM parameter file could be: -Xmx128m -Xms32m
-     * 
-     * @parameter expression="${jvmParameters}"
-     */
-    private ConfigQuotedString jvmParameters;
-
-    /**
-     * Arguments for your main class. Arguments passed to the executable will be
-     * appended to these arguments.
-     * 
-     * @parameter expression="${arguments}"
-     */
-    private ConfigQuotedString arguments;
+    private boolean writeVmOptionsFile;
 
     /**
      * To allow the user to specify JVM parameters through your application with
@@ -377,46 +350,6 @@ public class Exe4JMojo
      */
     private boolean allowJvmPassThrough;
 
-    /**
-     * class path entries can be scanDirectory, directory, archive or envVar.
-     * Specify a lit of ClassPathEntry objects. If unspecified this will default
-     * to a scanDirectory entry configured to search the workingDirectory
-     * 
-     * Note: You can use environment variables in the text field with the
-     * following syntax: ${VARIABLE_NAME} where you replace VARIABLE_NAME with
-     * the desired system environment variable.
-     * 
-     * Note: Not available if the "JAR in EXE" mode is being used.
-     * 
-     * @parameter expression="${classPath}"
-     */
-    private ConfigClassPath classPath;
-
-    /**
-     * If your application uses native libraries that you would lke to load with
-     * a System.loadLibrary() call, the directory where the .dll is located must
-     * be included in the PATH environment variable. You can add such
-     * directories to the path by specifying them in this list of strings
-     * 
-     * @parameter expression="${nativeLibraries}"
-     */
-    private ConfigNativeLibraries nativeLibraries;
-
-    /**
-     * Minimum java version
-     * 
-     * @parameter expression="${minJavaVersion}" default-value="1.3"
-     * @required
-     */
-    private String minJavaVersion;
-
-    /**
-     * Maximum java version
-     * 
-     * @parameter expression="${maxJavaVersion}" default-value=""
-     */
-    private String maxJavaVersion;
-
     /**
      * If you want to use JREs with a beta version number or JREs from an early
      * access release cycle set this to true.
@@ -472,6 +405,45 @@ public class Exe4JMojo
      */
     private File splashScreenFile;
 
+    /**
+     * Set to true to embed a processed copy of splashScreenFile, generated in
+     * assetDirectory: scaled down to fit splashScreenMaxWidth and
+     * splashScreenMaxHeight, reduced to splashScreenMaxColors and written as
+     * a maximally compressed PNG. A smaller bitmap keeps the executable small
+     * and lets the launcher show the splash screen sooner.
+     * 
+     * @parameter expression="${processSplashScreen}" default-value="false"
+     * @required
+     */
+    private boolean processSplashScreen;
+
+    /**
+     * The maximum width of the processed splash screen in pixels, 0 for no
+     * limit.
+     * 
+     * @parameter expression="${splashScreenMaxWidth}" default-value="800"
+     * @required
+     */
+    private int splashScreenMaxWidth;
+
+    /**
+     * The maximum height of the processed splash screen in pixels, 0 for no
+     * limit.
+     * 
+     * @parameter expression="${splashScreenMaxHeight}" default-value="600"
+     * @required
+     */
+    private int splashScreenMaxHeight;
+
+    /**
+     * The maximum number of colours in the processed splash screen, from 2
+     * to 256, or 0 to keep the image's colours.
+     * 
+     * @parameter expression="${splashScreenMaxColors}" default-value="0"
+     * @required
+     */
+    private int splashScreenMaxColors;
+
     /**
      * If you want exe4j executable to monitor the state of your application and
      * hide the native splash screen as soon as a window is opened set this to
@@ -534,6 +506,19 @@ public class Exe4JMojo
      */
     private File templateFile;
 
+    /**
+     * Set to true to write the exe4j config file straight from the mojo
+     * parameters, with the elements and attributes of the default template
+     * in a fixed order, rather than by substituting the parameters into the
+     * template. Values are escaped as they are written and nothing is
+     * rendered to intermediate strings. Project properties cannot be
+     * referenced. Ignored if templateFile is set.
+     * 
+     * @parameter expression="${streamConfig}" default-value="false"
+     * @required
+     */
+    private boolean streamConfig;
+
     /**
      * The processed exe4j config file is written to this location before being
      * passed to exe4j. If not specified defaults to
@@ -544,6 +529,281 @@ public class Exe4JMojo
      */
     private File outputConfigFile;
 
+    /**
+     * The directory the generated icon and processed splash screen are
+     * written to. Each is only generated again when its source image or
+     * settings change, and is shared through the build cache if
+     * useBuildCache is set.
+     * 
+     * @parameter expression="${assetDirectory}"
+     *            default-value="${project.build.directory}/exe4j-assets"
+     * @required
+     */
+    private File assetDirectory;
+
+    /**
+     * Set to true to leave outputConfigFile untouched, preserving its
+     * timestamp, when the processed config is identical to the existing
+     * file. Whether the config changed is published as the
+     * exe4j.configChanged project property (and
+     * exe4j.[executableName].configChanged for each variant) for later steps
+     * of the build.
+     * 
+     * @parameter expression="${writeConfigIfChanged}" default-value="true"
+     * @required
+     */
+    private boolean writeConfigIfChanged;
+
+    /**
+     * set if any of the config files written by this execution changed
+     */
+    private volatile boolean configChanged;
+
+    /**
+     * Additional executables to generate from this configuration, a list of
+     * Variant objects. A variant overrides a few of this mojo's parameters,
+     * such as executableName, executableMode, jvmParameters or the
+     * redirection files, and may specify an outputDirectory and version that
+     * override those of the config file. Each variant's config file is
+     * written next to outputConfigFile, prefixed with its executable name.
+     * 
+     * @parameter
+     */
+    private List variants;
+
+    /**
+     * The number of executables to generate concurrently when variants are
+     * defined, 0 uses one thread per available processor.
+     * 
+     * @parameter expression="${variantThreads}" default-value="0"
+     * @required
+     */
+    private int variantThreads;
+
+    /**
+     * Only run the exe4j compiler when one of its inputs has changed since
+     * the last build. The inputs are the processed config file, the template
+     * file, the icon and splash screen files, the exe4j installation, its
+     * exe4jc and compiler jar and their version, and, for the "JAR in EXE"
+     * mode, the archives compiled into the executable. Their fingerprint is
+     * stored next to the outputConfigFile. Off by default, exe4jc runs on
+     * every build.
+     * 
+     * @parameter expression="${incremental}" default-value="false"
+     * @required
+     */
+    private boolean incremental;
+
+    /**
+     * Set to true to share generated executables between builds through a
+     * local build cache. The cache is keyed by the fingerprint of the
+     * executable's inputs, see incremental, so a build whose inputs match
+     * those of an earlier build restores that build's executable instead of
+     * running the exe4j compiler.
+     * 
+     * @parameter expression="${useBuildCache}" default-value="false"
+     * @required
+     */
+    private boolean useBuildCache;
+
+    /**
+     * The build cache directory, it may be shared by concurrent builds.
+     * 
+     * @parameter expression="${buildCacheDirectory}"
+     *            default-value="${user.home}/.m2/exe4j-cache"
+     * @required
+     */
+    private File buildCacheDirectory;
+
+    /**
+     * The maximum size of the build cache in megabytes, the least recently
+     * used executables are deleted once it grows beyond this.
+     * 
+     * @parameter expression="${buildCacheMaxSize}" default-value="1024"
+     * @required
+     */
+    private int buildCacheMaxSize;
+
+    /**
+     * Set to true to remove the classes that cannot be reached from
+     * mainClass from the class path archives in the distribution. Every
+     * class on the class path is parsed for the classes it references, a
+     * class is kept if it is reached from mainClass, matches one of
+     * shrinkKeepClasses or provides a service whose interface is reached.
+     * Class names used as string constants, as with Class.forName, count as
+     * references, other reflection must be covered by shrinkKeepClasses.
+     * Archives outside the distributionSourceDirectory are read but left
+     * alone, as is the project's own archive unless shrinkProjectArtifact
+     * is set. The original of each shrunk archive is kept so it is shrunk
+     * from the original on every build, nothing is shrunk on a trial run.
+     * 
+     * @parameter expression="${shrinkArchives}" default-value="false"
+     * @required
+     */
+    private boolean shrinkArchives;
+
+    /**
+     * The classes that are always kept when shrinking: class names, or
+     * package names followed by .* for the package's classes or .** to
+     * include sub packages.
+     * 
+     * @parameter
+     */
+    private List shrinkKeepClasses;
+
+    /**
+     * Set to true to shrink the project's archive as well when it is on the
+     * class path, rather than only the copies of it in the distribution.
+     * 
+     * @parameter expression="${shrinkProjectArtifact}" default-value="false"
+     * @required
+     */
+    private boolean shrinkProjectArtifact;
+
+    /**
+     * The number of class path entries to parse concurrently, 0 uses one
+     * thread per available processor.
+     * 
+     * @parameter expression="${shrinkThreads}" default-value="0"
+     * @required
+     */
+    private int shrinkThreads;
+
+    /**
+     * The JSON report of the classes removed from each archive, and of why
+     * the classes that weren't referenced by another were kept.
+     * 
+     * @parameter expression="${shrinkReportFile}"
+     *            default-value="${project.build.directory}/exe4j-shrink.json"
+     */
+    private File shrinkReportFile;
+
+    /**
+     * Set to true to run the application once at build time with class load
+     * logging (JDK 9+) and use the trace to order the class path: the
+     * archives that supply the most start up classes are moved to the front,
+     * as far as they can be without changing where any class or service is
+     * loaded from, and the archives in the distribution are rewritten with
+     * their start up classes first, in load order. The trace is only
+     * recorded again when mainClass, the trace settings or the class path
+     * contents change.
+     * 
+     * @parameter expression="${orderClassPath}" default-value="false"
+     * @required
+     */
+    private boolean orderClassPath;
+
+    /**
+     * The java executable used for the class load trace run.
+     * 
+     * @parameter expression="${classPathTraceJava}" default-value="${java.home}/bin/java"
+     * @required
+     */
+    private File classPathTraceJava;
+
+    /**
+     * If set the trace run ends once this class has been loaded, see
+     * sharedArchiveMarkerClass.
+     * 
+     * @parameter expression="${classPathTraceMarkerClass}"
+     */
+    private String classPathTraceMarkerClass;
+
+    /**
+     * The maximum trace run time in seconds.
+     * 
+     * @parameter expression="${classPathTraceTimeout}" default-value="60"
+     * @required
+     */
+    private int classPathTraceTimeout;
+
+    /**
+     * Set to true to rewrite the class path archives in the distribution
+     * for faster class loading. The classes of repackStoredPackages are
+     * stored, so they are loaded without being inflated, everything else is
+     * deflated at repackDeflateLevel. Archives outside the
+     * distributionSourceDirectory are left alone. Repacked archives are
+     * cached by the digest of the original, in the build cache if
+     * useBuildCache is set, so an archive is only repacked once. Nothing is
+     * repacked on a trial run.
+     * 
+     * @parameter expression="${repackArchives}" default-value="false"
+     * @required
+     */
+    private boolean repackArchives;
+
+    /**
+     * The packages, sub packages included, whose classes are stored
+     * uncompressed when repacking, usually those loaded at start up.
+     * Defaults to the package of mainClass.
+     * 
+     * @parameter
+     */
+    private List repackStoredPackages;
+
+    /**
+     * The deflate level, from 0 to 9, of the repacked entries that aren't
+     * stored. 0 stores every entry.
+     * 
+     * @parameter expression="${repackDeflateLevel}" default-value="9"
+     * @required
+     */
+    private int repackDeflateLevel;
+
+    /**
+     * The deflate level used instead of repackDeflateLevel in the "JAR in
+     * EXE" mode, where the archives are extracted by the launcher before
+     * being loaded, -1 to use repackDeflateLevel.
+     * 
+     * @parameter expression="${repackInternalDeflateLevel}" default-value="-1"
+     * @required
+     */
+    private int repackInternalDeflateLevel;
+
+    /**
+     * The number of archives to repack concurrently, 0 uses one thread per
+     * available processor.
+     * 
+     * @parameter expression="${repackThreads}" default-value="0"
+     * @required
+     */
+    private int repackThreads;
+
+    /**
+     * The JSON report of the size and estimated inflate time of each
+     * archive before and after repacking.
+     * 
+     * @parameter expression="${repackReportFile}"
+     *            default-value="${project.build.directory}/exe4j-repack.json"
+     */
+    private File repackReportFile;
+
+    /**
+     * The java executable used for the training run.
+     * 
+     * @parameter expression="${sharedArchiveJava}" default-value="${java.home}/bin/java"
+     * @required
+     */
+    private File sharedArchiveJava;
+
+    /**
+     * If set the training run ends once this class has been loaded, for
+     * example a class first used when the application's main window is
+     * shown. Otherwise it runs until the application exits or the timeout
+     * expires.
+     * 
+     * @parameter expression="${sharedArchiveMarkerClass}"
+     */
+    private String sharedArchiveMarkerClass;
+
+    /**
+     * The maximum training run time in seconds.
+     * 
+     * @parameter expression="${sharedArchiveTimeout}" default-value="60"
+     * @required
+     */
+    private int sharedArchiveTimeout;
+
     /*
      * (non-Javadoc)
      * 
@@ -552,344 +812,2004 @@ public class Exe4JMojo
     public void execute()
         throws MojoExecutionException, MojoFailureException
     {
-
-        initialise();
-
-        // load config template
-
-        String templateContent;
-
         try
         {
-            if ( templateFile != null && templateFile.exists() )
-            {
-                templateContent = fileRead( templateFile );
-            }
-            else
-            {
-                templateContent = streamRead( getClass().getResourceAsStream( DEFAULT_TEMPLATE ) );
-            }
+            generate();
         }
-        catch ( IOException e )
+        finally
         {
-            throw new MojoExecutionException( "The exe4j template config file cannot be read", e );
+            reportTimings( "exe4j-" + executableName );
         }
+    }
 
-        // parse the template config file, substituting the ${VARNAME}
-        // macros within for the Mojo parameter derived properties.
+    /**
+     * generates the executable and its variants
+     * 
+     * @throws MojoExecutionException if an executable cannot be generated
+     */
+    private void generate()
+        throws MojoExecutionException
+    {
+        Timings timings = getTimings();
 
-        String parsedConfig = replaceAll( templateContent, getProperties() );
+        Timings.Phase phase = timings.start( "initialise" );
 
-        if ( getLog().isDebugEnabled() )
+        initialise();
+
+        phase.end();
+
+        if ( ( useExecutableIcon && executableIconSourceFile != null ) || ( useSplashScreen && processSplashScreen ) )
         {
+            phase = timings.start( "assets" );
 
-            getLog().debug( "using exe4j config:\n" + parsedConfig );
+            generateAssets();
 
+            phase.end();
         }
 
-        // write to file store
-
-        try
+        if ( shrinkArchives )
         {
-            outputConfigFile.getParentFile().mkdirs();
+            phase = timings.start( "shrink" );
 
-            new File( distributionSourceDirectory.getAbsolutePath() + "/" + executableDirectory ).mkdirs();
+            shrinkArchives();
 
-            FileOutputStream fos = new FileOutputStream( outputConfigFile );
+            phase.end();
+        }
 
-            fos.write( parsedConfig.getBytes() );
+        // ordered before repacking, which keeps the order of the entries
 
-        }
-        catch ( IOException e )
+        if ( orderClassPath )
         {
-            throw new MojoExecutionException( "The exe4j config file can not be written", e );
+            phase = timings.start( "orderClassPath" );
+
+            orderClassPath();
+
+            phase.end();
         }
 
-        // invoke exe4j executor
+        // repacked before the shared archive is generated, as it records the
+        // archives' sizes and timestamps
 
-        runExe4J( outputConfigFile );
+        if ( repackArchives )
+        {
+            phase = timings.start( "repack" );
 
-    }
+            repackArchives();
 
-    /**
-     * Initialise complex mojo parameters that havent been supplied.
-     * 
-     * @throws MojoExecutionException
-     */
-    private void initialise()
-        throws MojoExecutionException
-    {
+            phase.end();
+        }
 
-        try
+        if ( generateSharedArchive )
         {
-            // default jre search locations are registry then standard JAVA env vars
+            phase = timings.start( "sharedArchive" );
 
-            if ( jreSearchPath == null )
-            {
-                jreSearchPath = new ConfigJRESearchPath();
+            generateSharedArchive();
 
-                jreSearchPath
-                    .addLocation( new ConfigJRESearchPath.JREPathLocation(
-                                                                           ConfigJRESearchPath.JREPathLocation.REGISTRY_TYPE,
-                                                                           null ) );
+            phase.end();
+        }
 
-                jreSearchPath
-                    .addLocation( new ConfigJRESearchPath.JREPathLocation(
-                                                                           ConfigJRESearchPath.JREPathLocation.ENVVAR_TYPE,
-                                                                           "JAVA_HOME" ) );
+        configChanged = false;
 
-                jreSearchPath
-                    .addLocation( new ConfigJRESearchPath.JREPathLocation(
-                                                                           ConfigJRESearchPath.JREPathLocation.ENVVAR_TYPE,
-                                                                           "JDK_HOME" ) );
+        if ( streamConfig && templateFile == null )
+        {
+            try
+            {
+                generateAll( null, null );
+            }
+            finally
+            {
+                project.getProperties().setProperty( "exe4j.configChanged", Boolean.toString( configChanged ) );
             }
 
-            // default classpath location is to load any archive in the exe
-            // directory.
+            return;
+        }
 
-            if ( classPath == null )
-            {
-                classPath = new ConfigClassPath();
+        if ( streamConfig )
+        {
+            getLog().warn( "streamConfig is ignored as a templateFile is set" );
+        }
 
-                classPath
-                    .addLocation( new ConfigClassPath.ClassPathLocation(
-                                                                         ConfigClassPath.ClassPathLocation.SCAN_DIRECTORY_TYPE,
-                                                                         workingDirectory, true ) );
+        // load config template
 
-                getLog().warn( "classPath not defined, using default: " + classPath );
-            }
+        phase = timings.start( "loadTemplate" );
 
-            // default native libs is empty
+        String templateContent;
 
-            if ( nativeLibraries == null )
+        try
+        {
+            if ( templateFile != null && templateFile.exists() )
             {
-                nativeLibraries = new ConfigNativeLibraries();
+                templateContent = XmlFiles.read( templateFile );
+            }
+            else
+            {
+                templateContent = XmlFiles.read( getClass().getResourceAsStream( DEFAULT_TEMPLATE ) );
             }
         }
-        catch ( PlexusConfigurationException e )
+        catch ( IOException e )
         {
-            // really shouldn't happen
-
-            throw new MojoExecutionException( "Programmer error!", e );
+            throw new MojoExecutionException( "The exe4j template config file cannot be read", e );
         }
 
-        // these may not be being used (ie their use is controlled via boolean cfg swicthes)
-        // but we write them into the config file all the same so initialise them if they
-        // jave not been supplied.
+        Template template = Template.compile( templateContent );
 
-        if ( executableIconFile == null )
+        phase.end();
+
+        // the Mojo parameter derived properties, including the rendered
+        // Config* fragments, are shared by all of the variants. Checking for
+        // missing values evaluates every property the template references.
+
+        phase = timings.start( "buildProperties" );
+
+        LazyProperties properties = getProperties();
+
+        List missing = template.getMissingPropertyNames( properties );
+
+        phase.end();
+
+        if ( !missing.isEmpty() )
         {
-            executableIconFile = new File( resourcesDirectory.getPath() + "/icons/" + executableName + ".ico" );
+            getLog().warn( "The exe4j template references parameters with no value, they will be left empty: "
+                + missing );
         }
 
-        if ( splashScreenFile == null )
+        try
         {
-            splashScreenFile = new File( resourcesDirectory.getPath() + "/images/" + executableName + ".png" );
+            generateAll( template, properties );
         }
-
-        if ( statusLine == null )
+        finally
         {
-            statusLine = new ConfigStatusLine();
+            project.getProperties().setProperty( "exe4j.configChanged", Boolean.toString( configChanged ) );
         }
 
-        if ( versionLine == null )
+    }
+
+    /**
+     * Generates the executable icon and the processed splash screen, they
+     * replace executableIconFile and splashScreenFile.
+     * 
+     * @throws MojoExecutionException if an image cannot be read or written
+     */
+    private void generateAssets()
+        throws MojoExecutionException
+    {
+        ImageAssets assets = new ImageAssets( assetDirectory );
+
+        if ( useBuildCache )
         {
-            versionLine = new ConfigVersionLine();
+            assets.setBuildCache( new BuildCache( buildCacheDirectory, buildCacheMaxSize * 1024L * 1024L ) );
         }
 
-        if ( arguments == null )
+        try
         {
-            arguments = new ConfigQuotedString( "" );
+            if ( useExecutableIcon && executableIconSourceFile != null )
+            {
+                executableIconFile = assets.createIcon( executableIconSourceFile, getIconSizes() );
+
+                getLog().debug( "executable icon: " + executableIconFile );
+            }
+
+            if ( useSplashScreen && processSplashScreen )
+            {
+                long size = splashScreenFile.length();
+
+                splashScreenFile = assets.createSplashScreen( splashScreenFile, splashScreenMaxWidth,
+                                                              splashScreenMaxHeight, splashScreenMaxColors );
+
+                getLog().debug( "splash screen: " + splashScreenFile + " (" + splashScreenFile.length()
+                    + " bytes, source " + size + " bytes)" );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to generate the exe4j image assets", e );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new MojoExecutionException( e.getMessage(), e );
         }
 
-        if ( fileVersion == null )
+        Timings timings = getTimings();
+
+        timings.setValue( "assets.generated", new Integer( assets.getGenerated() ) );
+        timings.setValue( "assets.reused", new Integer( assets.getReused() ) );
+
+        if ( assets.getGenerated() > 0 )
         {
-            fileVersion = productVersion;
+            getLog().info( "Generated " + assets.getGenerated() + " exe4j image assets in " + assetDirectory );
         }
     }
 
     /**
-     * helper method that reads a file and returns its contents as a string
-     * 
-     * @param file the file to read
-     * @return the files content
-     * @throws IOException if an error is incountered
+     * @return the executableIconSizes
+     * @throws MojoExecutionException if a size isn't a number
      */
-    private String fileRead( File file )
-        throws IOException
+    private int[] getIconSizes()
+        throws MojoExecutionException
     {
-        return streamRead( new FileInputStream( file ) );
-    }
+        String[] values = executableIconSizes.trim().split( "\\s*,\\s*" );
 
-    /**
-     * helper method that reads a stream and returns its contents as a string
-     *  
-     * @param in the input stream
-     * @return the streams content
-     * @throws IOException if an error is incountered
-     */
-    private String streamRead( InputStream in )
-        throws IOException
-    {
-        StringBuffer buf = new StringBuffer();
-        byte b[] = new byte[512];
-        int count;
-        while ( ( count = in.read( b ) ) > 0 )
-            buf.append( new String( b, 0, count ) );
-        in.close();
-        return buf.toString();
+        int[] sizes = new int[values.length];
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            try
+            {
+                sizes[i] = Integer.parseInt( values[i] );
+            }
+            catch ( NumberFormatException e )
+            {
+                throw new MojoExecutionException( "Invalid executableIconSizes: " + executableIconSizes );
+            }
+        }
+
+        return sizes;
     }
 
     /**
-     * helper method that creates a properties object containing the
-     * Exe4J XML representations of the Mojo's parameters
+     * Repacks the class path archives in the distribution and writes the
+     * repack report.
      * 
-     * @return the properties ready for substitution into the Exe4J XML
-     * config file
-     * @throws Exe4JException raised if an invalid parameter has 
-     * been supplied 
+     * @throws MojoExecutionException if an archive cannot be repacked
      */
-    private Properties getProperties()
+    private void repackArchives()
+        throws MojoExecutionException
     {
-        Properties props = new Properties();
+        if ( isTrialRun() )
+        {
+            getLog().info( "Trial run, not repacking the class path archives" );
+
+            return;
+        }
+
+        File executableDir = new File( distributionSourceDirectory, executableDirectory );
+
+        List files = new ArrayList();
+
+        Iterator itr = new ClassPathExpander( executableDir, 1 ).resolve( classPath ).iterator();
+
+        while ( itr.hasNext() )
+        {
+            File file = (File) itr.next();
+
+            String name = file.getName().toLowerCase();
+
+            if ( file.isFile() && ( name.endsWith( ".jar" ) || name.endsWith( ".zip" ) )
+                && isDistributionFile( file ) )
+            {
+                files.add( file );
+            }
+            else
+            {
+                getLog().debug( "Not repacking " + file );
+            }
+        }
+
+        File repackDirectory = new File( outputConfigFile.getParentFile(), "exe4j-repack" );
+
+        long cacheSize = buildCacheMaxSize * 1024L * 1024L;
+
+        File cacheDirectory = useBuildCache ? buildCacheDirectory : new File( repackDirectory, "cache" );
 
-        props.setProperty( "jarExeMode", jarExeMode.toString() );
+        BuildCache cache = new BuildCache( cacheDirectory, cacheSize );
 
-        props.setProperty( "applicationShortName", applicationShortName );
+        int threads = repackThreads > 0 ? repackThreads : Runtime.getRuntime().availableProcessors();
+
+        JarRepacker repacker = new JarRepacker( cache, repackDirectory, threads );
+
+        List packages = repackStoredPackages;
+
+        if ( packages == null )
+        {
+            packages = new ArrayList();
 
-        props.setProperty( "applicationShortInternalName", applicationShortInternalName );
+            if ( mainClass != null && mainClass.lastIndexOf( '.' ) > 0 )
+            {
+                packages.add( mainClass.substring( 0, mainClass.lastIndexOf( '.' ) ) );
+            }
+        }
 
-        props.setProperty( "distributionSourceDirectory", distributionSourceDirectory.getAbsolutePath() );
+        int level = repackDeflateLevel;
 
-        props.setProperty( "executableDirectory", executableDirectory );
+        if ( jarExeMode.isInternal() && repackInternalDeflateLevel >= 0 )
+        {
+            level = repackInternalDeflateLevel;
+        }
 
-        props.setProperty( "executableMode", executableMode.toString() );
+        List results;
 
-        props.setProperty( "executableName", executableName );
+        try
+        {
+            repacker.setStoredPackages( packages );
+            repacker.setLevel( level );
 
-        props.setProperty( "useExecutableIcon", Boolean.toString( useExecutableIcon ) );
+            results = repacker.repack( files );
 
-        props.setProperty( "executableIconFile", executableIconFile.getAbsolutePath() );
+            cache.evict();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new MojoExecutionException( e.getMessage(), e );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to repack the class path archives", e );
+        }
 
-        props.setProperty( "workingDirectory", workingDirectory );
+        long sizeBefore = 0;
+        long sizeAfter = 0;
+        int reused = 0;
 
-        props.setProperty( "singleInstanceOnly", Boolean.toString( singleInstanceOnly ) );
+        itr = results.iterator();
 
-        props.setProperty( "failIfExceptionThrownInMain", Boolean.toString( failIfExceptionThrownInMain ) );
+        while ( itr.hasNext() )
+        {
+            JarRepacker.Result result = (JarRepacker.Result) itr.next();
 
-        props.setProperty( "redirectStdErr", Boolean.toString( redirectStdErr ) );
+            sizeBefore += result.getSizeBefore();
+            sizeAfter += result.getSizeAfter();
+            reused += result.isReused() ? 1 : 0;
+        }
 
-        props.setProperty( "stdErrRedirectionFile", stdErrRedirectionFile );
+        Timings timings = getTimings();
 
-        props.setProperty( "redirectStdOut", Boolean.toString( redirectStdOut ) );
+        timings.setValue( "repack.archives", new Integer( results.size() ) );
+        timings.setValue( "repack.reused", new Integer( reused ) );
+        timings.setValue( "repack.sizeBefore", new Long( sizeBefore ) );
+        timings.setValue( "repack.sizeAfter", new Long( sizeAfter ) );
 
-        props.setProperty( "stdOutRedirectionFile", stdOutRedirectionFile );
+        getLog().info( "Repacked " + results.size() + " archives (" + reused + " reused), " + sizeBefore
+            + " bytes before, " + sizeAfter + " bytes after" );
 
-        props.setProperty( "generateVersionInfo", Boolean.toString( generateVersionInfo ) );
+        if ( repackReportFile != null )
+        {
+            repackReportFile.getAbsoluteFile().getParentFile().mkdirs();
 
-        props.setProperty( "productVersion", productVersion.toString() );
+            try
+            {
+                AtomicFileWriter writer = new AtomicFileWriter( repackReportFile, "UTF-8" );
+
+                try
+                {
+                    repacker.writeReport( results, writer );
+
+                    writer.commit();
+                }
+                finally
+                {
+                    writer.close();
+                }
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Unable to write the repack report: " + e.getMessage() );
+            }
+        }
+    }
 
-        props.setProperty( "fileVersion", fileVersion.toString() );
+    /**
+     * Removes the classes that cannot be reached from mainClass from the
+     * distribution's class path archives.
+     * 
+     * @throws MojoExecutionException if an archive cannot be shrunk
+     */
+    private void shrinkArchives()
+        throws MojoExecutionException
+    {
+        if ( isTrialRun() )
+        {
+            getLog().info( "Trial run, not shrinking the class path archives" );
 
-        props.setProperty( "companyName", companyName );
+            return;
+        }
 
-        props.setProperty( "fileDescription", fileDescription );
+        File executableDir = new File( distributionSourceDirectory, executableDirectory );
 
-        props.setProperty( "legalCopyrightText", legalCopyrightText );
+        Iterator itr = classPath.getLocations().iterator();
 
-        props.setProperty( "mainClass", mainClass );
+        while ( itr.hasNext() )
+        {
+            ConfigClassPath.ClassPathLocation location = (ConfigClassPath.ClassPathLocation) itr.next();
 
-        props.setProperty( "jvmParameters", jvmParameters.toString() );
+            if ( ConfigClassPath.ClassPathLocation.ENVVAR_TYPE.equals( location.getType() )
+                || location.getValue().indexOf( "${" ) >= 0 || location.getValue().indexOf( '%' ) >= 0 )
+            {
+                getLog().warn( "The classes of " + location.getValue() + " aren't analysed when shrinking, the "
+                    + "classes only it uses must be covered by shrinkKeepClasses" );
+            }
+        }
 
-        props.setProperty( "arguments", arguments.toString() );
+        List files = new ClassPathExpander( executableDir, 1 ).resolve( classPath );
 
-        props.setProperty( "allowJvmPassThrough", Boolean.toString( allowJvmPassThrough ) );
+        List targets = new ArrayList();
 
-        props.setProperty( "classPath", classPath.toString() );
+        itr = files.iterator();
 
-        props.setProperty( "nativeLibraries", nativeLibraries.toString() );
+        while ( itr.hasNext() )
+        {
+            File file = (File) itr.next();
 
-        props.setProperty( "minJavaVersion", minJavaVersion );
+            if ( !shrinkProjectArtifact && isProjectArtifact( file ) )
+            {
+                getLog().info( "Not shrinking the project's archive " + file + ", set shrinkProjectArtifact to "
+                    + "shrink it" );
+            }
+            else if ( file.isFile() && isDistributionFile( file ) )
+            {
+                targets.add( file );
+            }
+        }
 
-        props.setProperty( "maxJavaVersion", maxJavaVersion != null ? maxJavaVersion : "" );
+        int threads = shrinkThreads > 0 ? shrinkThreads : Runtime.getRuntime().availableProcessors();
 
-        props.setProperty( "allowBetaJREs", Boolean.toString( allowBetaJREs ) );
+        ClassShrinker shrinker = new ClassShrinker( threads );
 
-        props.setProperty( "allowOnlyJDKSs", Boolean.toString( allowOnlyJDKSs ) );
+        shrinker.setStateDirectory( new File( outputConfigFile.getParentFile(), "exe4j-shrink" ) );
 
-        props.setProperty( "jreSearchSequence", jreSearchPath.toString() );
+        List results;
 
-        props.setProperty( "preferredVM", preferredVM );
+        try
+        {
+            if ( shrinkKeepClasses != null )
+            {
+                shrinker.setKeepRules( shrinkKeepClasses );
+            }
 
-        props.setProperty( "useSplashScreen", Boolean.toString( useSplashScreen ) );
+            results = shrinker.shrink( mainClass, files, targets );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new MojoExecutionException( e.getMessage(), e );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to shrink the class path archives", e );
+        }
 
-        props.setProperty( "splashScreenFile", splashScreenFile.getAbsolutePath() );
+        long sizeBefore = 0;
+        long sizeAfter = 0;
+        int removed = 0;
+        int reused = 0;
 
-        props.setProperty( "hideSplashScreenOnStart", Boolean.toString( hideSplashScreenOnStart ) );
+        itr = results.iterator();
 
-        props.setProperty( "splashScreenOnTop", Boolean.toString( splashScreenOnTop ) );
+        while ( itr.hasNext() )
+        {
+            ClassShrinker.Result result = (ClassShrinker.Result) itr.next();
 
-        props.setProperty( "useStatusLine", Boolean.toString( useStatusLine ) );
+            sizeBefore += result.getSizeBefore();
+            sizeAfter += result.getSizeAfter();
+            removed += result.getRemoved().size();
+            reused += result.isReused() ? 1 : 0;
+        }
 
-        props.setProperty( "statusLine", statusLine.toString() );
+        Timings timings = getTimings();
 
-        props.setProperty( "useVersionLine", Boolean.toString( useVersionLine ) );
+        timings.setValue( "shrink.archives", new Integer( results.size() ) );
+        timings.setValue( "shrink.removedClasses", new Integer( removed ) );
+        timings.setValue( "shrink.sizeBefore", new Long( sizeBefore ) );
+        timings.setValue( "shrink.sizeAfter", new Long( sizeAfter ) );
+        timings.setValue( "shrink.reused", new Integer( reused ) );
 
-        props.setProperty( "versionLine", versionLine.toString() );
+        getLog().info( "Removed " + removed + " unreachable classes from " + results.size() + " archives ("
+            + reused + " as recorded), " + sizeBefore + " bytes before, " + sizeAfter + " bytes after" );
 
-        return props;
+        if ( shrinkReportFile != null )
+        {
+            shrinkReportFile.getAbsoluteFile().getParentFile().mkdirs();
 
+            try
+            {
+                AtomicFileWriter writer = new AtomicFileWriter( shrinkReportFile, "UTF-8" );
+
+                try
+                {
+                    shrinker.writeReport( results, writer );
+
+                    writer.commit();
+                }
+                finally
+                {
+                    writer.close();
+                }
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Unable to write the shrink report: " + e.getMessage() );
+            }
+        }
     }
 
     /**
-     * Helper method that replaces all instances of ${foo} in the 
-     * input string with the value contained in the properties 
-     * object indexed by foo.
-     * @param template input string
-     * @param properties properties object containing the objects to 
-     * use to replace the %{foo} tags in the input
-     * @return the processed string
+     * Records the classes the application loads at start up, if the class
+     * path has changed since they were last recorded, then orders the class
+     * path and the distribution's archives by the trace.
+     * 
+     * @throws MojoExecutionException if the trace cannot be recorded or an
+     *             archive cannot be rewritten
      */
-    public static String replaceAll( String template, Dictionary properties )
+    private void orderClassPath()
+        throws MojoExecutionException
     {
-        Matcher matcher = Pattern.compile( "\\$\\{[a-zA-Z0-9]+\\}" ).matcher( template );
+        File executableDir = new File( distributionSourceDirectory, executableDirectory );
+
+        File traceFile = new File( outputConfigFile.getParentFile(), executableName + ".classtrace" );
 
-        StringBuffer result = new StringBuffer();
+        File fingerprintFile = new File( traceFile.getPath() + ".fingerprint" );
 
-        int lastEnd = 0;
+        List files = new ClassPathExpander( executableDir, 1 ).resolve( classPath );
 
-        while ( matcher.find() )
+        ClassLoadTrace trace;
+
+        int rewritten = 0;
+
+        try
         {
-            String match = matcher.group();
-            int start = matcher.start();
-            int end = matcher.end();
+            // digested by content so the archives rewritten below, or by
+            // repackArchives, don't invalidate the trace
+
+            Fingerprint fingerprint = new Fingerprint();
 
-            String propertyName = matcher.group().substring( 2, match.length() - 1 );
+            fingerprint.addString( "mainClass", mainClass );
+            fingerprint.addString( "classPathTraceJava", classPathTraceJava.getAbsolutePath() );
+            fingerprint.addString( "classPathTraceMarkerClass", String.valueOf( classPathTraceMarkerClass ) );
 
-            // TODO: cache these?
+            Iterator itr = files.iterator();
 
-            Object value = properties.get( propertyName );
+            while ( itr.hasNext() )
+            {
+                File file = (File) itr.next();
+
+                if ( file.isDirectory() )
+                {
+                    fingerprint.addDirectory( "classPath/" + file.getPath(), file );
+                }
+                else if ( file.isFile() )
+                {
+                    fingerprint.addString( "classPath/" + file.getPath(), ClassLoadTrace.digestContent( file ) );
+                }
+                else
+                {
+                    fingerprint.addString( "classPath/" + file.getPath(), "missing" );
+                }
+            }
 
-            String serialisedValue;
+            Fingerprint previous = Fingerprint.load( fingerprintFile );
 
-            if ( value == null )
+            if ( traceFile.isFile() && previous != null && fingerprint.getChangedEntries( previous ).isEmpty() )
+            {
+                getLog().debug( "Class load trace " + traceFile + " is up to date" );
+            }
+            else if ( isTrialRun() )
             {
-                serialisedValue = "";
+                getLog().info( "Trial run, not ordering the class path" );
+
+                return;
             }
             else
             {
-                serialisedValue = value.toString();
+                getLog().info( "Recording the classes loaded at start up to " + traceFile );
+
+                fingerprintFile.delete();
+
+                traceFile.getParentFile().mkdirs();
+
+                TrainingRunTask task = new TrainingRunTask( classPathTraceJava.getPath(), files, mainClass,
+                                                            traceFile, getLog() );
+
+                task.setMode( TrainingRunTask.TRACE_MODE );
+                task.setMarkerClass( classPathTraceMarkerClass );
+                task.setTimeout( classPathTraceTimeout );
+                task.setWorkingDirectory( new File( executableDir, workingDirectory ) );
+
+                task.execute();
+
+                fingerprint.store( fingerprintFile );
+            }
+
+            trace = ClassLoadTrace.read( traceFile );
+
+            classPath = trace.order( classPath, executableDir );
+
+            itr = files.iterator();
+
+            while ( itr.hasNext() )
+            {
+                File file = (File) itr.next();
+
+                if ( file.isFile() && isDistributionFile( file ) && trace.reorder( file ) )
+                {
+                    rewritten++;
+                }
             }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to order the class path by the class load trace", e );
+        }
+
+        Timings timings = getTimings();
+
+        timings.setValue( "orderClassPath.tracedClasses", new Integer( trace.getClassCount() ) );
+        timings.setValue( "orderClassPath.rewrittenArchives", new Integer( rewritten ) );
 
-            result.append( template.substring( lastEnd, start ) );
-            result.append( serialisedValue );
+        getLog().info( "Ordered the class path by " + trace.getClassCount() + " start up classes, rewrote "
+            + rewritten + " archives" );
 
-            lastEnd = end;
+        getLog().debug( "ordered classPath: " + classPath );
+    }
+
+    /**
+     * @param file a file
+     * @return true if the file is the project's archive, as attached or as
+     *         the jar plugin writes it
+     */
+    private boolean isProjectArtifact( File file )
+    {
+        List artifacts = new ArrayList();
+
+        if ( project.getArtifact() != null && project.getArtifact().getFile() != null )
+        {
+            artifacts.add( project.getArtifact().getFile() );
+        }
+
+        if ( project.getBuild() != null && project.getBuild().getFinalName() != null )
+        {
+            artifacts.add( new File( project.getBuild().getDirectory(), project.getBuild().getFinalName() + ".jar" ) );
+        }
+
+        Iterator itr = artifacts.iterator();
+
+        while ( itr.hasNext() )
+        {
+            try
+            {
+                if ( file.getCanonicalFile().equals( ( (File) itr.next() ).getCanonicalFile() ) )
+                {
+                    return true;
+                }
+            }
+            catch ( IOException e )
+            {
+                // not the same file
+            }
         }
 
-        result.append( template.substring( lastEnd, template.length() ) );
+        return false;
+    }
+
+    /**
+     * @param file a file
+     * @return true if the file is within the distributionSourceDirectory
+     */
+    private boolean isDistributionFile( File file )
+    {
+        try
+        {
+            String root = distributionSourceDirectory.getCanonicalPath() + File.separator;
+
+            return file.getCanonicalPath().startsWith( root );
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+    }
 
-        return result.toString();
+    /**
+     * Generates the mojo's executable and the variants.
+     * 
+     * @param template the exe4j config template or null to write the config
+     *            straight from the parameters
+     * @param properties the Mojo parameter derived properties, null if there
+     *            is no template
+     * @throws MojoExecutionException if any of the executables cannot be
+     *             generated
+     */
+    private void generateAll( Template template, LazyProperties properties )
+        throws MojoExecutionException
+    {
+        if ( variants == null || variants.isEmpty() )
+        {
+            generate( template, properties, null );
+        }
+        else
+        {
+            generateVariants( template, properties );
+        }
+    }
+
+    /**
+     * @return true if the last execution changed any of the config files it
+     *         wrote
+     */
+    public boolean isConfigChanged()
+    {
+        return configChanged;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.codehaus.mojo.exe4j.AbstractExecuteMojo#isConcurrent()
+     */
+    protected boolean isConcurrent()
+    {
+        boolean concurrentVariants = variants != null && !variants.isEmpty() && variantThreads != 1
+            && ( variantThreads > 1 || Runtime.getRuntime().availableProcessors() > 1 );
+
+        return concurrentVariants || super.isConcurrent();
+    }
+
+    /**
+     * Generates the mojo's executable and each of the variants, running
+     * variantThreads of them at a time.
+     * 
+     * @param template the exe4j config template, may be null
+     * @param properties the Mojo parameter derived properties, may be null
+     * @throws MojoExecutionException if any of the executables cannot be
+     *             generated
+     */
+    private void generateVariants( final Template template, final LazyProperties properties )
+        throws MojoExecutionException
+    {
+        List targets = new ArrayList();
+
+        targets.add( null );
+
+        Iterator itr = variants.iterator();
+
+        while ( itr.hasNext() )
+        {
+            Variant variant = (Variant) itr.next();
+
+            if ( variant.getExecutableName() == null )
+            {
+                throw new MojoExecutionException( "The executableName of each exe4j variant must be specified" );
+            }
+
+            targets.add( variant );
+        }
+
+        int threads = variantThreads > 0 ? variantThreads : Runtime.getRuntime().availableProcessors();
+
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, targets.size() ) );
+
+        try
+        {
+            List futures = new ArrayList();
+
+            itr = targets.iterator();
+
+            while ( itr.hasNext() )
+            {
+                final Variant variant = (Variant) itr.next();
+
+                futures.add( executor.submit( new Callable()
+                {
+                    public Object call()
+                        throws MojoExecutionException
+                    {
+                        generate( template, properties, variant );
+
+                        return null;
+                    }
+                } ) );
+            }
+
+            // wait for all of the variants, reporting the first failure
+
+            MojoExecutionException failure = null;
+
+            itr = futures.iterator();
+
+            while ( itr.hasNext() )
+            {
+                try
+                {
+                    ( (Future) itr.next() ).get();
+                }
+                catch ( ExecutionException e )
+                {
+                    if ( failure == null )
+                    {
+                        failure = e.getCause() instanceof MojoExecutionException ? (MojoExecutionException) e
+                            .getCause() : new MojoExecutionException( "exe4j variant failed", e.getCause() );
+                    }
+                }
+            }
+
+            if ( failure != null )
+            {
+                throw failure;
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new MojoExecutionException( "Interrupted while generating the exe4j variants", e );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Generates a single executable.
+     * 
+     * @param template the exe4j config template or null to write the config
+     *            straight from the parameters
+     * @param mojoProperties the Mojo parameter derived properties, null if
+     *            there is no template
+     * @param variant the variant to generate or null for the mojo's own
+     *            executable
+     * @throws MojoExecutionException if the executable cannot be generated
+     */
+    private void generate( Template template, LazyProperties mojoProperties, Variant variant )
+        throws MojoExecutionException
+    {
+        Dictionary properties = mojoProperties;
+
+        File configFile = outputConfigFile;
+
+        ConfigJarExeMode executableJarExeMode = jarExeMode;
+
+        String outputDirectoryOverride = null;
+
+        String versionOverride = null;
+
+        if ( variant != null )
+        {
+            if ( mojoProperties != null )
+            {
+                properties = new LazyProperties( new PropertySource[] { variant, mojoProperties } );
+            }
+
+            configFile = new File( outputConfigFile.getParentFile(), variant.getExecutableName() + "-"
+                + outputConfigFile.getName() );
+
+            if ( variant.getJarExeMode() != null )
+            {
+                executableJarExeMode = variant.getJarExeMode();
+            }
+
+            if ( variant.getOutputDirectory() != null )
+            {
+                outputDirectoryOverride = variant.getOutputDirectory().getAbsolutePath();
+            }
+
+            versionOverride = variant.getVersion();
+        }
+
+        File executableFile = getExecutableFile( variant );
+
+        String executableName = variant != null ? variant.getExecutableName() : this.executableName;
+
+        Timings timings = getTimings();
+
+        Exe4JDocument document = template == null ? createDocument( variant ) : null;
+
+        final ConfigQuotedString vmParameters = getJvmParameters( variant, executableFile );
+
+        if ( vmParameters != null && document != null )
+        {
+            document.jvmParameters = vmParameters;
+        }
+        else if ( vmParameters != null )
+        {
+            PropertySource merged = new PropertySource()
+            {
+                public String getProperty( String name )
+                {
+                    return "jvmParameters".equals( name ) ? vmParameters.toString() : null;
+                }
+            };
+
+            properties = new LazyProperties( new PropertySource[] { merged, (PropertySource) properties } );
+        }
+
+        if ( getLog().isDebugEnabled() )
+        {
+
+            getLog().debug( "using exe4j config:\n"
+                + ( document != null ? document.toString() : template.render( properties ) ) );
+
+        }
+
+        // parse the template config file, substituting the ${VARNAME}
+        // macros within for the Mojo parameter derived properties, straight
+        // to the file store. The file is replaced in one go so that a
+        // concurrent exe4jc never reads a partially written config.
+
+        Timings.Phase phase = timings.start( executableName + "/writeConfig" );
+
+        try
+        {
+            configFile.getParentFile().mkdirs();
+
+            executableFile.getParentFile().mkdirs();
+
+            AtomicFileWriter writer = new AtomicFileWriter( configFile, document != null ? Exe4JDocument.ENCODING
+                            : template.getEncoding() );
+
+            boolean changed = true;
+
+            try
+            {
+                if ( document != null )
+                {
+                    document.write( writer );
+                }
+                else
+                {
+                    template.render( properties, writer );
+                }
+
+                if ( writeConfigIfChanged )
+                {
+                    changed = writer.commitIfChanged();
+                }
+                else
+                {
+                    writer.commit();
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+
+            phase.setBytes( configFile.length() );
+
+            phase.end();
+
+            if ( changed )
+            {
+                configChanged = true;
+            }
+            else
+            {
+                getLog().debug( "exe4j config file unchanged: " + configFile );
+            }
+
+            if ( variant != null )
+            {
+                project.getProperties().setProperty( "exe4j." + variant.getExecutableName() + ".configChanged",
+                                                     Boolean.toString( changed ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "The exe4j config file can not be written", e );
+        }
+
+        // skip the exe4j executor if nothing has changed since the last build
+
+        File fingerprintFile = new File( configFile.getPath() + ".fingerprint" );
+
+        Fingerprint fingerprint = null;
+
+        String cacheKey = null;
+
+        if ( ( incremental || useBuildCache ) && !isTrialRun() )
+        {
+            phase = timings.start( executableName + "/fingerprint" );
+
+            fingerprint = createFingerprint( configFile, executableJarExeMode );
+
+            if ( versionOverride != null )
+            {
+                fingerprint.addString( "version", versionOverride );
+            }
+
+            cacheKey = fingerprint.getDigest();
+
+            boolean upToDate = incremental && isUpToDate( fingerprint, fingerprintFile, executableFile );
+
+            phase.end();
+
+            if ( upToDate )
+            {
+                getLog().info( "exe4j executable is up to date: " + executableFile );
+
+                timings.setValue( executableName + "/upToDate", Boolean.TRUE );
+
+                return;
+            }
+        }
+
+        fingerprintFile.delete();
+
+        BuildCache buildCache = null;
+
+        if ( useBuildCache && cacheKey != null )
+        {
+            buildCache = new BuildCache( buildCacheDirectory, buildCacheMaxSize * 1024L * 1024L );
+        }
+
+        phase = timings.start( executableName + "/buildCache" );
+
+        boolean restored = buildCache != null && restoreFromBuildCache( buildCache, cacheKey, executableFile );
+
+        phase.end();
+
+        if ( restored )
+        {
+            getLog().info( "exe4j executable restored from the build cache: " + executableFile );
+        }
+        else
+        {
+            // invoke exe4j executor
+
+            runExe4J( configFile, outputDirectoryOverride, versionOverride, executableName );
+
+            if ( buildCache != null )
+            {
+                phase = timings.start( executableName + "/buildCache" );
+
+                publishToBuildCache( buildCache, cacheKey, executableFile );
+
+                phase.end();
+            }
+        }
+
+        if ( fingerprint != null && incremental )
+        {
+            try
+            {
+                fingerprint.addFile( "executable", executableFile );
+
+                fingerprint.store( fingerprintFile );
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Unable to store the exe4j build fingerprint: " + e.getMessage() );
+            }
+        }
+
+    }
+
+    /**
+     * Restores the executable from the build cache, a cache that cannot be
+     * read is treated as a miss rather than failing the build.
+     * 
+     * @param buildCache the build cache
+     * @param cacheKey the inputs fingerprint digest
+     * @param executableFile the executable to restore
+     * @return true if the executable was restored
+     */
+    private boolean restoreFromBuildCache( BuildCache buildCache, String cacheKey, File executableFile )
+    {
+        try
+        {
+            return buildCache.restore( cacheKey, executableFile );
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Unable to restore the exe4j executable from the build cache: " + e.getMessage() );
+
+            return false;
+        }
+    }
+
+    /**
+     * Adds the generated executable to the build cache and evicts the least
+     * recently used entries if the cache has grown too large.
+     * 
+     * @param buildCache the build cache
+     * @param cacheKey the inputs fingerprint digest
+     * @param executableFile the generated executable
+     */
+    private void publishToBuildCache( BuildCache buildCache, String cacheKey, File executableFile )
+    {
+        try
+        {
+            buildCache.publish( cacheKey, executableFile );
+
+            int evicted = buildCache.evict();
+
+            if ( evicted > 0 )
+            {
+                getLog().debug( "Evicted " + evicted + " executables from the exe4j build cache" );
+            }
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Unable to add the exe4j executable to the build cache: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * @param variant the variant or null for the mojo's own executable
+     * @return the executable file generated by the exe4j compiler
+     */
+    private File getExecutableFile( Variant variant )
+    {
+        if ( variant == null )
+        {
+            return new File( new File( distributionSourceDirectory, executableDirectory ), executableName + ".exe" );
+        }
+
+        File directory = variant.getOutputDirectory();
+
+        if ( directory == null )
+        {
+            directory = new File( distributionSourceDirectory, executableDirectory );
+        }
+
+        return new File( directory, variant.getExecutableName() + ".exe" );
+    }
+
+    /**
+     * Merges the JVM tuning profile, jvmParameters and the variant's
+     * jvmParameters, writing the .vmoptions file if writeVmOptionsFile is set.
+     * 
+     * @param variant the variant or null for the mojo's executable
+     * @param executableFile the executable
+     * @return the JVM parameters written to the exe4j config, null if
+     *         neither a profile nor writeVmOptionsFile is set
+     * @throws MojoExecutionException if the profile cannot be used or the
+     *             .vmoptions file cannot be written
+     */
+    private ConfigQuotedString getJvmParameters( Variant variant, File executableFile )
+        throws MojoExecutionException
+    {
+        String profile = variant != null && variant.getJvmProfile() != null ? variant.getJvmProfile() : jvmProfile;
+
+        if ( profile == null && !writeVmOptionsFile )
+        {
+            return null;
+        }
+
+        JvmOptions options = new JvmOptions();
+
+        List problems;
+
+        try
+        {
+            if ( profile != null )
+            {
+                options.addProfile( profile, minJavaVersion, maxJavaVersion );
+            }
+
+            options.addAll( jvmParameters == null ? null : jvmParameters.getValue() );
+
+            if ( variant != null && variant.getJvmParameters() != null )
+            {
+                options.addAll( variant.getJvmParameters().getValue() );
+            }
+
+            problems = options.validate( minJavaVersion, maxJavaVersion );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new MojoExecutionException( e.getMessage(), e );
+        }
+
+        String executableName = variant != null ? variant.getExecutableName() : this.executableName;
+
+        Iterator itr = options.getSkipped().iterator();
+
+        while ( itr.hasNext() )
+        {
+            getLog().debug( executableName + ": left out of the " + profile + " profile, " + itr.next() );
+        }
+
+        itr = problems.iterator();
+
+        while ( itr.hasNext() )
+        {
+            getLog().warn( executableName + ": " + itr.next() + ", minJavaVersion is " + minJavaVersion
+                + " and maxJavaVersion is " + maxJavaVersion );
+        }
+
+        if ( !writeVmOptionsFile )
+        {
+            return new ConfigQuotedString( options.toString() );
+        }
+
+        JvmOptions config = new JvmOptions();
+
+        JvmOptions file = new JvmOptions();
+
+        itr = options.getOptions().iterator();
+
+        while ( itr.hasNext() )
+        {
+            String option = (String) itr.next();
+
+            ( option.indexOf( "%EXE4J_" ) >= 0 ? config : file ).add( option );
+        }
+
+        File vmOptionsFile = new File( executableFile.getParentFile(), executableName + ".vmoptions" );
+
+        try
+        {
+            vmOptionsFile.getParentFile().mkdirs();
+
+            AtomicFileWriter writer = new AtomicFileWriter( vmOptionsFile, "UTF-8" );
+
+            try
+            {
+                file.write( writer, "JVM options of " + executableName
+                    + ( profile != null ? ", from the " + profile + " profile and jvmParameters" : "" ) );
+
+                if ( !writer.commitIfChanged() )
+                {
+                    getLog().debug( "vmoptions file unchanged: " + vmOptionsFile );
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to write " + vmOptionsFile, e );
+        }
+
+        return new ConfigQuotedString( config.toString() );
+    }
+
+    /**
+     * resolves a path relative to the distribution source directory
+     * 
+     * @param path the absolute or relative path
+     * @return the resolved file
+     */
+    private File resolveDistributionFile( String path )
+    {
+        File file = new File( path );
+
+        return file.isAbsolute() ? file : new File( distributionSourceDirectory, path );
+    }
+
+    /**
+     * Creates a fingerprint of everything that goes into the generated
+     * executable.
+     * 
+     * @param configFile the processed exe4j config file
+     * @param jarExeMode the executable's jar exe mode
+     * @return the fingerprint
+     * @throws MojoExecutionException if an input cannot be read
+     */
+    private Fingerprint createFingerprint( File configFile, ConfigJarExeMode jarExeMode )
+        throws MojoExecutionException
+    {
+        Fingerprint fingerprint = new Fingerprint();
+
+        try
+        {
+            // the config holds absolute paths, they're made relative so
+            // checkouts in different places share build cache entries
+
+            Map roots = new HashMap();
+
+            roots.put( "distributionSourceDirectory", distributionSourceDirectory );
+
+            if ( project != null && project.getBasedir() != null )
+            {
+                roots.put( "basedir", project.getBasedir() );
+            }
+
+            fingerprint.addXmlFile( "config", configFile, roots );
+
+            // an executable built by another exe4j is out of date
+
+            fingerprint.addString( "compiler", getInstallation().getIdentity() );
+
+            if ( templateFile != null && templateFile.exists() )
+            {
+                fingerprint.addFile( "templateFile", templateFile );
+            }
+
+            if ( useExecutableIcon )
+            {
+                fingerprint.addFile( "executableIconFile", executableIconFile );
+            }
+
+            if ( useSplashScreen )
+            {
+                fingerprint.addFile( "splashScreenFile", splashScreenFile );
+            }
+
+            // in "JAR in EXE" mode the archives are compiled into the executable
+
+            if ( jarExeMode.isInternal() )
+            {
+                Iterator itr = classPath.getLocations().iterator();
+
+                while ( itr.hasNext() )
+                {
+                    ConfigClassPath.ClassPathLocation location = (ConfigClassPath.ClassPathLocation) itr.next();
+
+                    String name = "classPath/" + location.getValue();
+
+                    if ( ConfigClassPath.ClassPathLocation.ARCHIVE_TYPE.equals( location.getType() ) )
+                    {
+                        fingerprint.addFile( name, resolveDistributionFile( location.getValue() ) );
+                    }
+                    else if ( !ConfigClassPath.ClassPathLocation.ENVVAR_TYPE.equals( location.getType() ) )
+                    {
+                        fingerprint.addDirectory( name, resolveDistributionFile( location.getValue() ) );
+                    }
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to fingerprint the exe4j inputs", e );
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Compares the fingerprint against that of the last build, logging the
+     * inputs that have changed.
+     * 
+     * @param fingerprint the current inputs fingerprint
+     * @param fingerprintFile the fingerprint of the last build
+     * @param executableFile the generated executable
+     * @return true if the executable doesn't need to be regenerated
+     * @throws MojoExecutionException if the executable cannot be read
+     */
+    private boolean isUpToDate( Fingerprint fingerprint, File fingerprintFile, File executableFile )
+        throws MojoExecutionException
+    {
+        Fingerprint previous;
+
+        try
+        {
+            previous = Fingerprint.load( fingerprintFile );
+
+            fingerprint.addFile( "executable", executableFile );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to read the exe4j build fingerprint", e );
+        }
+
+        if ( previous == null )
+        {
+            getLog().info( "No previous exe4j build fingerprint found, building executable" );
+
+            return false;
+        }
+
+        List changed = fingerprint.getChangedEntries( previous );
+
+        Iterator itr = changed.iterator();
+
+        while ( itr.hasNext() )
+        {
+            getLog().info( "exe4j input '" + itr.next() + "' has changed, rebuilding executable" );
+        }
+
+        return changed.isEmpty();
+    }
+
+    /**
+     * Trains the shared archive if its inputs have changed and adds the flag
+     * that uses it to jvmParameters.
+     * 
+     * @throws MojoExecutionException if the archive cannot be generated
+     */
+    private void generateSharedArchive()
+        throws MojoExecutionException
+    {
+        boolean aot = TrainingRunTask.AOT_MODE.equals( sharedArchiveMode );
+
+        if ( !aot && !TrainingRunTask.CDS_MODE.equals( sharedArchiveMode ) )
+        {
+            throw new MojoExecutionException( "Unknown sharedArchiveMode: " + sharedArchiveMode );
+        }
+
+        String archiveName = sharedArchiveName != null ? sharedArchiveName : TrainingRunTask
+            .getArchiveName( sharedArchiveMode, executableName );
+
+        File executableDir = new File( distributionSourceDirectory, executableDirectory );
+
+        File archiveFile = new File( executableDir, archiveName );
+
+        File fingerprintFile = new File( outputConfigFile.getParentFile(), new File( archiveName ).getName()
+            + ".fingerprint" );
+
+        List trainingClassPath = getTrainingClassPath( executableDir );
+
+        Fingerprint fingerprint = new Fingerprint();
+
+        try
+        {
+            fingerprint.addString( "mainClass", mainClass );
+            fingerprint.addString( "sharedArchiveMode", sharedArchiveMode );
+            fingerprint.addString( "sharedArchiveJava", sharedArchiveJava.getAbsolutePath() );
+            fingerprint.addString( "sharedArchiveMarkerClass", String.valueOf( sharedArchiveMarkerClass ) );
+
+            Iterator itr = trainingClassPath.iterator();
+
+            while ( itr.hasNext() )
+            {
+                File file = (File) itr.next();
+
+                fingerprint.addFile( "classPath/" + file.getPath(), file );
+            }
+
+            Fingerprint previous = Fingerprint.load( fingerprintFile );
+
+            if ( archiveFile.isFile() && previous != null && fingerprint.getChangedEntries( previous ).isEmpty() )
+            {
+                getLog().info( "Shared archive " + archiveFile + " is up to date" );
+            }
+            else if ( isTrialRun() )
+            {
+                getLog().info( "Trial run, not generating shared archive " + archiveFile );
+            }
+            else
+            {
+                getLog().info( "Generating shared archive " + archiveFile );
+
+                fingerprintFile.delete();
+
+                TrainingRunTask task = new TrainingRunTask( sharedArchiveJava.getPath(), trainingClassPath,
+                                                            mainClass, archiveFile, getLog() );
+
+                task.setMode( sharedArchiveMode );
+                task.setMarkerClass( sharedArchiveMarkerClass );
+                task.setTimeout( sharedArchiveTimeout );
+                task.setWorkingDirectory( new File( executableDir, workingDirectory ) );
+
+                task.execute();
+
+                fingerprintFile.getParentFile().mkdirs();
+
+                fingerprint.store( fingerprintFile );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to fingerprint the shared archive class path", e );
+        }
+
+        String flag = TrainingRunTask.getArchiveOption( sharedArchiveMode, "%EXE4J_EXEDIR%/"
+            + archiveName.replace( '\\', '/' ) );
+
+        String parameters = jvmParameters == null ? "" : jvmParameters.getValue();
+
+        if ( parameters.indexOf( flag ) < 0 )
+        {
+            jvmParameters = new ConfigQuotedString( parameters.length() == 0 ? flag : parameters + " " + flag );
+        }
+    }
+
+    /**
+     * Resolves the class path entries to the files the training run loads
+     * classes from.
+     * 
+     * @param executableDir the directory relative entries are resolved
+     *            against
+     * @return the class path files in class path order
+     * @throws MojoExecutionException if an entry is a directory, class data
+     *             sharing only supports archives
+     */
+    private List getTrainingClassPath( File executableDir )
+        throws MojoExecutionException
+    {
+        List files = new ClassPathExpander( executableDir, 1 ).resolve( classPath );
+
+        Iterator itr = files.iterator();
+
+        while ( itr.hasNext() )
+        {
+            File file = (File) itr.next();
+
+            if ( file.isDirectory() )
+            {
+                throw new MojoExecutionException( "Shared archives can only be generated for class paths made up of "
+                    + "archives, " + file + " is a directory" );
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Copies the project's dependency archives to the dependency directory and
+     * adds them to the class path. An archive whose name is already taken by
+     * another dependency is prefixed with its groupId.
+     *
+     * @throws MojoExecutionException if an archive cannot be copied
+     * @throws PlexusConfigurationException if an entry cannot be created
+     */
+    private void addDependencyClassPath()
+        throws MojoExecutionException, PlexusConfigurationException
+    {
+        List artifacts = DependencyClassPath.getArtifacts( project, dependencyClassPathScope, dependencyIncludes,
+                                                           dependencyExcludes );
+
+        File directory = new File( new File( distributionSourceDirectory, executableDirectory ), dependencyDirectory );
+
+        if ( classPath == null )
+        {
+            classPath = new ConfigClassPath();
+        }
+
+        List names = DependencyClassPath.getFileNames( artifacts );
+
+        for ( int i = 0; i < artifacts.size(); i++ )
+        {
+            File source = ( (Artifact) artifacts.get( i ) ).getFile();
+
+            String name = (String) names.get( i );
+
+            File target = new File( directory, name );
+
+            try
+            {
+                // only copy archives that have changed so unchanged
+                // dependencies keep their timestamps
+
+                if ( !target.isFile() || target.length() != source.length()
+                    || target.lastModified() != source.lastModified() )
+                {
+                    directory.mkdirs();
+
+                    BuildCache.copy( source, target );
+
+                    target.setLastModified( source.lastModified() );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Unable to copy " + source + " to " + target, e );
+            }
+
+            classPath.addLocation( new ConfigClassPath.ClassPathLocation(
+                                                                          ConfigClassPath.ClassPathLocation.ARCHIVE_TYPE,
+                                                                          dependencyDirectory + "/" + name, true ) );
+        }
+
+        getLog().debug( "added " + artifacts.size() + " dependencies to the classPath" );
+    }
+
+    /**
+     * Initialise complex mojo parameters that havent been supplied.
+     * 
+     * @throws MojoExecutionException
+     */
+    private void initialise()
+        throws MojoExecutionException
+    {
+
+        try
+        {
+            // default jre search locations are registry then standard JAVA env vars
+
+            if ( jreSearchPath == null )
+            {
+                jreSearchPath = new ConfigJRESearchPath();
+
+                jreSearchPath
+                    .addLocation( new ConfigJRESearchPath.JREPathLocation(
+                                                                           ConfigJRESearchPath.JREPathLocation.REGISTRY_TYPE,
+                                                                           null ) );
+
+                jreSearchPath
+                    .addLocation( new ConfigJRESearchPath.JREPathLocation(
+                                                                           ConfigJRESearchPath.JREPathLocation.ENVVAR_TYPE,
+                                                                           "JAVA_HOME" ) );
+
+                jreSearchPath
+                    .addLocation( new ConfigJRESearchPath.JREPathLocation(
+                                                                           ConfigJRESearchPath.JREPathLocation.ENVVAR_TYPE,
+                                                                           "JDK_HOME" ) );
+            }
+
+            // default classpath location is to load any archive in the exe
+            // directory.
+
+            if ( useDependencyClassPath )
+            {
+                addDependencyClassPath();
+            }
+
+            if ( classPath == null )
+            {
+                classPath = new ConfigClassPath();
+
+                classPath
+                    .addLocation( new ConfigClassPath.ClassPathLocation(
+                                                                         ConfigClassPath.ClassPathLocation.SCAN_DIRECTORY_TYPE,
+                                                                         workingDirectory, true ) );
+
+                getLog().warn( "classPath not defined, using default: " + classPath );
+            }
+
+            if ( expandClassPath )
+            {
+                File executableDir = new File( distributionSourceDirectory, executableDirectory );
+
+                classPath = new ClassPathExpander( executableDir, Runtime.getRuntime().availableProcessors() )
+                    .expand( classPath );
+
+                getLog().debug( "expanded classPath: " + classPath );
+            }
+
+            // default native libs is empty
+
+            if ( nativeLibraries == null )
+            {
+                nativeLibraries = new ConfigNativeLibraries();
+            }
+        }
+        catch ( PlexusConfigurationException e )
+        {
+            // really shouldn't happen, unless a directory can't be expanded
+
+            throw new MojoExecutionException( "Unable to initialise the classPath", e );
+        }
+
+        // these may not be being used (ie their use is controlled via boolean cfg swicthes)
+        // but we write them into the config file all the same so initialise them if they
+        // jave not been supplied.
+
+        if ( executableIconFile == null )
+        {
+            executableIconFile = new File( resourcesDirectory.getPath() + "/icons/" + executableName + ".ico" );
+        }
+
+        if ( splashScreenFile == null )
+        {
+            splashScreenFile = new File( resourcesDirectory.getPath() + "/images/" + executableName + ".png" );
+        }
+
+        if ( statusLine == null )
+        {
+            statusLine = new ConfigStatusLine();
+        }
+
+        if ( versionLine == null )
+        {
+            versionLine = new ConfigVersionLine();
+        }
+
+        if ( arguments == null )
+        {
+            arguments = new ConfigQuotedString( "" );
+        }
+
+        if ( fileVersion == null )
+        {
+            fileVersion = productVersion;
+        }
+    }
+
+    /**
+     * helper method that creates the source of the Exe4J XML representations
+     * of the Mojo's parameters. Each value, including the potentially large
+     * Config* fragments, is only rendered if the template references it and
+     * only the first time it is referenced. Values that aren't Mojo
+     * parameters are looked up in the project properties.
+     * 
+     * @return the properties ready for substitution into the Exe4J XML
+     * config file
+     */
+    private LazyProperties getProperties()
+    {
+        PropertySource parameters = new PropertySource()
+        {
+            public String getProperty( String name )
+            {
+                return getParameterValue( name );
+            }
+        };
+
+        return new LazyProperties( new PropertySource[] {
+            parameters,
+            LazyProperties.asSource( project.getProperties() ) } );
+    }
+
+    /**
+     * helper method that creates the exe4j config document of an executable
+     * from the Mojo parameters
+     * 
+     * @param variant the variant whose values replace the Mojo's or null for
+     *            the mojo's own executable
+     * @return the document
+     */
+    private Exe4JDocument createDocument( Variant variant )
+    {
+        Exe4JDocument document = new Exe4JDocument();
+
+        document.applicationShortName = applicationShortName;
+        document.applicationShortInternalName = applicationShortInternalName;
+        document.distributionSourceDirectory = getAbsolutePath( distributionSourceDirectory );
+        document.executableName = executableName;
+        document.jarExeMode = jarExeMode;
+        document.useExecutableIcon = useExecutableIcon;
+        document.executableIconFile = getAbsolutePath( executableIconFile );
+        document.executableDirectory = executableDirectory;
+        document.redirectStdErr = redirectStdErr;
+        document.stdErrRedirectionFile = stdErrRedirectionFile;
+        document.redirectStdOut = redirectStdOut;
+        document.stdOutRedirectionFile = stdOutRedirectionFile;
+        document.executableMode = executableMode;
+        document.workingDirectory = workingDirectory;
+        document.singleInstanceOnly = singleInstanceOnly;
+        document.generateVersionInfo = generateVersionInfo;
+        document.fileVersion = fileVersion;
+        document.productVersion = productVersion;
+        document.companyName = companyName;
+        document.fileDescription = fileDescription;
+        document.legalCopyrightText = legalCopyrightText;
+        document.useSplashScreen = useSplashScreen;
+        document.hideSplashScreenOnStart = hideSplashScreenOnStart;
+        document.splashScreenOnTop = splashScreenOnTop;
+        document.splashScreenFile = getAbsolutePath( splashScreenFile );
+        document.statusLine = statusLine;
+        document.versionLine = versionLine;
+        document.mainClass = mainClass;
+        document.jvmParameters = jvmParameters;
+        document.arguments = arguments;
+        document.allowJvmPassThrough = allowJvmPassThrough;
+        document.minJavaVersion = minJavaVersion;
+        document.maxJavaVersion = maxJavaVersion;
+        document.preferredVM = preferredVM;
+        document.allowBetaJREs = allowBetaJREs;
+        document.allowOnlyJDKSs = allowOnlyJDKSs;
+        document.jreSearchPath = jreSearchPath;
+        document.classPath = classPath;
+        document.nativeLibraries = nativeLibraries;
+
+        if ( variant != null )
+        {
+            document.executableName = variant.getExecutableName();
+
+            if ( variant.getExecutableMode() != null )
+            {
+                document.executableMode = variant.getExecutableMode();
+            }
+            if ( variant.getJarExeMode() != null )
+            {
+                document.jarExeMode = variant.getJarExeMode();
+            }
+            if ( variant.getJvmParameters() != null )
+            {
+                document.jvmParameters = variant.getJvmParameters();
+            }
+            if ( variant.getArguments() != null )
+            {
+                document.arguments = variant.getArguments();
+            }
+            if ( variant.getRedirectStdErr() != null )
+            {
+                document.redirectStdErr = variant.getRedirectStdErr().booleanValue();
+            }
+            if ( variant.getStdErrRedirectionFile() != null )
+            {
+                document.stdErrRedirectionFile = variant.getStdErrRedirectionFile();
+            }
+            if ( variant.getRedirectStdOut() != null )
+            {
+                document.redirectStdOut = variant.getRedirectStdOut().booleanValue();
+            }
+            if ( variant.getStdOutRedirectionFile() != null )
+            {
+                document.stdOutRedirectionFile = variant.getStdOutRedirectionFile();
+            }
+        }
+
+        return document;
+    }
+
+    /**
+     * @param file the file, may be null
+     * @return the file's absolute path or null
+     */
+    private static String getAbsolutePath( File file )
+    {
+        return file == null ? null : file.getAbsolutePath();
+    }
+
+    /**
+     * helper method that returns the Exe4J XML representation of a Mojo
+     * parameter
+     * 
+     * @param name the parameter name
+     * @return the parameter's Exe4J XML representation or null if there is no
+     *         such parameter or it has no value
+     */
+    private String getParameterValue( String name )
+    {
+        Object value = null;
+
+        if ( "jarExeMode".equals( name ) )
+        {
+            value = jarExeMode;
+        }
+        else if ( "applicationShortName".equals( name ) )
+        {
+            value = applicationShortName;
+        }
+        else if ( "applicationShortInternalName".equals( name ) )
+        {
+            value = applicationShortInternalName;
+        }
+        else if ( "distributionSourceDirectory".equals( name ) )
+        {
+            value = distributionSourceDirectory.getAbsolutePath();
+        }
+        else if ( "executableDirectory".equals( name ) )
+        {
+            value = executableDirectory;
+        }
+        else if ( "executableMode".equals( name ) )
+        {
+            value = executableMode;
+        }
+        else if ( "executableName".equals( name ) )
+        {
+            value = executableName;
+        }
+        else if ( "useExecutableIcon".equals( name ) )
+        {
+            value = Boolean.valueOf( useExecutableIcon );
+        }
+        else if ( "executableIconFile".equals( name ) )
+        {
+            value = executableIconFile.getAbsolutePath();
+        }
+        else if ( "workingDirectory".equals( name ) )
+        {
+            value = workingDirectory;
+        }
+        else if ( "singleInstanceOnly".equals( name ) )
+        {
+            value = Boolean.valueOf( singleInstanceOnly );
+        }
+        else if ( "failIfExceptionThrownInMain".equals( name ) )
+        {
+            value = Boolean.valueOf( failIfExceptionThrownInMain );
+        }
+        else if ( "redirectStdErr".equals( name ) )
+        {
+            value = Boolean.valueOf( redirectStdErr );
+        }
+        else if ( "stdErrRedirectionFile".equals( name ) )
+        {
+            value = stdErrRedirectionFile;
+        }
+        else if ( "redirectStdOut".equals( name ) )
+        {
+            value = Boolean.valueOf( redirectStdOut );
+        }
+        else if ( "stdOutRedirectionFile".equals( name ) )
+        {
+            value = stdOutRedirectionFile;
+        }
+        else if ( "generateVersionInfo".equals( name ) )
+        {
+            value = Boolean.valueOf( generateVersionInfo );
+        }
+        else if ( "productVersion".equals( name ) )
+        {
+            value = productVersion;
+        }
+        else if ( "fileVersion".equals( name ) )
+        {
+            value = fileVersion;
+        }
+        else if ( "companyName".equals( name ) )
+        {
+            value = companyName;
+        }
+        else if ( "fileDescription".equals( name ) )
+        {
+            value = fileDescription;
+        }
+        else if ( "legalCopyrightText".equals( name ) )
+        {
+            value = legalCopyrightText;
+        }
+        else if ( "mainClass".equals( name ) )
+        {
+            value = mainClass;
+        }
+        else if ( "jvmParameters".equals( name ) )
+        {
+            value = jvmParameters;
+        }
+        else if ( "arguments".equals( name ) )
+        {
+            value = arguments;
+        }
+        else if ( "allowJvmPassThrough".equals( name ) )
+        {
+            value = Boolean.valueOf( allowJvmPassThrough );
+        }
+        else if ( "classPath".equals( name ) )
+        {
+            value = classPath;
+        }
+        else if ( "nativeLibraries".equals( name ) )
+        {
+            value = nativeLibraries;
+        }
+        else if ( "minJavaVersion".equals( name ) )
+        {
+            value = minJavaVersion;
+        }
+        else if ( "maxJavaVersion".equals( name ) )
+        {
+            value = maxJavaVersion != null ? maxJavaVersion : "";
+        }
+        else if ( "allowBetaJREs".equals( name ) )
+        {
+            value = Boolean.valueOf( allowBetaJREs );
+        }
+        else if ( "allowOnlyJDKSs".equals( name ) )
+        {
+            value = Boolean.valueOf( allowOnlyJDKSs );
+        }
+        else if ( "jreSearchSequence".equals( name ) )
+        {
+            value = jreSearchPath;
+        }
+        else if ( "preferredVM".equals( name ) )
+        {
+            value = preferredVM;
+        }
+        else if ( "useSplashScreen".equals( name ) )
+        {
+            value = Boolean.valueOf( useSplashScreen );
+        }
+        else if ( "splashScreenFile".equals( name ) )
+        {
+            value = splashScreenFile.getAbsolutePath();
+        }
+        else if ( "hideSplashScreenOnStart".equals( name ) )
+        {
+            value = Boolean.valueOf( hideSplashScreenOnStart );
+        }
+        else if ( "splashScreenOnTop".equals( name ) )
+        {
+            value = Boolean.valueOf( splashScreenOnTop );
+        }
+        else if ( "useStatusLine".equals( name ) )
+        {
+            value = Boolean.valueOf( useStatusLine );
+        }
+        else if ( "statusLine".equals( name ) )
+        {
+            value = statusLine;
+        }
+        else if ( "useVersionLine".equals( name ) )
+        {
+            value = Boolean.valueOf( useVersionLine );
+        }
+        else if ( "versionLine".equals( name ) )
+        {
+            value = versionLine;
+        }
+
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Helper method that replaces all instances of ${foo} in the 
+     * input string with the value contained in the properties 
+     * object indexed by foo.
+     * @param template input string
+     * @param properties properties object containing the objects to 
+     * use to replace the %{foo} tags in the input
+     * @return the processed string
+     */
+    public static String replaceAll( String template, Dictionary properties )
+    {
+        return Template.compile( template ).render( properties );
     }
 
 }
\ No newline at end of file
@@ -29,6 +29,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  * @goal execute
  * @phase package
  * @requiresDependencyResolution test
+ * @threadSafe
  */
 public class ExecuteMojo
     extends AbstractExecuteMojo
@@ -56,7 +57,14 @@ public class ExecuteMojo
                 + "' cannot be read" );
         }
 
-        runExe4J( configFile );
+        try
+        {
+            runExe4J( configFile );
+        }
+        finally
+        {
+            reportTimings( "execute-" + configFile.getName() );
+        }
 
     }
 
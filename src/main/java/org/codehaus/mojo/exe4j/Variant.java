@@ -0,0 +1,369 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j;
+
+import java.io.File;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigExecutableMode;
+import org.codehaus.mojo.exe4j.configuration.ConfigJarExeMode;
+import org.codehaus.mojo.exe4j.configuration.ConfigQuotedString;
+import org.codehaus.mojo.exe4j.util.PropertySource;
+
+/**
+ * An executable variant generated by the exe4j mojo. A variant overrides a
+ * few of the mojo's parameters, any parameter it leaves unset takes the
+ * mojo's value. Refer to the mojo parameters of the same name for details.
+ * 
+ * A variant is the first source of the template substitution values for its
+ * executable.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class Variant
+    implements PropertySource
+{
+    /**
+     * Executable name, required.
+     */
+    private String executableName;
+
+    /**
+     * Executable mode, "gui", "console" or "service".
+     */
+    private ConfigExecutableMode executableMode;
+
+    /**
+     * JAR exe mode, "external" or "internal".
+     */
+    private ConfigJarExeMode jarExeMode;
+
+    /**
+     * JVM parameters.
+     */
+    private ConfigQuotedString jvmParameters;
+
+    /**
+     * JVM tuning profile.
+     */
+    private String jvmProfile;
+
+    /**
+     * Main class arguments.
+     */
+    private ConfigQuotedString arguments;
+
+    /**
+     * Redirect stderr.
+     */
+    private Boolean redirectStdErr;
+
+    /**
+     * stderr redirection file.
+     */
+    private String stdErrRedirectionFile;
+
+    /**
+     * Redirect stdout.
+     */
+    private Boolean redirectStdOut;
+
+    /**
+     * stdout redirection file.
+     */
+    private String stdOutRedirectionFile;
+
+    /**
+     * If set the executable is written to this directory rather than to the
+     * mojo's executable directory.
+     */
+    private File outputDirectory;
+
+    /**
+     * If set overrides the version specified in the config file.
+     */
+    private String version;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.codehaus.mojo.exe4j.util.PropertySource#getProperty(java.lang.String)
+     */
+    public String getProperty( String name )
+    {
+        Object value = null;
+
+        if ( "executableName".equals( name ) )
+        {
+            value = executableName;
+        }
+        else if ( "executableMode".equals( name ) )
+        {
+            value = executableMode;
+        }
+        else if ( "jarExeMode".equals( name ) )
+        {
+            value = jarExeMode;
+        }
+        else if ( "jvmParameters".equals( name ) )
+        {
+            value = jvmParameters;
+        }
+        else if ( "jvmProfile".equals( name ) )
+        {
+            value = jvmProfile;
+        }
+        else if ( "arguments".equals( name ) )
+        {
+            value = arguments;
+        }
+        else if ( "redirectStdErr".equals( name ) )
+        {
+            value = redirectStdErr;
+        }
+        else if ( "stdErrRedirectionFile".equals( name ) )
+        {
+            value = stdErrRedirectionFile;
+        }
+        else if ( "redirectStdOut".equals( name ) )
+        {
+            value = redirectStdOut;
+        }
+        else if ( "stdOutRedirectionFile".equals( name ) )
+        {
+            value = stdOutRedirectionFile;
+        }
+
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * executableName accessor
+     * @return Returns the executableName.
+     */
+    public String getExecutableName()
+    {
+        return executableName;
+    }
+
+    /**
+     * executableName mutator
+     * @param executableName The executableName to set.
+     */
+    public void setExecutableName( String executableName )
+    {
+        this.executableName = executableName;
+    }
+
+    /**
+     * executableMode accessor
+     * @return Returns the executableMode.
+     */
+    public ConfigExecutableMode getExecutableMode()
+    {
+        return executableMode;
+    }
+
+    /**
+     * executableMode mutator
+     * @param executableMode The executableMode to set.
+     */
+    public void setExecutableMode( ConfigExecutableMode executableMode )
+    {
+        this.executableMode = executableMode;
+    }
+
+    /**
+     * jarExeMode accessor
+     * @return Returns the jarExeMode.
+     */
+    public ConfigJarExeMode getJarExeMode()
+    {
+        return jarExeMode;
+    }
+
+    /**
+     * jarExeMode mutator
+     * @param jarExeMode The jarExeMode to set.
+     */
+    public void setJarExeMode( ConfigJarExeMode jarExeMode )
+    {
+        this.jarExeMode = jarExeMode;
+    }
+
+    /**
+     * jvmParameters accessor
+     * @return Returns the jvmParameters.
+     */
+    public ConfigQuotedString getJvmParameters()
+    {
+        return jvmParameters;
+    }
+
+    /**
+     * jvmParameters mutator
+     * @param jvmParameters The jvmParameters to set.
+     */
+    public void setJvmParameters( ConfigQuotedString jvmParameters )
+    {
+        this.jvmParameters = jvmParameters;
+    }
+
+    /**
+     * jvmProfile accessor
+     * @return Returns the jvmProfile.
+     */
+    public String getJvmProfile()
+    {
+        return jvmProfile;
+    }
+
+    /**
+     * jvmProfile mutator
+     * @param jvmProfile The jvmProfile to set.
+     */
+    public void setJvmProfile( String jvmProfile )
+    {
+        this.jvmProfile = jvmProfile;
+    }
+
+    /**
+     * arguments accessor
+     * @return Returns the arguments.
+     */
+    public ConfigQuotedString getArguments()
+    {
+        return arguments;
+    }
+
+    /**
+     * arguments mutator
+     * @param arguments The arguments to set.
+     */
+    public void setArguments( ConfigQuotedString arguments )
+    {
+        this.arguments = arguments;
+    }
+
+    /**
+     * redirectStdErr accessor
+     * @return Returns the redirectStdErr.
+     */
+    public Boolean getRedirectStdErr()
+    {
+        return redirectStdErr;
+    }
+
+    /**
+     * redirectStdErr mutator
+     * @param redirectStdErr The redirectStdErr to set.
+     */
+    public void setRedirectStdErr( Boolean redirectStdErr )
+    {
+        this.redirectStdErr = redirectStdErr;
+    }
+
+    /**
+     * stdErrRedirectionFile accessor
+     * @return Returns the stdErrRedirectionFile.
+     */
+    public String getStdErrRedirectionFile()
+    {
+        return stdErrRedirectionFile;
+    }
+
+    /**
+     * stdErrRedirectionFile mutator
+     * @param stdErrRedirectionFile The stdErrRedirectionFile to set.
+     */
+    public void setStdErrRedirectionFile( String stdErrRedirectionFile )
+    {
+        this.stdErrRedirectionFile = stdErrRedirectionFile;
+    }
+
+    /**
+     * redirectStdOut accessor
+     * @return Returns the redirectStdOut.
+     */
+    public Boolean getRedirectStdOut()
+    {
+        return redirectStdOut;
+    }
+
+    /**
+     * redirectStdOut mutator
+     * @param redirectStdOut The redirectStdOut to set.
+     */
+    public void setRedirectStdOut( Boolean redirectStdOut )
+    {
+        this.redirectStdOut = redirectStdOut;
+    }
+
+    /**
+     * stdOutRedirectionFile accessor
+     * @return Returns the stdOutRedirectionFile.
+     */
+    public String getStdOutRedirectionFile()
+    {
+        return stdOutRedirectionFile;
+    }
+
+    /**
+     * stdOutRedirectionFile mutator
+     * @param stdOutRedirectionFile The stdOutRedirectionFile to set.
+     */
+    public void setStdOutRedirectionFile( String stdOutRedirectionFile )
+    {
+        this.stdOutRedirectionFile = stdOutRedirectionFile;
+    }
+
+    /**
+     * outputDirectory accessor
+     * @return Returns the outputDirectory.
+     */
+    public File getOutputDirectory()
+    {
+        return outputDirectory;
+    }
+
+    /**
+     * outputDirectory mutator
+     * @param outputDirectory The outputDirectory to set.
+     */
+    public void setOutputDirectory( File outputDirectory )
+    {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * version accessor
+     * @return Returns the version.
+     */
+    public String getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * version mutator
+     * @param version The version to set.
+     */
+    public void setVersion( String version )
+    {
+        this.version = version;
+    }
+
+}
\ No newline at end of file
@@ -16,10 +16,13 @@
 
 package org.codehaus.mojo.exe4j.configuration;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
+import org.codehaus.mojo.exe4j.util.XmlEscaper;
 import org.codehaus.plexus.configuration.PlexusConfigurationException;
 
 /**
@@ -28,12 +31,14 @@ import org.codehaus.plexus.configuration.PlexusConfigurationException;
  * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
  */
 public class ConfigClassPath
+    extends ConfigXml
 {
     /**
      * ConfigClassPath is made up of ClassPathLocation objects that
      * represent the different location types.
      */
     public static class ClassPathLocation
+        extends ConfigXml
     {
         /** 
          * a scan directory class path location type
@@ -207,32 +212,26 @@ public class ConfigClassPath
             this.value = value;
         }
 
-        /** 
-         * nasty overloading of the Object::toString method but there you go.
+        /**
+         * writes the EXE4J XML configuration representation of the parameter
          * 
-         * @return the EXE4J XML configuration representation of the parameter 
+         * @param out the output
+         * @throws IOException if the output cannot be written to
          */
-        public String toString()
+        public void writeTo( Appendable out )
+            throws IOException
         {
             if ( ENVVAR_TYPE.equals( type ) )
             {
-                return "<envVar name=\"" + value + "\"/>";
+                out.append( "<envVar name=\"" );
+                XmlEscaper.append( out, value );
+                out.append( "\"/>" );
             }
             else
             {
-                StringBuffer buffer = new StringBuffer();
-
-                buffer.append( "<" );
-                buffer.append( type );
-                buffer.append( " location=\"" );
-                buffer.append( value.replaceAll( "\\\"", "&quot;" ) );
-                buffer.append( "\"" );
-                buffer.append( " failOnError=\"" );
-                buffer.append( failIfNotFound );
-                buffer.append( "\"" );
-                buffer.append( "/>" );
-
-                return buffer.toString();
+                out.append( '<' ).append( type ).append( " location=\"" );
+                XmlEscaper.append( out, value );
+                out.append( "\" failOnError=\"" ).append( failIfNotFound ? "true" : "false" ).append( "\"/>" );
             }
         }
     }
@@ -249,26 +248,44 @@ public class ConfigClassPath
         this.locations.add( location );
     }
 
-    public String toString()
+    /**
+     * locations accessor
+     * 
+     * @return the list of ClassPathLocation objects, read only
+     */
+    public List getLocations()
     {
+        return Collections.unmodifiableList( locations );
+    }
 
-        StringBuffer buffer = new StringBuffer();
-
-        buffer.append( "<classPath>" );
+    /**
+     * writes the EXE4J XML configuration representation of the class path
+     * 
+     * @param out the output
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeTo( Appendable out )
+        throws IOException
+    {
+        out.append( "<classPath>" );
 
         Iterator itr = locations.iterator();
 
         while ( itr.hasNext() )
         {
-            ClassPathLocation location = (ClassPathLocation) itr.next();
-
-            buffer.append( location.toString() );
-
+            ( (ClassPathLocation) itr.next() ).writeTo( out );
         }
 
-        buffer.append( "</classPath>" );
-
-        return buffer.toString();
+        out.append( "</classPath>" );
+    }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.codehaus.mojo.exe4j.configuration.ConfigXml#getLengthHint()
+     */
+    protected int getLengthHint()
+    {
+        return 32 + locations.size() * 80;
     }
 }
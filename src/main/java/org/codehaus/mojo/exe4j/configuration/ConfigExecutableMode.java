@@ -19,6 +19,8 @@
  */
 package org.codehaus.mojo.exe4j.configuration;
 
+import java.io.IOException;
+
 import org.codehaus.plexus.configuration.PlexusConfigurationException;
 
 /**
@@ -27,6 +29,7 @@ import org.codehaus.plexus.configuration.PlexusConfigurationException;
  * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
  */
 public class ConfigExecutableMode
+    extends ConfigXml
 {
     /**
      * Defines the legal values that the executable mode can hold.
@@ -58,6 +61,18 @@ public class ConfigExecutableMode
         setValue( identifier );
     }
 
+    /**
+     * writes the value, which needs no escaping
+     * 
+     * @param out the output
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeTo( Appendable out )
+        throws IOException
+    {
+        out.append( value );
+    }
+
     public String toString()
     {
         return value;
@@ -16,10 +16,12 @@
 
 package org.codehaus.mojo.exe4j.configuration;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import org.codehaus.mojo.exe4j.util.XmlEscaper;
 import org.codehaus.plexus.configuration.PlexusConfigurationException;
 
 /**
@@ -28,12 +30,14 @@ import org.codehaus.plexus.configuration.PlexusConfigurationException;
  * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
  */
 public class ConfigJRESearchPath
+    extends ConfigXml
 {
     /**
      * ConfigJRESearchPath is made up of JREPathLocation objects that
      * represent the different location types.
      */
     public static class JREPathLocation
+        extends ConfigXml
     {
         /** 
          * a registry jre search path location type
@@ -156,24 +160,24 @@ public class ConfigJRESearchPath
             this.value = value;
         }
 
-        /** 
-         * nasty overloading of the Object::toString method but there you go.
+        /**
+         * writes the EXE4J XML configuration representation of the parameter
          * 
-         * @return the EXE4J XML configuration representation of the parameter 
+         * @param out the output
+         * @throws IOException if the output cannot be written to
          */
-        public String toString()
+        public void writeTo( Appendable out )
+            throws IOException
         {
             if ( REGISTRY_TYPE.equals( type ) )
             {
-                return "<registry/>";
-            }
-            else if ( DIRECTORY_TYPE.equals( type ) )
-            {
-                return "<directory location=\"" + value + "\"/>";
+                out.append( "<registry/>" );
             }
             else
             {
-                return "<envVar name=\"" + value + "\"/>";
+                out.append( DIRECTORY_TYPE.equals( type ) ? "<directory location=\"" : "<envVar name=\"" );
+                XmlEscaper.append( out, value );
+                out.append( "\"/>" );
             }
         }
     }
@@ -190,26 +194,24 @@ public class ConfigJRESearchPath
         this.locations.add( location );
     }
 
-    public String toString()
+    /**
+     * writes the EXE4J XML configuration representation of the search path
+     * 
+     * @param out the output
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeTo( Appendable out )
+        throws IOException
     {
-
-        StringBuffer buffer = new StringBuffer();
-
-        buffer.append( "<searchSequence>" );
+        out.append( "<searchSequence>" );
 
         Iterator itr = locations.iterator();
 
         while ( itr.hasNext() )
         {
-            JREPathLocation location = (JREPathLocation) itr.next();
-
-            buffer.append( location.toString() );
-
+            ( (JREPathLocation) itr.next() ).writeTo( out );
         }
 
-        buffer.append( "</searchSequence>" );
-
-        return buffer.toString();
-
+        out.append( "</searchSequence>" );
     }
 }
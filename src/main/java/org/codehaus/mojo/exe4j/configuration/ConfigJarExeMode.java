@@ -19,6 +19,8 @@
  */
 package org.codehaus.mojo.exe4j.configuration;
 
+import java.io.IOException;
+
 import org.codehaus.plexus.configuration.PlexusConfigurationException;
 
 /**
@@ -27,6 +29,7 @@ import org.codehaus.plexus.configuration.PlexusConfigurationException;
  * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
  */
 public class ConfigJarExeMode
+    extends ConfigXml
 {
     /**
      * Defines the legal values that the jar exe mode can hold.
@@ -35,6 +38,11 @@ public class ConfigJarExeMode
         new ConfigEnumType.Value( "external", "1" ),
         new ConfigEnumType.Value( "internal", "0" ) } );
 
+    /**
+     * the exe4j value of the internal ("JAR in EXE") mode
+     */
+    private static final String INTERNAL_VALUE = "0";
+
     private String value;
 
     public ConfigJarExeMode()
@@ -54,11 +62,31 @@ public class ConfigJarExeMode
         setValue( identifier );
     }
 
+    /**
+     * writes the value, which needs no escaping
+     * 
+     * @param out the output
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeTo( Appendable out )
+        throws IOException
+    {
+        out.append( value );
+    }
+
     public String toString()
     {
         return value;
     }
 
+    /**
+     * @return true if the JARs are compiled into the EXE
+     */
+    public boolean isInternal()
+    {
+        return INTERNAL_VALUE.equals( value );
+    }
+
     /**
      * value accessor
      * @return Returns the value.
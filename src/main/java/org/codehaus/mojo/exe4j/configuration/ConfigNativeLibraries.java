@@ -19,22 +19,26 @@
  */
 package org.codehaus.mojo.exe4j.configuration;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
-import org.codehaus.mojo.exe4j.configuration.ConfigJRESearchPath.JREPathLocation;
+import org.codehaus.mojo.exe4j.util.XmlEscaper;
 
 /**
  * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
  */
 public class ConfigNativeLibraries
+    extends ConfigXml
 {
     /**
      * ConfigNativeLibraries is made up of NativeLibraryLocation objects that
      * represent the different location types.
      */
     public static class NativeLibraryLocation
+        extends ConfigXml
     {
         /**
          * the location value
@@ -78,14 +82,18 @@ public class ConfigNativeLibraries
             this.value = value;
         }
 
-        /** 
-         * nasty overloading of the Object::toString method but there you go.
+        /**
+         * writes the EXE4J XML configuration representation of the parameter
          * 
-         * @return the EXE4J XML configuration representation of the parameter 
+         * @param out the output
+         * @throws IOException if the output cannot be written to
          */
-        public String toString()
+        public void writeTo( Appendable out )
+            throws IOException
         {
-            return "<directory name=\"" + value + "\"/>";
+            out.append( "<directory name=\"" );
+            XmlEscaper.append( out, value );
+            out.append( "\"/>" );
         }
     }
 
@@ -101,26 +109,36 @@ public class ConfigNativeLibraries
         this.locations.add( location );
     }
 
-    public String toString()
+    /**
+     * locations accessor
+     * 
+     * @return the list of NativeLibraryLocation objects, read only
+     */
+    public List getLocations()
     {
+        return Collections.unmodifiableList( locations );
+    }
 
-        StringBuffer buffer = new StringBuffer();
-
-        buffer.append( "<nativeLibraryDirectories>" );
+    /**
+     * writes the EXE4J XML configuration representation of the native
+     * library directories
+     * 
+     * @param out the output
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeTo( Appendable out )
+        throws IOException
+    {
+        out.append( "<nativeLibraryDirectories>" );
 
         Iterator itr = locations.iterator();
 
         while ( itr.hasNext() )
         {
-            NativeLibraryLocation location = (NativeLibraryLocation) itr.next();
-
-            buffer.append( location.toString() );
+            ( (NativeLibraryLocation) itr.next() ).writeTo( out );
         }
 
-        buffer.append( "</nativeLibraryDirectories>" );
-
-        return buffer.toString();
-
+        out.append( "</nativeLibraryDirectories>" );
     }
 
 }
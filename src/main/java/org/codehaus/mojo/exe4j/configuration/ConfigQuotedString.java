@@ -19,13 +19,18 @@
  */
 package org.codehaus.mojo.exe4j.configuration;
 
+import java.io.IOException;
+
+import org.codehaus.mojo.exe4j.util.XmlEscaper;
+
 /**
- * String wrapper that converts any contained quotes '"' into
- * XML quote entities 
+ * String wrapper whose XML representation is the escaped string, so it can
+ * be used as an attribute value
  * 
  * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
  */
 public class ConfigQuotedString
+    extends ConfigXml
 {
     private String value;
 
@@ -38,9 +43,21 @@ public class ConfigQuotedString
         setValue( value );
     }
 
+    /**
+     * writes the escaped value
+     * 
+     * @param out the output
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeTo( Appendable out )
+        throws IOException
+    {
+        XmlEscaper.append( out, value );
+    }
+
     public String toString()
     {
-        return value;
+        return XmlEscaper.escape( value );
     }
 
     /**
@@ -53,14 +70,12 @@ public class ConfigQuotedString
     }
 
     /**
-     * value mutator, replaces contained quotes '"' with their xml
-     * entity notations: &amp;quot;
-     * @param value The value to set.
+     * value mutator
+     * @param value The value to set, it is escaped when written.
      */
     public void setValue( String value )
     {
-        this.value = value.replaceAll( "\\\"", "&quot;" );
-        ;
+        this.value = value;
     }
 
 }
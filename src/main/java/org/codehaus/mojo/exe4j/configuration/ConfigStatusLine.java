@@ -16,6 +16,8 @@
 
 package org.codehaus.mojo.exe4j.configuration;
 
+import java.io.IOException;
+
 /**
  * Mojo configuration parameter for the Exe4J StatusLine 
  * property
@@ -52,19 +54,15 @@ public class ConfigStatusLine
         super( fontColour, fontName, fontSize, fontWieght, text, xPos, yPos );
     }
 
-    /** 
-     * nasty overloading of the Object::toString method but there you go.
+    /**
+     * writes the EXE4J XML configuration representation of the parameter
      * 
-     * @return the EXE4J XML configuration representation of the parameter 
+     * @param out the output
+     * @throws IOException if the output cannot be written to
      */
-    public String toString()
+    public void writeTo( Appendable out )
+        throws IOException
     {
-        StringBuffer buffer = new StringBuffer();
-
-        buffer.append( "<statusLine " );
-        buffer.append( getAttributes() );
-        buffer.append( "/>" );
-
-        return buffer.toString();
+        writeTo( out, "statusLine" );
     }
 }
@@ -16,6 +16,10 @@
 
 package org.codehaus.mojo.exe4j.configuration;
 
+import java.io.IOException;
+
+import org.codehaus.mojo.exe4j.util.XmlEscaper;
+
 /**
  * Base class for the Mojo configuration parameter 
  * StatusLine and VersionLine
@@ -23,6 +27,7 @@ package org.codehaus.mojo.exe4j.configuration;
  * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
  */
 public abstract class ConfigTextLine
+    extends ConfigXml
 {
 
     private String text = "";
@@ -67,30 +72,26 @@ public abstract class ConfigTextLine
     }
 
     /**
-     * @return the Exe4J XML attributes representation of this
-     * text line object. 
-     */
-    protected String getAttributes()
-    {
-        StringBuffer buffer = new StringBuffer();
-
-        buffer.append( "x=\"" );
-        buffer.append( xPos );
-        buffer.append( "\" y=\"" );
-        buffer.append( yPos );
-        buffer.append( "\" text=\"" );
-        buffer.append( this.text.replaceAll( "\\\"", "\"" ) );
-        buffer.append( "\" font=\"" );
-        buffer.append( font );
-        buffer.append( "\" fontSize=\"" );
-        buffer.append( fontSize );
-        buffer.append( "\" fontColor=\"" );
-        buffer.append( fontColour );
-        buffer.append( "\" fontWeight=\"" );
-        buffer.append( fontWeight );
-        buffer.append( "\"" );
-
-        return buffer.toString();
+     * writes the Exe4J XML element representation of this text line object
+     * 
+     * @param out the output
+     * @param element the element name
+     * @throws IOException if the output cannot be written to
+     */
+    protected void writeTo( Appendable out, String element )
+        throws IOException
+    {
+        out.append( '<' ).append( element ).append( " x=\"" ).append( Integer.toString( xPos ) );
+        out.append( "\" y=\"" ).append( Integer.toString( yPos ) );
+        out.append( "\" text=\"" );
+        XmlEscaper.append( out, text );
+        out.append( "\" font=\"" );
+        XmlEscaper.append( out, font );
+        out.append( "\" fontSize=\"" ).append( Integer.toString( fontSize ) );
+        out.append( "\" fontColor=\"" );
+        XmlEscaper.append( out, fontColour );
+        out.append( "\" fontWeight=\"" ).append( Integer.toString( fontWeight ) );
+        out.append( "\"/>" );
     }
 
     /**
@@ -19,6 +19,8 @@
  */
 package org.codehaus.mojo.exe4j.configuration;
 
+import java.io.IOException;
+
 /**
  * Config object that represents a Windows .exe version info string
  * (must be 4 numerics seperated by periods)
@@ -26,6 +28,7 @@ package org.codehaus.mojo.exe4j.configuration;
  * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
  */
 public class ConfigVersionString
+    extends ConfigXml
 {
     private String value;
 
@@ -38,6 +41,18 @@ public class ConfigVersionString
         setValue( value );
     }
 
+    /**
+     * writes the value, which needs no escaping
+     * 
+     * @param out the output
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeTo( Appendable out )
+        throws IOException
+    {
+        out.append( value );
+    }
+
     public String toString()
     {
         return value;
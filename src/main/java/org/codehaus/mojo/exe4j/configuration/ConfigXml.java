@@ -0,0 +1,68 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.configuration;
+
+import java.io.IOException;
+
+/**
+ * Base class for the Mojo configuration parameters that have an Exe4J XML
+ * representation, either an element or an escaped attribute value. The
+ * representation is written straight to the output, toString() writes it
+ * to a string.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public abstract class ConfigXml
+{
+    /**
+     * writes the Exe4J XML representation of the parameter
+     *
+     * @param out the output
+     * @throws IOException if the output cannot be written to
+     */
+    public abstract void writeTo( Appendable out )
+        throws IOException;
+
+    /**
+     * @return an estimate of the length of the XML representation
+     */
+    protected int getLengthHint()
+    {
+        return 64;
+    }
+
+    /**
+     * @return the Exe4J XML representation of the parameter
+     */
+    public String toString()
+    {
+        StringBuilder buffer = new StringBuilder( getLengthHint() );
+
+        try
+        {
+            writeTo( buffer );
+        }
+        catch ( IOException e )
+        {
+            // a StringBuilder doesn't throw
+            throw new IllegalStateException( e.toString() );
+        }
+
+        return buffer.toString();
+    }
+
+}
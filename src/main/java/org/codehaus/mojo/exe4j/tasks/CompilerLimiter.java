@@ -0,0 +1,283 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of exe4jc processes run at once by the modules of a
+ * parallel build. There's one limiter per build session, shared by every
+ * execution of the plugin in the session, so the limit set by the first
+ * execution applies to the rest of the session. Slots are handed out in the
+ * order they were asked for.
+ *
+ * The default limit is one exe4jc process per processor, fewer if the
+ * host's memory cannot hold them. The memory is the total physical memory,
+ * or the container's limit if it is lower, less the build JVM's maximum
+ * heap. Free memory isn't used as it excludes the page cache the operating
+ * system gives up on demand, and changes from one build to the next.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class CompilerLimiter
+{
+    /**
+     * the memory an exe4jc process is assumed to need, in bytes
+     */
+    static final long MEMORY_PER_COMPILER = 512L * 1024 * 1024;
+
+    /**
+     * the limiter of each session, weakly keyed so a finished session's
+     * limiter can be collected
+     */
+    private static final Map LIMITERS = new WeakHashMap();
+
+    /**
+     * the cgroup v2 and v1 memory limit files
+     */
+    private static final String[] CGROUP_LIMITS = { "/sys/fs/cgroup/memory.max",
+        "/sys/fs/cgroup/memory/memory.limit_in_bytes" };
+
+    /**
+     * the maximum number of concurrent exe4jc processes
+     */
+    private int limit;
+
+    /**
+     * the free slots
+     */
+    private Semaphore slots;
+
+    /**
+     * true if the limit was derived from the host rather than configured
+     */
+    private boolean derived;
+
+    /**
+     * true once the derived limit has been reported
+     */
+    private boolean reported;
+
+    /**
+     * constructor
+     *
+     * @param limit the maximum number of concurrent exe4jc processes
+     */
+    public CompilerLimiter( int limit )
+    {
+        this.limit = limit;
+        this.slots = new Semaphore( limit, true );
+    }
+
+    /**
+     * @param session the build session
+     * @param limit the maximum number of concurrent exe4jc processes, 0 or
+     *            less for the default limit
+     * @return the session's limiter, created with the given limit if the
+     *         session doesn't have one yet
+     */
+    public static CompilerLimiter getInstance( Object session, int limit )
+    {
+        synchronized ( LIMITERS )
+        {
+            CompilerLimiter limiter = (CompilerLimiter) LIMITERS.get( session );
+
+            if ( limiter == null )
+            {
+                limiter = new CompilerLimiter( limit > 0 ? limit : getDefaultLimit() );
+
+                limiter.derived = limit <= 0;
+
+                LIMITERS.put( session, limiter );
+            }
+
+            return limiter;
+        }
+    }
+
+    /**
+     * @return one exe4jc process per available processor, fewer if there
+     *         isn't enough physical memory for them, but at least one
+     */
+    public static int getDefaultLimit()
+    {
+        return getDefaultLimit( Runtime.getRuntime().availableProcessors(), getPhysicalMemory(), Runtime
+            .getRuntime().maxMemory() );
+    }
+
+    /**
+     * @param processors the number of processors
+     * @param memory the physical memory in bytes, -1 if unknown
+     * @param reserved the memory the build itself needs in bytes
+     * @return one exe4jc process per processor, fewer if there isn't enough
+     *         memory for them, but at least one
+     */
+    static int getDefaultLimit( int processors, long memory, long reserved )
+    {
+        int limit = processors;
+
+        if ( memory >= 0 )
+        {
+            limit = (int) Math.min( limit, ( memory - reserved ) / MEMORY_PER_COMPILER );
+        }
+
+        return Math.max( 1, limit );
+    }
+
+    /**
+     * @return the host's total physical memory, or the container's memory
+     *         limit if it is lower, in bytes, -1 if neither can be read
+     */
+    public static long getPhysicalMemory()
+    {
+        long memory = getTotalPhysicalMemory();
+
+        for ( int i = 0; i < CGROUP_LIMITS.length; i++ )
+        {
+            long limit = readLimit( new File( CGROUP_LIMITS[i] ) );
+
+            if ( limit > 0 && ( memory < 0 || limit < memory ) )
+            {
+                memory = limit;
+            }
+        }
+
+        return memory;
+    }
+
+    /**
+     * Reports whether the limit was derived from the host and hasn't been
+     * reported yet, so it is only reported once per session.
+     *
+     * @return true the first time it is called for a derived limit
+     */
+    public synchronized boolean report()
+    {
+        boolean report = derived && !reported;
+
+        reported = true;
+
+        return report;
+    }
+
+    /**
+     * Waits for a free slot, which must be released once exe4jc has exited.
+     *
+     * @return the time spent waiting in milliseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long acquire()
+        throws InterruptedException
+    {
+        long start = System.currentTimeMillis();
+
+        slots.acquire();
+
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Frees a slot taken by acquire().
+     */
+    public void release()
+    {
+        slots.release();
+    }
+
+    /**
+     * limit accessor
+     * @return Returns the maximum number of concurrent exe4jc processes.
+     */
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * @return the total physical memory in bytes, -1 if the JVM cannot tell
+     */
+    private static long getTotalPhysicalMemory()
+    {
+        Object os = ManagementFactory.getOperatingSystemMXBean();
+
+        String[] names = { "getTotalMemorySize", "getTotalPhysicalMemorySize" };
+
+        for ( int i = 0; i < names.length; i++ )
+        {
+            try
+            {
+                Class type = Class.forName( "com.sun.management.OperatingSystemMXBean" );
+
+                return ( (Number) type.getMethod( names[i], new Class[0] ).invoke( os, new Object[0] ) ).longValue();
+            }
+            catch ( Exception e )
+            {
+                // not available on this JVM
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param file a cgroup memory limit file
+     * @return the limit in bytes, -1 if there is no limit or it cannot be
+     *         read
+     */
+    static long readLimit( File file )
+    {
+        if ( !file.isFile() )
+        {
+            return -1;
+        }
+
+        try
+        {
+            BufferedReader reader = new BufferedReader( new FileReader( file ) );
+
+            try
+            {
+                String line = reader.readLine();
+
+                // "max", or a page rounded Long.MAX_VALUE on cgroup v1, for
+                // no limit
+
+                return line == null || line.trim().equals( "max" ) ? -1 : Long.parseLong( line.trim() );
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            return -1;
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+}
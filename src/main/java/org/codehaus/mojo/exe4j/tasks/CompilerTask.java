@@ -16,12 +16,18 @@
 
 package org.codehaus.mojo.exe4j.tasks;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
+import org.codehaus.mojo.exe4j.util.Timings;
 import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
-import org.codehaus.plexus.util.cli.DefaultConsumer;
+import org.codehaus.plexus.util.cli.StreamPumper;
 
 /**
  * Simple Exe4J CLI wrapper class 
@@ -77,6 +83,61 @@ public class CompilerTask
      */
     private boolean trialRun = false;
 
+    /**
+     * If set the exe4j compiler is loaded from this jar and run in-process
+     * rather than by forking exe4jc
+     */
+    private File compilerJar;
+
+    /**
+     * The in-process exe4j compiler entry point class
+     */
+    private String compilerMainClass;
+
+    /**
+     * The execution's timings, may be null
+     */
+    private Timings timings;
+
+    /**
+     * The name of the executable being built, may be null
+     */
+    private String executableName;
+
+    /**
+     * The number of trailing exe4jc error lines kept for the failure message
+     */
+    private int errorTailLines = 50;
+
+    /**
+     * The forked exe4jc is killed if it runs for longer than this many
+     * seconds, 0 for no limit
+     */
+    private int timeout;
+
+    /**
+     * The forked exe4jc is killed if it outputs nothing for this many
+     * seconds, 0 for no limit
+     */
+    private int idleTimeout;
+
+    /**
+     * Limits the number of concurrent exe4jc processes, may be null
+     */
+    private CompilerLimiter limiter;
+
+    /**
+     * Limits the number of concurrent exe4jc processes run by all the
+     * builds on the host, may be null
+     */
+    private HostCompilerSlots hostSlots;
+
+    /**
+     * The number of seconds to wait for a host slot, 0 to wait for as long
+     * as it takes
+     */
+    private int hostSlotTimeout;
+
     /**
      * constructor
      *
@@ -119,53 +180,718 @@ public class CompilerTask
     public void execute()
         throws MojoExecutionException
     {
-        Commandline cmd = new Commandline();
+        List arguments = getArguments();
 
-        cmd.setWorkingDirectory( workingDirectory );
-        cmd.setExecutable( exe4jcFile );
+        if ( compilerJar != null )
+        {
+            if ( InProcessCompiler.isSupported() )
+            {
+                executeInProcess( arguments );
+
+                return;
+            }
+
+            log.warn( "The exe4j compiler can only be run in-process on Java " + InProcessCompiler.MAX_JAVA_VERSION
+                + " or earlier with a security manager allowed, forking exe4jc instead" );
+        }
+
+        acquireSlot();
+
+        try
+        {
+            HostCompilerSlots.Slot hostSlot = acquireHostSlot();
+
+            try
+            {
+                executeForked( arguments );
+            }
+            finally
+            {
+                if ( hostSlot != null )
+                {
+                    hostSlot.release();
+                }
+            }
+        }
+        finally
+        {
+            if ( limiter != null )
+            {
+                limiter.release();
+            }
+        }
+    }
+
+    /**
+     * Waits in turn for one of the slots shared by the builds on the host,
+     * recording the wait in the timings and logging long waits. If no slot
+     * becomes free in time, or the slot directory cannot be used, exe4jc is
+     * run without one.
+     * 
+     * @return the slot, which must be released, or null if there isn't one
+     * @throws MojoExecutionException if interrupted while waiting
+     */
+    private HostCompilerSlots.Slot acquireHostSlot()
+        throws MojoExecutionException
+    {
+        if ( hostSlots == null )
+        {
+            return null;
+        }
+
+        Timings.Phase phase = startPhase( "exe4jcHostWait" );
+
+        long start = System.currentTimeMillis();
+
+        HostCompilerSlots.Slot slot;
+
+        try
+        {
+            slot = hostSlots.acquire( hostSlotTimeout * 1000L );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Unable to use the exe4jc slot directory " + hostSlots.getDirectory() + ": " + e.getMessage() );
+
+            return null;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new MojoExecutionException( "Interrupted while waiting to run exe4jc", e );
+        }
+        finally
+        {
+            endPhase( phase );
+        }
+
+        long waited = System.currentTimeMillis() - start;
+
+        if ( timings != null )
+        {
+            timings.setValue( getTimingPrefix() + "exe4jc.hostWaitMillis", new Long( waited ) );
+        }
+
+        String prefix = executableName == null ? "" : "[" + executableName + "] ";
+
+        if ( slot == null )
+        {
+            log.warn( prefix + "No exe4jc slot became free in " + hostSlotTimeout + "s, running exe4jc without one" );
+
+            if ( timings != null )
+            {
+                timings.setValue( getTimingPrefix() + "exe4jc.hostSlotTimedOut", Boolean.TRUE );
+            }
+
+            return null;
+        }
+
+        String message = prefix + "Waited " + waited + "ms to run exe4jc, at most " + hostSlots.getSlots()
+            + " run at once on this host";
+
+        if ( waited >= 1000 )
+        {
+            log.info( message );
+        }
+        else
+        {
+            log.debug( message );
+        }
+
+        return slot;
+    }
+
+    /**
+     * Waits for the limiter to allow another exe4jc process, recording the
+     * wait in the timings and logging long waits.
+     * 
+     * @throws MojoExecutionException if interrupted while waiting
+     */
+    private void acquireSlot()
+        throws MojoExecutionException
+    {
+        if ( limiter == null )
+        {
+            return;
+        }
+
+        Timings.Phase phase = startPhase( "exe4jcWait" );
+
+        long waited;
+
+        try
+        {
+            waited = limiter.acquire();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new MojoExecutionException( "Interrupted while waiting to run exe4jc", e );
+        }
+        finally
+        {
+            endPhase( phase );
+        }
+
+        if ( timings != null )
+        {
+            timings.setValue( getTimingPrefix() + "exe4jc.waitMillis", new Long( waited ) );
+        }
+
+        String message = ( executableName == null ? "" : "[" + executableName + "] " ) + "Waited " + waited
+            + "ms to run exe4jc, at most " + limiter.getLimit() + " run at once";
+
+        if ( waited >= 1000 )
+        {
+            log.info( message );
+        }
+        else
+        {
+            log.debug( message );
+        }
+    }
+
+    /**
+     * @return the exe4jc command line arguments
+     */
+    private List getArguments()
+    {
+        List arguments = new ArrayList();
 
         if ( quiet )
         {
-            cmd.createArgument().setValue( "--quiet" );
+            arguments.add( "--quiet" );
         }
         else if ( verbose )
         {
-            cmd.createArgument().setValue( "--verbose" );
+            arguments.add( "--verbose" );
         }
         if ( outputDirectoryOverride != null )
         {
-            cmd.createArgument().setValue( "--destination " + outputDirectoryOverride );
+            arguments.add( "--destination" );
+            arguments.add( outputDirectoryOverride );
         }
         if ( versionOverride != null )
         {
-            cmd.createArgument().setValue( "--release " + versionOverride );
+            arguments.add( "--release" );
+            arguments.add( versionOverride );
         }
         if ( trialRun )
         {
-            cmd.createArgument().setValue( "--test" );
+            arguments.add( "--test" );
+        }
+
+        arguments.add( configFile );
+
+        return arguments;
+    }
+
+    /**
+     * runs the exe4j compiler in the Maven JVM
+     * 
+     * @param arguments the exe4jc command line arguments
+     * @throws MojoExecutionException raised if an error is encountered
+     */
+    private void executeInProcess( List arguments )
+        throws MojoExecutionException
+    {
+        log.debug( "Executing in-process: " + compilerMainClass + " " + arguments );
+
+        InProcessCompiler compiler = new InProcessCompiler( compilerJar, compilerMainClass, log );
+
+        Timings.Phase phase = startPhase( "exe4jc" );
+
+        int exitCode;
+
+        try
+        {
+            exitCode = compiler.run( (String[]) arguments.toArray( new String[arguments.size()] ) );
+        }
+        finally
+        {
+            endPhase( phase );
         }
 
-        cmd.createArgument().setValue( configFile );
+        setExitCode( exitCode );
+
+        if ( exitCode != 0 )
+        {
+            throw new MojoExecutionException( "exe4j compiler exited with code: " + exitCode );
+        }
+    }
+
+    /**
+     * runs the exe4jc executable
+     * 
+     * @param arguments the exe4jc command line arguments
+     * @throws MojoExecutionException raised if an error is encountered
+     */
+    private void executeForked( List arguments )
+        throws MojoExecutionException
+    {
+        Commandline cmd = new Commandline();
+
+        cmd.setWorkingDirectory( workingDirectory );
+        cmd.setExecutable( exe4jcFile );
+
+        Iterator itr = arguments.iterator();
+
+        while ( itr.hasNext() )
+        {
+            cmd.createArgument().setValue( (String) itr.next() );
+        }
 
         log.debug( "Executing: " + Commandline.toString( cmd.getCommandline() ) );
 
-        CommandLineUtils.StringStreamConsumer err = new CommandLineUtils.StringStreamConsumer();
+        LogStreamConsumer out = new LogStreamConsumer( log, executableName, false, 0 );
+
+        LogStreamConsumer err = new LogStreamConsumer( log, executableName, true, errorTailLines );
+
+        if ( verbose && timings != null )
+        {
+            out.setMarkers( timings, getTimingPrefix() );
+        }
+
+        Timings.Phase phase = startPhase( "spawn" );
+
+        Process process;
+
+        try
+        {
+            process = cmd.execute();
+        }
+        catch ( CommandLineException e )
+        {
+            throw new MojoExecutionException( "Unable to execute exe4jc command", e );
+        }
+        finally
+        {
+            endPhase( phase );
+        }
+
+        phase = startPhase( "exe4jc" );
+
+        StreamPumper outPumper = new StreamPumper( process.getInputStream(), out );
+
+        StreamPumper errPumper = new StreamPumper( process.getErrorStream(), err );
+
+        outPumper.start();
+
+        errPumper.start();
+
+        Thread shutdownHook = new ShutdownHook( process );
+
+        Runtime.getRuntime().addShutdownHook( shutdownHook );
+
+        String failure = null;
+
+        int exitCode;
+
+        try
+        {
+            String reason = watch( process, out, err );
+
+            if ( "timeout".equals( reason ) )
+            {
+                failure = "exe4jc timed out after " + timeout + "s";
+            }
+            else if ( "idleTimeout".equals( reason ) )
+            {
+                failure = "exe4jc produced no output for " + idleTimeout + "s";
+            }
+
+            if ( failure != null )
+            {
+                kill( process, reason, failure );
+            }
+
+            exitCode = process.waitFor();
+
+            // a descendant left running may hold the streams open
+
+            outPumper.join( ProcessTree.GRACE_MILLIS );
+
+            errPumper.join( ProcessTree.GRACE_MILLIS );
+        }
+        catch ( InterruptedException e )
+        {
+            kill( process, "interrupted", "Interrupted while waiting for exe4jc" );
+
+            Thread.currentThread().interrupt();
+
+            throw new MojoExecutionException( "Interrupted while waiting for exe4jc", e );
+        }
+        finally
+        {
+            endPhase( phase );
+
+            try
+            {
+                Runtime.getRuntime().removeShutdownHook( shutdownHook );
+            }
+            catch ( IllegalStateException e )
+            {
+                // the JVM is shutting down, the hook is killing exe4jc
+            }
+        }
+
+        setExitCode( exitCode );
+
+        if ( failure != null )
+        {
+            throw new MojoExecutionException( failure + ", output:\n" + err.getTailText() );
+        }
+
+        if ( exitCode != 0 )
+        {
+            throw new MojoExecutionException( "exe4jc exited with code: " + exitCode + ", output:\n"
+                + err.getTailText() );
+        }
+
+    }
+
+    /**
+     * Waits for exe4jc to exit or for one of the timeouts to expire.
+     *
+     * @param process the exe4jc process
+     * @param out the output consumer
+     * @param err the error consumer
+     * @return null if exe4jc exited, "timeout" or "idleTimeout" if it should
+     *         be killed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private String watch( Process process, LogStreamConsumer out, LogStreamConsumer err )
+        throws InterruptedException
+    {
+        if ( timeout <= 0 && idleTimeout <= 0 )
+        {
+            process.waitFor();
+
+            return null;
+        }
+
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout * 1000L : Long.MAX_VALUE;
+
+        while ( ProcessTree.isRunning( process ) )
+        {
+            long now = System.currentTimeMillis();
+
+            if ( now >= deadline )
+            {
+                return "timeout";
+            }
+
+            long lastLineTime = Math.max( out.getLastLineTime(), err.getLastLineTime() );
+
+            if ( idleTimeout > 0 && now - lastLineTime >= idleTimeout * 1000L )
+            {
+                return "idleTimeout";
+            }
+
+            Thread.sleep( 100 );
+        }
+
+        return null;
+    }
+
+    /**
+     * Kills exe4jc and the processes it started, recording why in the
+     * timings. The kill is completed even if the thread is interrupted.
+     *
+     * @param process the exe4jc process
+     * @param reason the kill reason recorded in the timings
+     * @param message the logged message
+     */
+    private void kill( Process process, String reason, String message )
+    {
+        log.warn( message + ", killing it" );
+
+        if ( timings != null )
+        {
+            timings.addMarker( getTimingPrefix() + "exe4jc.killed" );
+
+            timings.setValue( getTimingPrefix() + "exe4jc.killReason", reason );
+        }
+
+        boolean interrupted = Thread.interrupted();
 
         try
         {
-            int exitCode = CommandLineUtils.executeCommandLine( cmd, new DefaultConsumer(), err );
+            int killed = ProcessTree.destroy( process );
 
-            if ( exitCode != 0 )
+            if ( timings != null )
             {
-                throw new MojoExecutionException( "exe4jc exited with code: " + exitCode + ", output: "
-                    + err.getOutput() );
+                timings.setValue( getTimingPrefix() + "exe4jc.killedProcesses", new Integer( killed ) );
             }
         }
-        catch ( CommandLineException e )
+        catch ( InterruptedException e )
         {
-            throw new MojoExecutionException( "Unable to execute exe4jc command", e );
+            interrupted = true;
+        }
+        finally
+        {
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Kills exe4jc when the JVM is shut down, as it is when the build is
+     * interrupted from the console, so it isn't left running.
+     */
+    private class ShutdownHook
+        extends Thread
+    {
+        /**
+         * the exe4jc process
+         */
+        private Process process;
+
+        /**
+         * constructor
+         *
+         * @param process the exe4jc process
+         */
+        ShutdownHook( Process process )
+        {
+            super( "exe4jc shutdown hook" );
+
+            this.process = process;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.lang.Thread#run()
+         */
+        public void run()
+        {
+            if ( ProcessTree.isRunning( process ) )
+            {
+                kill( process, "shutdown", "The build was stopped while exe4jc was running" );
+            }
+        }
+    }
+
+    /**
+     * @param name the unqualified phase name
+     * @return the started phase or null if the task isn't timed
+     */
+    private Timings.Phase startPhase( String name )
+    {
+        return timings == null ? null : timings.start( getTimingPrefix() + name );
+    }
+
+    /**
+     * @param phase the phase to end, may be null
+     */
+    private static void endPhase( Timings.Phase phase )
+    {
+        if ( phase != null )
+        {
+            phase.end();
+        }
+    }
+
+    /**
+     * @param exitCode the exe4j compiler exit code
+     */
+    private void setExitCode( int exitCode )
+    {
+        if ( timings != null )
+        {
+            timings.setValue( getTimingPrefix() + "exe4jc.exitCode", new Integer( exitCode ) );
         }
+    }
+
+    /**
+     * @return the prefix that qualifies the timed phase and value names
+     */
+    private String getTimingPrefix()
+    {
+        return executableName == null ? "" : executableName + "/";
+    }
+
+    /**
+     * timings mutator
+     * @param timings The execution's timings the task's phases are recorded in.
+     */
+    public void setTimings( Timings timings )
+    {
+        this.timings = timings;
+    }
+
+    /**
+     * executableName accessor
+     * @return Returns the executableName.
+     */
+    public String getExecutableName()
+    {
+        return executableName;
+    }
+
+    /**
+     * executableName mutator
+     * @param executableName The name of the executable being built, it
+     *            prefixes logged output and qualifies timing names.
+     */
+    public void setExecutableName( String executableName )
+    {
+        this.executableName = executableName;
+    }
+
+    /**
+     * errorTailLines accessor
+     * @return Returns the errorTailLines.
+     */
+    public int getErrorTailLines()
+    {
+        return errorTailLines;
+    }
+
+    /**
+     * errorTailLines mutator
+     * @param errorTailLines The number of trailing exe4jc error lines kept
+     *            for the failure message.
+     */
+    public void setErrorTailLines( int errorTailLines )
+    {
+        this.errorTailLines = errorTailLines;
+    }
+
+    /**
+     * timeout accessor
+     * @return Returns the timeout.
+     */
+    public int getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * timeout mutator
+     * @param timeout The number of seconds the forked exe4jc may run for, 0
+     *            for no limit.
+     */
+    public void setTimeout( int timeout )
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * idleTimeout accessor
+     * @return Returns the idleTimeout.
+     */
+    public int getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * idleTimeout mutator
+     * @param idleTimeout The number of seconds the forked exe4jc may output
+     *            nothing for, 0 for no limit.
+     */
+    public void setIdleTimeout( int idleTimeout )
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * limiter accessor
+     * @return Returns the limiter.
+     */
+    public CompilerLimiter getLimiter()
+    {
+        return limiter;
+    }
+
+    /**
+     * limiter mutator
+     * @param limiter The limiter a forked exe4jc must take a slot from, null
+     *            for no limit.
+     */
+    public void setLimiter( CompilerLimiter limiter )
+    {
+        this.limiter = limiter;
+    }
+
+    /**
+     * hostSlots accessor
+     * @return Returns the hostSlots.
+     */
+    public HostCompilerSlots getHostSlots()
+    {
+        return hostSlots;
+    }
+
+    /**
+     * hostSlots mutator
+     * @param hostSlots The host wide slots a forked exe4jc must take one of,
+     *            null for no limit.
+     */
+    public void setHostSlots( HostCompilerSlots hostSlots )
+    {
+        this.hostSlots = hostSlots;
+    }
+
+    /**
+     * hostSlotTimeout accessor
+     * @return Returns the hostSlotTimeout.
+     */
+    public int getHostSlotTimeout()
+    {
+        return hostSlotTimeout;
+    }
+
+    /**
+     * hostSlotTimeout mutator
+     * @param hostSlotTimeout The number of seconds to wait for a host slot,
+     *            0 to wait for as long as it takes.
+     */
+    public void setHostSlotTimeout( int hostSlotTimeout )
+    {
+        this.hostSlotTimeout = hostSlotTimeout;
+    }
 
+    /**
+     * compilerJar accessor
+     * @return Returns the compilerJar.
+     */
+    public File getCompilerJar()
+    {
+        return compilerJar;
+    }
+
+    /**
+     * compilerJar mutator, if set the compiler is run in-process
+     * @param compilerJar The compilerJar to set.
+     */
+    public void setCompilerJar( File compilerJar )
+    {
+        this.compilerJar = compilerJar;
+    }
+
+    /**
+     * compilerMainClass accessor
+     * @return Returns the compilerMainClass.
+     */
+    public String getCompilerMainClass()
+    {
+        return compilerMainClass;
+    }
+
+    /**
+     * compilerMainClass mutator
+     * @param compilerMainClass The compilerMainClass to set.
+     */
+    public void setCompilerMainClass( String compilerMainClass )
+    {
+        this.compilerMainClass = compilerMainClass;
     }
 
     /**
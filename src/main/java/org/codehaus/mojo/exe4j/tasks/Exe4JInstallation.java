@@ -0,0 +1,207 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.StringTokenizer;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Locates the exe4j installation a build uses, the exe4jc executable, found
+ * on the path if it isn't given as one, and the compiler jar beside it.
+ * Its identity, the files' paths, sizes and modification times and the exe4j
+ * version, changes when exe4j is upgraded or another installation is used.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class Exe4JInstallation
+{
+    /**
+     * the exe4jc executable as configured
+     */
+    private String exe4jcExe;
+
+    /**
+     * the configured compiler jar, null to use the installation's
+     */
+    private File compilerJar;
+
+    /**
+     * the directories searched for an exe4jc given without a directory
+     */
+    private String path;
+
+    /**
+     * constructor
+     *
+     * @param exe4jcExe the exe4jc executable, a name is searched for on the
+     *            PATH
+     * @param compilerJar the compiler jar, null to use lib/exe4j.jar in the
+     *            installation exe4jc belongs to
+     */
+    public Exe4JInstallation( String exe4jcExe, File compilerJar )
+    {
+        this( exe4jcExe, compilerJar, System.getenv( "PATH" ) );
+    }
+
+    /**
+     * constructor
+     *
+     * @param exe4jcExe the exe4jc executable
+     * @param compilerJar the compiler jar or null
+     * @param path the directories searched for an exe4jc given without a
+     *            directory
+     */
+    Exe4JInstallation( String exe4jcExe, File compilerJar, String path )
+    {
+        this.exe4jcExe = exe4jcExe;
+        this.compilerJar = compilerJar;
+        this.path = path;
+    }
+
+    /**
+     * @return the exe4jc executable or null if it cannot be found
+     */
+    public File getExecutable()
+    {
+        File exe = new File( exe4jcExe );
+
+        if ( exe.getParentFile() != null )
+        {
+            return exe.isFile() ? exe.getAbsoluteFile() : null;
+        }
+
+        StringTokenizer directories = new StringTokenizer( path != null ? path : "", File.pathSeparator );
+
+        while ( directories.hasMoreTokens() )
+        {
+            File file = new File( directories.nextToken(), exe4jcExe );
+
+            if ( file.isFile() )
+            {
+                return file.getAbsoluteFile();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the compiler jar or null if it cannot be located
+     */
+    public File getCompilerJar()
+    {
+        if ( compilerJar != null )
+        {
+            return compilerJar;
+        }
+
+        // exe4jc lives in the bin directory of the exe4j installation
+
+        File exe = getExecutable();
+
+        File binDirectory = ( exe != null ? exe : new File( exe4jcExe ).getAbsoluteFile() ).getParentFile();
+
+        if ( binDirectory == null || binDirectory.getParentFile() == null )
+        {
+            return null;
+        }
+
+        File jar = new File( binDirectory.getParentFile(), "lib/exe4j.jar" );
+
+        return jar.isFile() ? jar : null;
+    }
+
+    /**
+     * @return the exe4j version recorded in the compiler jar's manifest or
+     *         null if it cannot be found
+     */
+    public String getVersion()
+    {
+        File jar = getCompilerJar();
+
+        if ( jar == null || !jar.isFile() )
+        {
+            return null;
+        }
+
+        try
+        {
+            JarFile file = new JarFile( jar );
+
+            try
+            {
+                Manifest manifest = file.getManifest();
+
+                if ( manifest == null )
+                {
+                    return null;
+                }
+
+                Attributes attributes = manifest.getMainAttributes();
+
+                String version = attributes.getValue( Attributes.Name.IMPLEMENTATION_VERSION );
+
+                return version != null ? version : attributes.getValue( Attributes.Name.SPECIFICATION_VERSION );
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return the installation's identity, the exe4jc executable and
+     *         compiler jar with their sizes and modification times, and the
+     *         exe4j version
+     */
+    public String getIdentity()
+    {
+        File exe = getExecutable();
+
+        StringBuffer identity = new StringBuffer();
+
+        identity.append( "exe4jc=" ).append( exe != null ? describe( exe ) : exe4jcExe );
+        identity.append( " compilerJar=" ).append( describe( getCompilerJar() ) );
+        identity.append( " version=" ).append( getVersion() );
+
+        return identity.toString();
+    }
+
+    /**
+     * @param file a file or null
+     * @return the file's path, size and modification time
+     */
+    private static String describe( File file )
+    {
+        if ( file == null )
+        {
+            return "none";
+        }
+
+        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Limits the number of exe4jc processes run at once by all the builds on a
+ * host that share the slot directory. A slot is held by locking one of the
+ * slot files in the directory, the operating system releases the lock if
+ * the build crashes so a slot is never lost.
+ *
+ * Waiters queue by creating a locked ticket file named after the time they
+ * started waiting, only those with fewer live tickets ahead of them than
+ * there are slots try to take one, so slots are handed out in the order they
+ * were asked for. The ticket of a crashed build is no longer locked and is
+ * removed by the next waiter.
+ *
+ * Every build sharing the directory must use the same number of slots, so
+ * a number derived from the host rather than configured is recorded in the
+ * directory by the first build to use it and read by those that follow.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class HostCompilerSlots
+{
+    /**
+     * A held slot, which must be released.
+     */
+    public class Slot
+    {
+        /**
+         * the locked slot or ticket file
+         */
+        private RandomAccessFile file;
+
+        /**
+         * the lock
+         */
+        private FileLock lock;
+
+        /**
+         * constructor
+         *
+         * @param file the locked slot or ticket file
+         * @param lock the lock
+         */
+        private Slot( RandomAccessFile file, FileLock lock )
+        {
+            this.file = file;
+            this.lock = lock;
+        }
+
+        /**
+         * Releases the slot, releasing it more than once has no effect.
+         */
+        public void release()
+        {
+            try
+            {
+                if ( lock.isValid() )
+                {
+                    lock.release();
+                }
+
+                file.close();
+            }
+            catch ( IOException e )
+            {
+                // closing the file releases the lock regardless
+            }
+        }
+    }
+
+    /**
+     * the time between attempts to take a slot in milliseconds
+     */
+    private static final long POLL_MILLIS = 200;
+
+    /**
+     * tickets younger than this may not have been locked by their owner
+     * yet, so they are never removed
+     */
+    private static final long TICKET_GRACE_MILLIS = 10000;
+
+    /**
+     * distinguishes tickets created in the same millisecond
+     */
+    private static final Random RANDOM = new Random();
+
+    /**
+     * the file the number of slots is recorded in
+     */
+    private static final String SLOTS_FILE = "slots.count";
+
+    /**
+     * serialises the threads of this JVM recording the number of slots, as
+     * file locks are held per JVM
+     */
+    private static final Object SLOTS_LOCK = new Object();
+
+    /**
+     * the slot directory
+     */
+    private File directory;
+
+    /**
+     * the ticket directory
+     */
+    private File queue;
+
+    /**
+     * the number of slots
+     */
+    private int slots;
+
+    /**
+     * constructor
+     *
+     * @param directory the slot directory shared by the builds on the host
+     * @param slots the maximum number of concurrent exe4jc processes
+     */
+    public HostCompilerSlots( File directory, int slots )
+    {
+        this.directory = directory;
+        this.queue = new File( directory, "queue" );
+        this.slots = Math.max( 1, slots );
+    }
+
+    /**
+     * Reads the number of slots recorded in a slot directory, recording the
+     * supplied number if there is none.
+     *
+     * @param directory the slot directory shared by the builds on the host
+     * @param slots the number of slots to record if none is
+     * @return the recorded number of slots
+     * @throws IOException if the number cannot be read or recorded
+     */
+    public static int getRecordedSlots( File directory, int slots )
+        throws IOException
+    {
+        directory.mkdirs();
+
+        synchronized ( SLOTS_LOCK )
+        {
+            RandomAccessFile file = new RandomAccessFile( new File( directory, SLOTS_FILE ), "rw" );
+
+            try
+            {
+                FileLock lock = file.getChannel().lock();
+
+                try
+                {
+                    String line = file.length() > 0 ? file.readLine() : null;
+
+                    try
+                    {
+                        if ( line != null && Integer.parseInt( line.trim() ) > 0 )
+                        {
+                            return Integer.parseInt( line.trim() );
+                        }
+                    }
+                    catch ( NumberFormatException e )
+                    {
+                        // recorded again below
+                    }
+
+                    file.setLength( 0 );
+                    file.writeBytes( Math.max( 1, slots ) + "\n" );
+
+                    return Math.max( 1, slots );
+                }
+                finally
+                {
+                    lock.release();
+                }
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Waits in turn for a free slot.
+     *
+     * @param timeout the maximum time to wait in milliseconds, 0 or less to
+     *            wait for as long as it takes
+     * @return the slot, or null if none became free in time
+     * @throws IOException if the slot directory cannot be used
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Slot acquire( long timeout )
+        throws IOException, InterruptedException
+    {
+        queue.mkdirs();
+
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+        Slot ticket = null;
+
+        String ticketName = null;
+
+        try
+        {
+            while ( true )
+            {
+                if ( ticket == null || !new File( queue, ticketName ).isFile() )
+                {
+                    // (re)join the queue, a removed ticket loses its place
+
+                    if ( ticket != null )
+                    {
+                        ticket.release();
+                    }
+
+                    ticketName = newTicketName();
+
+                    ticket = lock( new File( queue, ticketName ) );
+                }
+
+                if ( countTicketsAhead( ticketName ) < slots )
+                {
+                    for ( int i = 0; i < slots; i++ )
+                    {
+                        Slot slot = tryLock( new File( directory, "slot-" + i + ".lock" ) );
+
+                        if ( slot != null )
+                        {
+                            return slot;
+                        }
+                    }
+                }
+
+                if ( System.currentTimeMillis() >= deadline )
+                {
+                    return null;
+                }
+
+                Thread.sleep( POLL_MILLIS );
+            }
+        }
+        finally
+        {
+            if ( ticket != null )
+            {
+                ticket.release();
+
+                new File( queue, ticketName ).delete();
+            }
+        }
+    }
+
+    /**
+     * slots accessor
+     * @return Returns the maximum number of concurrent exe4jc processes.
+     */
+    public int getSlots()
+    {
+        return slots;
+    }
+
+    /**
+     * directory accessor
+     * @return Returns the slot directory.
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Counts the live tickets queued before the given one, removing those
+     * left by crashed builds.
+     *
+     * @param ticketName the waiter's ticket
+     * @return the number of live tickets ahead
+     * @throws IOException if the queue cannot be read
+     */
+    private int countTicketsAhead( String ticketName )
+        throws IOException
+    {
+        String[] names = queue.list();
+
+        if ( names == null )
+        {
+            throw new IOException( "Unable to list the exe4jc slot queue " + queue );
+        }
+
+        Arrays.sort( names );
+
+        int ahead = 0;
+
+        for ( int i = 0; i < names.length && names[i].compareTo( ticketName ) < 0; i++ )
+        {
+            File file = new File( queue, names[i] );
+
+            if ( System.currentTimeMillis() - file.lastModified() < TICKET_GRACE_MILLIS )
+            {
+                ahead++;
+
+                continue;
+            }
+
+            Slot stale = tryLock( file );
+
+            if ( stale == null )
+            {
+                ahead++;
+            }
+            else
+            {
+                stale.release();
+
+                file.delete();
+            }
+        }
+
+        return ahead;
+    }
+
+    /**
+     * @param file the file to lock
+     * @return the held lock, or null if another build or thread holds it
+     * @throws IOException if the file cannot be opened
+     */
+    private Slot tryLock( File file )
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+
+        FileLock lock = null;
+
+        try
+        {
+            lock = raf.getChannel().tryLock();
+        }
+        catch ( OverlappingFileLockException e )
+        {
+            // held by another thread of this JVM
+        }
+        finally
+        {
+            if ( lock == null )
+            {
+                raf.close();
+            }
+        }
+
+        return lock == null ? null : new Slot( raf, lock );
+    }
+
+    /**
+     * @param file the ticket file to create and lock
+     * @return the held lock
+     * @throws IOException if the ticket cannot be locked
+     */
+    private Slot lock( File file )
+        throws IOException
+    {
+        Slot ticket = tryLock( file );
+
+        if ( ticket == null )
+        {
+            throw new IOException( "Unable to lock the exe4jc slot queue ticket " + file );
+        }
+
+        return ticket;
+    }
+
+    /**
+     * @return a ticket name that sorts after those of earlier waiters
+     */
+    private static String newTicketName()
+    {
+        String time = Long.toString( System.currentTimeMillis() );
+
+        int random;
+
+        synchronized ( RANDOM )
+        {
+            random = RANDOM.nextInt( Integer.MAX_VALUE );
+        }
+
+        return "0000000000000000".substring( time.length() ) + time + "-" + Integer.toHexString( random ) + ".ticket";
+    }
+
+}
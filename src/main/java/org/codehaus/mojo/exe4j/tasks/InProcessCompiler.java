@@ -0,0 +1,408 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.Permission;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Runs the exe4j compiler inside the Maven JVM. The compiler jar is loaded
+ * into an isolated class loader that is cached for the rest of the build, its
+ * main class is invoked with the exe4jc arguments, its output is forwarded to
+ * the Maven logger and any System.exit() call it makes is trapped and turned
+ * into an exit code.
+ *
+ * The system streams and security manager are JVM wide so only one compiler
+ * runs in-process at a time, and nothing else may run in the JVM meanwhile:
+ * other threads' console output would be forwarded to this compiler's log and
+ * their System.exit() calls trapped. Callers must not use it when executions
+ * run concurrently. Trapping System.exit() needs a security manager, so it
+ * is only supported up to Java 17, which warns that the security manager is
+ * deprecated. Installing one is disallowed by default from Java 18 and
+ * impossible from Java 24.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class InProcessCompiler
+{
+    /**
+     * the last Java version a security manager can be installed on by default
+     */
+    public static final int MAX_JAVA_VERSION = 17;
+
+    /**
+     * the current compiler class loader for each jar path
+     */
+    private static final Map CLASS_LOADERS = new HashMap();
+
+    /**
+     * serialises the in-process compiler runs
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * the exe4j compiler jar
+     */
+    private File compilerJar;
+
+    /**
+     * the compiler entry point class
+     */
+    private String mainClass;
+
+    /**
+     * the logger compiler output is forwarded to
+     */
+    private Log log;
+
+    /**
+     * constructor
+     *
+     * @param compilerJar the exe4j compiler jar
+     * @param mainClass the compiler entry point class
+     * @param log the logger compiler output is forwarded to
+     */
+    public InProcessCompiler( File compilerJar, String mainClass, Log log )
+    {
+        this.compilerJar = compilerJar;
+        this.mainClass = mainClass;
+        this.log = log;
+    }
+
+    /**
+     * Checks whether System.exit() calls can be trapped in this JVM, which
+     * requires Java 17 or earlier and that a security manager may be
+     * installed.
+     *
+     * @return true if the compiler can be run in-process
+     */
+    public static boolean isSupported()
+    {
+        if ( getJavaVersion( System.getProperty( "java.specification.version" ) ) > MAX_JAVA_VERSION )
+        {
+            return false;
+        }
+
+        try
+        {
+            System.setSecurityManager( System.getSecurityManager() );
+
+            return true;
+        }
+        catch ( UnsupportedOperationException e )
+        {
+            return false;
+        }
+        catch ( SecurityException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @param version a Java specification version, such as 1.8 or 17
+     * @return the feature release number, 0 if it cannot be parsed
+     */
+    static int getJavaVersion( String version )
+    {
+        if ( version == null )
+        {
+            return 0;
+        }
+
+        String[] parts = version.split( "\\." );
+
+        try
+        {
+            int feature = Integer.parseInt( parts[0] );
+
+            return feature == 1 && parts.length > 1 ? Integer.parseInt( parts[1] ) : feature;
+        }
+        catch ( NumberFormatException e )
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * runs the compiler
+     *
+     * @param arguments the exe4jc command line arguments
+     * @return the compiler exit code
+     * @throws MojoExecutionException if the compiler cannot be loaded or
+     *             throws an exception
+     */
+    public int run( String[] arguments )
+        throws MojoExecutionException
+    {
+        synchronized ( LOCK )
+        {
+            Method main;
+
+            ClassLoader loader = getClassLoader( compilerJar );
+
+            try
+            {
+                main = loader.loadClass( mainClass ).getMethod( "main", new Class[] { String[].class } );
+            }
+            catch ( Exception e )
+            {
+                throw new MojoExecutionException( "Unable to load the exe4j compiler " + mainClass + " from "
+                    + compilerJar, e );
+            }
+
+            Thread thread = Thread.currentThread();
+
+            ClassLoader contextLoader = thread.getContextClassLoader();
+
+            PrintStream out = System.out;
+
+            PrintStream err = System.err;
+
+            SecurityManager securityManager = System.getSecurityManager();
+
+            LogOutputStream logOut = new LogOutputStream( log, false, out );
+
+            LogOutputStream logErr = new LogOutputStream( log, true, err );
+
+            try
+            {
+                System.setOut( new PrintStream( logOut, true ) );
+
+                System.setErr( new PrintStream( logErr, true ) );
+
+                System.setSecurityManager( new ExitTrap( securityManager ) );
+
+                thread.setContextClassLoader( loader );
+
+                main.invoke( null, new Object[] { arguments } );
+
+                return 0;
+            }
+            catch ( InvocationTargetException e )
+            {
+                if ( e.getTargetException() instanceof ExitException )
+                {
+                    return ( (ExitException) e.getTargetException() ).status;
+                }
+
+                throw new MojoExecutionException( "The exe4j compiler failed", e.getTargetException() );
+            }
+            catch ( IllegalAccessException e )
+            {
+                throw new MojoExecutionException( "Unable to invoke the exe4j compiler " + mainClass, e );
+            }
+            finally
+            {
+                thread.setContextClassLoader( contextLoader );
+
+                System.setSecurityManager( securityManager );
+
+                System.setOut( out );
+
+                System.setErr( err );
+
+                logOut.close();
+
+                logErr.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the isolated class loader for a compiler jar, creating it the
+     * first time the jar is used or when it has changed since. The loader's
+     * parent is the system class loader's parent so none of the plugin's or
+     * Maven's classes are visible to the compiler. Only the current loader is
+     * kept for each jar, the one a rebuilt or upgraded jar replaces is closed
+     * so its jar file isn't left open for the rest of the build.
+     *
+     * @param jar the compiler jar
+     * @return the class loader
+     * @throws MojoExecutionException if the jar does not exist
+     */
+    static ClassLoader getClassLoader( File jar )
+        throws MojoExecutionException
+    {
+        if ( !jar.isFile() )
+        {
+            throw new MojoExecutionException( "The exe4j compiler jar '" + jar.getAbsolutePath() + "' does not exist" );
+        }
+
+        String key = jar.getAbsolutePath();
+
+        long lastModified = jar.lastModified();
+
+        synchronized ( CLASS_LOADERS )
+        {
+            CompilerLoader current = (CompilerLoader) CLASS_LOADERS.get( key );
+
+            if ( current != null && current.lastModified == lastModified )
+            {
+                return current.loader;
+            }
+
+            URLClassLoader loader;
+
+            try
+            {
+                loader = new URLClassLoader( new URL[] { jar.toURL() }, ClassLoader.getSystemClassLoader().getParent() );
+            }
+            catch ( MalformedURLException e )
+            {
+                throw new MojoExecutionException( "Invalid exe4j compiler jar: " + jar, e );
+            }
+
+            CLASS_LOADERS.put( key, new CompilerLoader( lastModified, loader ) );
+
+            if ( current != null )
+            {
+                close( current.loader );
+            }
+
+            return loader;
+        }
+    }
+
+    /**
+     * Closes a class loader's jar files, URLClassLoader.close() only exists
+     * from Java 7 so earlier JVMs leave them to the garbage collector.
+     *
+     * @param loader the class loader
+     */
+    private static void close( URLClassLoader loader )
+    {
+        try
+        {
+            loader.getClass().getMethod( "close", new Class[0] ).invoke( loader, new Object[0] );
+        }
+        catch ( Exception e )
+        {
+            // nothing more can be done
+        }
+    }
+
+    /**
+     * A compiler jar's class loader and the jar's timestamp when it was
+     * created
+     */
+    private static final class CompilerLoader
+    {
+        /**
+         * the jar's modification time
+         */
+        private final long lastModified;
+
+        /**
+         * the class loader
+         */
+        private final URLClassLoader loader;
+
+        /**
+         * constructor
+         *
+         * @param lastModified the jar's modification time
+         * @param loader the class loader
+         */
+        CompilerLoader( long lastModified, URLClassLoader loader )
+        {
+            this.lastModified = lastModified;
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * Thrown in place of exiting the JVM
+     */
+    private static class ExitException
+        extends SecurityException
+    {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * the exit status
+         */
+        private int status;
+
+        /**
+         * constructor
+         *
+         * @param status the exit status
+         */
+        ExitException( int status )
+        {
+            super( "System.exit(" + status + ") trapped" );
+            this.status = status;
+        }
+    }
+
+    /**
+     * Security manager that traps System.exit() calls, all other checks are
+     * delegated to the security manager it replaces, if any.
+     */
+    private static class ExitTrap
+        extends SecurityManager
+    {
+        /**
+         * the security manager this one replaces
+         */
+        private SecurityManager delegate;
+
+        /**
+         * constructor
+         *
+         * @param delegate the security manager this one replaces, may be null
+         */
+        ExitTrap( SecurityManager delegate )
+        {
+            this.delegate = delegate;
+        }
+
+        public void checkExit( int status )
+        {
+            throw new ExitException( status );
+        }
+
+        public void checkPermission( Permission perm )
+        {
+            if ( delegate != null )
+            {
+                delegate.checkPermission( perm );
+            }
+        }
+
+        public void checkPermission( Permission perm, Object context )
+        {
+            if ( delegate != null )
+            {
+                delegate.checkPermission( perm, context );
+            }
+        }
+    }
+
+}
\ No newline at end of file
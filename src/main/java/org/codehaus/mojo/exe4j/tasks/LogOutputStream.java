@@ -0,0 +1,152 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Output stream that forwards each line written to it to a Maven logger. It
+ * is installed as System.out or System.err while the exe4j compiler runs
+ * in-process, so output the logger itself writes to the system streams is
+ * passed straight through to the original stream rather than looping back.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class LogOutputStream
+    extends OutputStream
+{
+    /**
+     * set while a line is being forwarded to the logger
+     */
+    private static final ThreadLocal FORWARDING = new ThreadLocal();
+
+    /**
+     * the logger lines are forwarded to
+     */
+    private Log log;
+
+    /**
+     * forward lines at warning rather than info level
+     */
+    private boolean warn;
+
+    /**
+     * the stream this one replaces
+     */
+    private PrintStream original;
+
+    /**
+     * the current line
+     */
+    private ByteArrayOutputStream line = new ByteArrayOutputStream( 256 );
+
+    /**
+     * constructor
+     *
+     * @param log the logger lines are forwarded to
+     * @param warn forward lines at warning rather than info level
+     * @param original the stream this one replaces
+     */
+    public LogOutputStream( Log log, boolean warn, PrintStream original )
+    {
+        this.log = log;
+        this.warn = warn;
+        this.original = original;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.OutputStream#write(int)
+     */
+    public synchronized void write( int b )
+        throws IOException
+    {
+        if ( FORWARDING.get() != null )
+        {
+            original.write( b );
+        }
+        else if ( b == '\n' )
+        {
+            forwardLine();
+        }
+        else if ( b != '\r' )
+        {
+            line.write( b );
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.OutputStream#flush()
+     */
+    public void flush()
+    {
+        if ( FORWARDING.get() != null )
+        {
+            original.flush();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.OutputStream#close()
+     */
+    public synchronized void close()
+    {
+        if ( line.size() > 0 )
+        {
+            forwardLine();
+        }
+    }
+
+    /**
+     * passes the current line on to the logger
+     */
+    private void forwardLine()
+    {
+        String text = line.toString();
+
+        line.reset();
+
+        FORWARDING.set( Boolean.TRUE );
+
+        try
+        {
+            if ( warn )
+            {
+                log.warn( text );
+            }
+            else
+            {
+                log.info( text );
+            }
+        }
+        finally
+        {
+            FORWARDING.set( null );
+        }
+    }
+
+}
\ No newline at end of file
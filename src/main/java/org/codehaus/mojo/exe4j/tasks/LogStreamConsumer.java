@@ -0,0 +1,203 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.mojo.exe4j.util.Timings;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Forwards each line of a process output stream to the Maven log as it
+ * arrives, prefixed with the name of the executable being built so the
+ * output of concurrent builds can be told apart. Output lines are logged at
+ * info level and error lines at warn level. Only the last few lines, each
+ * truncated to a maximum length, are kept for failure messages, so the
+ * memory used doesn't grow with the amount of output.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class LogStreamConsumer
+    implements StreamConsumer
+{
+    /**
+     * the maximum length of a kept line
+     */
+    private static final int MAX_LINE_LENGTH = 1024;
+
+    /**
+     * the logger
+     */
+    private Log log;
+
+    /**
+     * prepended to each logged line
+     */
+    private String prefix;
+
+    /**
+     * log lines at warn rather than info level
+     */
+    private boolean error;
+
+    /**
+     * the ring buffer of kept lines
+     */
+    private String[] tail;
+
+    /**
+     * the total number of lines consumed
+     */
+    private int count;
+
+    /**
+     * If set the lines that aren't indented are recorded as markers
+     */
+    private Timings timings;
+
+    /**
+     * qualifies the marker names
+     */
+    private String markerPrefix;
+
+    /**
+     * the time the last line was consumed, or the consumer created, in
+     * milliseconds
+     */
+    private volatile long lastLineTime = System.currentTimeMillis();
+
+    /**
+     * constructor
+     *
+     * @param log logger to use
+     * @param name the executable name lines are prefixed with, may be null
+     * @param error log lines at warn rather than info level
+     * @param tailLines the number of lines kept for getTail()
+     */
+    public LogStreamConsumer( Log log, String name, boolean error, int tailLines )
+    {
+        this.log = log;
+        this.prefix = name == null ? "" : "[" + name + "] ";
+        this.error = error;
+        this.tail = new String[Math.max( 0, tailLines )];
+    }
+
+    /**
+     * Records the lines that are not indented, exe4jc's verbose progress
+     * lines, as timing markers.
+     *
+     * @param timings the timings the markers are added to
+     * @param markerPrefix qualifies the marker names
+     */
+    public void setMarkers( Timings timings, String markerPrefix )
+    {
+        this.timings = timings;
+        this.markerPrefix = markerPrefix;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codehaus.plexus.util.cli.StreamConsumer#consumeLine(java.lang.String)
+     */
+    public void consumeLine( String line )
+    {
+        lastLineTime = System.currentTimeMillis();
+
+        if ( timings != null && line.length() > 0 && !Character.isWhitespace( line.charAt( 0 ) ) )
+        {
+            timings.addMarker( markerPrefix + line.trim() );
+        }
+
+        if ( error )
+        {
+            log.warn( prefix + line );
+        }
+        else
+        {
+            log.info( prefix + line );
+        }
+
+        synchronized ( this )
+        {
+            if ( tail.length > 0 )
+            {
+                tail[count % tail.length] = line.length() > MAX_LINE_LENGTH ? line.substring( 0, MAX_LINE_LENGTH )
+                    + "..." : line;
+            }
+
+            count++;
+        }
+    }
+
+    /**
+     * @return the time the last line was consumed, or the consumer created,
+     *         in milliseconds
+     */
+    public long getLastLineTime()
+    {
+        return lastLineTime;
+    }
+
+    /**
+     * @return the last lines consumed, oldest first
+     */
+    public synchronized List getTail()
+    {
+        int size = Math.min( count, tail.length );
+
+        List lines = new ArrayList( size );
+
+        for ( int i = count - size; i < count; i++ )
+        {
+            lines.add( tail[i % tail.length] );
+        }
+
+        return lines;
+    }
+
+    /**
+     * @return the last lines consumed separated by line breaks, noting how
+     *         many earlier lines were omitted
+     */
+    public synchronized String getTailText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        int size = Math.min( count, tail.length );
+
+        if ( count > size )
+        {
+            buffer.append( "(" ).append( count - size ).append( " earlier lines omitted)" );
+        }
+
+        for ( int i = count - size; i < count; i++ )
+        {
+            if ( buffer.length() > 0 )
+            {
+                buffer.append( '\n' );
+            }
+
+            buffer.append( tail[i % tail.length] );
+        }
+
+        return buffer.toString();
+    }
+
+}
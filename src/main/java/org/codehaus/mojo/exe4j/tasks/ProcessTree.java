@@ -0,0 +1,193 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Watches and kills a process together with the processes it started, exe4jc
+ * being a launcher that runs the compiler in a child JVM. The descendants are found
+ * through the java.lang.ProcessHandle API when the JVM has it, older JVMs
+ * only kill the process itself.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+class ProcessTree
+{
+    /**
+     * the time the processes are given to exit before they're forcibly
+     * killed
+     */
+    static final long GRACE_MILLIS = 5000;
+
+    /**
+     * utility class
+     */
+    private ProcessTree()
+    {
+    }
+
+    /**
+     * Asks the process and its descendants to exit, forcibly killing those
+     * still running after the grace period. The descendants are listed
+     * before anything is killed as orphaned processes are no longer
+     * descendants.
+     *
+     * @param process the process
+     * @return the number of processes killed
+     * @throws InterruptedException if interrupted while waiting for the
+     *             processes to exit, they've already been asked to exit
+     */
+    static int destroy( Process process )
+        throws InterruptedException
+    {
+        return destroy( process, GRACE_MILLIS );
+    }
+
+    /**
+     * Asks the process and its descendants to exit, forcibly killing those
+     * still running after the given grace period.
+     *
+     * @param process the process
+     * @param graceMillis the time the processes are given to exit
+     * @return the number of processes killed
+     * @throws InterruptedException if interrupted while waiting for the
+     *             processes to exit, they've already been asked to exit
+     */
+    static int destroy( Process process, long graceMillis )
+        throws InterruptedException
+    {
+        List handles = getHandles( process );
+
+        if ( handles == null )
+        {
+            process.destroy();
+
+            return 1;
+        }
+
+        for ( int i = 0; i < handles.size(); i++ )
+        {
+            invoke( handles.get( i ), "destroy" );
+        }
+
+        long deadline = System.currentTimeMillis() + graceMillis;
+
+        while ( isAnyAlive( handles ) && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 100 );
+        }
+
+        for ( int i = 0; i < handles.size(); i++ )
+        {
+            if ( Boolean.TRUE.equals( invoke( handles.get( i ), "isAlive" ) ) )
+            {
+                invoke( handles.get( i ), "destroyForcibly" );
+            }
+        }
+
+        return handles.size();
+    }
+
+    /**
+     * @param process the process
+     * @return true if the process has not exited
+     */
+    static boolean isRunning( Process process )
+    {
+        try
+        {
+            process.exitValue();
+
+            return false;
+        }
+        catch ( IllegalThreadStateException e )
+        {
+            return true;
+        }
+    }
+
+    /**
+     * @param process the process
+     * @return the process handles of the descendants followed by that of
+     *         the process, or null if the JVM has no ProcessHandle API
+     */
+    private static List getHandles( Process process )
+    {
+        try
+        {
+            Object handle = Process.class.getMethod( "toHandle", new Class[0] ).invoke( process, new Object[0] );
+
+            Object descendants = invoke( handle, "descendants" );
+
+            Method toArray = Class.forName( "java.util.stream.Stream" ).getMethod( "toArray", new Class[0] );
+
+            List handles = new ArrayList( Arrays.asList( (Object[]) toArray.invoke( descendants, new Object[0] ) ) );
+
+            handles.add( handle );
+
+            return handles;
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @param handles the process handles
+     * @return true if any of the processes is still running
+     */
+    private static boolean isAnyAlive( List handles )
+    {
+        for ( int i = 0; i < handles.size(); i++ )
+        {
+            if ( Boolean.TRUE.equals( invoke( handles.get( i ), "isAlive" ) ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Invokes a ProcessHandle method through the public interface, the
+     * implementation class is not accessible.
+     *
+     * @param handle the process handle
+     * @param name the method name
+     * @return the result or null if the method failed
+     */
+    private static Object invoke( Object handle, String name )
+    {
+        try
+        {
+            Method method = Class.forName( "java.lang.ProcessHandle" ).getMethod( name, new Class[0] );
+
+            return method.invoke( handle, new Object[0] );
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+
+}
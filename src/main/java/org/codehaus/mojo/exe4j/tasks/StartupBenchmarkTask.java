@@ -0,0 +1,526 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Launches an application directly with java and measures its start up. The
+ * JVM logs each class it loads with its uptime (JDK 9+), the time to main is
+ * the uptime the main class was loaded at and the time to the marker class
+ * the uptime the marker class was loaded at. Both are taken from the JVM's
+ * own clock, so they exclude the time the log takes to reach the build, and
+ * also the time the operating system takes to start the java process. The run is ended once the marker class, or the
+ * main class if there is no marker class, has been loaded.
+ *
+ * The peak resident set size is read from /proc while the application runs
+ * so it is only available on Linux. It covers the run until it ended, so
+ * without a marker class only the JVM's bootstrap up to the main class.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class StartupBenchmarkTask
+{
+    /**
+     * The measurements of a single run, measurements that are not available
+     * are -1.
+     */
+    public static class Sample
+    {
+        /**
+         * JVM uptime in nanoseconds when the main class was loaded
+         */
+        private volatile long timeToMain = -1;
+
+        /**
+         * JVM uptime in nanoseconds when the marker class was loaded
+         */
+        private volatile long timeToMarker = -1;
+
+        /**
+         * the peak resident set size in kilobytes
+         */
+        private long peakRss = -1;
+
+        /**
+         * @return JVM uptime in nanoseconds when the main class was loaded
+         */
+        public long getTimeToMain()
+        {
+            return timeToMain;
+        }
+
+        /**
+         * @return JVM uptime in nanoseconds when the marker class was loaded
+         */
+        public long getTimeToMarker()
+        {
+            return timeToMarker;
+        }
+
+        /**
+         * @return the peak resident set size in kilobytes until the run
+         *         ended, at the marker class or, without one, the main class
+         */
+        public long getPeakRss()
+        {
+            return peakRss;
+        }
+    }
+
+    /**
+     * the java executable the application is run with
+     */
+    private String javaExecutable;
+
+    /**
+     * the JVM arguments
+     */
+    private List jvmArguments;
+
+    /**
+     * the application class path files
+     */
+    private List classPath;
+
+    /**
+     * the application main class
+     */
+    private String mainClass;
+
+    /**
+     * the main class arguments
+     */
+    private List arguments = new ArrayList();
+
+    /**
+     * If set the run ends once this class has been loaded
+     */
+    private String markerClass;
+
+    /**
+     * the maximum run time in seconds
+     */
+    private int timeout = 60;
+
+    /**
+     * The working directory
+     */
+    private File workingDirectory;
+
+    /**
+     * A MavenProject logger (lame coupling)
+     */
+    private Log log;
+
+    /**
+     * constructor
+     *
+     * @param javaExecutable the java executable the application is run with
+     * @param jvmArguments the JVM arguments
+     * @param classPath the application class path files
+     * @param mainClass the application main class
+     * @param log logger to use
+     */
+    public StartupBenchmarkTask( String javaExecutable, List jvmArguments, List classPath, String mainClass, Log log )
+    {
+        super();
+
+        this.javaExecutable = javaExecutable;
+        this.jvmArguments = jvmArguments;
+        this.classPath = classPath;
+        this.mainClass = mainClass;
+        this.log = log;
+    }
+
+    /**
+     * launches the application once
+     *
+     * @return the run's measurements
+     * @throws MojoExecutionException raised if the application cannot be
+     *             run, exits or times out before loading the marker class
+     */
+    public Sample run()
+        throws MojoExecutionException
+    {
+        List command = getCommand();
+
+        log.debug( "Executing: " + command );
+
+        ProcessBuilder builder = new ProcessBuilder( command );
+
+        if ( workingDirectory != null )
+        {
+            builder.directory( workingDirectory );
+        }
+
+        Sample sample = new Sample();
+
+        Process process;
+
+        try
+        {
+            process = builder.start();
+
+            // the application gets no input
+
+            process.getOutputStream().close();
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to launch " + mainClass, e );
+        }
+
+        Thread out = startReader( process.getInputStream(), sample );
+
+        Thread err = startReader( process.getErrorStream(), null );
+
+        long pid = getPid( process );
+
+        try
+        {
+            long deadline = System.currentTimeMillis() + timeout * 1000L;
+
+            boolean running;
+
+            while ( ( running = ProcessTree.isRunning( process ) ) && !isComplete( sample )
+                && System.currentTimeMillis() < deadline )
+            {
+                sample.peakRss = Math.max( sample.peakRss, readPeakRss( pid ) );
+
+                Thread.sleep( 10 );
+            }
+
+            if ( running )
+            {
+                sample.peakRss = Math.max( sample.peakRss, readPeakRss( pid ) );
+
+                ProcessTree.destroy( process );
+            }
+
+            int exitCode = process.waitFor();
+
+            // a process the application left running may hold the streams
+
+            out.join( ProcessTree.GRACE_MILLIS );
+            err.join( ProcessTree.GRACE_MILLIS );
+
+            if ( !isComplete( sample ) )
+            {
+                String awaited = markerClass != null ? markerClass : mainClass;
+
+                throw new MojoExecutionException( running ? awaited + " was not loaded within " + timeout + "s"
+                                : mainClass + " exited with code " + exitCode + " before loading " + awaited );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            // the processes the application started are ended too
+
+            try
+            {
+                ProcessTree.destroy( process );
+            }
+            catch ( InterruptedException again )
+            {
+                // they've already been asked to exit
+            }
+
+            Thread.currentThread().interrupt();
+
+            throw new MojoExecutionException( "Interrupted while benchmarking " + mainClass, e );
+        }
+
+        return sample;
+    }
+
+    /**
+     * @param sample the run's measurements
+     * @return true once the class that ends the run has been loaded
+     */
+    private boolean isComplete( Sample sample )
+    {
+        return markerClass != null ? sample.timeToMarker >= 0 : sample.timeToMain >= 0;
+    }
+
+    /**
+     * @return the command line
+     */
+    private List getCommand()
+    {
+        List command = new ArrayList();
+
+        command.add( javaExecutable );
+
+        command.addAll( jvmArguments );
+
+        command.add( "-Xlog:class+load=info:stdout:uptimenanos" );
+
+        StringBuffer path = new StringBuffer();
+
+        Iterator itr = classPath.iterator();
+
+        while ( itr.hasNext() )
+        {
+            if ( path.length() > 0 )
+            {
+                path.append( File.pathSeparatorChar );
+            }
+
+            path.append( ( (File) itr.next() ).getPath() );
+        }
+
+        command.add( "-cp" );
+        command.add( path.toString() );
+
+        command.add( mainClass );
+
+        command.addAll( arguments );
+
+        return command;
+    }
+
+    /**
+     * Starts a thread that logs a process stream at debug level, recording
+     * the JVM uptime the main and marker classes are loaded at.
+     *
+     * @param in the process stream
+     * @param sample the measurements to record the load times in, null if
+     *            the stream isn't watched
+     * @return the started thread
+     */
+    private Thread startReader( final InputStream in, final Sample sample )
+    {
+        final String main = " " + mainClass + " source:";
+
+        final String marker = markerClass == null ? null : " " + markerClass + " source:";
+
+        Thread reader = new Thread( "exe4j-benchmark-" + ( sample != null ? "out" : "err" ) )
+        {
+            public void run()
+            {
+                try
+                {
+                    BufferedReader lines = new BufferedReader( new InputStreamReader( in ) );
+
+                    String line;
+
+                    while ( ( line = lines.readLine() ) != null )
+                    {
+                        if ( sample != null )
+                        {
+                            if ( sample.timeToMain < 0 && line.indexOf( main ) >= 0 )
+                            {
+                                sample.timeToMain = parseUptime( line );
+                            }
+
+                            if ( marker != null && sample.timeToMarker < 0 && line.indexOf( marker ) >= 0 )
+                            {
+                                sample.timeToMarker = parseUptime( line );
+                            }
+                        }
+
+                        log.debug( line );
+                    }
+                }
+                catch ( IOException e )
+                {
+                    // the process has gone
+                }
+            }
+        };
+
+        reader.setDaemon( true );
+
+        reader.start();
+
+        return reader;
+    }
+
+    /**
+     * @param line a class load log line decorated with uptimenanos, for
+     *            example "[16035128ns] java.lang.Object source: jrt:/java.base"
+     * @return the JVM uptime in nanoseconds, or -1 if the line isn't
+     *         decorated with it
+     */
+    static long parseUptime( String line )
+    {
+        int end = line.indexOf( "ns]" );
+
+        if ( !line.startsWith( "[" ) || end < 2 )
+        {
+            return -1;
+        }
+
+        try
+        {
+            return Long.parseLong( line.substring( 1, end ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * @param process the process
+     * @return the process id or -1 if the JVM doesn't expose it
+     */
+    private static long getPid( Process process )
+    {
+        try
+        {
+            return ( (Number) Process.class.getMethod( "pid", new Class[0] ).invoke( process, new Object[0] ) )
+                .longValue();
+        }
+        catch ( Exception e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * @param pid the process id
+     * @return the process's peak resident set size in kilobytes or -1 if it
+     *         cannot be read
+     */
+    private static long readPeakRss( long pid )
+    {
+        File status = new File( "/proc/" + pid + "/status" );
+
+        if ( pid < 0 || !status.isFile() )
+        {
+            return -1;
+        }
+
+        try
+        {
+            BufferedReader reader = new BufferedReader( new FileReader( status ) );
+
+            try
+            {
+                String line;
+
+                while ( ( line = reader.readLine() ) != null )
+                {
+                    if ( line.startsWith( "VmHWM:" ) )
+                    {
+                        return Long.parseLong( line.substring( 6 ).replaceAll( "[^0-9]", "" ) );
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // the process has gone
+        }
+        catch ( NumberFormatException e )
+        {
+            // unexpected format
+        }
+
+        return -1;
+    }
+
+    /**
+     * arguments accessor
+     * @return Returns the arguments.
+     */
+    public List getArguments()
+    {
+        return arguments;
+    }
+
+    /**
+     * arguments mutator
+     * @param arguments The main class arguments to set.
+     */
+    public void setArguments( List arguments )
+    {
+        this.arguments = arguments;
+    }
+
+    /**
+     * markerClass accessor
+     * @return Returns the markerClass.
+     */
+    public String getMarkerClass()
+    {
+        return markerClass;
+    }
+
+    /**
+     * markerClass mutator
+     * @param markerClass The markerClass to set.
+     */
+    public void setMarkerClass( String markerClass )
+    {
+        this.markerClass = markerClass;
+    }
+
+    /**
+     * timeout accessor
+     * @return Returns the timeout in seconds.
+     */
+    public int getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * timeout mutator
+     * @param timeout The timeout to set in seconds.
+     */
+    public void setTimeout( int timeout )
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * workingDirectory accessor
+     * @return Returns the workingDirectory.
+     */
+    public File getWorkingDirectory()
+    {
+        return workingDirectory;
+    }
+
+    /**
+     * workingDirectory mutator
+     * @param workingDirectory The workingDirectory to set.
+     */
+    public void setWorkingDirectory( File workingDirectory )
+    {
+        this.workingDirectory = workingDirectory;
+    }
+
+}
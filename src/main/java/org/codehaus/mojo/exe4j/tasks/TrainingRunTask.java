@@ -0,0 +1,570 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.mojo.exe4j.util.AtomicFileWriter;
+
+/**
+ * Runs an application once to record the classes it loads into a class data
+ * sharing archive. In "cds" mode a dynamic AppCDS archive is written with
+ * -XX:ArchiveClassesAtExit (JDK 13+), in "aot" mode an AOT cache is written
+ * with -XX:AOTCacheOutput (JDK 25+). In "trace" mode the classes loaded from
+ * the class path are logged with -Xlog:class+load (JDK 9+) and written to
+ * the archive file in the order they were loaded, one per line as the class
+ * name and the archive or directory it came from separated by a tab.
+ *
+ * The run ends when the application exits, when the marker class is loaded
+ * or when the timeout expires. In the latter two cases the JVM, and any
+ * processes it started, are asked to terminate, the JVM writes the archive
+ * as it shuts down on platforms where termination runs the JVM's shutdown
+ * sequence. Those still running after two minutes are killed.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class TrainingRunTask
+{
+    /**
+     * dynamic AppCDS archive mode
+     */
+    public static final String CDS_MODE = "cds";
+
+    /**
+     * AOT cache mode
+     */
+    public static final String AOT_MODE = "aot";
+
+    /**
+     * class load trace mode
+     */
+    public static final String TRACE_MODE = "trace";
+
+    /**
+     * the -Xlog:class+load tag and the separator before a class's source
+     */
+    private static final String LOAD_TAG = "[class,load] ";
+
+    private static final String SOURCE = " source: ";
+
+    /**
+     * the time the JVM is given to write the archive once it has been asked
+     * to exit, before it and the processes it started are killed
+     */
+    static final long EXIT_GRACE_MILLIS = 120000;
+
+    /**
+     * the java executable the application is run with
+     */
+    private String javaExecutable;
+
+    /**
+     * the application class path files
+     */
+    private List classPath;
+
+    /**
+     * the application main class
+     */
+    private String mainClass;
+
+    /**
+     * the archive written by the run
+     */
+    private File archiveFile;
+
+    /**
+     * the archive mode, "cds" or "aot"
+     */
+    private String mode = CDS_MODE;
+
+    /**
+     * If set the run ends once this class has been loaded
+     */
+    private String markerClass;
+
+    /**
+     * the maximum run time in seconds
+     */
+    private int timeout = 60;
+
+    /**
+     * The working directory
+     */
+    private File workingDirectory;
+
+    /**
+     * A MavenProject logger (lame coupling)
+     */
+    private Log log;
+
+    /**
+     * set by the output reader once the marker class has been loaded
+     */
+    private volatile boolean markerLoaded;
+
+    /**
+     * the class name and source file of each class loaded from the class
+     * path, recorded in trace mode
+     */
+    private List loadedClasses = new ArrayList();
+
+    /**
+     * constructor
+     *
+     * @param javaExecutable the java executable the application is run with
+     * @param classPath the application class path files
+     * @param mainClass the application main class
+     * @param archiveFile the archive written by the run
+     * @param log logger to use
+     */
+    public TrainingRunTask( String javaExecutable, List classPath, String mainClass, File archiveFile, Log log )
+    {
+        super();
+
+        this.javaExecutable = javaExecutable;
+        this.classPath = classPath;
+        this.mainClass = mainClass;
+        this.archiveFile = archiveFile;
+        this.log = log;
+    }
+
+    /**
+     * @param mode the archive mode, CDS_MODE or AOT_MODE
+     * @param executableName the executable the archive is used by
+     * @return the default archive file name
+     */
+    public static String getArchiveName( String mode, String executableName )
+    {
+        return executableName + ( AOT_MODE.equals( mode ) ? ".aot" : ".jsa" );
+    }
+
+    /**
+     * @param mode the archive mode, CDS_MODE or AOT_MODE
+     * @param path the archive path
+     * @return the JVM option that makes the JVM use the archive
+     */
+    public static String getArchiveOption( String mode, String path )
+    {
+        return ( AOT_MODE.equals( mode ) ? "-XX:AOTCache=" : "-XX:SharedArchiveFile=" ) + path;
+    }
+
+    /**
+     * runs the application and checks it wrote the archive
+     *
+     * @throws MojoExecutionException raised if the application cannot be run
+     *             or no archive is written
+     */
+    public void execute()
+        throws MojoExecutionException
+    {
+        List command = getCommand();
+
+        log.debug( "Executing training run: " + command );
+
+        // the JVM writes the archive read-only
+
+        archiveFile.setWritable( true );
+
+        archiveFile.delete();
+
+        archiveFile.getAbsoluteFile().getParentFile().mkdirs();
+
+        ProcessBuilder builder = new ProcessBuilder( command );
+
+        if ( workingDirectory != null )
+        {
+            builder.directory( workingDirectory );
+        }
+
+        Process process;
+
+        try
+        {
+            process = builder.start();
+
+            // the application gets no input
+
+            process.getOutputStream().close();
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to execute the training run", e );
+        }
+
+        Thread out = startReader( process.getInputStream(), true );
+
+        Thread err = startReader( process.getErrorStream(), false );
+
+        try
+        {
+            long deadline = System.currentTimeMillis() + timeout * 1000L;
+
+            while ( ProcessTree.isRunning( process ) && !markerLoaded && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep( 100 );
+            }
+
+            if ( ProcessTree.isRunning( process ) )
+            {
+                log.info( markerLoaded ? "Marker class " + markerClass + " loaded, ending the training run"
+                                : "Training run timed out after " + timeout + "s, ending it" );
+
+                // the processes the application started are ended too, so
+                // none of them keep the output streams open
+
+                ProcessTree.destroy( process, EXIT_GRACE_MILLIS );
+            }
+
+            int exitCode = process.waitFor();
+
+            // a process the application left running may hold the streams
+
+            out.join( ProcessTree.GRACE_MILLIS );
+            err.join( ProcessTree.GRACE_MILLIS );
+
+            log.debug( "Training run exited with code: " + exitCode );
+        }
+        catch ( InterruptedException e )
+        {
+            // the processes the application started are ended too
+
+            try
+            {
+                ProcessTree.destroy( process );
+            }
+            catch ( InterruptedException again )
+            {
+                // they've already been asked to exit
+            }
+
+            Thread.currentThread().interrupt();
+
+            throw new MojoExecutionException( "Interrupted during the training run", e );
+        }
+
+        if ( TRACE_MODE.equals( mode ) )
+        {
+            writeTrace();
+        }
+
+        if ( !archiveFile.isFile() )
+        {
+            throw new MojoExecutionException( "The training run did not write " + archiveFile
+                + ", check the java executable supports " + mode + " archives" );
+        }
+    }
+
+    /**
+     * @return the training run command line
+     */
+    List getCommand()
+    {
+        List command = new ArrayList();
+
+        command.add( javaExecutable );
+
+        if ( AOT_MODE.equals( mode ) )
+        {
+            command.add( "-XX:AOTCacheOutput=" + archiveFile.getAbsolutePath() );
+        }
+        else if ( TRACE_MODE.equals( mode ) )
+        {
+            // classes from the default CDS archive have no class path source
+
+            command.add( "-Xshare:off" );
+        }
+        else
+        {
+            command.add( "-XX:ArchiveClassesAtExit=" + archiveFile.getAbsolutePath() );
+        }
+
+        if ( markerClass != null || TRACE_MODE.equals( mode ) )
+        {
+            command.add( "-Xlog:class+load=info:stdout" );
+        }
+
+        StringBuffer path = new StringBuffer();
+
+        Iterator itr = classPath.iterator();
+
+        while ( itr.hasNext() )
+        {
+            if ( path.length() > 0 )
+            {
+                path.append( File.pathSeparatorChar );
+            }
+
+            path.append( ( (File) itr.next() ).getPath() );
+        }
+
+        command.add( "-cp" );
+        command.add( path.toString() );
+
+        command.add( mainClass );
+
+        return command;
+    }
+
+    /**
+     * Starts a thread that logs a process stream at debug level, watching
+     * for the marker class being loaded.
+     *
+     * @param in the process stream
+     * @param watch watch the stream for the marker class
+     * @return the started thread
+     */
+    private Thread startReader( final InputStream in, final boolean watch )
+    {
+        final String marker = markerClass == null ? null : " " + markerClass + SOURCE;
+
+        final boolean trace = watch && TRACE_MODE.equals( mode );
+
+        Thread reader = new Thread( "exe4j-training-" + ( watch ? "out" : "err" ) )
+        {
+            public void run()
+            {
+                try
+                {
+                    BufferedReader lines = new BufferedReader( new InputStreamReader( in ) );
+
+                    String line;
+
+                    while ( ( line = lines.readLine() ) != null )
+                    {
+                        if ( watch && marker != null && line.indexOf( marker ) >= 0 )
+                        {
+                            markerLoaded = true;
+                        }
+
+                        if ( trace )
+                        {
+                            recordLoad( line );
+                        }
+
+                        log.debug( line );
+                    }
+                }
+                catch ( IOException e )
+                {
+                    // the process has gone
+                }
+            }
+        };
+
+        reader.setDaemon( true );
+
+        reader.start();
+
+        return reader;
+    }
+
+    /**
+     * Records a class loaded from a file on the class path, lines that
+     * aren't class load events, such as the application's own output, are
+     * ignored.
+     *
+     * @param line a line of the application's standard output
+     */
+    private void recordLoad( String line )
+    {
+        int tag = line.indexOf( LOAD_TAG );
+
+        int source = line.indexOf( SOURCE );
+
+        if ( tag < 0 || source < tag )
+        {
+            return;
+        }
+
+        String location = line.substring( source + SOURCE.length() ).trim();
+
+        if ( !location.startsWith( "file:" ) )
+        {
+            return;
+        }
+
+        String name = line.substring( tag + LOAD_TAG.length(), source ).trim();
+
+        synchronized ( loadedClasses )
+        {
+            loadedClasses.add( new String[] { name, toFile( location ).getPath() } );
+        }
+    }
+
+    /**
+     * @param url a file URL as logged by the JVM, which may not be encoded
+     * @return the file
+     */
+    static File toFile( String url )
+    {
+        try
+        {
+            return new File( new URI( url ) );
+        }
+        catch ( URISyntaxException e )
+        {
+            // fall through, the path wasn't encoded
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // fall through
+        }
+
+        String path = url.substring( "file:".length() );
+
+        // file:/C:/dir on Windows
+
+        if ( path.length() > 2 && path.charAt( 0 ) == '/' && path.charAt( 2 ) == ':' )
+        {
+            path = path.substring( 1 );
+        }
+
+        return new File( path );
+    }
+
+    /**
+     * writes the recorded class loads to the archive file
+     *
+     * @throws MojoExecutionException if the trace cannot be written
+     */
+    private void writeTrace()
+        throws MojoExecutionException
+    {
+        if ( loadedClasses.isEmpty() )
+        {
+            throw new MojoExecutionException( "The training run loaded no classes from the class path, check the "
+                + "java executable supports -Xlog (JDK 9+)" );
+        }
+
+        try
+        {
+            AtomicFileWriter writer = new AtomicFileWriter( archiveFile, "UTF-8" );
+
+            try
+            {
+                synchronized ( loadedClasses )
+                {
+                    Iterator itr = loadedClasses.iterator();
+
+                    while ( itr.hasNext() )
+                    {
+                        String[] load = (String[]) itr.next();
+
+                        writer.write( load[0] + "\t" + load[1] + "\n" );
+                    }
+                }
+
+                writer.commit();
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to write the class load trace " + archiveFile, e );
+        }
+
+        log.debug( "Recorded " + loadedClasses.size() + " class loads" );
+    }
+
+    /**
+     * mode accessor
+     * @return Returns the mode.
+     */
+    public String getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * mode mutator
+     * @param mode The mode to set, "cds", "aot" or "trace".
+     */
+    public void setMode( String mode )
+    {
+        this.mode = mode;
+    }
+
+    /**
+     * markerClass accessor
+     * @return Returns the markerClass.
+     */
+    public String getMarkerClass()
+    {
+        return markerClass;
+    }
+
+    /**
+     * markerClass mutator
+     * @param markerClass The markerClass to set.
+     */
+    public void setMarkerClass( String markerClass )
+    {
+        this.markerClass = markerClass;
+    }
+
+    /**
+     * timeout accessor
+     * @return Returns the timeout in seconds.
+     */
+    public int getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * timeout mutator
+     * @param timeout The timeout to set in seconds.
+     */
+    public void setTimeout( int timeout )
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * workingDirectory accessor
+     * @return Returns the workingDirectory.
+     */
+    public File getWorkingDirectory()
+    {
+        return workingDirectory;
+    }
+
+    /**
+     * workingDirectory mutator
+     * @param workingDirectory The workingDirectory to set.
+     */
+    public void setWorkingDirectory( File workingDirectory )
+    {
+        this.workingDirectory = workingDirectory;
+    }
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.Channels;
+
+/**
+ * Writer that writes to a temporary file next to its target and renames it
+ * over the target when committed, so readers of the target never see a
+ * partially written file. Closing the writer without committing it discards
+ * the temporary file.
+ *
+ * The temporary file is moved with java.nio.file.Files.move on JVMs that
+ * have it (Java 7+), atomically where the file system supports it. Older
+ * JVMs rename it, deleting the target first on platforms, such as Windows,
+ * that won't rename over an existing file, so there a reader may briefly
+ * find no target.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class AtomicFileWriter
+    extends Writer
+{
+    /**
+     * the file being written
+     */
+    private File target;
+
+    /**
+     * the temporary file
+     */
+    private File temp;
+
+    /**
+     * the temporary file writer
+     */
+    private Writer writer;
+
+    /**
+     * set once the temporary file has been closed
+     */
+    private boolean closed;
+
+    /**
+     * constructor
+     *
+     * @param target the file to write
+     * @param encoding the character encoding
+     * @throws IOException if the temporary file cannot be created
+     */
+    public AtomicFileWriter( File target, String encoding )
+        throws IOException
+    {
+        this.target = target;
+
+        this.temp = File.createTempFile( target.getName(), ".tmp", target.getAbsoluteFile().getParentFile() );
+
+        this.writer = Channels.newWriter( new FileOutputStream( temp ).getChannel(), encoding );
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Writer#write(char[], int, int)
+     */
+    public void write( char[] cbuf, int off, int len )
+        throws IOException
+    {
+        writer.write( cbuf, off, len );
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Writer#write(java.lang.String, int, int)
+     */
+    public void write( String str, int off, int len )
+        throws IOException
+    {
+        writer.write( str, off, len );
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Writer#flush()
+     */
+    public void flush()
+        throws IOException
+    {
+        writer.flush();
+    }
+
+    /**
+     * closes the temporary file and renames it over the target
+     *
+     * @throws IOException if the file cannot be written or renamed
+     */
+    public void commit()
+        throws IOException
+    {
+        closed = true;
+
+        writer.close();
+
+        try
+        {
+            if ( move( temp, target ) )
+            {
+                return;
+            }
+        }
+        catch ( IOException e )
+        {
+            temp.delete();
+
+            throw e;
+        }
+
+        if ( !temp.renameTo( target ) )
+        {
+            // some platforms won't rename over an existing file
+
+            target.delete();
+
+            if ( !temp.renameTo( target ) )
+            {
+                temp.delete();
+
+                throw new IOException( "Unable to rename " + temp + " to " + target );
+            }
+        }
+    }
+
+    /**
+     * Closes the temporary file and renames it over the target if their
+     * contents differ, otherwise the target, and its timestamp, are left
+     * untouched. The files are compared a buffer at a time.
+     *
+     * @return true if the target was replaced
+     * @throws IOException if the file cannot be written or renamed
+     */
+    public boolean commitIfChanged()
+        throws IOException
+    {
+        writer.flush();
+
+        if ( target.isFile() && target.length() == temp.length() && contentEquals( target, temp ) )
+        {
+            close();
+
+            return false;
+        }
+
+        commit();
+
+        return true;
+    }
+
+    /**
+     * Moves a file over another with java.nio.file.Files.move, atomically if
+     * the file system supports it.
+     *
+     * @param source the file to move
+     * @param target the file to replace
+     * @return true if the file was moved, false if the JVM doesn't have
+     *         java.nio.file
+     * @throws IOException if the file cannot be moved
+     */
+    static boolean move( File source, File target )
+        throws IOException
+    {
+        Method toPath;
+        Method move;
+        Class optionType;
+        Object atomic;
+        Object replace;
+
+        try
+        {
+            Class pathType = Class.forName( "java.nio.file.Path" );
+
+            optionType = Class.forName( "java.nio.file.CopyOption" );
+
+            Class options = Class.forName( "java.nio.file.StandardCopyOption" );
+
+            toPath = File.class.getMethod( "toPath", new Class[0] );
+            move = Class.forName( "java.nio.file.Files" ).getMethod( "move", new Class[] { pathType, pathType,
+                Array.newInstance( optionType, 0 ).getClass() } );
+            atomic = options.getField( "ATOMIC_MOVE" ).get( null );
+            replace = options.getField( "REPLACE_EXISTING" ).get( null );
+        }
+        catch ( Exception e )
+        {
+            return false;
+        }
+
+        Object[] atomicOptions = (Object[]) Array.newInstance( optionType, 2 );
+        atomicOptions[0] = atomic;
+        atomicOptions[1] = replace;
+
+        Object[] replaceOptions = (Object[]) Array.newInstance( optionType, 1 );
+        replaceOptions[0] = replace;
+
+        try
+        {
+            Object from = toPath.invoke( source, new Object[0] );
+            Object to = toPath.invoke( target, new Object[0] );
+
+            try
+            {
+                move.invoke( null, new Object[] { from, to, atomicOptions } );
+            }
+            catch ( InvocationTargetException e )
+            {
+                if ( !e.getCause().getClass().getName().equals( "java.nio.file.AtomicMoveNotSupportedException" ) )
+                {
+                    throw e;
+                }
+
+                // another file system, the best that can be done
+
+                move.invoke( null, new Object[] { from, to, replaceOptions } );
+            }
+
+            return true;
+        }
+        catch ( InvocationTargetException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException( "Unable to move " + source + " to " + target + ": " + e.getCause() );
+        }
+        catch ( IllegalAccessException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * compares two files of the same length
+     *
+     * @param file1 the first file
+     * @param file2 the second file
+     * @return true if the files have the same content
+     * @throws IOException if either file cannot be read
+     */
+    private static boolean contentEquals( File file1, File file2 )
+        throws IOException
+    {
+        InputStream in1 = new FileInputStream( file1 );
+
+        try
+        {
+            InputStream in2 = new FileInputStream( file2 );
+
+            try
+            {
+                byte[] buffer1 = new byte[8192];
+                byte[] buffer2 = new byte[8192];
+
+                int count;
+                while ( ( count = readFully( in1, buffer1 ) ) > 0 )
+                {
+                    if ( readFully( in2, buffer2 ) != count )
+                    {
+                        return false;
+                    }
+
+                    for ( int i = 0; i < count; i++ )
+                    {
+                        if ( buffer1[i] != buffer2[i] )
+                        {
+                            return false;
+                        }
+                    }
+                }
+
+                return in2.read() < 0;
+            }
+            finally
+            {
+                in2.close();
+            }
+        }
+        finally
+        {
+            in1.close();
+        }
+    }
+
+    /**
+     * fills a buffer from a stream
+     *
+     * @param in the stream
+     * @param buffer the buffer
+     * @return the number of bytes read, less than the buffer length only at
+     *         the end of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    private static int readFully( InputStream in, byte[] buffer )
+        throws IOException
+    {
+        int total = 0;
+        int count;
+        while ( total < buffer.length && ( count = in.read( buffer, total, buffer.length - total ) ) > 0 )
+        {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * discards the temporary file if the writer has not been committed
+     *
+     * @throws IOException if the temporary file cannot be closed
+     */
+    public void close()
+        throws IOException
+    {
+        if ( !closed )
+        {
+            closed = true;
+
+            try
+            {
+                writer.close();
+            }
+            finally
+            {
+                temp.delete();
+            }
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A content addressed store of generated executables that can be shared by
+ * concurrent builds. Entries are directories named after the build
+ * fingerprint digest, they are assembled in a temporary directory and then
+ * renamed into place so a reader never sees a partially written entry.
+ * Entries are evicted least recently used first once the cache grows beyond
+ * its maximum size.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class BuildCache
+{
+    /**
+     * prefix of the temporary directories entries are assembled in
+     */
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    /**
+     * the age after which a temporary directory is taken to have been left
+     * by a build that crashed while publishing
+     */
+    private static final long TEMP_GRACE_MILLIS = 60 * 60 * 1000L;
+
+    /**
+     * the cache root directory
+     */
+    private File directory;
+
+    /**
+     * the maximum cache size in bytes
+     */
+    private long maxSize;
+
+    /**
+     * constructor
+     *
+     * @param directory the cache root directory
+     * @param maxSize the maximum cache size in bytes
+     */
+    public BuildCache( File directory, long maxSize )
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Copies a cached file to the target location.
+     *
+     * @param key the entry key
+     * @param target the file to restore, its name identifies the file within
+     *            the entry
+     * @return true if the cache held the file
+     * @throws IOException if the file cannot be copied
+     */
+    public boolean restore( String key, File target )
+        throws IOException
+    {
+        File entry = getEntryDirectory( key );
+
+        File source = new File( entry, target.getName() );
+
+        if ( !source.isFile() )
+        {
+            return false;
+        }
+
+        // the entry's timestamp records when it was last used
+
+        entry.setLastModified( System.currentTimeMillis() );
+
+        target.getParentFile().mkdirs();
+
+        // a temporary file of its own so concurrent restores of the same
+        // target don't copy over each other
+
+        File temp = File.createTempFile( "." + target.getName() + "-", ".tmp", target.getParentFile() );
+
+        try
+        {
+            copy( source, temp );
+        }
+        catch ( IOException e )
+        {
+            temp.delete();
+
+            throw e;
+        }
+
+        target.delete();
+
+        if ( !temp.renameTo( target ) )
+        {
+            temp.delete();
+
+            throw new IOException( "Unable to rename " + temp + " to " + target );
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds a file to the cache, if another build has already published the
+     * entry the cache is left as it is.
+     *
+     * @param key the entry key
+     * @param source the file to cache
+     * @throws IOException if the file cannot be copied
+     */
+    public void publish( String key, File source )
+        throws IOException
+    {
+        File entry = getEntryDirectory( key );
+
+        if ( entry.isDirectory() )
+        {
+            return;
+        }
+
+        entry.getParentFile().mkdirs();
+
+        File temp = File.createTempFile( TEMP_PREFIX, "", entry.getParentFile() );
+
+        temp.delete();
+
+        temp.mkdir();
+
+        copy( source, new File( temp, source.getName() ) );
+
+        if ( !temp.renameTo( entry ) )
+        {
+            // lost the race with a concurrent build
+
+            delete( temp );
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is no larger
+     * than its maximum size, and the temporary directories publishes that
+     * crashed left behind.
+     *
+     * @return the number of entries deleted
+     */
+    public int evict()
+    {
+        deleteAbandoned( System.currentTimeMillis() - TEMP_GRACE_MILLIS );
+
+        File[] entries = listEntries();
+
+        long size = 0;
+
+        for ( int i = 0; i < entries.length; i++ )
+        {
+            size += sizeOf( entries[i] );
+        }
+
+        if ( size <= maxSize )
+        {
+            return 0;
+        }
+
+        Arrays.sort( entries, new Comparator()
+        {
+            public int compare( Object o1, Object o2 )
+            {
+                long m1 = ( (File) o1 ).lastModified();
+                long m2 = ( (File) o2 ).lastModified();
+                return m1 < m2 ? -1 : ( m1 == m2 ? 0 : 1 );
+            }
+        } );
+
+        int evicted = 0;
+
+        for ( int i = 0; i < entries.length && size > maxSize; i++ )
+        {
+            size -= sizeOf( entries[i] );
+
+            delete( entries[i] );
+
+            evicted++;
+        }
+
+        return evicted;
+    }
+
+    /**
+     * @param key the entry key
+     * @return the entry directory, entries are spread over sub directories
+     *         named after the first two key characters
+     */
+    private File getEntryDirectory( String key )
+    {
+        return new File( new File( directory, key.substring( 0, 2 ) ), key );
+    }
+
+    /**
+     * Deletes the temporary directories last modified before the supplied
+     * time, a publish copies the executable in far less time than that.
+     *
+     * @param before the time
+     */
+    void deleteAbandoned( long before )
+    {
+        File[] buckets = directory.listFiles();
+
+        for ( int i = 0; buckets != null && i < buckets.length; i++ )
+        {
+            File[] children = buckets[i].listFiles();
+
+            for ( int j = 0; children != null && j < children.length; j++ )
+            {
+                if ( children[j].getName().startsWith( TEMP_PREFIX ) && children[j].lastModified() < before )
+                {
+                    delete( children[j] );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return all of the published entry directories
+     */
+    private File[] listEntries()
+    {
+        List entries = new ArrayList();
+
+        File[] buckets = directory.listFiles();
+
+        for ( int i = 0; buckets != null && i < buckets.length; i++ )
+        {
+            File[] children = buckets[i].listFiles();
+
+            for ( int j = 0; children != null && j < children.length; j++ )
+            {
+                if ( !children[j].getName().startsWith( TEMP_PREFIX ) )
+                {
+                    entries.add( children[j] );
+                }
+            }
+        }
+
+        return (File[]) entries.toArray( new File[entries.size()] );
+    }
+
+    /**
+     * @param file a file or directory
+     * @return the total size of the file or of the files in the directory
+     */
+    private static long sizeOf( File file )
+    {
+        File[] children = file.listFiles();
+
+        if ( children == null )
+        {
+            return file.length();
+        }
+
+        long size = 0;
+
+        for ( int i = 0; i < children.length; i++ )
+        {
+            size += sizeOf( children[i] );
+        }
+
+        return size;
+    }
+
+    /**
+     * deletes a file or directory tree
+     *
+     * @param file the file to delete
+     */
+    private static void delete( File file )
+    {
+        File[] children = file.listFiles();
+
+        for ( int i = 0; children != null && i < children.length; i++ )
+        {
+            delete( children[i] );
+        }
+
+        file.delete();
+    }
+
+    /**
+     * copies a file
+     *
+     * @param source the source file
+     * @param target the target file
+     * @throws IOException if the copy fails
+     */
+    public static void copy( File source, File target )
+        throws IOException
+    {
+        FileChannel in = new FileInputStream( source ).getChannel();
+
+        try
+        {
+            FileChannel out = new FileOutputStream( target ).getChannel();
+
+            try
+            {
+                long size = in.size();
+                long position = 0;
+                while ( position < size )
+                {
+                    position += in.transferTo( position, size - position, out );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+}
\ No newline at end of file
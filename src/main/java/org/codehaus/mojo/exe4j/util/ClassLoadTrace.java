@@ -0,0 +1,632 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath.ClassPathLocation;
+
+/**
+ * The classes an application loads from its class path while starting, in
+ * the order they were loaded, as recorded by a "trace" mode training run.
+ * The trace is used to move the archives that supply the most start up
+ * classes to the front of the class path, and the start up classes to the
+ * front of each archive, so start up reads fewer archives and fewer parts
+ * of each.
+ *
+ * Moving an archive never changes which archive a class or resource is
+ * loaded from: an archive is only moved ahead of those that have none of
+ * its class or service entries, and directories and entries that aren't
+ * plain archives stay where they are.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class ClassLoadTrace
+{
+    /**
+     * the archive manifest, kept at the front of an archive for
+     * JarInputStream
+     */
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    /**
+     * the class entry names loaded from each file, indexed by file
+     */
+    private Map loads = new LinkedHashMap();
+
+    /**
+     * reads a trace written by a "trace" mode training run
+     *
+     * @param file the trace file
+     * @return the trace
+     * @throws IOException if the file cannot be read
+     */
+    public static ClassLoadTrace read( File file )
+        throws IOException
+    {
+        ClassLoadTrace trace = new ClassLoadTrace();
+
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+
+        try
+        {
+            String line;
+
+            while ( ( line = reader.readLine() ) != null )
+            {
+                int tab = line.indexOf( '\t' );
+
+                if ( tab > 0 )
+                {
+                    trace.addClass( line.substring( 0, tab ), new File( line.substring( tab + 1 ) ) );
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return trace;
+    }
+
+    /**
+     * records a class load
+     *
+     * @param className the class name
+     * @param source the archive or directory the class was loaded from
+     */
+    public void addClass( String className, File source )
+    {
+        File file = getCanonicalFile( source );
+
+        Set entries = (Set) loads.get( file );
+
+        if ( entries == null )
+        {
+            entries = new LinkedHashSet();
+
+            loads.put( file, entries );
+        }
+
+        entries.add( className.replace( '.', '/' ) + ".class" );
+    }
+
+    /**
+     * @param file an archive or directory
+     * @return the number of classes loaded from it
+     */
+    public int getClassCount( File file )
+    {
+        Set entries = (Set) loads.get( getCanonicalFile( file ) );
+
+        return entries == null ? 0 : entries.size();
+    }
+
+    /**
+     * @return the number of classes loaded from the class path
+     */
+    public int getClassCount()
+    {
+        int count = 0;
+
+        Iterator itr = loads.values().iterator();
+
+        while ( itr.hasNext() )
+        {
+            count += ( (Set) itr.next() ).size();
+        }
+
+        return count;
+    }
+
+    /**
+     * Orders a class path so the archives that supply the most start up
+     * classes come first, as far as they can be moved without changing
+     * where any class or service is loaded from. Otherwise the entries keep
+     * their order.
+     *
+     * @param classPath the class path, with wildcards already expanded
+     * @param baseDirectory the directory relative entries are resolved
+     *            against
+     * @return the ordered class path, made up of the same entries
+     * @throws IOException if an archive cannot be read
+     */
+    public ConfigClassPath order( ConfigClassPath classPath, File baseDirectory )
+        throws IOException
+    {
+        List locations = classPath.getLocations();
+
+        int size = locations.size();
+
+        int[] counts = new int[size];
+
+        // precedes[i][j] is set if entry i must stay ahead of entry j
+
+        boolean[][] precedes = new boolean[size][size];
+
+        Map owners = new HashMap();
+
+        for ( int i = 0; i < size; i++ )
+        {
+            File file = getArchive( (ClassPathLocation) locations.get( i ), baseDirectory );
+
+            if ( file == null )
+            {
+                // nothing moves across anything else
+
+                for ( int j = 0; j < size; j++ )
+                {
+                    precedes[Math.min( i, j )][Math.max( i, j )] = i != j;
+                }
+
+                continue;
+            }
+
+            counts[i] = getClassCount( file );
+
+            Iterator names = getConflictingNames( file ).iterator();
+
+            while ( names.hasNext() )
+            {
+                Object name = names.next();
+
+                List previous = (List) owners.get( name );
+
+                if ( previous == null )
+                {
+                    previous = new ArrayList();
+
+                    owners.put( name, previous );
+                }
+
+                for ( int j = 0; j < previous.size(); j++ )
+                {
+                    precedes[( (Integer) previous.get( j ) ).intValue()][i] = true;
+                }
+
+                previous.add( new Integer( i ) );
+            }
+        }
+
+        int[] waiting = new int[size];
+
+        for ( int i = 0; i < size; i++ )
+        {
+            for ( int j = i + 1; j < size; j++ )
+            {
+                waiting[j] += precedes[i][j] ? 1 : 0;
+            }
+        }
+
+        boolean[] placed = new boolean[size];
+
+        ConfigClassPath ordered = new ConfigClassPath();
+
+        for ( int n = 0; n < size; n++ )
+        {
+            // the free entry that supplies the most classes, the earliest if
+            // there's a tie
+
+            int next = -1;
+
+            for ( int i = 0; i < size; i++ )
+            {
+                if ( !placed[i] && waiting[i] == 0 && ( next < 0 || counts[i] > counts[next] ) )
+                {
+                    next = i;
+                }
+            }
+
+            placed[next] = true;
+
+            ordered.addLocation( (ClassPathLocation) locations.get( next ) );
+
+            for ( int j = next + 1; j < size; j++ )
+            {
+                waiting[j] -= precedes[next][j] ? 1 : 0;
+            }
+        }
+
+        return ordered;
+    }
+
+    /**
+     * Rewrites an archive so the classes loaded from it at start up come
+     * first, in the order they were loaded, followed by the other entries in
+     * their original order. The manifest and signature entries stay ahead of
+     * the classes. Entries keep their compression method, time and
+     * extra data.
+     *
+     * @param archive the archive
+     * @return false if the archive was already in that order
+     * @throws IOException if the archive cannot be rewritten
+     */
+    public boolean reorder( File archive )
+        throws IOException
+    {
+        Set startup = (Set) loads.get( getCanonicalFile( archive ) );
+
+        if ( startup == null )
+        {
+            return false;
+        }
+
+        File temp = new File( archive.getParentFile(), archive.getName() + ".tmp" );
+
+        ZipFile zip = new ZipFile( archive );
+
+        try
+        {
+            List original = Collections.list( zip.entries() );
+
+            List first = new ArrayList();
+
+            List rest = new ArrayList();
+
+            for ( int i = 0; i < original.size(); i++ )
+            {
+                ZipEntry entry = (ZipEntry) original.get( i );
+
+                if ( entry.getName().equals( "META-INF/" ) || entry.getName().equals( MANIFEST ) )
+                {
+                    first.add( entry );
+                }
+            }
+
+            // a JarInputStream only verifies signatures that follow the
+            // manifest
+
+            for ( int i = 0; i < original.size(); i++ )
+            {
+                ZipEntry entry = (ZipEntry) original.get( i );
+
+                if ( isSignature( entry.getName() ) )
+                {
+                    first.add( entry );
+                }
+            }
+
+            Iterator itr = startup.iterator();
+
+            while ( itr.hasNext() )
+            {
+                ZipEntry entry = zip.getEntry( (String) itr.next() );
+
+                if ( entry != null )
+                {
+                    first.add( entry );
+                }
+            }
+
+            Set moved = new LinkedHashSet();
+
+            for ( int i = 0; i < first.size(); i++ )
+            {
+                moved.add( ( (ZipEntry) first.get( i ) ).getName() );
+            }
+
+            for ( int i = 0; i < original.size(); i++ )
+            {
+                ZipEntry entry = (ZipEntry) original.get( i );
+
+                if ( !moved.contains( entry.getName() ) )
+                {
+                    rest.add( entry );
+                }
+            }
+
+            first.addAll( rest );
+
+            if ( isSameOrder( original, first ) )
+            {
+                return false;
+            }
+
+            copy( zip, first, temp );
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        replace( archive, temp );
+
+        return true;
+    }
+
+    /**
+     * Digests an archive's entry names and contents, in a way that doesn't
+     * depend on the order or compression of the entries, so reordering or
+     * repacking an archive doesn't change its digest.
+     *
+     * @param archive the archive
+     * @return the hex encoded digest
+     * @throws IOException if the archive cannot be read
+     */
+    public static String digestContent( File archive )
+        throws IOException
+    {
+        List names = new ArrayList();
+
+        ZipFile zip = new ZipFile( archive );
+
+        try
+        {
+            for ( Enumeration e = zip.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry entry = (ZipEntry) e.nextElement();
+
+                names.add( entry.getName() + ":" + Long.toHexString( entry.getCrc() ) + ":" + entry.getSize() );
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        Collections.sort( names );
+
+        StringBuffer buffer = new StringBuffer();
+
+        for ( int i = 0; i < names.size(); i++ )
+        {
+            buffer.append( names.get( i ) ).append( '\n' );
+        }
+
+        return Fingerprint.digest( buffer.toString() );
+    }
+
+    /**
+     * @param location a class path entry
+     * @param baseDirectory the directory relative entries are resolved
+     *            against
+     * @return the archive or null if the entry isn't an existing archive
+     */
+    private static File getArchive( ClassPathLocation location, File baseDirectory )
+    {
+        String value = location.getValue();
+
+        if ( !ClassPathLocation.ARCHIVE_TYPE.equals( location.getType() ) || value.indexOf( "${" ) >= 0
+            || value.indexOf( '%' ) >= 0 )
+        {
+            return null;
+        }
+
+        File file = new File( value );
+
+        if ( !file.isAbsolute() )
+        {
+            file = new File( baseDirectory, value );
+        }
+
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * @param archive the archive
+     * @return the names of the entries whose loader depends on the class
+     *         path order: classes and services, apart from module
+     *         descriptors
+     * @throws IOException if the archive cannot be read
+     */
+    private static Set getConflictingNames( File archive )
+        throws IOException
+    {
+        Set names = new LinkedHashSet();
+
+        ZipFile zip = new ZipFile( archive );
+
+        try
+        {
+            for ( Enumeration e = zip.entries(); e.hasMoreElements(); )
+            {
+                String name = ( (ZipEntry) e.nextElement() ).getName();
+
+                if ( name.endsWith( "/" ) || name.endsWith( "module-info.class" ) )
+                {
+                    continue;
+                }
+
+                if ( !name.startsWith( "META-INF/" ) || name.startsWith( "META-INF/services/" ) )
+                {
+                    names.add( name );
+                }
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        return names;
+    }
+
+    /**
+     * @param name an entry name
+     * @return true if the entry is a signature file or signature block
+     */
+    private static boolean isSignature( String name )
+    {
+        if ( !name.startsWith( "META-INF/" ) || name.indexOf( '/', "META-INF/".length() ) >= 0 )
+        {
+            return false;
+        }
+
+        String upper = name.toUpperCase( Locale.ENGLISH );
+
+        return upper.endsWith( ".SF" ) || upper.endsWith( ".RSA" ) || upper.endsWith( ".DSA" )
+            || upper.endsWith( ".EC" );
+    }
+
+    /**
+     * @param original the original entries
+     * @param ordered the reordered entries
+     * @return true if the entries are in the same order
+     */
+    private static boolean isSameOrder( List original, List ordered )
+    {
+        for ( int i = 0; i < original.size(); i++ )
+        {
+            if ( !( (ZipEntry) original.get( i ) ).getName().equals( ( (ZipEntry) ordered.get( i ) ).getName() ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * copies entries to a new archive
+     *
+     * @param zip the source archive
+     * @param entries the entries to copy, in order
+     * @param target the new archive
+     * @throws IOException if the archive cannot be written
+     */
+    static void copy( ZipFile zip, List entries, File target )
+        throws IOException
+    {
+        ZipOutputStream out = new ZipOutputStream( new FileOutputStream( target ) );
+
+        try
+        {
+            if ( zip.getComment() != null )
+            {
+                out.setComment( zip.getComment() );
+            }
+
+            byte[] buffer = new byte[8192];
+
+            for ( int i = 0; i < entries.size(); i++ )
+            {
+                ZipEntry entry = (ZipEntry) entries.get( i );
+
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+                InputStream in = zip.getInputStream( entry );
+
+                try
+                {
+                    int count;
+                    while ( ( count = in.read( buffer ) ) > 0 )
+                    {
+                        content.write( buffer, 0, count );
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+
+                ZipEntry copy = new ZipEntry( entry.getName() );
+
+                copy.setTime( entry.getTime() );
+                copy.setExtra( entry.getExtra() );
+                copy.setComment( entry.getComment() );
+                copy.setMethod( entry.getMethod() );
+
+                if ( entry.getMethod() == ZipEntry.STORED )
+                {
+                    CRC32 crc = new CRC32();
+
+                    crc.update( content.toByteArray() );
+
+                    copy.setSize( content.size() );
+                    copy.setCompressedSize( content.size() );
+                    copy.setCrc( crc.getValue() );
+                }
+
+                out.putNextEntry( copy );
+                content.writeTo( out );
+                out.closeEntry();
+            }
+        }
+        catch ( IOException e )
+        {
+            out.close();
+
+            target.delete();
+
+            throw e;
+        }
+
+        out.close();
+    }
+
+    /**
+     * replaces an archive with its rewritten copy
+     *
+     * @param archive the archive
+     * @param temp the rewritten copy
+     * @throws IOException if the copy cannot be renamed
+     */
+    static void replace( File archive, File temp )
+        throws IOException
+    {
+        archive.delete();
+
+        if ( !temp.renameTo( archive ) )
+        {
+            temp.delete();
+
+            throw new IOException( "Unable to rename " + temp + " to " + archive );
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return the canonical file, or the absolute file if it cannot be
+     *         resolved
+     */
+    private static File getCanonicalFile( File file )
+    {
+        try
+        {
+            return file.getCanonicalFile();
+        }
+        catch ( IOException e )
+        {
+            return file.getAbsoluteFile();
+        }
+    }
+
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath.ClassPathLocation;
+import org.codehaus.plexus.configuration.PlexusConfigurationException;
+
+/**
+ * Expands scanDirectory class path entries, and archive entries containing
+ * the wildcards * and ?, into explicit archive entries. The archives matched
+ * by each entry are ordered by path so the expanded class path is the same on
+ * every build. The entries are expanded in parallel, and the walk of a
+ * recursive (**) pattern is split across the sub directories of the
+ * directory it starts in. A scanDirectory entry only lists its directory so
+ * it isn't split.
+ *
+ * Entries that reference environment or exe4j variables, or directories that
+ * don't exist when the executable is built, are left as they are.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class ClassPathExpander
+{
+    /**
+     * the directory relative entries are resolved against
+     */
+    private File baseDirectory;
+
+    /**
+     * the number of entries expanded concurrently
+     */
+    private int threads;
+
+    /**
+     * constructor
+     *
+     * @param baseDirectory the directory relative entries are resolved
+     *            against
+     * @param threads the number of entries, and of sub directories, expanded
+     *            concurrently
+     */
+    public ClassPathExpander( File baseDirectory, int threads )
+    {
+        this.baseDirectory = baseDirectory;
+        this.threads = Math.max( 1, threads );
+    }
+
+    /**
+     * expands a class path
+     *
+     * @param classPath the class path to expand
+     * @return the expanded class path
+     * @throws PlexusConfigurationException if a directory cannot be expanded
+     */
+    public ConfigClassPath expand( ConfigClassPath classPath )
+        throws PlexusConfigurationException
+    {
+        List locations = classPath.getLocations();
+
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, Math.max( 1, locations.size() ) ) );
+
+        // the sub directory walks have their own threads as the entries wait
+        // for them, they never wait themselves
+
+        final ExecutorService walkers = threads > 1 ? Executors.newFixedThreadPool( threads ) : null;
+
+        try
+        {
+            List futures = new ArrayList();
+
+            Iterator itr = locations.iterator();
+
+            while ( itr.hasNext() )
+            {
+                final ClassPathLocation location = (ClassPathLocation) itr.next();
+
+                futures.add( executor.submit( new Callable()
+                {
+                    public Object call()
+                        throws PlexusConfigurationException
+                    {
+                        return expand( location, walkers );
+                    }
+                } ) );
+            }
+
+            ConfigClassPath expanded = new ConfigClassPath();
+
+            itr = futures.iterator();
+
+            while ( itr.hasNext() )
+            {
+                Iterator entries = ( (List) ( (Future) itr.next() ).get() ).iterator();
+
+                while ( entries.hasNext() )
+                {
+                    expanded.addLocation( (ClassPathLocation) entries.next() );
+                }
+            }
+
+            return expanded;
+        }
+        catch ( ExecutionException e )
+        {
+            throw new PlexusConfigurationException( "Unable to expand the class path", e.getCause() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new PlexusConfigurationException( "Interrupted while expanding the class path", e );
+        }
+        finally
+        {
+            executor.shutdownNow();
+
+            if ( walkers != null )
+            {
+                walkers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Resolves a class path to the files a JVM started directly, rather than
+     * by the exe4j launcher, loads classes from. scanDirectory entries are
+     * replaced by the archives they contain, ordered by name. Entries that
+     * reference environment or exe4j variables are skipped.
+     *
+     * @param classPath the class path
+     * @return the archive and directory files in class path order
+     */
+    public List resolve( ConfigClassPath classPath )
+    {
+        List files = new ArrayList();
+
+        Iterator itr = classPath.getLocations().iterator();
+
+        while ( itr.hasNext() )
+        {
+            ClassPathLocation location = (ClassPathLocation) itr.next();
+
+            String value = location.getValue();
+
+            if ( ClassPathLocation.ENVVAR_TYPE.equals( location.getType() ) || value.indexOf( "${" ) >= 0
+                || value.indexOf( '%' ) >= 0 )
+            {
+                continue;
+            }
+
+            File file = new File( value );
+
+            if ( !file.isAbsolute() )
+            {
+                file = new File( baseDirectory, value );
+            }
+
+            if ( ClassPathLocation.SCAN_DIRECTORY_TYPE.equals( location.getType() ) )
+            {
+                List archives = new ArrayList();
+
+                collect( file, "", null, false, true, archives );
+
+                Collections.sort( archives );
+
+                Iterator names = archives.iterator();
+
+                while ( names.hasNext() )
+                {
+                    files.add( new File( file, (String) names.next() ) );
+                }
+            }
+            else
+            {
+                files.add( file );
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * expands a single class path entry
+     *
+     * @param location the entry
+     * @param walkers the executor sub directories are walked by, null to
+     *            walk them on the calling thread
+     * @return the entries it expands to
+     * @throws PlexusConfigurationException if an archive entry cannot be
+     *             created or a directory walk fails
+     */
+    private List expand( ClassPathLocation location, ExecutorService walkers )
+        throws PlexusConfigurationException
+    {
+        String value = location.getValue();
+
+        boolean scanDirectory = ClassPathLocation.SCAN_DIRECTORY_TYPE.equals( location.getType() );
+
+        boolean glob = ClassPathLocation.ARCHIVE_TYPE.equals( location.getType() )
+            && ( value.indexOf( '*' ) >= 0 || value.indexOf( '?' ) >= 0 );
+
+        if ( ( !scanDirectory && !glob ) || value.indexOf( "${" ) >= 0 || value.indexOf( '%' ) >= 0 )
+        {
+            return Collections.singletonList( location );
+        }
+
+        String path = value.replace( '\\', '/' );
+
+        // split the path into the directory to search and the pattern the
+        // archives below it must match
+
+        String directory;
+
+        String pattern = null;
+
+        if ( scanDirectory )
+        {
+            directory = path;
+        }
+        else
+        {
+            int wildcard = Math.min( indexOf( path, '*' ), indexOf( path, '?' ) );
+
+            int separator = path.lastIndexOf( '/', wildcard );
+
+            directory = separator < 0 ? "." : path.substring( 0, separator );
+
+            pattern = path.substring( separator + 1 );
+        }
+
+        File root = new File( directory );
+
+        if ( !root.isAbsolute() )
+        {
+            root = new File( baseDirectory, directory );
+        }
+
+        if ( !root.isDirectory() )
+        {
+            return Collections.singletonList( location );
+        }
+
+        Pattern matcher = scanDirectory ? null : compileGlob( pattern );
+
+        boolean recursive = !scanDirectory && pattern.indexOf( '/' ) >= 0;
+
+        List matches = new ArrayList();
+
+        if ( recursive && walkers != null )
+        {
+            collect( root, matcher, walkers, matches );
+        }
+        else
+        {
+            collect( root, "", matcher, recursive, scanDirectory, matches );
+        }
+
+        Collections.sort( matches );
+
+        List expanded = new ArrayList();
+
+        String prefix = directory.equals( "." ) ? "" : directory + "/";
+
+        Iterator itr = matches.iterator();
+
+        while ( itr.hasNext() )
+        {
+            expanded.add( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, prefix + itr.next(), location
+                .isFailIfNotFound() ) );
+        }
+
+        return expanded;
+    }
+
+    /**
+     * collects the paths of the files below a directory that match a pattern
+     *
+     * @param directory the directory to search
+     * @param relativePath the directory's path relative to the search root
+     * @param matcher the pattern relative paths must match, ignored if
+     *            archivesOnly is set
+     * @param recursive search sub directories
+     * @param archivesOnly match all .jar and .zip files
+     * @param matches the list matching relative paths are added to
+     */
+    private static void collect( File directory, String relativePath, Pattern matcher, boolean recursive,
+                                 boolean archivesOnly, List matches )
+    {
+        File[] files = directory.listFiles();
+
+        for ( int i = 0; files != null && i < files.length; i++ )
+        {
+            String path = relativePath + files[i].getName();
+
+            if ( files[i].isDirectory() )
+            {
+                if ( recursive )
+                {
+                    collect( files[i], path + "/", matcher, recursive, archivesOnly, matches );
+                }
+            }
+            else if ( archivesOnly )
+            {
+                String name = files[i].getName().toLowerCase();
+
+                if ( name.endsWith( ".jar" ) || name.endsWith( ".zip" ) )
+                {
+                    matches.add( path );
+                }
+            }
+            else if ( matcher.matcher( path ).matches() )
+            {
+                matches.add( path );
+            }
+        }
+    }
+
+    /**
+     * Collects the paths of the files below a directory that match a
+     * pattern, walking each of its sub directories as a separate task.
+     *
+     * @param root the directory to search
+     * @param matcher the pattern relative paths must match
+     * @param walkers the executor the sub directories are walked by
+     * @param matches the list matching relative paths are added to
+     * @throws PlexusConfigurationException if a walk fails or is interrupted
+     */
+    private static void collect( File root, final Pattern matcher, ExecutorService walkers, List matches )
+        throws PlexusConfigurationException
+    {
+        File[] files = root.listFiles();
+
+        List futures = new ArrayList();
+
+        for ( int i = 0; files != null && i < files.length; i++ )
+        {
+            final File file = files[i];
+
+            if ( file.isDirectory() )
+            {
+                futures.add( walkers.submit( new Callable()
+                {
+                    public Object call()
+                    {
+                        List found = new ArrayList();
+
+                        collect( file, file.getName() + "/", matcher, true, false, found );
+
+                        return found;
+                    }
+                } ) );
+            }
+            else if ( matcher.matcher( file.getName() ).matches() )
+            {
+                matches.add( file.getName() );
+            }
+        }
+
+        try
+        {
+            Iterator itr = futures.iterator();
+
+            while ( itr.hasNext() )
+            {
+                matches.addAll( (List) ( (Future) itr.next() ).get() );
+            }
+        }
+        catch ( ExecutionException e )
+        {
+            throw new PlexusConfigurationException( "Unable to walk " + root, e.getCause() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new PlexusConfigurationException( "Interrupted while walking " + root, e );
+        }
+    }
+
+    /**
+     * Compiles a glob pattern, * matches within a path segment, ** matches
+     * any number of path segments and ? matches a single character.
+     *
+     * @param glob the glob pattern
+     * @return the equivalent regular expression
+     */
+    private static Pattern compileGlob( String glob )
+    {
+        StringBuffer regex = new StringBuffer();
+
+        for ( int i = 0; i < glob.length(); i++ )
+        {
+            char c = glob.charAt( i );
+
+            if ( c == '*' && i + 1 < glob.length() && glob.charAt( i + 1 ) == '*' )
+            {
+                if ( i + 2 < glob.length() && glob.charAt( i + 2 ) == '/' )
+                {
+                    regex.append( "(?:[^/]*/)*" );
+                    i += 2;
+                }
+                else
+                {
+                    regex.append( ".*" );
+                    i++;
+                }
+            }
+            else if ( c == '*' )
+            {
+                regex.append( "[^/]*" );
+            }
+            else if ( c == '?' )
+            {
+                regex.append( "[^/]" );
+            }
+            else
+            {
+                regex.append( Pattern.quote( String.valueOf( c ) ) );
+            }
+        }
+
+        return Pattern.compile( regex.toString() );
+    }
+
+    /**
+     * @param path the path
+     * @param c the character to find
+     * @return the index of the character or the path length if it isn't
+     *         found
+     */
+    private static int indexOf( String path, char c )
+    {
+        int index = path.indexOf( c );
+
+        return index < 0 ? path.length() : index;
+    }
+
+}
\ No newline at end of file
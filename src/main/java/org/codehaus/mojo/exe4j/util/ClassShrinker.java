@@ -0,0 +1,1390 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Removes the classes that cannot be reached from the main class from the
+ * class path archives.
+ *
+ * Every class on the class path is parsed, concurrently, for the names of
+ * the classes it references. A class is reached if it is the main class,
+ * matches a keep rule, provides a service whose interface is reached, or is
+ * referenced by a reached class. Class name string constants are treated as
+ * references, which covers Class.forName with a literal name, other
+ * reflection must be covered by keep rules. The providers of services
+ * defined outside the class path, by the JRE, are always kept.
+ *
+ * Only the archives passed as targets are rewritten, resources and the
+ * other entries are kept, as are classes that cannot be parsed.
+ *
+ * With a state directory the original of each target is kept, with the
+ * digests of the original and the shrunk archive, so a target that is still
+ * as it was shrunk is shrunk again from its original and classes a new
+ * main class or keep rule reaches are restored. When neither the originals,
+ * the rest of the class path nor the policy have changed the recorded
+ * classes are removed again without analysing the class path.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class ClassShrinker
+{
+    /**
+     * The outcome of shrinking an archive.
+     */
+    public static class Result
+    {
+        private File file;
+
+        private boolean reused;
+
+        private long sizeBefore;
+
+        private long sizeAfter;
+
+        private int classesBefore;
+
+        private List removed = new ArrayList();
+
+        /**
+         * file accessor
+         * @return Returns the archive.
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        /**
+         * reused accessor
+         * @return Returns true if the recorded classes were removed rather
+         *         than those found by analysing the class path.
+         */
+        public boolean isReused()
+        {
+            return reused;
+        }
+
+        /**
+         * sizeBefore accessor
+         * @return Returns the archive size before shrinking.
+         */
+        public long getSizeBefore()
+        {
+            return sizeBefore;
+        }
+
+        /**
+         * sizeAfter accessor
+         * @return Returns the archive size after shrinking.
+         */
+        public long getSizeAfter()
+        {
+            return sizeAfter;
+        }
+
+        /**
+         * classesBefore accessor
+         * @return Returns the number of classes before shrinking.
+         */
+        public int getClassesBefore()
+        {
+            return classesBefore;
+        }
+
+        /**
+         * classesAfter accessor
+         * @return Returns the number of classes after shrinking.
+         */
+        public int getClassesAfter()
+        {
+            return classesBefore - removed.size();
+        }
+
+        /**
+         * removed accessor
+         * @return Returns the names of the removed classes.
+         */
+        public List getRemoved()
+        {
+            return removed;
+        }
+
+        /**
+         * @param state the recorded state
+         */
+        void load( Properties state )
+        {
+            sizeBefore = Long.parseLong( state.getProperty( "sizeBefore" ) );
+            classesBefore = Integer.parseInt( state.getProperty( "classesBefore" ) );
+
+            String names = state.getProperty( "removed" ).trim();
+
+            if ( names.length() > 0 )
+            {
+                removed.addAll( Arrays.asList( names.split( " " ) ) );
+            }
+        }
+
+        /**
+         * @param state the state to record the result in
+         */
+        void store( Properties state )
+        {
+            StringBuffer names = new StringBuffer();
+
+            Iterator itr = removed.iterator();
+
+            while ( itr.hasNext() )
+            {
+                names.append( itr.next() ).append( ' ' );
+            }
+
+            state.setProperty( "sizeBefore", Long.toString( sizeBefore ) );
+            state.setProperty( "classesBefore", Integer.toString( classesBefore ) );
+            state.setProperty( "removed", names.toString().trim() );
+        }
+    }
+
+    /**
+     * the parsed contents of a class path entry
+     */
+    private static class Source
+    {
+        private File file;
+
+        /**
+         * the referenced class names of each class, indexed by class name
+         */
+        private Map references = new HashMap();
+
+        /**
+         * the provider class names of each service, indexed by interface
+         */
+        private Map services = new LinkedHashMap();
+    }
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final String SERVICES = "META-INF/services/";
+
+    private static final String VERSIONS = "META-INF/versions/";
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /**
+     * the version of the shrinking, recorded with the state so archives are
+     * shrunk again when it changes
+     */
+    private static final String VERSION = "1";
+
+    /**
+     * the number of class path entries parsed concurrently
+     */
+    private int threads;
+
+    /**
+     * the directory the originals and state of the targets are kept in, or
+     * null to keep none
+     */
+    private File stateDirectory;
+
+    /**
+     * the keep rules and the patterns they are compiled to
+     */
+    private Map keepRules = new LinkedHashMap();
+
+    /**
+     * the reason each reached class that isn't referenced by another was
+     * kept, indexed by class name
+     */
+    private Map roots = new TreeMap();
+
+    /**
+     * constructor
+     *
+     * @param threads the number of class path entries parsed concurrently
+     */
+    public ClassShrinker( int threads )
+    {
+        this.threads = Math.max( 1, threads );
+    }
+
+    /**
+     * Sets the directory the originals of the targets and their state are
+     * kept in, so they are shrunk from their originals every time.
+     *
+     * @param stateDirectory the state directory, or null to keep none
+     */
+    public void setStateDirectory( File stateDirectory )
+    {
+        this.stateDirectory = stateDirectory;
+    }
+
+    /**
+     * Sets the classes that are always kept, for example those only loaded
+     * by reflection. A rule is a class name, a package name followed by .*
+     * for the classes of the package, or by .** to include sub packages.
+     *
+     * @param rules the keep rules
+     */
+    public void setKeepRules( List rules )
+    {
+        keepRules.clear();
+
+        Iterator itr = rules.iterator();
+
+        while ( itr.hasNext() )
+        {
+            String rule = ( (String) itr.next() ).trim();
+
+            if ( rule.length() == 0 || rule.startsWith( "." ) )
+            {
+                throw new IllegalArgumentException( "Invalid keep rule: \"" + rule + "\"" );
+            }
+
+            StringBuffer regex = new StringBuffer();
+
+            for ( int i = 0; i < rule.length(); i++ )
+            {
+                char c = rule.charAt( i );
+
+                if ( c == '*' && i + 1 < rule.length() && rule.charAt( i + 1 ) == '*' )
+                {
+                    regex.append( ".*" );
+                    i++;
+                }
+                else if ( c == '*' )
+                {
+                    regex.append( "[^.]*" );
+                }
+                else
+                {
+                    regex.append( Pattern.quote( String.valueOf( c ) ) );
+                }
+            }
+
+            keepRules.put( rule, Pattern.compile( regex.toString() ) );
+        }
+    }
+
+    /**
+     * Shrinks the target archives.
+     *
+     * @param mainClass the main class
+     * @param files the class path archives and directories, in class path
+     *            order
+     * @param targets the archives that are rewritten
+     * @return the Result of each target, in the same order
+     * @throws IOException if an archive cannot be read or rewritten
+     * @throws IllegalArgumentException if the main class isn't on the class
+     *             path
+     */
+    public List shrink( String mainClass, List files, List targets )
+        throws IOException
+    {
+        if ( stateDirectory == null )
+        {
+            return analyse( mainClass, files, targets );
+        }
+
+        Properties[] states = new Properties[targets.size()];
+
+        File[] originals = new File[targets.size()];
+
+        boolean[] shrunk = new boolean[targets.size()];
+
+        for ( int i = 0; i < targets.size(); i++ )
+        {
+            File file = (File) targets.get( i );
+
+            String id = Fingerprint.digest( file.getAbsolutePath() );
+
+            Properties state = loadState( new File( stateDirectory, id + ".properties" ) );
+
+            String digest = Fingerprint.digest( file );
+
+            originals[i] = new File( stateDirectory, id + ".jar" );
+
+            if ( state != null && originals[i].isFile() && digest.equals( state.getProperty( "outputDigest" ) ) )
+            {
+                // still as it was shrunk
+
+                shrunk[i] = true;
+            }
+            else if ( state == null || !originals[i].isFile() || !digest.equals( state.getProperty( "inputDigest" ) ) )
+            {
+                // a new original
+
+                stateDirectory.mkdirs();
+
+                BuildCache.copy( file, originals[i] );
+
+                state = new Properties();
+
+                state.setProperty( "file", file.getAbsolutePath() );
+                state.setProperty( "inputDigest", digest );
+            }
+
+            states[i] = state;
+        }
+
+        // the policy covers the originals of the targets as well as the rest
+        // of the class path, as any class may reach one of theirs
+
+        Fingerprint policy = new Fingerprint();
+
+        policy.addString( "version", VERSION );
+        policy.addString( "mainClass", mainClass );
+        policy.addString( "keepRules", keepRules.keySet().toString() );
+
+        for ( int i = 0; i < files.size(); i++ )
+        {
+            File file = (File) files.get( i );
+
+            String name = "classPath/" + i + "/" + file.getAbsolutePath();
+
+            int target = targets.indexOf( file );
+
+            if ( target >= 0 )
+            {
+                policy.addString( name, states[target].getProperty( "inputDigest" ) );
+            }
+            else if ( file.isDirectory() )
+            {
+                policy.addDirectory( name, file );
+            }
+            else
+            {
+                policy.addFile( name, file );
+            }
+        }
+
+        String key = policy.getDigest();
+
+        boolean current = true;
+
+        for ( int i = 0; i < targets.size(); i++ )
+        {
+            current &= key.equals( states[i].getProperty( "policy" ) );
+        }
+
+        List results;
+
+        if ( current )
+        {
+            results = new ArrayList();
+
+            for ( int i = 0; i < targets.size(); i++ )
+            {
+                File file = (File) targets.get( i );
+
+                Result result = new Result();
+
+                result.load( states[i] );
+
+                if ( !shrunk[i] )
+                {
+                    // the original was copied over the shrunk archive
+
+                    Set removable = new HashSet();
+
+                    Iterator itr = result.getRemoved().iterator();
+
+                    while ( itr.hasNext() )
+                    {
+                        removable.add( ( (String) itr.next() ).replace( '.', '/' ) );
+                    }
+
+                    result = rewrite( file, removable );
+                }
+
+                result.file = file;
+                result.reused = true;
+                result.sizeAfter = file.length();
+
+                results.add( result );
+            }
+        }
+        else
+        {
+            for ( int i = 0; i < targets.size(); i++ )
+            {
+                if ( shrunk[i] )
+                {
+                    BuildCache.copy( originals[i], (File) targets.get( i ) );
+                }
+            }
+
+            results = analyse( mainClass, files, targets );
+        }
+
+        for ( int i = 0; i < targets.size(); i++ )
+        {
+            File file = (File) targets.get( i );
+
+            states[i].setProperty( "policy", key );
+            states[i].setProperty( "outputDigest", Fingerprint.digest( file ) );
+
+            ( (Result) results.get( i ) ).store( states[i] );
+
+            storeState( new File( stateDirectory, Fingerprint.digest( file.getAbsolutePath() ) + ".properties" ),
+                        states[i] );
+        }
+
+        return results;
+    }
+
+    /**
+     * Shrinks the target archives as they are.
+     *
+     * @param mainClass the main class
+     * @param files the class path archives and directories
+     * @param targets the archives that are rewritten
+     * @return the Result of each target
+     * @throws IOException if an archive cannot be read or rewritten
+     */
+    private List analyse( String mainClass, List files, List targets )
+        throws IOException
+    {
+        // list the classes first so the references can be filtered, and
+        // share the names, as they are parsed
+
+        List tasks = new ArrayList();
+
+        Iterator itr = files.iterator();
+
+        while ( itr.hasNext() )
+        {
+            final File file = (File) itr.next();
+
+            tasks.add( new Callable()
+            {
+                public Object call()
+                    throws IOException
+                {
+                    return listClasses( file );
+                }
+            } );
+        }
+
+        final Map names = new HashMap();
+
+        itr = run( tasks ).iterator();
+
+        while ( itr.hasNext() )
+        {
+            Iterator classes = ( (List) itr.next() ).iterator();
+
+            while ( classes.hasNext() )
+            {
+                String name = (String) classes.next();
+
+                names.put( name, name );
+            }
+        }
+
+        tasks.clear();
+
+        itr = files.iterator();
+
+        while ( itr.hasNext() )
+        {
+            final File file = (File) itr.next();
+
+            tasks.add( new Callable()
+            {
+                public Object call()
+                    throws IOException
+                {
+                    return parse( file, names );
+                }
+            } );
+        }
+
+        List sources = run( tasks );
+
+        Set reached = reach( mainClass.replace( '.', '/' ), sources );
+
+        tasks.clear();
+
+        itr = targets.iterator();
+
+        while ( itr.hasNext() )
+        {
+            final File file = (File) itr.next();
+
+            final Source source = getSource( sources, file );
+
+            final Set removable = new HashSet( source == null ? Collections.EMPTY_SET : source.references.keySet() );
+
+            removable.removeAll( reached );
+
+            tasks.add( new Callable()
+            {
+                public Object call()
+                    throws IOException
+                {
+                    return rewrite( file, removable );
+                }
+            } );
+        }
+
+        return run( tasks );
+    }
+
+    /**
+     * Writes a JSON report of the classes kept as roots, and why, and of the
+     * classes removed from each archive.
+     *
+     * @param results the Results of shrink
+     * @param writer the writer the report is written to
+     * @throws IOException if the report cannot be written
+     */
+    public void writeReport( List results, Writer writer )
+        throws IOException
+    {
+        writer.write( "{\n" );
+        writer.write( "  \"keepRules\": [" );
+
+        Iterator itr = keepRules.keySet().iterator();
+
+        for ( int i = 0; itr.hasNext(); i++ )
+        {
+            writer.write( ( i > 0 ? ", " : "" ) + Timings.quote( (String) itr.next() ) );
+        }
+
+        writer.write( "],\n" );
+        writer.write( "  \"roots\": {" );
+
+        itr = roots.entrySet().iterator();
+
+        for ( int i = 0; itr.hasNext(); i++ )
+        {
+            Map.Entry root = (Map.Entry) itr.next();
+
+            writer.write( ( i > 0 ? ",\n    " : "\n    " ) + Timings.quote( toClassName( (String) root.getKey() ) )
+                + ": " + Timings.quote( (String) root.getValue() ) );
+        }
+
+        writer.write( roots.isEmpty() ? "},\n" : "\n  },\n" );
+        writer.write( "  \"archives\": [" );
+
+        long sizeBefore = 0;
+        long sizeAfter = 0;
+        int classesBefore = 0;
+        int classesAfter = 0;
+
+        for ( int i = 0; i < results.size(); i++ )
+        {
+            Result result = (Result) results.get( i );
+
+            writer.write( i > 0 ? ",\n    {" : "\n    {" );
+            writer.write( " \"file\": " + Timings.quote( result.getFile().getPath() ) );
+            writer.write( ", \"classesBefore\": " + result.getClassesBefore() );
+            writer.write( ", \"classesAfter\": " + result.getClassesAfter() );
+            writer.write( ", \"sizeBefore\": " + result.getSizeBefore() );
+            writer.write( ", \"sizeAfter\": " + result.getSizeAfter() );
+            writer.write( ", \"removed\": [" );
+
+            for ( int j = 0; j < result.getRemoved().size(); j++ )
+            {
+                writer.write( ( j > 0 ? ", " : "" ) + Timings.quote( (String) result.getRemoved().get( j ) ) );
+            }
+
+            writer.write( "] }" );
+
+            sizeBefore += result.getSizeBefore();
+            sizeAfter += result.getSizeAfter();
+            classesBefore += result.getClassesBefore();
+            classesAfter += result.getClassesAfter();
+        }
+
+        writer.write( results.isEmpty() ? "],\n" : "\n  ],\n" );
+        writer.write( "  \"removedReason\": \"not reachable from the main class, a keep rule or a service\",\n" );
+        writer.write( "  \"total\": {" );
+        writer.write( " \"classesBefore\": " + classesBefore );
+        writer.write( ", \"classesAfter\": " + classesAfter );
+        writer.write( ", \"sizeBefore\": " + sizeBefore );
+        writer.write( ", \"sizeAfter\": " + sizeAfter );
+        writer.write( " }\n}\n" );
+    }
+
+    /**
+     * @return the reason each class that isn't referenced by another was
+     *         kept, indexed by class name
+     */
+    public Map getRoots()
+    {
+        return roots;
+    }
+
+    /**
+     * finds the classes reached from the main class, the keep rules and the
+     * services
+     *
+     * @param mainClass the main class name
+     * @param sources the parsed class path
+     * @return the names of the reached classes
+     */
+    private Set reach( String mainClass, List sources )
+    {
+        Map references = new HashMap();
+
+        Map services = new HashMap();
+
+        for ( int i = 0; i < sources.size(); i++ )
+        {
+            Source source = (Source) sources.get( i );
+
+            Iterator itr = source.references.entrySet().iterator();
+
+            while ( itr.hasNext() )
+            {
+                Map.Entry entry = (Map.Entry) itr.next();
+
+                Set set = (Set) references.get( entry.getKey() );
+
+                if ( set == null )
+                {
+                    references.put( entry.getKey(), entry.getValue() );
+                }
+                else
+                {
+                    set.addAll( (Set) entry.getValue() );
+                }
+            }
+
+            itr = source.services.entrySet().iterator();
+
+            while ( itr.hasNext() )
+            {
+                Map.Entry entry = (Map.Entry) itr.next();
+
+                List providers = (List) services.get( entry.getKey() );
+
+                if ( providers == null )
+                {
+                    services.put( entry.getKey(), new ArrayList( (List) entry.getValue() ) );
+                }
+                else
+                {
+                    providers.addAll( (List) entry.getValue() );
+                }
+            }
+        }
+
+        if ( !references.containsKey( mainClass ) )
+        {
+            throw new IllegalArgumentException( "The main class " + toClassName( mainClass )
+                + " is not on the class path" );
+        }
+
+        roots.clear();
+
+        Set reached = new HashSet();
+
+        List queue = new ArrayList();
+
+        keep( mainClass, "mainClass", references, reached, queue );
+
+        Iterator itr = new TreeSet( references.keySet() ).iterator();
+
+        while ( itr.hasNext() )
+        {
+            String name = (String) itr.next();
+
+            Iterator rules = keepRules.entrySet().iterator();
+
+            while ( rules.hasNext() )
+            {
+                Map.Entry rule = (Map.Entry) rules.next();
+
+                if ( ( (Pattern) rule.getValue() ).matcher( toClassName( name ) ).matches() )
+                {
+                    keep( name, "keep rule " + rule.getKey(), references, reached, queue );
+                }
+            }
+        }
+
+        // the JRE loads the providers of its own services
+
+        itr = services.entrySet().iterator();
+
+        while ( itr.hasNext() )
+        {
+            Map.Entry service = (Map.Entry) itr.next();
+
+            if ( !references.containsKey( service.getKey() ) )
+            {
+                Iterator providers = ( (List) service.getValue() ).iterator();
+
+                while ( providers.hasNext() )
+                {
+                    keep( (String) providers.next(), "provider of the JRE service "
+                        + toClassName( (String) service.getKey() ), references, reached, queue );
+                }
+            }
+        }
+
+        while ( !queue.isEmpty() )
+        {
+            String name = (String) queue.remove( queue.size() - 1 );
+
+            Iterator names = ( (Set) references.get( name ) ).iterator();
+
+            while ( names.hasNext() )
+            {
+                String reference = (String) names.next();
+
+                if ( references.containsKey( reference ) && reached.add( reference ) )
+                {
+                    queue.add( reference );
+                }
+            }
+
+            List providers = (List) services.get( name );
+
+            for ( int i = 0; providers != null && i < providers.size(); i++ )
+            {
+                keep( (String) providers.get( i ), "provider of the service " + toClassName( name ), references,
+                      reached, queue );
+            }
+        }
+
+        return reached;
+    }
+
+    /**
+     * marks a class as reached, recording why if it hadn't been
+     *
+     * @param name the class name
+     * @param reason why the class is kept
+     * @param references the parsed classes
+     * @param reached the reached class names
+     * @param queue the classes whose references haven't been followed
+     */
+    private void keep( String name, String reason, Map references, Set reached, List queue )
+    {
+        if ( references.containsKey( name ) && reached.add( name ) )
+        {
+            roots.put( name, reason );
+
+            queue.add( name );
+        }
+    }
+
+    /**
+     * @param file an archive or directory
+     * @return the names of the classes it contains
+     * @throws IOException if the archive cannot be read
+     */
+    private static List listClasses( File file )
+        throws IOException
+    {
+        List classes = new ArrayList();
+
+        Iterator itr = listEntries( file ).iterator();
+
+        while ( itr.hasNext() )
+        {
+            String name = getClassName( (String) itr.next() );
+
+            if ( name != null )
+            {
+                classes.add( name );
+            }
+        }
+
+        return classes;
+    }
+
+    /**
+     * parses the classes and service definitions of an archive or directory
+     *
+     * @param file an archive or directory
+     * @param names the names of the classes on the class path
+     * @return the parsed source
+     * @throws IOException if the archive cannot be read
+     */
+    private static Source parse( File file, Map names )
+        throws IOException
+    {
+        Source source = new Source();
+
+        source.file = file;
+
+        ZipFile zip = file.isFile() ? new ZipFile( file ) : null;
+
+        try
+        {
+            Iterator itr = listEntries( file ).iterator();
+
+            while ( itr.hasNext() )
+            {
+                String entry = (String) itr.next();
+
+                String name = getClassName( entry );
+
+                if ( name == null && !( entry.startsWith( SERVICES ) && entry.length() > SERVICES.length() ) )
+                {
+                    continue;
+                }
+
+                InputStream in = zip != null ? zip.getInputStream( zip.getEntry( entry ) )
+                                : new FileInputStream( new File( file, entry ) );
+
+                try
+                {
+                    if ( name == null )
+                    {
+                        String service = entry.substring( SERVICES.length() ).replace( '.', '/' );
+
+                        source.services.put( service, readProviders( in ) );
+
+                        continue;
+                    }
+
+                    Set references = parseClass( in, names );
+
+                    if ( references == null )
+                    {
+                        continue;
+                    }
+
+                    Set previous = (Set) source.references.get( name );
+
+                    if ( previous != null )
+                    {
+                        references.addAll( previous );
+                    }
+
+                    source.references.put( names.get( name ), references );
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+        finally
+        {
+            if ( zip != null )
+            {
+                zip.close();
+            }
+        }
+
+        return source;
+    }
+
+    /**
+     * Collects the names of the classes on the class path a class
+     * references, from every string in its constant pool: class names,
+     * descriptors and signatures, and string constants that are class
+     * names.
+     *
+     * @param in the class file
+     * @param names the names of the classes on the class path
+     * @return the referenced class names or null if the class file cannot
+     *         be parsed
+     * @throws IOException if the class file cannot be read
+     */
+    private static Set parseClass( InputStream in, Map names )
+        throws IOException
+    {
+        DataInputStream data = new DataInputStream( new ByteArrayInputStream( read( in ) ) );
+
+        Set references = new HashSet();
+
+        try
+        {
+            if ( data.readInt() != MAGIC )
+            {
+                return null;
+            }
+
+            data.readUnsignedShort();
+            data.readUnsignedShort();
+
+            int count = data.readUnsignedShort();
+
+            for ( int i = 1; i < count; i++ )
+            {
+                int tag = data.readUnsignedByte();
+
+                switch ( tag )
+                {
+                    case 1:
+                        addReferences( data.readUTF(), names, references );
+                        break;
+                    case 7:
+                    case 8:
+                    case 16:
+                    case 19:
+                    case 20:
+                        data.skipBytes( 2 );
+                        break;
+                    case 15:
+                        data.skipBytes( 3 );
+                        break;
+                    case 3:
+                    case 4:
+                    case 9:
+                    case 10:
+                    case 11:
+                    case 12:
+                    case 17:
+                    case 18:
+                        data.skipBytes( 4 );
+                        break;
+                    case 5:
+                    case 6:
+                        data.skipBytes( 8 );
+                        i++;
+                        break;
+                    default:
+                        return null;
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            // truncated
+            return null;
+        }
+
+        return references;
+    }
+
+    /**
+     * adds the class names in a constant pool string
+     *
+     * @param value the string
+     * @param names the names of the classes on the class path
+     * @param references the referenced class names
+     */
+    private static void addReferences( String value, Map names, Set references )
+    {
+        Object name = names.get( value.replace( '.', '/' ) );
+
+        if ( name != null )
+        {
+            references.add( name );
+        }
+
+        // Lpkg/Name; and Lpkg/Name<...>; in descriptors and signatures
+
+        for ( int start = value.indexOf( 'L' ); start >= 0; start = value.indexOf( 'L', start + 1 ) )
+        {
+            for ( int end = start + 1; end < value.length(); end++ )
+            {
+                char c = value.charAt( end );
+
+                if ( c == ';' || c == '<' )
+                {
+                    name = names.get( value.substring( start + 1, end ) );
+
+                    if ( name != null )
+                    {
+                        references.add( name );
+                    }
+
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param in a META-INF/services file
+     * @return the provider class names it lists
+     * @throws IOException if the file cannot be read
+     */
+    private static List readProviders( InputStream in )
+        throws IOException
+    {
+        List providers = new ArrayList();
+
+        BufferedReader reader = new BufferedReader( new InputStreamReader( in, "UTF-8" ) );
+
+        String line;
+
+        while ( ( line = reader.readLine() ) != null )
+        {
+            int comment = line.indexOf( '#' );
+
+            line = ( comment < 0 ? line : line.substring( 0, comment ) ).trim();
+
+            if ( line.length() > 0 )
+            {
+                providers.add( line.replace( '.', '/' ) );
+            }
+        }
+
+        return providers;
+    }
+
+    /**
+     * removes classes from an archive
+     *
+     * @param archive the archive
+     * @param removable the names of the classes to remove
+     * @return the Result
+     * @throws IOException if the archive cannot be rewritten
+     */
+    private static Result rewrite( File archive, Set removable )
+        throws IOException
+    {
+        Result result = new Result();
+
+        result.file = archive;
+        result.sizeBefore = archive.length();
+
+        List kept = new ArrayList();
+
+        Set removed = new TreeSet();
+
+        File temp = new File( archive.getParentFile(), archive.getName() + ".tmp" );
+
+        ZipFile zip = new ZipFile( archive );
+
+        try
+        {
+            for ( Enumeration e = zip.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry entry = (ZipEntry) e.nextElement();
+
+                String name = getClassName( entry.getName() );
+
+                if ( name != null && !entry.getName().startsWith( VERSIONS ) )
+                {
+                    result.classesBefore++;
+                }
+
+                if ( name != null && removable.contains( name ) )
+                {
+                    removed.add( toClassName( name ) );
+                }
+                else
+                {
+                    kept.add( entry );
+                }
+            }
+
+            if ( !removed.isEmpty() )
+            {
+                ClassLoadTrace.copy( zip, kept, temp );
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        if ( !removed.isEmpty() )
+        {
+            ClassLoadTrace.replace( archive, temp );
+        }
+
+        result.removed.addAll( removed );
+        result.sizeAfter = archive.length();
+
+        return result;
+    }
+
+    /**
+     * @param file the state file
+     * @return the recorded state or null if there is none
+     * @throws IOException if the state cannot be read
+     */
+    private static Properties loadState( File file )
+        throws IOException
+    {
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+
+        Properties state = new Properties();
+
+        InputStream in = new FileInputStream( file );
+
+        try
+        {
+            state.load( in );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return state;
+    }
+
+    /**
+     * @param file the state file
+     * @param state the state to record
+     * @throws IOException if the state cannot be written
+     */
+    private static void storeState( File file, Properties state )
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream( file );
+
+        try
+        {
+            state.store( out, "exe4j shrunk archive" );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * runs tasks concurrently
+     *
+     * @param tasks the Callables
+     * @return their results, in the same order
+     * @throws IOException if a task fails
+     */
+    private List run( List tasks )
+        throws IOException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, Math.max( 1, tasks.size() ) ) );
+
+        try
+        {
+            List futures = new ArrayList();
+
+            Iterator itr = tasks.iterator();
+
+            while ( itr.hasNext() )
+            {
+                futures.add( executor.submit( (Callable) itr.next() ) );
+            }
+
+            List results = new ArrayList();
+
+            itr = futures.iterator();
+
+            while ( itr.hasNext() )
+            {
+                results.add( ( (Future) itr.next() ).get() );
+            }
+
+            return results;
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IllegalStateException( e.getCause().toString() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IOException( "Interrupted while shrinking archives" );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param sources the parsed class path
+     * @param file an archive
+     * @return the archive's Source or null if it isn't on the class path
+     */
+    private static Source getSource( List sources, File file )
+    {
+        for ( int i = 0; i < sources.size(); i++ )
+        {
+            Source source = (Source) sources.get( i );
+
+            if ( source.file.getAbsoluteFile().equals( file.getAbsoluteFile() ) )
+            {
+                return source;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param file an archive or directory
+     * @return the entry names, with / separators, an empty list if the
+     *         file doesn't exist
+     * @throws IOException if the archive cannot be read
+     */
+    private static List listEntries( File file )
+        throws IOException
+    {
+        List entries = new ArrayList();
+
+        if ( file.isDirectory() )
+        {
+            listFiles( file, "", entries );
+        }
+        else if ( file.isFile() )
+        {
+            ZipFile zip = new ZipFile( file );
+
+            try
+            {
+                for ( Enumeration e = zip.entries(); e.hasMoreElements(); )
+                {
+                    ZipEntry entry = (ZipEntry) e.nextElement();
+
+                    if ( !entry.isDirectory() )
+                    {
+                        entries.add( entry.getName() );
+                    }
+                }
+            }
+            finally
+            {
+                zip.close();
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * lists the files below a directory
+     *
+     * @param directory the directory
+     * @param relativePath the directory's path relative to the class path
+     *            entry
+     * @param entries the list the relative paths are added to
+     */
+    private static void listFiles( File directory, String relativePath, List entries )
+    {
+        File[] files = directory.listFiles();
+
+        for ( int i = 0; files != null && i < files.length; i++ )
+        {
+            if ( files[i].isDirectory() )
+            {
+                listFiles( files[i], relativePath + files[i].getName() + "/", entries );
+            }
+            else
+            {
+                entries.add( relativePath + files[i].getName() );
+            }
+        }
+    }
+
+    /**
+     * @param entry an entry name
+     * @return the name of the class, with / separators, or null if the entry
+     *         isn't a class that can be removed
+     */
+    private static String getClassName( String entry )
+    {
+        if ( !entry.endsWith( CLASS_SUFFIX ) || entry.endsWith( "module-info.class" )
+            || entry.endsWith( "package-info.class" ) )
+        {
+            return null;
+        }
+
+        String name = entry.substring( 0, entry.length() - CLASS_SUFFIX.length() );
+
+        // META-INF/versions/9/a/B.class is a version of a/B
+
+        if ( name.startsWith( VERSIONS ) )
+        {
+            int separator = name.indexOf( '/', VERSIONS.length() );
+
+            return separator < 0 ? null : name.substring( separator + 1 );
+        }
+
+        return name.startsWith( "META-INF/" ) ? null : name;
+    }
+
+    /**
+     * @param name a class name with / separators
+     * @return the class name
+     */
+    private static String toClassName( String name )
+    {
+        return name.replace( '/', '.' );
+    }
+
+    /**
+     * @param in a stream
+     * @return its content
+     * @throws IOException if the stream cannot be read
+     */
+    private static byte[] read( InputStream in )
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        byte[] buffer = new byte[8192];
+
+        int count;
+        while ( ( count = in.read( buffer ) ) > 0 )
+        {
+            out.write( buffer, 0, count );
+        }
+
+        return out.toByteArray();
+    }
+
+}
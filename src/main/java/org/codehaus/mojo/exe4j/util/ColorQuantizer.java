@@ -0,0 +1,490 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces an image to a palette of at most 256 colours. An image that
+ * already uses few enough colours keeps them exactly, otherwise the palette
+ * is chosen by median cut over a histogram of the colours at 5 bits per
+ * channel and each pixel is mapped to the nearest palette colour. Pixels
+ * that are more than half transparent share a single transparent palette
+ * entry, the others become opaque.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public final class ColorQuantizer
+{
+    /**
+     * A box of the histogram, the colours within it are represented by their
+     * weighted average.
+     */
+    private static class Box
+    {
+        int[] min = new int[3];
+
+        int[] max = new int[3];
+
+        long count;
+    }
+
+    /**
+     * the maximum palette size
+     */
+    public static final int MAX_COLORS = 256;
+
+    /**
+     * the histogram resolution in bits per channel
+     */
+    private static final int BITS = 5;
+
+    private static final int LEVELS = 1 << BITS;
+
+    private ColorQuantizer()
+    {
+    }
+
+    /**
+     * @param image the image to reduce
+     * @param colors the maximum palette size, including the transparent
+     *            entry, from 2 to 256
+     * @return the image with an indexed colour model of 1, 2, 4 or 8 bits
+     */
+    public static BufferedImage reduce( BufferedImage image, int colors )
+    {
+        if ( colors < 2 || colors > MAX_COLORS )
+        {
+            throw new IllegalArgumentException( "The palette size must be from 2 to " + MAX_COLORS + ": " + colors );
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        int[] pixels = image.getRGB( 0, 0, width, height, null, 0, width );
+
+        boolean transparent = false;
+
+        for ( int i = 0; i < pixels.length; i++ )
+        {
+            if ( ( pixels[i] >>> 24 ) < 128 )
+            {
+                transparent = true;
+                break;
+            }
+        }
+
+        int opaqueColors = transparent ? colors - 1 : colors;
+
+        int[] palette = getExactPalette( pixels, opaqueColors );
+
+        if ( palette == null )
+        {
+            palette = getMedianCutPalette( pixels, opaqueColors );
+        }
+
+        int size = palette.length + ( transparent ? 1 : 0 );
+
+        byte[] r = new byte[size];
+        byte[] g = new byte[size];
+        byte[] b = new byte[size];
+
+        for ( int i = 0; i < palette.length; i++ )
+        {
+            r[i] = (byte) ( palette[i] >> 16 );
+            g[i] = (byte) ( palette[i] >> 8 );
+            b[i] = (byte) palette[i];
+        }
+
+        int transparentIndex = transparent ? palette.length : -1;
+
+        // small palettes are packed several pixels to a byte
+
+        int bits = size <= 2 ? 1 : ( size <= 4 ? 2 : ( size <= 16 ? 4 : 8 ) );
+
+        IndexColorModel model = new IndexColorModel( bits, size, r, g, b, transparentIndex );
+
+        int type = bits == 8 ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_BYTE_BINARY;
+
+        BufferedImage reduced = new BufferedImage( width, height, type, model );
+
+        WritableRaster raster = reduced.getRaster();
+
+        int[] indexes = new int[width];
+
+        // the nearest palette entry of each colour is looked up once
+
+        Map nearest = new HashMap();
+
+        for ( int y = 0; y < height; y++ )
+        {
+            for ( int x = 0; x < width; x++ )
+            {
+                int argb = pixels[y * width + x];
+
+                if ( ( argb >>> 24 ) < 128 )
+                {
+                    indexes[x] = transparentIndex;
+
+                    continue;
+                }
+
+                Integer rgb = new Integer( argb & 0xffffff );
+
+                Integer index = (Integer) nearest.get( rgb );
+
+                if ( index == null )
+                {
+                    index = new Integer( getNearest( palette, rgb.intValue() ) );
+
+                    nearest.put( rgb, index );
+                }
+
+                indexes[x] = index.intValue();
+            }
+
+            raster.setSamples( 0, y, width, 1, 0, indexes );
+        }
+
+        return reduced;
+    }
+
+    /**
+     * @param pixels the ARGB pixels
+     * @param colors the palette size
+     * @return the distinct opaque colours or null if there are more than
+     *         colors of them
+     */
+    private static int[] getExactPalette( int[] pixels, int colors )
+    {
+        Map distinct = new HashMap();
+
+        for ( int i = 0; i < pixels.length; i++ )
+        {
+            if ( ( pixels[i] >>> 24 ) < 128 )
+            {
+                continue;
+            }
+
+            Integer rgb = new Integer( pixels[i] & 0xffffff );
+
+            if ( !distinct.containsKey( rgb ) )
+            {
+                if ( distinct.size() == colors )
+                {
+                    return null;
+                }
+
+                distinct.put( rgb, rgb );
+            }
+        }
+
+        int[] palette = new int[distinct.size()];
+
+        int i = 0;
+
+        for ( Iterator itr = distinct.keySet().iterator(); itr.hasNext(); )
+        {
+            palette[i++] = ( (Integer) itr.next() ).intValue();
+        }
+
+        Arrays.sort( palette );
+
+        return palette;
+    }
+
+    /**
+     * @param pixels the ARGB pixels
+     * @param colors the palette size
+     * @return the palette, the average colour of each box
+     */
+    private static int[] getMedianCutPalette( int[] pixels, int colors )
+    {
+        long[] histogram = new long[LEVELS * LEVELS * LEVELS];
+
+        // the channel totals of the colours counted in each histogram entry
+
+        long[][] sums = new long[3][histogram.length];
+
+        for ( int i = 0; i < pixels.length; i++ )
+        {
+            if ( ( pixels[i] >>> 24 ) >= 128 )
+            {
+                int bin = getBin( pixels[i] );
+
+                histogram[bin]++;
+
+                sums[0][bin] += ( pixels[i] >> 16 ) & 0xff;
+                sums[1][bin] += ( pixels[i] >> 8 ) & 0xff;
+                sums[2][bin] += pixels[i] & 0xff;
+            }
+        }
+
+        List boxes = new ArrayList();
+
+        Box first = new Box();
+
+        first.max[0] = first.max[1] = first.max[2] = LEVELS - 1;
+
+        shrink( first, histogram );
+
+        boxes.add( first );
+
+        while ( boxes.size() < colors )
+        {
+            // split the most populous box that holds more than one colour
+
+            Box largest = null;
+
+            for ( int i = 0; i < boxes.size(); i++ )
+            {
+                Box box = (Box) boxes.get( i );
+
+                if ( box.count > 1 && !isSingleColor( box ) && ( largest == null || box.count > largest.count ) )
+                {
+                    largest = box;
+                }
+            }
+
+            if ( largest == null )
+            {
+                break;
+            }
+
+            boxes.add( split( largest, histogram ) );
+        }
+
+        int[] palette = new int[boxes.size()];
+
+        for ( int i = 0; i < palette.length; i++ )
+        {
+            palette[i] = getAverage( (Box) boxes.get( i ), histogram, sums );
+        }
+
+        return palette;
+    }
+
+    /**
+     * Splits a box at the median of its longest side, the box keeps the
+     * lower half.
+     *
+     * @param box the box to split
+     * @param histogram the colour histogram
+     * @return the upper half
+     */
+    private static Box split( Box box, long[] histogram )
+    {
+        int axis = 0;
+
+        for ( int i = 1; i < 3; i++ )
+        {
+            if ( box.max[i] - box.min[i] > box.max[axis] - box.min[axis] )
+            {
+                axis = i;
+            }
+        }
+
+        // the plane counts along the axis
+
+        long[] planes = new long[LEVELS];
+
+        int[] p = new int[3];
+
+        for ( p[0] = box.min[0]; p[0] <= box.max[0]; p[0]++ )
+        {
+            for ( p[1] = box.min[1]; p[1] <= box.max[1]; p[1]++ )
+            {
+                for ( p[2] = box.min[2]; p[2] <= box.max[2]; p[2]++ )
+                {
+                    planes[p[axis]] += histogram[( p[0] << ( 2 * BITS ) ) | ( p[1] << BITS ) | p[2]];
+                }
+            }
+        }
+
+        long half = 0;
+
+        int median = box.min[axis];
+
+        while ( median < box.max[axis] - 1 && ( half + planes[median] ) * 2 < box.count )
+        {
+            half += planes[median];
+
+            median++;
+        }
+
+        Box upper = new Box();
+
+        System.arraycopy( box.min, 0, upper.min, 0, 3 );
+        System.arraycopy( box.max, 0, upper.max, 0, 3 );
+
+        upper.min[axis] = median + 1;
+        box.max[axis] = median;
+
+        shrink( box, histogram );
+        shrink( upper, histogram );
+
+        return upper;
+    }
+
+    /**
+     * shrinks a box to the colours it contains and counts them
+     *
+     * @param box the box
+     * @param histogram the colour histogram
+     */
+    private static void shrink( Box box, long[] histogram )
+    {
+        int[] min = { LEVELS, LEVELS, LEVELS };
+        int[] max = { -1, -1, -1 };
+
+        long count = 0;
+
+        for ( int r = box.min[0]; r <= box.max[0]; r++ )
+        {
+            for ( int g = box.min[1]; g <= box.max[1]; g++ )
+            {
+                for ( int b = box.min[2]; b <= box.max[2]; b++ )
+                {
+                    long n = histogram[( r << ( 2 * BITS ) ) | ( g << BITS ) | b];
+
+                    if ( n > 0 )
+                    {
+                        count += n;
+
+                        min[0] = Math.min( min[0], r );
+                        min[1] = Math.min( min[1], g );
+                        min[2] = Math.min( min[2], b );
+                        max[0] = Math.max( max[0], r );
+                        max[1] = Math.max( max[1], g );
+                        max[2] = Math.max( max[2], b );
+                    }
+                }
+            }
+        }
+
+        box.count = count;
+
+        if ( count > 0 )
+        {
+            box.min = min;
+            box.max = max;
+        }
+    }
+
+    /**
+     * @param box the box
+     * @return true if the box covers a single histogram entry
+     */
+    private static boolean isSingleColor( Box box )
+    {
+        return box.min[0] == box.max[0] && box.min[1] == box.max[1] && box.min[2] == box.max[2];
+    }
+
+    /**
+     * @param box the box
+     * @param histogram the colour histogram
+     * @param sums the channel totals of each histogram entry
+     * @return the RGB average of the colours in the box
+     */
+    private static int getAverage( Box box, long[] histogram, long[][] sums )
+    {
+        long r = 0;
+        long g = 0;
+        long b = 0;
+
+        long count = 0;
+
+        for ( int i = box.min[0]; i <= box.max[0]; i++ )
+        {
+            for ( int j = box.min[1]; j <= box.max[1]; j++ )
+            {
+                for ( int k = box.min[2]; k <= box.max[2]; k++ )
+                {
+                    int bin = ( i << ( 2 * BITS ) ) | ( j << BITS ) | k;
+
+                    r += sums[0][bin];
+                    g += sums[1][bin];
+                    b += sums[2][bin];
+
+                    count += histogram[bin];
+                }
+            }
+        }
+
+        if ( count == 0 )
+        {
+            return 0;
+        }
+
+        return (int) ( r / count ) << 16 | (int) ( g / count ) << 8 | (int) ( b / count );
+    }
+
+    /**
+     * @param palette the RGB palette
+     * @param rgb the colour
+     * @return the index of the palette colour closest to the colour
+     */
+    private static int getNearest( int[] palette, int rgb )
+    {
+        int r = ( rgb >> 16 ) & 0xff;
+        int g = ( rgb >> 8 ) & 0xff;
+        int b = rgb & 0xff;
+
+        int nearest = 0;
+
+        int nearestDistance = Integer.MAX_VALUE;
+
+        for ( int i = 0; i < palette.length; i++ )
+        {
+            int dr = r - ( ( palette[i] >> 16 ) & 0xff );
+            int dg = g - ( ( palette[i] >> 8 ) & 0xff );
+            int db = b - ( palette[i] & 0xff );
+
+            int distance = dr * dr + dg * dg + db * db;
+
+            if ( distance < nearestDistance )
+            {
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * @param argb the colour
+     * @return the colour's histogram index
+     */
+    private static int getBin( int argb )
+    {
+        int r = ( argb >> ( 24 - BITS ) ) & ( LEVELS - 1 );
+        int g = ( argb >> ( 16 - BITS ) ) & ( LEVELS - 1 );
+        int b = ( argb >> ( 8 - BITS ) ) & ( LEVELS - 1 );
+
+        return ( r << ( 2 * BITS ) ) | ( g << BITS ) | b;
+    }
+
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.resolver.filter.ScopeArtifactFilter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Selects the archives a project's resolved dependencies contribute to an
+ * executable's class path. The artifacts are filtered by scope and by
+ * groupId:artifactId[:type[:classifier]] include and exclude patterns, in
+ * which * matches any sequence of characters. Artifacts that resolve to the
+ * same file are only included once, the first to be resolved is kept, and
+ * the result is in the order Maven resolved the artifacts, which is the
+ * order it builds the project's own class path in.
+ *
+ * The selections are kept in the project's context, so the several
+ * executables of a project, or several executions of the mojo, only walk
+ * the dependency graph once, and they go when the project does. A selection
+ * is made again when the project's artifacts are resolved again. Maven 2.0
+ * projects have no context, the artifacts are selected on every call.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public final class DependencyClassPath
+{
+    /**
+     * the project context key the selections are kept under
+     */
+    private static final String CONTEXT_KEY = DependencyClassPath.class.getName();
+
+    /**
+     * guards the creation of a project's selections
+     */
+    private static final Object LOCK = new Object();
+
+    private DependencyClassPath()
+    {
+    }
+
+    /**
+     * Selects the archives a project's dependencies contribute to its class
+     * path. Artifacts that haven't been resolved to a file, or that aren't
+     * jar or zip archives, are skipped.
+     *
+     * @param project the project
+     * @param scope the class path scope, compile, runtime or test
+     * @param includes the patterns artifacts must match one of, all
+     *            artifacts are included if null or empty
+     * @param excludes the patterns artifacts must not match, may be null
+     * @return the selected artifacts in class path order, the list must not
+     *         be modified
+     */
+    public static List getArtifacts( MavenProject project, String scope, List includes, List excludes )
+    {
+        Set resolved = project.getArtifacts();
+
+        Map selections = getSelections( project );
+
+        if ( selections == null )
+        {
+            return Collections.unmodifiableList( select( resolved, scope, includes, excludes ) );
+        }
+
+        String key = scope + "|" + includes + "|" + excludes;
+
+        synchronized ( selections )
+        {
+            Selection selection = (Selection) selections.get( key );
+
+            // the project's artifacts are replaced when they're resolved again
+
+            if ( selection == null || selection.resolved != resolved || selection.size != resolved.size() )
+            {
+                selection = new Selection( resolved, Collections.unmodifiableList( select( resolved, scope,
+                                                                                           includes, excludes ) ) );
+
+                selections.put( key, selection );
+            }
+
+            return selection.artifacts;
+        }
+    }
+
+    /**
+     * @param project the project
+     * @return the selections kept in the project's context, or null if the
+     *         project has no context
+     */
+    private static Map getSelections( MavenProject project )
+    {
+        try
+        {
+            Method get = project.getClass().getMethod( "getContextValue", new Class[] { String.class } );
+
+            Method set = project.getClass().getMethod( "setContextValue",
+                                                       new Class[] { String.class, Object.class } );
+
+            synchronized ( LOCK )
+            {
+                Map selections = (Map) get.invoke( project, new Object[] { CONTEXT_KEY } );
+
+                if ( selections == null )
+                {
+                    selections = new HashMap();
+
+                    set.invoke( project, new Object[] { CONTEXT_KEY, selections } );
+                }
+
+                return selections;
+            }
+        }
+        catch ( Exception e )
+        {
+            // Maven 2.0
+
+            return null;
+        }
+    }
+
+    /**
+     * Names the files the selected archives are copied to in the dependency
+     * directory, an archive whose name is already taken by an earlier
+     * artifact is prefixed with its groupId.
+     *
+     * @param artifacts the selected artifacts
+     * @return the file name of each artifact, in the same order
+     */
+    public static List getFileNames( List artifacts )
+    {
+        List fileNames = new ArrayList();
+
+        Set names = new HashSet();
+
+        Iterator itr = artifacts.iterator();
+
+        while ( itr.hasNext() )
+        {
+            Artifact artifact = (Artifact) itr.next();
+
+            String name = artifact.getFile().getName();
+
+            if ( !names.add( name ) )
+            {
+                name = artifact.getGroupId() + "-" + name;
+
+                names.add( name );
+            }
+
+            fileNames.add( name );
+        }
+
+        return fileNames;
+    }
+
+    /**
+     * the artifacts selected by a filter
+     */
+    private static final class Selection
+    {
+        /**
+         * the project's resolved artifacts they were selected from
+         */
+        private final Set resolved;
+
+        /**
+         * the number of resolved artifacts
+         */
+        private final int size;
+
+        /**
+         * the selected artifacts
+         */
+        private final List artifacts;
+
+        private Selection( Set resolved, List artifacts )
+        {
+            this.resolved = resolved;
+            this.size = resolved.size();
+            this.artifacts = artifacts;
+        }
+    }
+
+    /**
+     * @param artifacts the resolved artifacts
+     * @param scope the class path scope
+     * @param includes the include patterns, may be null
+     * @param excludes the exclude patterns, may be null
+     * @return the selected artifacts in class path order
+     */
+    private static List select( Set artifacts, String scope, List includes, List excludes )
+    {
+        ScopeArtifactFilter scopeFilter = new ScopeArtifactFilter( scope );
+
+        List selected = new ArrayList();
+
+        Iterator itr = artifacts.iterator();
+
+        while ( itr.hasNext() )
+        {
+            Artifact artifact = (Artifact) itr.next();
+
+            if ( artifact.getFile() != null && isArchive( artifact.getFile() ) && scopeFilter.include( artifact )
+                && ( includes == null || includes.isEmpty() || matchesAny( artifact, includes ) )
+                && ( excludes == null || !matchesAny( artifact, excludes ) ) )
+            {
+                selected.add( artifact );
+            }
+        }
+
+        // drop artifacts that resolve to a file that's already been selected
+
+        Set files = new HashSet();
+
+        itr = selected.iterator();
+
+        while ( itr.hasNext() )
+        {
+            if ( !files.add( getCanonicalFile( ( (Artifact) itr.next() ).getFile() ) ) )
+            {
+                itr.remove();
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * @param artifact the artifact
+     * @param patterns the groupId:artifactId[:type[:classifier]] patterns
+     * @return true if the artifact matches at least one of the patterns
+     */
+    private static boolean matchesAny( Artifact artifact, List patterns )
+    {
+        String[] id = new String[] { artifact.getGroupId(), artifact.getArtifactId(), artifact.getType(),
+            artifact.getClassifier() == null ? "" : artifact.getClassifier() };
+
+        Iterator itr = patterns.iterator();
+
+        while ( itr.hasNext() )
+        {
+            String[] pattern = itr.next().toString().trim().split( ":" );
+
+            boolean matches = pattern.length <= id.length;
+
+            for ( int i = 0; matches && i < pattern.length; i++ )
+            {
+                matches = matches( pattern[i], id[i] );
+            }
+
+            if ( matches )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param pattern the pattern, * matches any sequence of characters
+     * @param value the value to match
+     * @return true if the value matches the pattern
+     */
+    static boolean matches( String pattern, String value )
+    {
+        int star = pattern.indexOf( '*' );
+
+        if ( star < 0 )
+        {
+            return pattern.equals( value );
+        }
+
+        if ( !value.startsWith( pattern.substring( 0, star ) ) )
+        {
+            return false;
+        }
+
+        String rest = pattern.substring( star + 1 );
+
+        for ( int i = star; i <= value.length(); i++ )
+        {
+            if ( matches( rest, value.substring( i ) ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param artifact the artifact
+     * @return the artifact's groupId:artifactId:type:classifier
+     */
+    private static String getId( Artifact artifact )
+    {
+        return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getType() + ":"
+            + ( artifact.getClassifier() == null ? "" : artifact.getClassifier() );
+    }
+
+    /**
+     * @param file the file
+     * @return true if the file is a jar or zip archive
+     */
+    private static boolean isArchive( File file )
+    {
+        String name = file.getName().toLowerCase();
+
+        return name.endsWith( ".jar" ) || name.endsWith( ".zip" );
+    }
+
+    /**
+     * @param file the file
+     * @return the canonical file, or the absolute file if it cannot be
+     *         determined
+     */
+    private static File getCanonicalFile( File file )
+    {
+        try
+        {
+            return file.getCanonicalFile();
+        }
+        catch ( IOException e )
+        {
+            return file.getAbsoluteFile();
+        }
+    }
+
+}
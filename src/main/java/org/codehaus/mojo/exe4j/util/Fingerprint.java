@@ -0,0 +1,406 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A named set of content digests describing the inputs of an exe4j
+ * build. The fingerprint of the last successful build is stored next to
+ * the exe4j config file so that the next build can work out which, if
+ * any, of its inputs have changed.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class Fingerprint
+{
+    /**
+     * the digest algorithm used for all entries
+     */
+    private static final String ALGORITHM = "SHA-1";
+
+    /**
+     * digest value recorded for inputs that do not exist
+     */
+    private static final String MISSING = "missing";
+
+    /**
+     * the entry digests, indexed by entry name
+     */
+    private Map entries = new TreeMap();
+
+    /**
+     * adds an entry for a piece of in-memory content
+     *
+     * @param name the entry name
+     * @param content the content, digested as UTF-8
+     */
+    public void addString( String name, String content )
+    {
+        entries.put( name, content == null ? MISSING : digest( content ) );
+    }
+
+    /**
+     * adds an entry for a file's content, a file that does not exist is
+     * recorded as missing rather than raising an error.
+     *
+     * @param name the entry name
+     * @param file the file to digest
+     * @throws IOException if the file cannot be read
+     */
+    public void addFile( String name, File file )
+        throws IOException
+    {
+        entries.put( name, file != null && file.isFile() ? digest( file ) : MISSING );
+    }
+
+    /**
+     * adds an entry for an XML file's content with the absolute paths of the
+     * supplied directories replaced by ${name}, so the entry is the same
+     * wherever the directories are checked out. The paths are replaced
+     * longest first, a directory within another keeps its own name.
+     *
+     * @param name the entry name
+     * @param file the XML file to digest
+     * @param roots the directories keyed by the names their paths are
+     *            replaced by
+     * @throws IOException if the file cannot be read
+     */
+    public void addXmlFile( String name, File file, Map roots )
+        throws IOException
+    {
+        if ( file == null || !file.isFile() )
+        {
+            entries.put( name, MISSING );
+            return;
+        }
+
+        List names = new ArrayList( roots.keySet() );
+
+        final Map paths = new HashMap();
+
+        Iterator itr = names.iterator();
+
+        while ( itr.hasNext() )
+        {
+            Object root = itr.next();
+
+            paths.put( root, ( (File) roots.get( root ) ).getAbsolutePath() );
+        }
+
+        Collections.sort( names, new Comparator()
+        {
+            public int compare( Object o1, Object o2 )
+            {
+                return ( (String) paths.get( o2 ) ).length() - ( (String) paths.get( o1 ) ).length();
+            }
+        } );
+
+        String content = XmlFiles.read( file );
+
+        itr = names.iterator();
+
+        while ( itr.hasNext() )
+        {
+            String root = (String) itr.next();
+
+            content = content.replace( (String) paths.get( root ), "${" + root + "}" );
+        }
+
+        entries.put( name, digest( content ) );
+    }
+
+    /**
+     * adds an entry for every file below the supplied directory, entry
+     * names are prefixed with the supplied name.
+     *
+     * @param name the entry name prefix
+     * @param directory the directory to walk
+     * @throws IOException if a file cannot be read
+     */
+    public void addDirectory( String name, File directory )
+        throws IOException
+    {
+        File[] files = directory.listFiles();
+
+        if ( files == null )
+        {
+            entries.put( name, MISSING );
+            return;
+        }
+
+        for ( int i = 0; i < files.length; i++ )
+        {
+            String childName = name + "/" + files[i].getName();
+
+            if ( files[i].isDirectory() )
+            {
+                addDirectory( childName, files[i] );
+            }
+            else
+            {
+                addFile( childName, files[i] );
+            }
+        }
+    }
+
+    /**
+     * entry digest accessor
+     *
+     * @param name the entry name
+     * @return the entry digest or null if there is no such entry
+     */
+    public String getDigest( String name )
+    {
+        return (String) entries.get( name );
+    }
+
+    /**
+     * removes an entry
+     *
+     * @param name the entry name
+     */
+    public void remove( String name )
+    {
+        entries.remove( name );
+    }
+
+    /**
+     * Lists the entries that differ between this fingerprint and a
+     * previous one, including entries that have been added or removed.
+     *
+     * @param previous the previous fingerprint
+     * @return a list of the changed entry names, empty if nothing changed
+     */
+    public List getChangedEntries( Fingerprint previous )
+    {
+        List changed = new ArrayList();
+
+        Iterator itr = entries.entrySet().iterator();
+
+        while ( itr.hasNext() )
+        {
+            Map.Entry entry = (Map.Entry) itr.next();
+
+            if ( !entry.getValue().equals( previous.entries.get( entry.getKey() ) ) )
+            {
+                changed.add( entry.getKey() );
+            }
+        }
+
+        itr = previous.entries.keySet().iterator();
+
+        while ( itr.hasNext() )
+        {
+            Object name = itr.next();
+
+            if ( !entries.containsKey( name ) )
+            {
+                changed.add( name );
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return a single digest over all of the entries
+     */
+    public String getDigest()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        Iterator itr = entries.entrySet().iterator();
+
+        while ( itr.hasNext() )
+        {
+            Map.Entry entry = (Map.Entry) itr.next();
+
+            buffer.append( entry.getKey() );
+            buffer.append( '=' );
+            buffer.append( entry.getValue() );
+            buffer.append( '\n' );
+        }
+
+        return digest( buffer.toString() );
+    }
+
+    /**
+     * writes the fingerprint to a file
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void store( File file )
+        throws IOException
+    {
+        Properties props = new Properties();
+
+        props.putAll( entries );
+
+        file.getParentFile().mkdirs();
+
+        OutputStream out = new FileOutputStream( file );
+
+        try
+        {
+            props.store( out, "exe4j build fingerprint" );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * reads a previously stored fingerprint
+     *
+     * @param file the file to read
+     * @return the fingerprint or null if the file does not exist
+     * @throws IOException if the file cannot be read
+     */
+    public static Fingerprint load( File file )
+        throws IOException
+    {
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+
+        Properties props = new Properties();
+
+        InputStream in = new FileInputStream( file );
+
+        try
+        {
+            props.load( in );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        Fingerprint fingerprint = new Fingerprint();
+
+        fingerprint.entries.putAll( props );
+
+        return fingerprint;
+    }
+
+    /**
+     * digests a string
+     *
+     * @param content the content, digested as UTF-8
+     * @return the hex encoded digest
+     */
+    public static String digest( String content )
+    {
+        try
+        {
+            return toHex( newDigest().digest( content.getBytes( "UTF-8" ) ) );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            // really shouldn't happen
+
+            throw new IllegalStateException( "UTF-8 not supported" );
+        }
+    }
+
+    /**
+     * digests a file's content
+     *
+     * @param file the file to read
+     * @return the hex encoded digest
+     * @throws IOException if the file cannot be read
+     */
+    public static String digest( File file )
+        throws IOException
+    {
+        MessageDigest digest = newDigest();
+
+        InputStream in = new FileInputStream( file );
+
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ( ( count = in.read( buffer ) ) > 0 )
+            {
+                digest.update( buffer, 0, count );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return toHex( digest.digest() );
+    }
+
+    /**
+     * @return a new message digest instance
+     */
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( ALGORITHM );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            // really shouldn't happen
+
+            throw new IllegalStateException( ALGORITHM + " digest not supported" );
+        }
+    }
+
+    /**
+     * @param bytes the bytes to encode
+     * @return the lower case hex representation of the bytes
+     */
+    private static String toHex( byte[] bytes )
+    {
+        StringBuffer buffer = new StringBuffer( bytes.length * 2 );
+
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            buffer.append( Character.forDigit( ( bytes[i] >> 4 ) & 0xf, 16 ) );
+            buffer.append( Character.forDigit( bytes[i] & 0xf, 16 ) );
+        }
+
+        return buffer.toString();
+    }
+
+}
\ No newline at end of file
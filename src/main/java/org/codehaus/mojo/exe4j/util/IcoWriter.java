@@ -0,0 +1,228 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes a Windows icon file holding several resolutions of the same image.
+ * Images up to 48 pixels are stored as 32 bit bitmaps with an alpha channel,
+ * which every version of Windows reads, larger ones as PNG, as Windows
+ * Vista and later expect for 256 pixel icons.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public final class IcoWriter
+{
+    /**
+     * the largest image stored as a bitmap
+     */
+    private static final int MAX_BITMAP_SIZE = 48;
+
+    /**
+     * the largest image an icon file can hold
+     */
+    public static final int MAX_SIZE = 256;
+
+    private IcoWriter()
+    {
+    }
+
+    /**
+     * writes the icon file
+     *
+     * @param images the square images, one per resolution, in the order
+     *            they should appear in the file
+     * @param out the output, not closed
+     * @throws IOException if an image cannot be encoded or the output cannot
+     *             be written to
+     */
+    public static void write( BufferedImage[] images, OutputStream out )
+        throws IOException
+    {
+        byte[][] data = new byte[images.length][];
+
+        for ( int i = 0; i < images.length; i++ )
+        {
+            int size = images[i].getWidth();
+
+            if ( size != images[i].getHeight() || size < 1 || size > MAX_SIZE )
+            {
+                throw new IllegalArgumentException( "Icon images must be square and no larger than " + MAX_SIZE
+                    + " pixels: " + size + "x" + images[i].getHeight() );
+            }
+
+            data[i] = size > MAX_BITMAP_SIZE ? encodePng( images[i] ) : encodeBitmap( images[i] );
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream( 6 + 16 * images.length );
+
+        // ICONDIR
+
+        writeShort( header, 0 );
+        writeShort( header, 1 );
+        writeShort( header, images.length );
+
+        // ICONDIRENTRY per image, the image data follows the directory
+
+        int offset = 6 + 16 * images.length;
+
+        for ( int i = 0; i < images.length; i++ )
+        {
+            int size = images[i].getWidth();
+
+            header.write( size == MAX_SIZE ? 0 : size );
+            header.write( size == MAX_SIZE ? 0 : size );
+            header.write( 0 );
+            header.write( 0 );
+            writeShort( header, 1 );
+            writeShort( header, 32 );
+            writeInt( header, data[i].length );
+            writeInt( header, offset );
+
+            offset += data[i].length;
+        }
+
+        header.writeTo( out );
+
+        for ( int i = 0; i < images.length; i++ )
+        {
+            out.write( data[i] );
+        }
+    }
+
+    /**
+     * @param image the image
+     * @return the image as a PNG
+     * @throws IOException if the image cannot be encoded
+     */
+    private static byte[] encodePng( BufferedImage image )
+        throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        if ( !ImageIO.write( image, "png", buffer ) )
+        {
+            throw new IOException( "No PNG image writer available" );
+        }
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Encodes an image as a 32 bit device independent bitmap without the
+     * file header. The bitmap's height is twice the image's as it covers the
+     * colour rows, written bottom up, followed by the transparency mask.
+     *
+     * @param image the image
+     * @return the bitmap
+     */
+    private static byte[] encodeBitmap( BufferedImage image )
+    {
+        int size = image.getWidth();
+
+        // mask rows are one bit per pixel, padded to 32 bits
+
+        int maskStride = ( ( size + 31 ) / 32 ) * 4;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream( 40 + size * size * 4 + maskStride * size );
+
+        // BITMAPINFOHEADER
+
+        writeInt( buffer, 40 );
+        writeInt( buffer, size );
+        writeInt( buffer, size * 2 );
+        writeShort( buffer, 1 );
+        writeShort( buffer, 32 );
+        writeInt( buffer, 0 );
+        writeInt( buffer, size * size * 4 + maskStride * size );
+        writeInt( buffer, 0 );
+        writeInt( buffer, 0 );
+        writeInt( buffer, 0 );
+        writeInt( buffer, 0 );
+
+        int[] row = new int[size];
+
+        for ( int y = size - 1; y >= 0; y-- )
+        {
+            image.getRGB( 0, y, size, 1, row, 0, size );
+
+            for ( int x = 0; x < size; x++ )
+            {
+                // BGRA
+
+                buffer.write( row[x] );
+                buffer.write( row[x] >> 8 );
+                buffer.write( row[x] >> 16 );
+                buffer.write( row[x] >>> 24 );
+            }
+        }
+
+        // the mask is only used by displays without alpha support, a set bit
+        // marks a transparent pixel
+
+        byte[] mask = new byte[maskStride];
+
+        for ( int y = size - 1; y >= 0; y-- )
+        {
+            image.getRGB( 0, y, size, 1, row, 0, size );
+
+            Arrays.fill( mask, (byte) 0 );
+
+            for ( int x = 0; x < size; x++ )
+            {
+                if ( ( row[x] >>> 24 ) < 128 )
+                {
+                    mask[x / 8] |= (byte) ( 0x80 >> ( x % 8 ) );
+                }
+            }
+
+            buffer.write( mask, 0, maskStride );
+        }
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @param out the output
+     * @param value the little endian 16 bit value to write
+     */
+    private static void writeShort( ByteArrayOutputStream out, int value )
+    {
+        out.write( value );
+        out.write( value >> 8 );
+    }
+
+    /**
+     * @param out the output
+     * @param value the little endian 32 bit value to write
+     */
+    private static void writeInt( ByteArrayOutputStream out, int value )
+    {
+        out.write( value );
+        out.write( value >> 8 );
+        out.write( value >> 16 );
+        out.write( value >> 24 );
+    }
+
+}
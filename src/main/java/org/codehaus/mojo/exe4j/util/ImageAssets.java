@@ -0,0 +1,590 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Generates the executable icon and splash screen bitmap from source
+ * images. Each generated file is written to the asset directory with a
+ * fingerprint of its source content and settings next to it, so an asset
+ * is only processed again when its source or settings change. Generated
+ * assets can also be shared between builds through the build cache, keyed
+ * by the same fingerprint.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class ImageAssets
+{
+    /**
+     * changed whenever the processing changes, so earlier results are
+     * never reused
+     */
+    private static final String VERSION = "1";
+
+    /**
+     * the asset directory
+     */
+    private File directory;
+
+    /**
+     * the build cache, may be null
+     */
+    private BuildCache buildCache;
+
+    /**
+     * the number of assets generated
+     */
+    private int generated;
+
+    /**
+     * the number of assets found up to date or restored from the build cache
+     */
+    private int reused;
+
+    /**
+     * constructor
+     *
+     * @param directory the directory generated assets are written to
+     */
+    public ImageAssets( File directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Generates a Windows icon holding the source image at each of the given
+     * sizes. Images that aren't square are centred on a transparent
+     * background.
+     *
+     * @param source the source image, usually a large PNG
+     * @param sizes the icon sizes in pixels, from 1 to 256
+     * @return the icon file
+     * @throws IOException if the source cannot be read or the icon written
+     */
+    public File createIcon( File source, int[] sizes )
+        throws IOException
+    {
+        StringBuffer settings = new StringBuffer( "sizes=" );
+
+        for ( int i = 0; i < sizes.length; i++ )
+        {
+            if ( sizes[i] < 1 || sizes[i] > IcoWriter.MAX_SIZE )
+            {
+                throw new IllegalArgumentException( "Icon sizes must be from 1 to " + IcoWriter.MAX_SIZE + ": "
+                    + sizes[i] );
+            }
+
+            settings.append( i > 0 ? "," : "" ).append( sizes[i] );
+        }
+
+        File target = new File( directory, getBaseName( source ) + ".ico" );
+
+        Fingerprint fingerprint = getFingerprint( source, settings.toString() );
+
+        if ( reuse( target, fingerprint ) )
+        {
+            return target;
+        }
+
+        BufferedImage image = read( source );
+
+        BufferedImage[] images = new BufferedImage[sizes.length];
+
+        for ( int i = 0; i < sizes.length; i++ )
+        {
+            images[i] = fit( image, sizes[i] );
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        IcoWriter.write( images, buffer );
+
+        store( target, buffer.toByteArray(), fingerprint );
+
+        return target;
+    }
+
+    /**
+     * Generates a splash screen bitmap no larger than the given limits. The
+     * image is scaled down, keeping its aspect ratio, if it exceeds them and
+     * is optionally reduced to a palette, then written as a maximally
+     * compressed PNG. A PNG source that needs neither and doesn't get any
+     * smaller is used as it is.
+     *
+     * @param source the source image
+     * @param maxWidth the maximum width in pixels, 0 for no limit
+     * @param maxHeight the maximum height in pixels, 0 for no limit
+     * @param maxColors the maximum number of colours, from 2 to 256, or 0 to
+     *            keep the image's colours
+     * @return the splash screen file
+     * @throws IOException if the source cannot be read or the splash screen
+     *             written
+     */
+    public File createSplashScreen( File source, int maxWidth, int maxHeight, int maxColors )
+        throws IOException
+    {
+        if ( maxColors != 0 && ( maxColors < 2 || maxColors > ColorQuantizer.MAX_COLORS ) )
+        {
+            throw new IllegalArgumentException( "The splash screen colours must be from 2 to "
+                + ColorQuantizer.MAX_COLORS + ": " + maxColors );
+        }
+
+        File target = new File( directory, getBaseName( source ) + ".png" );
+
+        Fingerprint fingerprint = getFingerprint( source, "maxWidth=" + maxWidth + ",maxHeight=" + maxHeight
+            + ",maxColors=" + maxColors );
+
+        if ( reuse( target, fingerprint ) )
+        {
+            return target;
+        }
+
+        BufferedImage image = read( source );
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        double scale = 1;
+
+        if ( maxWidth > 0 && width > maxWidth )
+        {
+            scale = (double) maxWidth / width;
+        }
+
+        if ( maxHeight > 0 && height > maxHeight )
+        {
+            scale = Math.min( scale, (double) maxHeight / height );
+        }
+
+        boolean changed = false;
+
+        if ( scale < 1 )
+        {
+            int scaledWidth = Math.max( 1, (int) Math.round( width * scale ) );
+            int scaledHeight = Math.max( 1, (int) Math.round( height * scale ) );
+
+            image = scale( image, scaledWidth, scaledHeight );
+
+            changed = true;
+        }
+
+        if ( maxColors > 0 )
+        {
+            image = ColorQuantizer.reduce( image, maxColors );
+
+            changed = true;
+        }
+
+        byte[] png = writePng( image );
+
+        if ( !changed && source.getName().toLowerCase().endsWith( ".png" ) && png.length >= source.length() )
+        {
+            // the source is already as small as it gets
+
+            png = readFile( source );
+        }
+
+        store( target, png, fingerprint );
+
+        return target;
+    }
+
+    /**
+     * build cache mutator
+     * @param buildCache The build cache generated assets are shared through,
+     *            null for none.
+     */
+    public void setBuildCache( BuildCache buildCache )
+    {
+        this.buildCache = buildCache;
+    }
+
+    /**
+     * generated accessor
+     * @return Returns the number of assets generated.
+     */
+    public int getGenerated()
+    {
+        return generated;
+    }
+
+    /**
+     * reused accessor
+     * @return Returns the number of assets that were up to date or restored
+     *         from the build cache.
+     */
+    public int getReused()
+    {
+        return reused;
+    }
+
+    /**
+     * Scales an image using repeated halving, so that every source pixel
+     * contributes to the result however much it is reduced.
+     *
+     * @param image the image
+     * @param width the width of the result
+     * @param height the height of the result
+     * @return the scaled image, with an alpha channel
+     */
+    public static BufferedImage scale( BufferedImage image, int width, int height )
+    {
+        BufferedImage result = toArgb( image );
+
+        int w = result.getWidth();
+        int h = result.getHeight();
+
+        do
+        {
+            w = w / 2 >= width ? w / 2 : width;
+            h = h / 2 >= height ? h / 2 : height;
+
+            BufferedImage step = new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB );
+
+            Graphics2D g = step.createGraphics();
+
+            try
+            {
+                g.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR );
+                g.setRenderingHint( RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY );
+                g.drawImage( result, 0, 0, w, h, null );
+            }
+            finally
+            {
+                g.dispose();
+            }
+
+            result = step;
+        }
+        while ( w != width || h != height );
+
+        return result;
+    }
+
+    /**
+     * @param image the image
+     * @param size the size of the result
+     * @return the image scaled to fit and centred in a transparent square
+     */
+    private static BufferedImage fit( BufferedImage image, int size )
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        double scale = (double) size / Math.max( width, height );
+
+        int scaledWidth = Math.max( 1, (int) Math.round( width * scale ) );
+        int scaledHeight = Math.max( 1, (int) Math.round( height * scale ) );
+
+        BufferedImage scaled = scale( image, scaledWidth, scaledHeight );
+
+        if ( scaled.getWidth() == size && scaled.getHeight() == size )
+        {
+            return scaled;
+        }
+
+        BufferedImage square = new BufferedImage( size, size, BufferedImage.TYPE_INT_ARGB );
+
+        Graphics2D g = square.createGraphics();
+
+        try
+        {
+            g.drawImage( scaled, ( size - scaled.getWidth() ) / 2, ( size - scaled.getHeight() ) / 2, null );
+        }
+        finally
+        {
+            g.dispose();
+        }
+
+        return square;
+    }
+
+    /**
+     * @param image the image
+     * @return the image, or a copy of it with an alpha channel
+     */
+    private static BufferedImage toArgb( BufferedImage image )
+    {
+        if ( image.getType() == BufferedImage.TYPE_INT_ARGB )
+        {
+            return image;
+        }
+
+        BufferedImage copy = new BufferedImage( image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB );
+
+        Graphics2D g = copy.createGraphics();
+
+        try
+        {
+            g.drawImage( image, 0, 0, null );
+        }
+        finally
+        {
+            g.dispose();
+        }
+
+        return copy;
+    }
+
+    /**
+     * @param source the image file
+     * @return the image
+     * @throws IOException if the file cannot be read or isn't an image
+     */
+    private static BufferedImage read( File source )
+        throws IOException
+    {
+        BufferedImage image = ImageIO.read( source );
+
+        if ( image == null )
+        {
+            throw new IOException( "Unsupported image format: " + source );
+        }
+
+        return image;
+    }
+
+    /**
+     * @param file the file
+     * @return the file content
+     * @throws IOException if the file cannot be read
+     */
+    private static byte[] readFile( File file )
+        throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream( (int) file.length() );
+
+        InputStream in = new FileInputStream( file );
+
+        try
+        {
+            byte[] bytes = new byte[8192];
+            int count;
+            while ( ( count = in.read( bytes ) ) > 0 )
+            {
+                buffer.write( bytes, 0, count );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @param image the image
+     * @return the image as a PNG, compressed as far as the writer allows
+     * @throws IOException if the image cannot be encoded
+     */
+    private static byte[] writePng( RenderedImage image )
+        throws IOException
+    {
+        Iterator writers = ImageIO.getImageWritersByFormatName( "png" );
+
+        if ( !writers.hasNext() )
+        {
+            throw new IOException( "No PNG image writer available" );
+        }
+
+        ImageWriter writer = (ImageWriter) writers.next();
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        ImageOutputStream out = ImageIO.createImageOutputStream( buffer );
+
+        try
+        {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+
+            if ( param.canWriteCompressed() )
+            {
+                // quality 0 selects the highest deflate level
+
+                param.setCompressionMode( ImageWriteParam.MODE_EXPLICIT );
+                param.setCompressionQuality( 0f );
+            }
+
+            writer.setOutput( out );
+            writer.write( null, new IIOImage( image, null, null ), param );
+        }
+        finally
+        {
+            writer.dispose();
+
+            out.close();
+        }
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @param source the source image
+     * @param settings the processing settings
+     * @return the fingerprint of the asset's inputs
+     * @throws IOException if the source cannot be read
+     */
+    private static Fingerprint getFingerprint( File source, String settings )
+        throws IOException
+    {
+        if ( !source.isFile() )
+        {
+            throw new IOException( "Image not found: " + source );
+        }
+
+        Fingerprint fingerprint = new Fingerprint();
+
+        fingerprint.addString( "version", VERSION );
+        fingerprint.addString( "settings", settings );
+        fingerprint.addFile( "source", source );
+
+        return fingerprint;
+    }
+
+    /**
+     * @param target the asset
+     * @param fingerprint the fingerprint of its inputs
+     * @return true if the asset is up to date or was restored from the
+     *         build cache
+     * @throws IOException if the asset's fingerprint cannot be read
+     */
+    private boolean reuse( File target, Fingerprint fingerprint )
+        throws IOException
+    {
+        File fingerprintFile = getFingerprintFile( target );
+
+        Fingerprint previous = Fingerprint.load( fingerprintFile );
+
+        if ( target.isFile() && previous != null && fingerprint.getChangedEntries( previous ).isEmpty() )
+        {
+            reused++;
+
+            return true;
+        }
+
+        fingerprintFile.delete();
+
+        if ( buildCache != null && buildCache.restore( fingerprint.getDigest(), target ) )
+        {
+            fingerprint.store( fingerprintFile );
+
+            reused++;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * writes a generated asset and its fingerprint
+     *
+     * @param target the asset
+     * @param content the asset content
+     * @param fingerprint the fingerprint of its inputs
+     * @throws IOException if the asset cannot be written
+     */
+    private void store( File target, byte[] content, Fingerprint fingerprint )
+        throws IOException
+    {
+        directory.mkdirs();
+
+        File temp = new File( directory, target.getName() + ".tmp" );
+
+        OutputStream out = new FileOutputStream( temp );
+
+        try
+        {
+            out.write( content );
+        }
+        finally
+        {
+            out.close();
+        }
+
+        target.delete();
+
+        if ( !temp.renameTo( target ) )
+        {
+            temp.delete();
+
+            throw new IOException( "Unable to rename " + temp + " to " + target );
+        }
+
+        fingerprint.store( getFingerprintFile( target ) );
+
+        publish( target, fingerprint );
+
+        generated++;
+    }
+
+    /**
+     * @param target the generated asset
+     * @param fingerprint the fingerprint of its inputs
+     * @throws IOException if the asset cannot be copied to the build cache
+     */
+    private void publish( File target, Fingerprint fingerprint )
+        throws IOException
+    {
+        if ( buildCache != null )
+        {
+            buildCache.publish( fingerprint.getDigest(), target );
+        }
+    }
+
+    /**
+     * @param target the asset
+     * @return the file the fingerprint of the asset's inputs is stored in
+     */
+    private static File getFingerprintFile( File target )
+    {
+        return new File( target.getParentFile(), target.getName() + ".fingerprint" );
+    }
+
+    /**
+     * @param file the file
+     * @return the file name without its extension
+     */
+    private static String getBaseName( File file )
+    {
+        String name = file.getName();
+
+        int dot = name.lastIndexOf( '.' );
+
+        return dot > 0 ? name.substring( 0, dot ) : name;
+    }
+
+}
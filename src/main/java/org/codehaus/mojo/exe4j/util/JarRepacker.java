@@ -0,0 +1,775 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Rewrites archives in place with a compression policy chosen for class
+ * loading speed rather than size. The classes of the "hot" packages, those
+ * loaded at start up, are stored so they are read without being inflated,
+ * everything else is deflated at the configured level. Entries keep their
+ * order, names, times and extra data, and their content is unchanged so
+ * signatures remain valid.
+ *
+ * The repacked archives are kept in a build cache keyed by the digest of the
+ * original archive and the policy, so an archive is only repacked once
+ * however often it is copied into the distribution again. The state of each
+ * archive is recorded in the state directory, an archive that is still as
+ * it was repacked is left alone.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class JarRepacker
+{
+    /**
+     * The outcome of repacking an archive.
+     */
+    public static class Result
+    {
+        private File file;
+
+        private boolean reused;
+
+        private long sizeBefore;
+
+        private long sizeAfter;
+
+        private int entries;
+
+        private int storedEntries;
+
+        private long deflatedBytesBefore;
+
+        private long deflatedBytesAfter;
+
+        private double inflateNanosPerByte;
+
+        /**
+         * file accessor
+         * @return Returns the archive.
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        /**
+         * reused accessor
+         * @return Returns true if the archive was up to date or restored from
+         *         the cache rather than repacked.
+         */
+        public boolean isReused()
+        {
+            return reused;
+        }
+
+        /**
+         * sizeBefore accessor
+         * @return Returns the size of the original archive in bytes.
+         */
+        public long getSizeBefore()
+        {
+            return sizeBefore;
+        }
+
+        /**
+         * sizeAfter accessor
+         * @return Returns the size of the repacked archive in bytes.
+         */
+        public long getSizeAfter()
+        {
+            return sizeAfter;
+        }
+
+        /**
+         * entries accessor
+         * @return Returns the number of entries.
+         */
+        public int getEntries()
+        {
+            return entries;
+        }
+
+        /**
+         * storedEntries accessor
+         * @return Returns the number of entries stored without compression.
+         */
+        public int getStoredEntries()
+        {
+            return storedEntries;
+        }
+
+        /**
+         * deflatedBytesBefore accessor
+         * @return Returns the uncompressed size of the original archive's
+         *         deflated entries.
+         */
+        public long getDeflatedBytesBefore()
+        {
+            return deflatedBytesBefore;
+        }
+
+        /**
+         * deflatedBytesAfter accessor
+         * @return Returns the uncompressed size of the repacked archive's
+         *         deflated entries.
+         */
+        public long getDeflatedBytesAfter()
+        {
+            return deflatedBytesAfter;
+        }
+
+        /**
+         * @return the estimated time spent inflating the original archive
+         *         when all of its entries are loaded, in milliseconds
+         */
+        public double getInflateMillisBefore()
+        {
+            return deflatedBytesBefore * inflateNanosPerByte / 1e6;
+        }
+
+        /**
+         * @return the estimated time spent inflating the repacked archive
+         *         when all of its entries are loaded, in milliseconds
+         */
+        public double getInflateMillisAfter()
+        {
+            return deflatedBytesAfter * inflateNanosPerByte / 1e6;
+        }
+
+        /**
+         * @param state the recorded state
+         */
+        void load( Properties state )
+        {
+            sizeBefore = Long.parseLong( state.getProperty( "sizeBefore" ) );
+            deflatedBytesBefore = Long.parseLong( state.getProperty( "deflatedBytesBefore" ) );
+            inflateNanosPerByte = Double.parseDouble( state.getProperty( "inflateNanosPerByte" ) );
+        }
+
+        /**
+         * @param state the state to record the result in
+         */
+        void store( Properties state )
+        {
+            state.setProperty( "sizeBefore", Long.toString( sizeBefore ) );
+            state.setProperty( "deflatedBytesBefore", Long.toString( deflatedBytesBefore ) );
+            state.setProperty( "inflateNanosPerByte", Double.toString( inflateNanosPerByte ) );
+        }
+    }
+
+    /**
+     * changed whenever the repacking changes, so earlier results are never
+     * reused
+     */
+    private static final String VERSION = "1";
+
+    /**
+     * the inflate cost assumed for archives restored from the cache, roughly
+     * that of the JDK's zlib on current hardware
+     */
+    private static final double DEFAULT_INFLATE_NANOS_PER_BYTE = 2.5;
+
+    /**
+     * the repacked archives
+     */
+    private BuildCache cache;
+
+    /**
+     * the directory the state of each archive is recorded in
+     */
+    private File stateDirectory;
+
+    /**
+     * the number of archives repacked concurrently
+     */
+    private int threads;
+
+    /**
+     * the entry name prefixes of the stored packages
+     */
+    private List storedPrefixes = new ArrayList();
+
+    /**
+     * the deflate level of the other entries, 0 stores every entry
+     */
+    private int level = 9;
+
+    /**
+     * constructor
+     *
+     * @param cache the cache of repacked archives
+     * @param stateDirectory the directory the state of each archive is
+     *            recorded in
+     * @param threads the number of archives repacked concurrently
+     */
+    public JarRepacker( BuildCache cache, File stateDirectory, int threads )
+    {
+        this.cache = cache;
+        this.stateDirectory = stateDirectory;
+        this.threads = Math.max( 1, threads );
+    }
+
+    /**
+     * stored packages mutator
+     * @param packages The names of the packages whose classes are stored
+     *            rather than deflated, sub packages included.
+     */
+    public void setStoredPackages( List packages )
+    {
+        storedPrefixes.clear();
+
+        Iterator itr = packages.iterator();
+
+        while ( itr.hasNext() )
+        {
+            String name = itr.next().toString().trim();
+
+            if ( name.length() > 0 )
+            {
+                storedPrefixes.add( name.replace( '.', '/' ) + "/" );
+            }
+        }
+    }
+
+    /**
+     * level mutator
+     * @param level The deflate level, from 0 to 9, of the entries that
+     *            aren't stored, 0 stores every entry.
+     */
+    public void setLevel( int level )
+    {
+        if ( level < 0 || level > 9 )
+        {
+            throw new IllegalArgumentException( "The deflate level must be from 0 to 9: " + level );
+        }
+
+        this.level = level;
+    }
+
+    /**
+     * repacks archives concurrently
+     *
+     * @param files the archives
+     * @return the Result of each archive, in the same order
+     * @throws IOException if an archive cannot be repacked
+     */
+    public List repack( List files )
+        throws IOException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, Math.max( 1, files.size() ) ) );
+
+        try
+        {
+            List futures = new ArrayList();
+
+            Iterator itr = files.iterator();
+
+            while ( itr.hasNext() )
+            {
+                final File file = (File) itr.next();
+
+                futures.add( executor.submit( new Callable()
+                {
+                    public Object call()
+                        throws IOException
+                    {
+                        return repack( file );
+                    }
+                } ) );
+            }
+
+            List results = new ArrayList();
+
+            itr = futures.iterator();
+
+            while ( itr.hasNext() )
+            {
+                results.add( ( (Future) itr.next() ).get() );
+            }
+
+            return results;
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IllegalStateException( e.getCause().toString() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IOException( "Interrupted while repacking archives" );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * repacks an archive, unless it's already been repacked with the
+     * current policy
+     *
+     * @param file the archive
+     * @return the result
+     * @throws IOException if the archive cannot be repacked
+     */
+    public Result repack( File file )
+        throws IOException
+    {
+        Result result = new Result();
+
+        result.file = file;
+
+        String policy = getPolicy();
+
+        String id = Fingerprint.digest( file.getAbsolutePath() );
+
+        File stateFile = new File( stateDirectory, id + ".properties" );
+
+        Properties state = loadState( stateFile );
+
+        String digest = Fingerprint.digest( file );
+
+        if ( state != null && policy.equals( state.getProperty( "policy" ) )
+            && digest.equals( state.getProperty( "outputDigest" ) ) )
+        {
+            // still as it was repacked
+
+            result.reused = true;
+            result.load( state );
+
+            count( file, result );
+
+            return result;
+        }
+
+        String key = Fingerprint.digest( policy + "\n" + digest );
+
+        result.sizeBefore = file.length();
+        result.deflatedBytesBefore = count( file, null );
+
+        if ( cache.restore( key, file ) )
+        {
+            result.reused = true;
+            result.inflateNanosPerByte = DEFAULT_INFLATE_NANOS_PER_BYTE;
+        }
+        else
+        {
+            File directory = new File( stateDirectory, "tmp-" + id );
+
+            File temp = new File( directory, file.getName() );
+
+            try
+            {
+                directory.mkdirs();
+
+                write( file, temp, result );
+
+                cache.publish( key, temp );
+
+                file.delete();
+
+                if ( !temp.renameTo( file ) )
+                {
+                    throw new IOException( "Unable to rename " + temp + " to " + file );
+                }
+            }
+            finally
+            {
+                temp.delete();
+                directory.delete();
+            }
+        }
+
+        count( file, result );
+
+        state = new Properties();
+
+        state.setProperty( "file", file.getAbsolutePath() );
+        state.setProperty( "policy", policy );
+        state.setProperty( "outputDigest", Fingerprint.digest( file ) );
+
+        result.store( state );
+
+        storeState( stateFile, state );
+
+        return result;
+    }
+
+    /**
+     * Writes a JSON report of the size and estimated inflate time of each
+     * archive before and after repacking, and of their totals. The inflate
+     * times are those of loading every entry, measured on the build host
+     * while repacking.
+     *
+     * @param results the Result of each archive
+     * @param writer the report writer
+     * @throws IOException if the report cannot be written
+     */
+    public void writeReport( List results, Writer writer )
+        throws IOException
+    {
+        DecimalFormat format = new DecimalFormat( "0.###", new DecimalFormatSymbols( Locale.US ) );
+
+        writer.write( "{\n" );
+        writer.write( "  \"deflateLevel\": " + level + ",\n" );
+        writer.write( "  \"storedPackages\": [" );
+
+        for ( int i = 0; i < storedPrefixes.size(); i++ )
+        {
+            String prefix = (String) storedPrefixes.get( i );
+
+            writer.write( ( i > 0 ? ", " : "" )
+                + Timings.quote( prefix.substring( 0, prefix.length() - 1 ).replace( '/', '.' ) ) );
+        }
+
+        writer.write( "],\n" );
+        writer.write( "  \"archives\": [" );
+
+        long sizeBefore = 0;
+        long sizeAfter = 0;
+        double inflateMillisBefore = 0;
+        double inflateMillisAfter = 0;
+
+        for ( int i = 0; i < results.size(); i++ )
+        {
+            Result result = (Result) results.get( i );
+
+            writer.write( i > 0 ? ",\n    {" : "\n    {" );
+            writer.write( " \"file\": " + Timings.quote( result.getFile().getPath() ) );
+            writer.write( ", \"reused\": " + result.isReused() );
+            writer.write( ", \"entries\": " + result.getEntries() );
+            writer.write( ", \"storedEntries\": " + result.getStoredEntries() );
+            writer.write( ", \"sizeBefore\": " + result.getSizeBefore() );
+            writer.write( ", \"sizeAfter\": " + result.getSizeAfter() );
+            writer.write( ", \"inflateMillisBefore\": " + format.format( result.getInflateMillisBefore() ) );
+            writer.write( ", \"inflateMillisAfter\": " + format.format( result.getInflateMillisAfter() ) );
+            writer.write( " }" );
+
+            sizeBefore += result.getSizeBefore();
+            sizeAfter += result.getSizeAfter();
+            inflateMillisBefore += result.getInflateMillisBefore();
+            inflateMillisAfter += result.getInflateMillisAfter();
+        }
+
+        writer.write( results.isEmpty() ? "],\n" : "\n  ],\n" );
+        writer.write( "  \"total\": {" );
+        writer.write( " \"sizeBefore\": " + sizeBefore );
+        writer.write( ", \"sizeAfter\": " + sizeAfter );
+        writer.write( ", \"inflateMillisBefore\": " + format.format( inflateMillisBefore ) );
+        writer.write( ", \"inflateMillisAfter\": " + format.format( inflateMillisAfter ) );
+        writer.write( " }\n}\n" );
+    }
+
+    /**
+     * @return a description of the repacking policy
+     */
+    private String getPolicy()
+    {
+        return "version=" + VERSION + ",level=" + level + ",stored=" + storedPrefixes;
+    }
+
+    /**
+     * @param name the entry name
+     * @return true if the entry is stored without compression
+     */
+    private boolean isStored( String name )
+    {
+        if ( level == 0 || name.endsWith( "/" ) )
+        {
+            return true;
+        }
+
+        if ( !name.endsWith( ".class" ) )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < storedPrefixes.size(); i++ )
+        {
+            if ( name.startsWith( (String) storedPrefixes.get( i ) ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * writes the repacked archive, timing how long the original's entries
+     * take to inflate
+     *
+     * @param source the original archive
+     * @param target the repacked archive
+     * @param result the result the inflate rate is recorded in
+     * @throws IOException if the archive cannot be read or written
+     */
+    private void write( File source, File target, Result result )
+        throws IOException
+    {
+        ZipFile zip = new ZipFile( source );
+
+        try
+        {
+            ZipOutputStream out = new ZipOutputStream( new FileOutputStream( target ) );
+
+            try
+            {
+                out.setLevel( level );
+
+                if ( zip.getComment() != null )
+                {
+                    out.setComment( zip.getComment() );
+                }
+
+                long inflateNanos = 0;
+
+                long inflatedBytes = 0;
+
+                byte[] buffer = new byte[8192];
+
+                for ( Enumeration entries = zip.entries(); entries.hasMoreElements(); )
+                {
+                    ZipEntry entry = (ZipEntry) entries.nextElement();
+
+                    long start = System.nanoTime();
+
+                    byte[] content = read( zip, entry, buffer );
+
+                    if ( entry.getMethod() == ZipEntry.DEFLATED )
+                    {
+                        inflateNanos += System.nanoTime() - start;
+                        inflatedBytes += content.length;
+                    }
+
+                    ZipEntry copy = new ZipEntry( entry.getName() );
+
+                    copy.setTime( entry.getTime() );
+                    copy.setExtra( entry.getExtra() );
+                    copy.setComment( entry.getComment() );
+
+                    if ( isStored( entry.getName() ) )
+                    {
+                        CRC32 crc = new CRC32();
+
+                        crc.update( content );
+
+                        copy.setMethod( ZipEntry.STORED );
+                        copy.setSize( content.length );
+                        copy.setCompressedSize( content.length );
+                        copy.setCrc( crc.getValue() );
+                    }
+                    else
+                    {
+                        copy.setMethod( ZipEntry.DEFLATED );
+                    }
+
+                    out.putNextEntry( copy );
+                    out.write( content );
+                    out.closeEntry();
+                }
+
+                if ( inflatedBytes > 0 )
+                {
+                    result.inflateNanosPerByte = (double) inflateNanos / inflatedBytes;
+                }
+                else
+                {
+                    result.inflateNanosPerByte = DEFAULT_INFLATE_NANOS_PER_BYTE;
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    /**
+     * @param zip the archive
+     * @param entry the entry
+     * @param buffer a copy buffer
+     * @return the entry content
+     * @throws IOException if the entry cannot be read
+     */
+    private static byte[] read( ZipFile zip, ZipEntry entry, byte[] buffer )
+        throws IOException
+    {
+        int size = entry.getSize() > 0 ? (int) entry.getSize() : 1024;
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream( size );
+
+        InputStream in = zip.getInputStream( entry );
+
+        try
+        {
+            int count;
+            while ( ( count = in.read( buffer ) ) > 0 )
+            {
+                content.write( buffer, 0, count );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return content.toByteArray();
+    }
+
+    /**
+     * Counts an archive's entries from its directory, without reading them.
+     *
+     * @param file the archive
+     * @param result the result the repacked archive's counts are recorded
+     *            in, null to only count
+     * @return the uncompressed size of the deflated entries
+     * @throws IOException if the archive cannot be read
+     */
+    private static long count( File file, Result result )
+        throws IOException
+    {
+        ZipFile zip = new ZipFile( file );
+
+        try
+        {
+            int entries = 0;
+
+            int stored = 0;
+
+            long deflatedBytes = 0;
+
+            for ( Enumeration e = zip.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry entry = (ZipEntry) e.nextElement();
+
+                entries++;
+
+                if ( entry.getMethod() == ZipEntry.STORED )
+                {
+                    stored++;
+                }
+                else
+                {
+                    deflatedBytes += Math.max( 0, entry.getSize() );
+                }
+            }
+
+            if ( result != null )
+            {
+                result.sizeAfter = file.length();
+                result.entries = entries;
+                result.storedEntries = stored;
+                result.deflatedBytesAfter = deflatedBytes;
+            }
+
+            return deflatedBytes;
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    /**
+     * @param file the state file
+     * @return the recorded state or null if there is none
+     * @throws IOException if the state cannot be read
+     */
+    private static Properties loadState( File file )
+        throws IOException
+    {
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+
+        Properties state = new Properties();
+
+        InputStream in = new FileInputStream( file );
+
+        try
+        {
+            state.load( in );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return state;
+    }
+
+    /**
+     * @param file the state file
+     * @param state the state to record
+     * @throws IOException if the state cannot be written
+     */
+    private static void storeState( File file, Properties state )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+
+        OutputStream out = new FileOutputStream( file );
+
+        try
+        {
+            state.store( out, "exe4j repacked archive" );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ordered set of JVM options merged from a tuning profile and the user's
+ * parameters. An option replaces an earlier one that sets the same thing,
+ * -Xmx512m replaces -Xmx256m, -XX:-Foo replaces -XX:+Foo and one garbage
+ * collector replaces another, so the last source to set something wins.
+ *
+ * Profile options are only used on the Java versions that support them, a
+ * profile is expanded for the range of versions the executable accepts. An
+ * option group with no choice that works across the whole range is either
+ * an error or, for optional groups, left out.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class JvmOptions
+{
+    /**
+     * a set of options and the Java versions that support them
+     */
+    private static class Choice
+    {
+        private String[] options;
+
+        private int minVersion;
+
+        private int maxVersion;
+
+        private Choice( String options, int minVersion, int maxVersion )
+        {
+            this.options = options.split( " " );
+            this.minVersion = minVersion;
+            this.maxVersion = maxVersion;
+        }
+    }
+
+    /**
+     * alternative Choices, the first that supports the version range is used
+     */
+    private static class Group
+    {
+        private boolean required;
+
+        private Choice[] choices;
+
+        private Group( boolean required, Choice[] choices )
+        {
+            this.required = required;
+            this.choices = choices;
+        }
+    }
+
+    /**
+     * minimal heap and thread footprint
+     */
+    public static final String SMALL_FOOTPRINT = "small-footprint";
+
+    /**
+     * short garbage collection pauses
+     */
+    public static final String LOW_LATENCY = "low-latency";
+
+    /**
+     * the most work done per CPU second
+     */
+    public static final String THROUGHPUT = "throughput";
+
+    private static final int ANY = Integer.MAX_VALUE;
+
+    /**
+     * the profiles' option Groups, indexed by profile name
+     */
+    private static final Map PROFILES = new LinkedHashMap();
+
+    /**
+     * the options only some Java versions support, indexed by key
+     */
+    private static final Map LIMITED = new LinkedHashMap();
+
+    /**
+     * the garbage collector selection flags, at most one is used
+     */
+    private static final List COLLECTORS = Arrays.asList( new String[] {
+        "UseSerialGC",
+        "UseParallelGC",
+        "UseParallelOldGC",
+        "UseConcMarkSweepGC",
+        "UseG1GC",
+        "UseZGC",
+        "UseShenandoahGC",
+        "UseEpsilonGC" } );
+
+    static
+    {
+        PROFILES.put( SMALL_FOOTPRINT, new Group[] {
+            required( new Choice( "-XX:+UseSerialGC", 1, ANY ) ),
+            required( new Choice( "-Xss512k", 1, ANY ) ),
+            required( new Choice( "-XX:ReservedCodeCacheSize=32m", 1, ANY ) ),
+            optional( new Choice( "-XX:TieredStopAtLevel=1", 7, ANY ) ),
+            optional( new Choice( "-XX:MaxRAMPercentage=25", 10, ANY ) ),
+            optional( new Choice( "-XX:+UseCompactObjectHeaders", 25, ANY ) ) } );
+
+        PROFILES.put( LOW_LATENCY, new Group[] {
+            new Group( true, new Choice[] {
+                new Choice( "-XX:+UseZGC -XX:+ZGenerational", 21, 23 ),
+                new Choice( "-XX:+UseZGC", 15, ANY ),
+                new Choice( "-XX:+UseG1GC -XX:MaxGCPauseMillis=50", 7, ANY ) } ),
+            optional( new Choice( "-XX:+PerfDisableSharedMem", 1, ANY ) ) } );
+
+        PROFILES.put( THROUGHPUT, new Group[] {
+            required( new Choice( "-XX:+UseParallelGC", 1, ANY ) ),
+            optional( new Choice( "-XX:MaxRAMPercentage=75", 10, ANY ) ) } );
+
+        limit( "-XX:+UseConcMarkSweepGC", 1, 13 );
+        limit( "-XX:+UseG1GC", 7, ANY );
+        limit( "-XX:+UseZGC", 15, ANY );
+        limit( "-XX:+ZGenerational", 21, 23 );
+        limit( "-XX:+UseShenandoahGC", 12, ANY );
+        limit( "-XX:+UseEpsilonGC", 11, ANY );
+        limit( "-XX:MaxRAMPercentage", 10, ANY );
+        limit( "-XX:InitialRAMPercentage", 10, ANY );
+        limit( "-XX:PermSize", 1, 7 );
+        limit( "-XX:MaxPermSize", 1, 7 );
+        limit( "-XX:MaxMetaspaceSize", 8, ANY );
+        limit( "-XX:+UseCompactObjectHeaders", 25, ANY );
+        limit( "-XX:AOTCache", 25, ANY );
+        limit( "-XX:SharedArchiveFile", 10, ANY );
+    }
+
+    /**
+     * the options, in order, indexed by key
+     */
+    private Map options = new LinkedHashMap();
+
+    /**
+     * the optional profile options left out as the versions don't support
+     * them
+     */
+    private List skipped = new ArrayList();
+
+    /**
+     * @return the names of the tuning profiles
+     */
+    public static List getProfileNames()
+    {
+        return new ArrayList( PROFILES.keySet() );
+    }
+
+    /**
+     * Adds a profile's options, those supported by every Java version from
+     * minJavaVersion to maxJavaVersion.
+     *
+     * @param profile the profile name
+     * @param minJavaVersion the minimum Java version, such as 1.8 or 17
+     * @param maxJavaVersion the maximum Java version, null or empty if there
+     *            isn't one
+     * @throws IllegalArgumentException if there is no such profile, or it
+     *             cannot be used with the versions
+     */
+    public void addProfile( String profile, String minJavaVersion, String maxJavaVersion )
+    {
+        Group[] groups = (Group[]) PROFILES.get( profile );
+
+        if ( groups == null )
+        {
+            throw new IllegalArgumentException( "Unknown JVM profile \"" + profile + "\", the profiles are "
+                + getProfileNames() );
+        }
+
+        int min = parseVersion( minJavaVersion, 1 );
+
+        int max = parseVersion( maxJavaVersion, ANY );
+
+        for ( int i = 0; i < groups.length; i++ )
+        {
+            Choice choice = null;
+
+            for ( int j = 0; j < groups[i].choices.length && choice == null; j++ )
+            {
+                Choice candidate = groups[i].choices[j];
+
+                if ( candidate.minVersion <= min && max <= candidate.maxVersion )
+                {
+                    choice = candidate;
+                }
+            }
+
+            if ( choice != null )
+            {
+                for ( int j = 0; j < choice.options.length; j++ )
+                {
+                    add( choice.options[j] );
+                }
+            }
+            else if ( groups[i].required )
+            {
+                throw new IllegalArgumentException( "The \"" + profile + "\" JVM profile needs Java "
+                    + describe( groups[i].choices[groups[i].choices.length - 1] ) + ", minJavaVersion is "
+                    + minJavaVersion + " and maxJavaVersion is "
+                    + ( max == ANY ? "unset" : maxJavaVersion ) );
+            }
+            else
+            {
+                skipped.add( Arrays.asList( groups[i].choices[0].options ).toString() + " needs Java "
+                    + describe( groups[i].choices[0] ) );
+            }
+        }
+    }
+
+    /**
+     * adds the options in a command line
+     *
+     * @param line the options, double quoted sections are kept together,
+     *            may be null
+     */
+    public void addAll( String line )
+    {
+        Iterator itr = split( line ).iterator();
+
+        while ( itr.hasNext() )
+        {
+            add( (String) itr.next() );
+        }
+    }
+
+    /**
+     * adds an option, replacing an earlier one that sets the same thing
+     *
+     * @param option the option
+     */
+    public void add( String option )
+    {
+        String key = getKey( option );
+
+        options.remove( key );
+        options.put( key, option );
+    }
+
+    /**
+     * @return the options, in order
+     */
+    public List getOptions()
+    {
+        return new ArrayList( options.values() );
+    }
+
+    /**
+     * @return the optional profile options that were left out, and why
+     */
+    public List getSkipped()
+    {
+        return skipped;
+    }
+
+    /**
+     * Checks the options that only some Java versions support against a
+     * range of versions.
+     *
+     * @param minJavaVersion the minimum Java version
+     * @param maxJavaVersion the maximum Java version, null or empty if there
+     *            isn't one
+     * @return a description of each option some of the versions don't
+     *         support
+     */
+    public List validate( String minJavaVersion, String maxJavaVersion )
+    {
+        int min = parseVersion( minJavaVersion, 1 );
+
+        int max = parseVersion( maxJavaVersion, ANY );
+
+        List problems = new ArrayList();
+
+        Iterator itr = options.values().iterator();
+
+        while ( itr.hasNext() )
+        {
+            String option = (String) itr.next();
+
+            Choice limit = (Choice) LIMITED.get( getLimitKey( option ) );
+
+            if ( limit != null && ( limit.minVersion > min || max > limit.maxVersion ) )
+            {
+                problems.add( option + " needs Java " + describe( limit ) );
+            }
+        }
+
+        return problems;
+    }
+
+    /**
+     * Writes the options as a .vmoptions file, one per line.
+     *
+     * @param writer the writer
+     * @param comment a comment written first, null for none
+     * @throws IOException if the file cannot be written
+     */
+    public void write( Writer writer, String comment )
+        throws IOException
+    {
+        if ( comment != null )
+        {
+            writer.write( "# " + comment + "\n" );
+        }
+
+        Iterator itr = options.values().iterator();
+
+        while ( itr.hasNext() )
+        {
+            writer.write( itr.next() + "\n" );
+        }
+    }
+
+    /**
+     * @return the options as a command line, options containing white space
+     *         are double quoted
+     */
+    public String toString()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        Iterator itr = options.values().iterator();
+
+        while ( itr.hasNext() )
+        {
+            String option = (String) itr.next();
+
+            if ( buffer.length() > 0 )
+            {
+                buffer.append( ' ' );
+            }
+
+            boolean quote = option.indexOf( ' ' ) >= 0 || option.indexOf( '\t' ) >= 0;
+
+            buffer.append( quote ? "\"" + option + "\"" : option );
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * Splits a command line into options, double quoted sections are kept
+     * together.
+     *
+     * @param line the command line, may be null
+     * @return the options
+     */
+    public static List split( String line )
+    {
+        List split = new ArrayList();
+
+        StringBuffer option = null;
+
+        boolean quoted = false;
+
+        for ( int i = 0; line != null && i < line.length(); i++ )
+        {
+            char c = line.charAt( i );
+
+            if ( c == '"' )
+            {
+                quoted = !quoted;
+
+                if ( option == null )
+                {
+                    option = new StringBuffer();
+                }
+            }
+            else if ( Character.isWhitespace( c ) && !quoted )
+            {
+                if ( option != null )
+                {
+                    split.add( option.toString() );
+
+                    option = null;
+                }
+            }
+            else
+            {
+                if ( option == null )
+                {
+                    option = new StringBuffer();
+                }
+
+                option.append( c );
+            }
+        }
+
+        if ( option != null )
+        {
+            split.add( option.toString() );
+        }
+
+        return split;
+    }
+
+    /**
+     * @param option an option
+     * @return what the option sets, options with the same key replace each
+     *         other
+     */
+    static String getKey( String option )
+    {
+        if ( option.startsWith( "-XX:" ) )
+        {
+            String name = option.substring( 4 );
+
+            if ( name.startsWith( "+" ) || name.startsWith( "-" ) )
+            {
+                name = name.substring( 1 );
+
+                if ( COLLECTORS.contains( name ) && option.charAt( 4 ) == '+' )
+                {
+                    return "-XX:collector";
+                }
+            }
+
+            int equals = name.indexOf( '=' );
+
+            return "-XX:" + ( equals < 0 ? name : name.substring( 0, equals ) );
+        }
+
+        if ( option.startsWith( "-Xmx" ) || option.startsWith( "-Xms" ) || option.startsWith( "-Xss" )
+            || option.startsWith( "-Xmn" ) )
+        {
+            return option.substring( 0, 4 );
+        }
+
+        if ( option.startsWith( "-D" ) || option.startsWith( "-agentlib:" ) || option.startsWith( "-agentpath:" ) )
+        {
+            int equals = option.indexOf( '=' );
+
+            return equals < 0 ? option : option.substring( 0, equals );
+        }
+
+        if ( option.startsWith( "-Xshare:" ) || option.startsWith( "-Xverify:" ) )
+        {
+            return option.substring( 0, option.indexOf( ':' ) );
+        }
+
+        return option;
+    }
+
+    /**
+     * @param option an option
+     * @return the key the option's supported versions are indexed by
+     */
+    private static String getLimitKey( String option )
+    {
+        if ( option.startsWith( "-XX:+" ) || option.indexOf( '=' ) < 0 )
+        {
+            return option;
+        }
+
+        return option.substring( 0, option.indexOf( '=' ) );
+    }
+
+    /**
+     * Parses a Java version as its feature release number, 1.8 and 8.0.402
+     * are both 8.
+     *
+     * @param version the version, may be null or empty
+     * @param unset the value returned if the version is null or empty
+     * @return the feature release number
+     * @throws IllegalArgumentException if the version isn't a number
+     */
+    static int parseVersion( String version, int unset )
+    {
+        if ( version == null || version.trim().length() == 0 )
+        {
+            return unset;
+        }
+
+        String[] parts = version.trim().split( "[._]" );
+
+        try
+        {
+            int feature = Integer.parseInt( parts[0] );
+
+            return feature == 1 && parts.length > 1 ? Integer.parseInt( parts[1] ) : feature;
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "Invalid Java version: \"" + version + "\"" );
+        }
+    }
+
+    /**
+     * @param choice a Choice
+     * @return the versions that support it
+     */
+    private static String describe( Choice choice )
+    {
+        if ( choice.maxVersion == ANY )
+        {
+            return choice.minVersion + " or later";
+        }
+
+        return choice.minVersion + " to " + choice.maxVersion;
+    }
+
+    private static Group required( Choice choice )
+    {
+        return new Group( true, new Choice[] { choice } );
+    }
+
+    private static Group optional( Choice choice )
+    {
+        return new Group( false, new Choice[] { choice } );
+    }
+
+    private static void limit( String option, int minVersion, int maxVersion )
+    {
+        LIMITED.put( option, new Choice( option, minVersion, maxVersion ) );
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Dictionary of template substitution values that are only computed when
+ * they are first looked up. Values are taken from a chain of property
+ * sources, the first source to define a property wins, and each value is
+ * remembered once it has been computed. Only the values that have been
+ * looked up or put are enumerated.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class LazyProperties
+    extends Dictionary
+    implements PropertySource
+{
+    /**
+     * marks a property that none of the sources define
+     */
+    private static final Object UNDEFINED = new Object();
+
+    /**
+     * the property sources, in order of precedence
+     */
+    private PropertySource[] sources;
+
+    /**
+     * the values computed so far, indexed by property name
+     */
+    private Map values = new HashMap();
+
+    /**
+     * constructor
+     *
+     * @param sources the property sources, in order of precedence
+     */
+    public LazyProperties( PropertySource[] sources )
+    {
+        this.sources = sources;
+    }
+
+    /**
+     * Adapts a properties object to a property source, for example the
+     * project properties.
+     *
+     * @param properties the properties
+     * @return the property source
+     */
+    public static PropertySource asSource( final Properties properties )
+    {
+        return new PropertySource()
+        {
+            public String getProperty( String name )
+            {
+                return properties.getProperty( name );
+            }
+        };
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codehaus.mojo.exe4j.util.PropertySource#getProperty(java.lang.String)
+     */
+    public String getProperty( String name )
+    {
+        Object value = get( name );
+
+        return value == null ? null : value.toString();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Dictionary#get(java.lang.Object)
+     */
+    public synchronized Object get( Object key )
+    {
+        Object value = values.get( key );
+
+        if ( value == null )
+        {
+            for ( int i = 0; i < sources.length && value == null; i++ )
+            {
+                value = sources[i].getProperty( (String) key );
+            }
+
+            values.put( key, value == null ? UNDEFINED : value );
+        }
+
+        return value == UNDEFINED ? null : value;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Dictionary#put(java.lang.Object, java.lang.Object)
+     */
+    public synchronized Object put( Object key, Object value )
+    {
+        Object previous = values.put( key, value );
+
+        return previous == UNDEFINED ? null : previous;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Dictionary#remove(java.lang.Object)
+     */
+    public synchronized Object remove( Object key )
+    {
+        Object previous = values.put( key, UNDEFINED );
+
+        return previous == UNDEFINED ? null : previous;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Dictionary#size()
+     */
+    public synchronized int size()
+    {
+        return getDefinedValues().size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Dictionary#isEmpty()
+     */
+    public synchronized boolean isEmpty()
+    {
+        return getDefinedValues().isEmpty();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Dictionary#keys()
+     */
+    public synchronized Enumeration keys()
+    {
+        return Collections.enumeration( getDefinedValues().keySet() );
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Dictionary#elements()
+     */
+    public synchronized Enumeration elements()
+    {
+        return Collections.enumeration( getDefinedValues().values() );
+    }
+
+    /**
+     * @return a copy of the values computed or put so far, excluding those
+     *         that are undefined
+     */
+    private Map getDefinedValues()
+    {
+        Map defined = new HashMap( values );
+
+        defined.values().removeAll( Collections.singleton( UNDEFINED ) );
+
+        return defined;
+    }
+
+}
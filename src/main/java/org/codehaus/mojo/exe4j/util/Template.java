@@ -0,0 +1,289 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compiled exe4j config template. The template is split once into
+ * alternating literal and placeholder segments, placeholders take the form
+ * ${name} where name is made up of letters and digits. Compiled templates are
+ * cached by content digest so each distinct template is only compiled once
+ * per JVM.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class Template
+{
+    /**
+     * the maximum number of compiled templates kept in the cache
+     */
+    private static final int CACHE_SIZE = 16;
+
+    /**
+     * the compiled templates, indexed by content digest, least recently used
+     * first
+     */
+    private static final Map CACHE = new LinkedHashMap( CACHE_SIZE, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry( Map.Entry eldest )
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * the literal segments, there is one more literal than there are
+     * placeholders, any of which may be empty
+     */
+    private String[] literals;
+
+    /**
+     * the placeholder property names, placeholder i follows literal i
+     */
+    private String[] names;
+
+    /**
+     * the distinct property names the template references, in order of
+     * first use
+     */
+    private Set propertyNames;
+
+    /**
+     * the combined length of the literals
+     */
+    private int literalLength;
+
+    /**
+     * the character encoding declared by the template's XML prolog
+     */
+    private String encoding;
+
+    /**
+     * constructor
+     *
+     * @param content the template content
+     */
+    private Template( String content )
+    {
+        List literalList = new ArrayList();
+
+        List nameList = new ArrayList();
+
+        int lastEnd = 0;
+
+        int start = content.indexOf( "${" );
+
+        while ( start >= 0 )
+        {
+            int end = start + 2;
+
+            while ( end < content.length() && Character.isLetterOrDigit( content.charAt( end ) )
+                && content.charAt( end ) < 128 )
+            {
+                end++;
+            }
+
+            if ( end > start + 2 && end < content.length() && content.charAt( end ) == '}' )
+            {
+                literalList.add( content.substring( lastEnd, start ) );
+
+                nameList.add( content.substring( start + 2, end ) );
+
+                lastEnd = end + 1;
+
+                start = content.indexOf( "${", lastEnd );
+            }
+            else
+            {
+                start = content.indexOf( "${", start + 1 );
+            }
+        }
+
+        literalList.add( content.substring( lastEnd ) );
+
+        literals = (String[]) literalList.toArray( new String[literalList.size()] );
+
+        names = (String[]) nameList.toArray( new String[nameList.size()] );
+
+        propertyNames = Collections.unmodifiableSet( new LinkedHashSet( nameList ) );
+
+        for ( int i = 0; i < literals.length; i++ )
+        {
+            literalLength += literals[i].length();
+        }
+
+        encoding = XmlFiles.getDeclaredEncoding( literals[0] );
+
+        if ( encoding == null )
+        {
+            encoding = XmlFiles.DEFAULT_ENCODING;
+        }
+    }
+
+    /**
+     * Compiles a template, returning the cached instance if the same content
+     * has been compiled before.
+     *
+     * @param content the template content
+     * @return the compiled template
+     */
+    public static Template compile( String content )
+    {
+        String key = Fingerprint.digest( content );
+
+        synchronized ( CACHE )
+        {
+            Template template = (Template) CACHE.get( key );
+
+            if ( template == null )
+            {
+                template = new Template( content );
+
+                CACHE.put( key, template );
+            }
+
+            return template;
+        }
+    }
+
+    /**
+     * @return the distinct property names the template references, in order
+     *         of first use
+     */
+    public Set getPropertyNames()
+    {
+        return propertyNames;
+    }
+
+    /**
+     * @return the character encoding declared by the template's XML prolog,
+     *         UTF-8 if it doesn't declare one
+     */
+    public String getEncoding()
+    {
+        return encoding;
+    }
+
+    /**
+     * @param properties the substitution properties
+     * @return the referenced property names that have no value
+     */
+    public List getMissingPropertyNames( Dictionary properties )
+    {
+        List missing = new ArrayList();
+
+        String[] referenced = (String[]) propertyNames.toArray( new String[propertyNames.size()] );
+
+        for ( int i = 0; i < referenced.length; i++ )
+        {
+            if ( properties.get( referenced[i] ) == null )
+            {
+                missing.add( referenced[i] );
+            }
+        }
+
+        return missing;
+    }
+
+    /**
+     * Renders the template, placeholders with no value are replaced with an
+     * empty string.
+     *
+     * @param properties the substitution properties
+     * @return the rendered template
+     */
+    public String render( Dictionary properties )
+    {
+        String[] values = getValues( properties );
+
+        int length = literalLength;
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            length += values[i].length();
+        }
+
+        StringBuffer buffer = new StringBuffer( length );
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            buffer.append( literals[i] );
+            buffer.append( values[i] );
+        }
+
+        buffer.append( literals[values.length] );
+
+        return buffer.toString();
+    }
+
+    /**
+     * Renders the template to a writer, placeholders with no value are
+     * replaced with an empty string.
+     *
+     * @param properties the substitution properties
+     * @param writer the writer
+     * @throws IOException if the writer fails
+     */
+    public void render( Dictionary properties, Writer writer )
+        throws IOException
+    {
+        for ( int i = 0; i < names.length; i++ )
+        {
+            writer.write( literals[i] );
+
+            Object value = properties.get( names[i] );
+
+            if ( value != null )
+            {
+                writer.write( value.toString() );
+            }
+        }
+
+        writer.write( literals[names.length] );
+    }
+
+    /**
+     * @param properties the substitution properties
+     * @return the serialised value of each placeholder
+     */
+    private String[] getValues( Dictionary properties )
+    {
+        String[] values = new String[names.length];
+
+        for ( int i = 0; i < names.length; i++ )
+        {
+            Object value = properties.get( names[i] );
+
+            values[i] = value == null ? "" : value.toString();
+        }
+
+        return values;
+    }
+
+}
\ No newline at end of file
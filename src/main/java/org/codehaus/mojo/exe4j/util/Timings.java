@@ -0,0 +1,412 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects the wall and CPU time of the phases of a plugin execution,
+ * together with named values such as exit codes and time stamped markers.
+ * Phases may be timed concurrently from several threads, the CPU time of a
+ * phase is that of the thread that started and ended it.
+ *
+ * Phase names may be qualified by the executable they belong to, as in
+ * "app/writeConfig", the summary adds up the phases with the same unqualified
+ * name.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class Timings
+{
+    /**
+     * A timed phase, ended by calling end().
+     */
+    public class Phase
+    {
+        /**
+         * the phase name
+         */
+        private String name;
+
+        /**
+         * the wall time the phase started at in nanoseconds
+         */
+        private long startTime;
+
+        /**
+         * the thread CPU time the phase started at in nanoseconds, -1 if not
+         * available
+         */
+        private long startCpuTime;
+
+        /**
+         * the phase's wall time in nanoseconds, -1 until it's ended
+         */
+        private long wallTime = -1;
+
+        /**
+         * the phase's CPU time in nanoseconds, -1 if not available
+         */
+        private long cpuTime = -1;
+
+        /**
+         * the number of bytes written by the phase, -1 if not recorded
+         */
+        private long bytes = -1;
+
+        /**
+         * constructor
+         *
+         * @param name the phase name
+         */
+        private Phase( String name )
+        {
+            this.name = name;
+            this.startCpuTime = getCpuTime();
+            this.startTime = System.nanoTime();
+        }
+
+        /**
+         * @param bytes the number of bytes written by the phase
+         */
+        public void setBytes( long bytes )
+        {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Ends the phase, recording its times. Ending a phase more than once
+         * has no effect.
+         */
+        public void end()
+        {
+            if ( wallTime >= 0 )
+            {
+                return;
+            }
+
+            wallTime = System.nanoTime() - startTime;
+
+            long endCpuTime = getCpuTime();
+
+            if ( startCpuTime >= 0 && endCpuTime >= 0 )
+            {
+                cpuTime = endCpuTime - startCpuTime;
+            }
+
+            synchronized ( phases )
+            {
+                phases.add( this );
+            }
+        }
+    }
+
+    /**
+     * the thread CPU time source, null if the JVM doesn't support it
+     */
+    private static final ThreadMXBean THREADS = getThreadMXBean();
+
+    /**
+     * the wall time the collector was created at in nanoseconds
+     */
+    private long startTime = System.nanoTime();
+
+    /**
+     * the ended phases, in the order they ended
+     */
+    private List phases = new ArrayList();
+
+    /**
+     * the named values, in the order they were first set
+     */
+    private Map values = new LinkedHashMap();
+
+    /**
+     * the markers, name and nanoseconds since the collector was created
+     */
+    private List markers = new ArrayList();
+
+    /**
+     * starts timing a phase
+     *
+     * @param name the phase name
+     * @return the phase, which must be ended
+     */
+    public Phase start( String name )
+    {
+        return new Phase( name );
+    }
+
+    /**
+     * records a named value
+     *
+     * @param name the value name
+     * @param value the value, a number, boolean or string
+     */
+    public void setValue( String name, Object value )
+    {
+        synchronized ( values )
+        {
+            values.put( name, value );
+        }
+    }
+
+    /**
+     * records a marker at the current time
+     *
+     * @param name the marker name
+     */
+    public void addMarker( String name )
+    {
+        long time = System.nanoTime() - startTime;
+
+        synchronized ( markers )
+        {
+            markers.add( new Object[] { name, new Long( time ) } );
+        }
+    }
+
+    /**
+     * @return a one line summary of the total time, the time spent in each
+     *         phase and the named values
+     */
+    public String getSummary()
+    {
+        DecimalFormat format = getFormat();
+
+        Map totals = new LinkedHashMap();
+
+        synchronized ( phases )
+        {
+            Iterator itr = phases.iterator();
+
+            while ( itr.hasNext() )
+            {
+                Phase phase = (Phase) itr.next();
+
+                String name = phase.name.substring( phase.name.lastIndexOf( '/' ) + 1 );
+
+                Long total = (Long) totals.get( name );
+
+                totals.put( name, new Long( phase.wallTime + ( total == null ? 0 : total.longValue() ) ) );
+            }
+        }
+
+        StringBuffer buffer = new StringBuffer( "total " );
+
+        buffer.append( format.format( ( System.nanoTime() - startTime ) / 1e6 ) ).append( "ms" );
+
+        Iterator itr = totals.entrySet().iterator();
+
+        while ( itr.hasNext() )
+        {
+            Map.Entry entry = (Map.Entry) itr.next();
+
+            buffer.append( ", " ).append( entry.getKey() ).append( ' ' );
+            buffer.append( format.format( ( (Long) entry.getValue() ).longValue() / 1e6 ) ).append( "ms" );
+        }
+
+        synchronized ( values )
+        {
+            itr = values.entrySet().iterator();
+
+            while ( itr.hasNext() )
+            {
+                Map.Entry entry = (Map.Entry) itr.next();
+
+                buffer.append( ", " ).append( entry.getKey() ).append( '=' ).append( entry.getValue() );
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * writes the timings as a JSON document
+     *
+     * @param file the report file
+     * @throws IOException if the report cannot be written
+     */
+    public void write( File file )
+        throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+
+        AtomicFileWriter writer = new AtomicFileWriter( file, "UTF-8" );
+
+        try
+        {
+            write( writer );
+
+            writer.commit();
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * writes the timings as a JSON document
+     *
+     * @param writer the writer
+     * @throws IOException if the report cannot be written
+     */
+    public void write( Writer writer )
+        throws IOException
+    {
+        DecimalFormat format = getFormat();
+
+        writer.write( "{\n  \"totalWallMillis\": " + format.format( ( System.nanoTime() - startTime ) / 1e6 ) );
+
+        writer.write( ",\n  \"phases\": [" );
+
+        synchronized ( phases )
+        {
+            for ( int i = 0; i < phases.size(); i++ )
+            {
+                Phase phase = (Phase) phases.get( i );
+
+                writer.write( i > 0 ? ",\n    " : "\n    " );
+                writer.write( "{ \"name\": " + quote( phase.name ) );
+                writer.write( ", \"startMillis\": " + format.format( ( phase.startTime - startTime ) / 1e6 ) );
+                writer.write( ", \"wallMillis\": " + format.format( phase.wallTime / 1e6 ) );
+
+                if ( phase.cpuTime >= 0 )
+                {
+                    writer.write( ", \"cpuMillis\": " + format.format( phase.cpuTime / 1e6 ) );
+                }
+
+                if ( phase.bytes >= 0 )
+                {
+                    writer.write( ", \"bytesWritten\": " + phase.bytes );
+                }
+
+                writer.write( " }" );
+            }
+        }
+
+        writer.write( "\n  ],\n  \"values\": {" );
+
+        synchronized ( values )
+        {
+            Iterator itr = values.entrySet().iterator();
+
+            for ( int i = 0; itr.hasNext(); i++ )
+            {
+                Map.Entry entry = (Map.Entry) itr.next();
+
+                Object value = entry.getValue();
+
+                writer.write( i > 0 ? ",\n    " : "\n    " );
+                writer.write( quote( entry.getKey().toString() ) + ": " );
+                writer.write( value instanceof Number || value instanceof Boolean ? value.toString()
+                                : quote( String.valueOf( value ) ) );
+            }
+        }
+
+        writer.write( "\n  },\n  \"markers\": [" );
+
+        synchronized ( markers )
+        {
+            for ( int i = 0; i < markers.size(); i++ )
+            {
+                Object[] marker = (Object[]) markers.get( i );
+
+                writer.write( i > 0 ? ",\n    " : "\n    " );
+                writer.write( "{ \"name\": " + quote( (String) marker[0] ) );
+                writer.write( ", \"atMillis\": " + format.format( ( (Long) marker[1] ).longValue() / 1e6 ) );
+                writer.write( " }" );
+            }
+        }
+
+        writer.write( "\n  ]\n}\n" );
+    }
+
+    /**
+     * @param value the string
+     * @return the JSON string literal
+     */
+    public static String quote( String value )
+    {
+        StringBuffer buffer = new StringBuffer( value.length() + 2 );
+
+        buffer.append( '"' );
+
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+
+            if ( c == '"' || c == '\\' )
+            {
+                buffer.append( '\\' ).append( c );
+            }
+            else if ( c < 0x20 )
+            {
+                String hex = Integer.toHexString( c );
+
+                buffer.append( "\\u" ).append( "0000".substring( hex.length() ) ).append( hex );
+            }
+            else
+            {
+                buffer.append( c );
+            }
+        }
+
+        return buffer.append( '"' ).toString();
+    }
+
+    /**
+     * @return the current thread's CPU time in nanoseconds, -1 if not
+     *         available
+     */
+    private static long getCpuTime()
+    {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * @return the thread MX bean if it supports measuring CPU time
+     */
+    private static ThreadMXBean getThreadMXBean()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        return threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled() ? threads : null;
+    }
+
+    /**
+     * @return the number format used in the report
+     */
+    private static DecimalFormat getFormat()
+    {
+        return new DecimalFormat( "0.###", new DecimalFormatSymbols( Locale.US ) );
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escapes text for use in XML attribute values and element content. The
+ * markup characters are replaced by entities, tabs and line breaks by
+ * character references so they survive attribute value normalisation, and
+ * the other control characters, which XML 1.0 doesn't allow, are dropped.
+ * Runs of characters that need no escaping are appended as they are, so
+ * nothing is allocated when appending to a StringBuilder or StringBuffer,
+ * or when appending a String to a Writer.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public final class XmlEscaper
+{
+    private XmlEscaper()
+    {
+    }
+
+    /**
+     * appends the escaped value
+     *
+     * @param out the output
+     * @param value the value to escape, null appends nothing
+     * @throws IOException if the output cannot be appended to
+     */
+    public static void append( Appendable out, CharSequence value )
+        throws IOException
+    {
+        if ( value == null )
+        {
+            return;
+        }
+
+        int length = value.length();
+
+        int start = 0;
+
+        for ( int i = 0; i < length; i++ )
+        {
+            String replacement = getReplacement( value.charAt( i ) );
+
+            if ( replacement != null )
+            {
+                if ( start < i )
+                {
+                    appendRange( out, value, start, i );
+                }
+
+                out.append( replacement );
+
+                start = i + 1;
+            }
+        }
+
+        if ( start < length )
+        {
+            appendRange( out, value, start, length );
+        }
+    }
+
+    /**
+     * Appends part of a value, a String is written to a Writer directly as
+     * Writer.append() copies the part to a new String.
+     *
+     * @param out the output
+     * @param value the value
+     * @param start the index of the first character
+     * @param end the index after the last character
+     * @throws IOException if the output cannot be appended to
+     */
+    private static void appendRange( Appendable out, CharSequence value, int start, int end )
+        throws IOException
+    {
+        if ( out instanceof Writer && value instanceof String )
+        {
+            ( (Writer) out ).write( (String) value, start, end - start );
+        }
+        else
+        {
+            out.append( value, start, end );
+        }
+    }
+
+    /**
+     * @param value the value to escape, may be null
+     * @return the escaped value, the value itself if it needs no escaping
+     */
+    public static String escape( String value )
+    {
+        if ( value == null || !needsEscaping( value ) )
+        {
+            return value;
+        }
+
+        StringBuilder buffer = new StringBuilder( value.length() + 16 );
+
+        try
+        {
+            append( buffer, value );
+        }
+        catch ( IOException e )
+        {
+            // a StringBuilder doesn't throw
+            throw new IllegalStateException( e.toString() );
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * @param value the value
+     * @return true if any of the value's characters must be escaped
+     */
+    public static boolean needsEscaping( CharSequence value )
+    {
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            if ( getReplacement( value.charAt( i ) ) != null )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param c the character
+     * @return what the character is replaced by or null if it's appended as
+     *         it is
+     */
+    private static String getReplacement( char c )
+    {
+        if ( c > '>' )
+        {
+            return c == '\uFFFE' || c == '\uFFFF' ? "" : null;
+        }
+
+        switch ( c )
+        {
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '"':
+                return "&quot;";
+            case '\'':
+                return "&apos;";
+            case '\t':
+                return "&#9;";
+            case '\n':
+                return "&#10;";
+            case '\r':
+                return "&#13;";
+            default:
+                return c < 0x20 ? "" : null;
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Helper methods for reading XML documents with the character encoding
+ * declared in their prolog.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public final class XmlFiles
+{
+    /**
+     * the encoding of documents that don't declare one
+     */
+    public static final String DEFAULT_ENCODING = "UTF-8";
+
+    /**
+     * the number of bytes examined for a prolog
+     */
+    private static final int PROLOG_LENGTH = 256;
+
+    private XmlFiles()
+    {
+    }
+
+    /**
+     * reads and decodes an XML file
+     *
+     * @param file the file to read
+     * @return the document content
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public static String read( File file )
+        throws IOException
+    {
+        FileChannel channel = new FileInputStream( file ).getChannel();
+
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.allocate( (int) channel.size() );
+
+            while ( buffer.hasRemaining() && channel.read( buffer ) >= 0 )
+            {
+                // keep reading
+            }
+
+            buffer.flip();
+
+            return decode( buffer );
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * reads and decodes an XML stream, the stream is closed
+     *
+     * @param in the stream to read
+     * @return the document content
+     * @throws IOException if the stream cannot be read or decoded
+     */
+    public static String read( InputStream in )
+        throws IOException
+    {
+        ReadableByteChannel channel = Channels.newChannel( in );
+
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.allocate( 8192 );
+
+            while ( channel.read( buffer ) >= 0 )
+            {
+                if ( !buffer.hasRemaining() )
+                {
+                    ByteBuffer larger = ByteBuffer.allocate( buffer.capacity() * 2 );
+                    buffer.flip();
+                    larger.put( buffer );
+                    buffer = larger;
+                }
+            }
+
+            buffer.flip();
+
+            return decode( buffer );
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Decodes an XML document, the encoding is taken from the byte order mark
+     * or the prolog's encoding declaration, defaulting to UTF-8. Malformed
+     * input raises an error rather than being silently replaced.
+     *
+     * @param bytes the document bytes
+     * @return the document content
+     * @throws IOException if the document cannot be decoded
+     */
+    public static String decode( ByteBuffer bytes )
+        throws IOException
+    {
+        String encoding = getEncoding( bytes );
+
+        int start = bytes.position();
+
+        if ( encoding.equals( DEFAULT_ENCODING ) && bytes.remaining() >= 3 && ( bytes.get( start ) & 0xff ) == 0xef
+            && ( bytes.get( start + 1 ) & 0xff ) == 0xbb && ( bytes.get( start + 2 ) & 0xff ) == 0xbf )
+        {
+            // skip the UTF-8 byte order mark
+
+            bytes.position( start + 3 );
+        }
+
+        return Charset.forName( encoding ).newDecoder().onMalformedInput( CodingErrorAction.REPORT )
+            .onUnmappableCharacter( CodingErrorAction.REPORT ).decode( bytes ).toString();
+    }
+
+    /**
+     * Determines the encoding of an XML document from its byte order mark or
+     * its prolog's encoding declaration.
+     *
+     * @param bytes the document bytes, the buffer position is not changed
+     * @return the document encoding, UTF-8 if none is declared
+     */
+    public static String getEncoding( ByteBuffer bytes )
+    {
+        int start = bytes.position();
+
+        if ( bytes.remaining() >= 2 )
+        {
+            int b0 = bytes.get( start ) & 0xff;
+            int b1 = bytes.get( start + 1 ) & 0xff;
+
+            if ( ( b0 == 0xfe && b1 == 0xff ) || ( b0 == 0xff && b1 == 0xfe ) )
+            {
+                return "UTF-16";
+            }
+        }
+
+        // the prolog is plain ASCII in every ASCII compatible encoding
+
+        int length = Math.min( bytes.remaining(), PROLOG_LENGTH );
+
+        char[] prolog = new char[length];
+
+        for ( int i = 0; i < length; i++ )
+        {
+            prolog[i] = (char) ( bytes.get( start + i ) & 0xff );
+        }
+
+        String encoding = getDeclaredEncoding( new String( prolog ) );
+
+        return encoding != null ? encoding : DEFAULT_ENCODING;
+    }
+
+    /**
+     * Extracts the encoding declared by an XML prolog.
+     *
+     * @param content the start of the XML document
+     * @return the declared encoding or null if there is none
+     */
+    public static String getDeclaredEncoding( String content )
+    {
+        int start = content.indexOf( "<?xml" );
+
+        int end = content.indexOf( "?>" );
+
+        if ( start < 0 || end < start )
+        {
+            return null;
+        }
+
+        String prolog = content.substring( start, end );
+
+        int attribute = prolog.indexOf( "encoding" );
+
+        if ( attribute < 0 )
+        {
+            return null;
+        }
+
+        int equals = prolog.indexOf( '=', attribute );
+
+        if ( equals < 0 )
+        {
+            return null;
+        }
+
+        int quote = equals + 1;
+
+        while ( quote < prolog.length() && Character.isWhitespace( prolog.charAt( quote ) ) )
+        {
+            quote++;
+        }
+
+        if ( quote >= prolog.length() || ( prolog.charAt( quote ) != '"' && prolog.charAt( quote ) != '\'' ) )
+        {
+            return null;
+        }
+
+        int close = prolog.indexOf( prolog.charAt( quote ), quote + 1 );
+
+        return close < 0 ? null : prolog.substring( quote + 1, close ).trim();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2005 John H Allen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigXml;
+
+/**
+ * Writes an XML document element by element straight to its output, in the
+ * style of a StAX writer. Each element starts on a new line indented with a
+ * tab per level, elements without content are closed with "/>" and
+ * attribute values are escaped as they are written. Config* parameters are
+ * written with their own writeTo(Appendable), either as an attribute value
+ * or as a fragment of elements.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ */
+public class XmlStreamWriter
+{
+    /**
+     * the output
+     */
+    private Appendable out;
+
+    /**
+     * the names of the open elements
+     */
+    private List elements = new ArrayList();
+
+    /**
+     * true while attributes can be added to the last started element
+     */
+    private boolean startTagOpen;
+
+    /**
+     * constructor
+     *
+     * @param out the output
+     */
+    public XmlStreamWriter( Appendable out )
+    {
+        this.out = out;
+    }
+
+    /**
+     * writes the XML declaration
+     *
+     * @param encoding the document encoding
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeStartDocument( String encoding )
+        throws IOException
+    {
+        out.append( "<?xml version=\"1.0\" encoding=\"" ).append( encoding ).append( "\"?>" );
+    }
+
+    /**
+     * starts an element, which must be ended by writeEndElement()
+     *
+     * @param name the element name
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeStartElement( String name )
+        throws IOException
+    {
+        closeStartTag();
+
+        newLine( elements.size() );
+
+        out.append( '<' ).append( name );
+
+        elements.add( name );
+
+        startTagOpen = true;
+    }
+
+    /**
+     * writes an attribute of the element just started
+     *
+     * @param name the attribute name
+     * @param value the attribute value, null writes an empty value
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeAttribute( String name, String value )
+        throws IOException
+    {
+        startAttribute( name );
+
+        XmlEscaper.append( out, value );
+
+        out.append( '"' );
+    }
+
+    /**
+     * writes an attribute of the element just started
+     *
+     * @param name the attribute name
+     * @param value the attribute value
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeAttribute( String name, boolean value )
+        throws IOException
+    {
+        startAttribute( name );
+
+        out.append( value ? "true" : "false" ).append( '"' );
+    }
+
+    /**
+     * writes an attribute of the element just started
+     *
+     * @param name the attribute name
+     * @param value the parameter written as the attribute value, it escapes
+     *            its own value, null writes an empty value
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeAttribute( String name, ConfigXml value )
+        throws IOException
+    {
+        startAttribute( name );
+
+        if ( value != null )
+        {
+            value.writeTo( out );
+        }
+
+        out.append( '"' );
+    }
+
+    /**
+     * writes a parameter's elements as the content of the current element,
+     * on a line of their own
+     *
+     * @param fragment the parameter, null writes nothing
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeFragment( ConfigXml fragment )
+        throws IOException
+    {
+        if ( fragment == null )
+        {
+            return;
+        }
+
+        closeStartTag();
+
+        newLine( elements.size() );
+
+        fragment.writeTo( out );
+    }
+
+    /**
+     * ends the last started element
+     *
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeEndElement()
+        throws IOException
+    {
+        String name = (String) elements.remove( elements.size() - 1 );
+
+        if ( startTagOpen )
+        {
+            out.append( "/>" );
+
+            startTagOpen = false;
+        }
+        else
+        {
+            newLine( elements.size() );
+
+            out.append( "</" ).append( name ).append( '>' );
+        }
+    }
+
+    /**
+     * ends the open elements and the document
+     *
+     * @throws IOException if the output cannot be written to
+     */
+    public void writeEndDocument()
+        throws IOException
+    {
+        while ( !elements.isEmpty() )
+        {
+            writeEndElement();
+        }
+
+        out.append( '\n' );
+    }
+
+    /**
+     * @param name the attribute name
+     * @throws IOException if the output cannot be written to
+     */
+    private void startAttribute( String name )
+        throws IOException
+    {
+        if ( !startTagOpen )
+        {
+            throw new IllegalStateException( "Attribute " + name + " written outside of a start tag" );
+        }
+
+        out.append( ' ' ).append( name ).append( "=\"" );
+    }
+
+    /**
+     * @throws IOException if the output cannot be written to
+     */
+    private void closeStartTag()
+        throws IOException
+    {
+        if ( startTagOpen )
+        {
+            out.append( '>' );
+
+            startTagOpen = false;
+        }
+    }
+
+    /**
+     * @param depth the indentation level
+     * @throws IOException if the output cannot be written to
+     */
+    private void newLine( int depth )
+        throws IOException
+    {
+        out.append( '\n' );
+
+        for ( int i = 0; i < depth; i++ )
+        {
+            out.append( '\t' );
+        }
+    }
+
+}
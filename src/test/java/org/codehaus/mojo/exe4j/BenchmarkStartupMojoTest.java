@@ -0,0 +1,62 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigQuotedString;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class BenchmarkStartupMojoTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.BenchmarkStartupMojo.splitArguments(ConfigQuotedString, File)'
+     */
+    public final void testSplitArguments()
+    {
+        File dir = new File( "/opt/app" );
+
+        ConfigQuotedString line = new ConfigQuotedString( " -Xmx64m  \"-Dtitle=My App\" -Dlib=%EXE4J_EXEDIR%/lib \"\"" );
+
+        assertEquals( Arrays.asList( new String[] { "-Xmx64m", "-Dtitle=My App",
+            "-Dlib=" + dir.getAbsolutePath().replace( '\\', '/' ) + "/lib", "" } ), BenchmarkStartupMojo
+            .splitArguments( line, dir ) );
+
+        assertTrue( BenchmarkStartupMojo.splitArguments( null, dir ).isEmpty() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.BenchmarkStartupMojo.hasOption(List, String)'
+     */
+    public final void testHasOption()
+    {
+        List arguments = Arrays.asList( new String[] { "-Xmx64m", "-XX:SharedArchiveFile=/opt/app/app.jsa" } );
+
+        assertTrue( BenchmarkStartupMojo.hasOption( arguments, "-XX:SharedArchiveFile=" ) );
+        assertFalse( BenchmarkStartupMojo.hasOption( arguments, "-XX:AOTCache=" ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.BenchmarkStartupMojo.percentile(long[], int)'
+     */
+    public final void testPercentile()
+    {
+        long[] sorted = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+
+        assertEquals( 5, BenchmarkStartupMojo.percentile( sorted, 50 ) );
+        assertEquals( 9, BenchmarkStartupMojo.percentile( sorted, 90 ) );
+        assertEquals( 10, BenchmarkStartupMojo.percentile( sorted, 99 ) );
+        assertEquals( 7, BenchmarkStartupMojo.percentile( new long[] { 7 }, 50 ) );
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j;
+
+import java.io.StringReader;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigExecutableMode;
+import org.codehaus.mojo.exe4j.configuration.ConfigJarExeMode;
+import org.codehaus.mojo.exe4j.configuration.ConfigQuotedString;
+import org.codehaus.mojo.exe4j.configuration.ConfigStatusLine;
+import org.codehaus.mojo.exe4j.configuration.ConfigVersionLine;
+import org.codehaus.mojo.exe4j.configuration.ConfigVersionString;
+import org.codehaus.mojo.exe4j.util.Template;
+import org.codehaus.mojo.exe4j.util.XmlFiles;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class Exe4JDocumentTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.Exe4JDocument.write(Writer)'
+     */
+    public final void testWriteMatchesTemplate()
+        throws Exception
+    {
+        Exe4JDocument document = new Exe4JDocument();
+
+        document.applicationShortName = "app";
+        document.applicationShortInternalName = "app-internal";
+        document.distributionSourceDirectory = "/dist";
+        document.executableName = "app";
+        document.jarExeMode = new ConfigJarExeMode( "external" );
+        document.executableDirectory = "bin";
+        document.executableMode = new ConfigExecutableMode( "console" );
+        document.workingDirectory = ".";
+        document.redirectStdErr = true;
+        document.stdErrRedirectionFile = "err.log";
+        document.fileVersion = new ConfigVersionString( "1.2" );
+        document.productVersion = new ConfigVersionString( "1.2.3" );
+        document.companyName = "ACME";
+        document.statusLine = new ConfigStatusLine();
+        document.versionLine = new ConfigVersionLine();
+        document.mainClass = "org.example.Main";
+        document.jvmParameters = new ConfigQuotedString( "-Xmx64m \"-Dtitle=My App\"" );
+        document.arguments = new ConfigQuotedString( "" );
+        document.minJavaVersion = "1.4";
+        document.classPath = new ConfigClassPath();
+        document.classPath.addLocation( new ConfigClassPath.ClassPathLocation( "archive", "lib/app.jar", true ) );
+
+        Properties properties = new Properties();
+
+        properties.setProperty( "applicationShortName", "app" );
+        properties.setProperty( "applicationShortInternalName", "app-internal" );
+        properties.setProperty( "distributionSourceDirectory", "/dist" );
+        properties.setProperty( "executableName", "app" );
+        properties.setProperty( "jarExeMode", document.jarExeMode.toString() );
+        properties.setProperty( "useExecutableIcon", "false" );
+        properties.setProperty( "executableDirectory", "bin" );
+        properties.setProperty( "redirectStdErr", "true" );
+        properties.setProperty( "stdErrRedirectionFile", "err.log" );
+        properties.setProperty( "redirectStdOut", "false" );
+        properties.setProperty( "executableMode", document.executableMode.toString() );
+        properties.setProperty( "workingDirectory", "." );
+        properties.setProperty( "singleInstanceOnly", "false" );
+        properties.setProperty( "generateVersionInfo", "false" );
+        properties.setProperty( "fileVersion", "1.2.0.0" );
+        properties.setProperty( "productVersion", "1.2.3.0" );
+        properties.setProperty( "companyName", "ACME" );
+        properties.setProperty( "useSplashScreen", "false" );
+        properties.setProperty( "hideSplashScreenOnStart", "false" );
+        properties.setProperty( "splashScreenOnTop", "false" );
+        properties.setProperty( "statusLine", document.statusLine.toString() );
+        properties.setProperty( "versionLine", document.versionLine.toString() );
+        properties.setProperty( "mainClass", "org.example.Main" );
+        properties.setProperty( "jvmParameters", document.jvmParameters.toString() );
+        properties.setProperty( "arguments", "" );
+        properties.setProperty( "allowJvmPassThrough", "false" );
+        properties.setProperty( "minJavaVersion", "1.4" );
+        properties.setProperty( "allowBetaJREs", "false" );
+        properties.setProperty( "allowOnlyJDKSs", "false" );
+        properties.setProperty( "classPath", document.classPath.toString() );
+
+        String template = XmlFiles.read( Exe4JMojo.class.getResourceAsStream( "template-exe4j.xml" ) );
+
+        Element expected = parse( Template.compile( template ).render( properties ) );
+
+        String written = document.toString();
+
+        assertEquals( "the output isn't stable", written, document.toString() );
+
+        assertSameElement( expected, parse( written ) );
+    }
+
+    private static Element parse( String xml )
+        throws Exception
+    {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+            .parse( new InputSource( new StringReader( xml ) ) ).getDocumentElement();
+    }
+
+    private static void assertSameElement( Element expected, Element actual )
+    {
+        assertEquals( expected.getTagName(), actual.getTagName() );
+
+        NamedNodeMap attributes = expected.getAttributes();
+
+        assertEquals( expected.getTagName(), attributes.getLength(), actual.getAttributes().getLength() );
+
+        for ( int i = 0; i < attributes.getLength(); i++ )
+        {
+            Node attribute = attributes.item( i );
+
+            assertEquals( expected.getTagName() + "@" + attribute.getNodeName(), attribute.getNodeValue(), actual
+                .getAttribute( attribute.getNodeName() ) );
+        }
+
+        Node expectedChild = nextElement( expected.getFirstChild() );
+        Node actualChild = nextElement( actual.getFirstChild() );
+
+        while ( expectedChild != null )
+        {
+            assertNotNull( "missing " + expectedChild.getNodeName(), actualChild );
+
+            assertSameElement( (Element) expectedChild, (Element) actualChild );
+
+            expectedChild = nextElement( expectedChild.getNextSibling() );
+            actualChild = nextElement( actualChild.getNextSibling() );
+        }
+
+        assertNull( actualChild );
+    }
+
+    private static Node nextElement( Node node )
+    {
+        while ( node != null && node.getNodeType() != Node.ELEMENT_NODE )
+        {
+            node = node.getNextSibling();
+        }
+
+        return node;
+    }
+
+}
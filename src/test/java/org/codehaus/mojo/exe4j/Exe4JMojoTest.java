@@ -0,0 +1,241 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.mojo.exe4j.configuration.ConfigExecutableMode;
+import org.codehaus.mojo.exe4j.configuration.ConfigQuotedString;
+import org.codehaus.mojo.exe4j.util.TempFiles;
+import org.codehaus.mojo.exe4j.util.XmlFiles;
+
+/**
+ * Generates variants with a stub exe4jc shell script that fails for any
+ * config file named broken-*, so the tests only run where there is a
+ * /bin/sh.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class Exe4JMojoTest
+    extends TestCase
+{
+    private File directory;
+
+    private MavenProject project;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = TempFiles.createDirectory( "variants" );
+
+        project = new MavenProject( new Model() );
+    }
+
+    protected void tearDown()
+    {
+        TempFiles.delete( directory );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.Exe4JMojo.execute()'
+     */
+    public final void testVariantOverrides()
+        throws Exception
+    {
+        if ( !new File( "/bin/sh" ).canExecute() )
+        {
+            return;
+        }
+
+        Variant console = createVariant( "app-console" );
+
+        console.setExecutableMode( new ConfigExecutableMode( "console" ) );
+        console.setArguments( new ConfigQuotedString( "--console" ) );
+
+        Exe4JMojo mojo = createMojo( new Variant[] { console, createVariant( "app-debug" ) } );
+
+        mojo.execute();
+
+        // the variant's values replace the mojo's, those it leaves unset are
+        // the mojo's
+
+        String config = XmlFiles.read( new File( directory, "target/app-console-app.exe4j" ) );
+
+        assertTrue( config, config.indexOf( "name=\"app-console\"" ) >= 0 );
+        assertTrue( config, config.indexOf( "executableMode=\"2\"" ) >= 0 );
+        assertTrue( config, config.indexOf( "--console" ) >= 0 );
+        assertTrue( config, config.indexOf( "com.example.Main" ) >= 0 );
+        assertTrue( config, config.indexOf( "--mojo" ) < 0 );
+
+        config = XmlFiles.read( new File( directory, "target/app-debug-app.exe4j" ) );
+
+        assertTrue( config, config.indexOf( "name=\"app-debug\"" ) >= 0 );
+        assertTrue( config, config.indexOf( "executableMode=\"1\"" ) >= 0 );
+        assertTrue( config, config.indexOf( "--mojo" ) >= 0 );
+
+        config = XmlFiles.read( new File( directory, "target/app.exe4j" ) );
+
+        assertTrue( config, config.indexOf( "name=\"app\"" ) >= 0 );
+        assertTrue( config, config.indexOf( "--console" ) < 0 );
+
+        // each variant records whether its config changed
+
+        assertEquals( "true", project.getProperties().getProperty( "exe4j.app-console.configChanged" ) );
+        assertEquals( "true", project.getProperties().getProperty( "exe4j.app-debug.configChanged" ) );
+        assertEquals( "true", project.getProperties().getProperty( "exe4j.configChanged" ) );
+
+        // compiled once each
+
+        assertEquals( 3, new File( directory, "compiled" ).list().length );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.Exe4JMojo.execute()'
+     */
+    public final void testVariantFailure()
+        throws Exception
+    {
+        if ( !new File( "/bin/sh" ).canExecute() )
+        {
+            return;
+        }
+
+        Exe4JMojo mojo = createMojo( new Variant[] { createVariant( "broken" ), createVariant( "app-debug" ) } );
+
+        try
+        {
+            mojo.execute();
+
+            fail( "a failing variant should fail the execution" );
+        }
+        catch ( MojoExecutionException e )
+        {
+            // expected
+        }
+
+        // the other executables are still generated
+
+        assertTrue( new File( directory, "compiled/app.exe4j" ).isFile() );
+        assertTrue( new File( directory, "compiled/app-debug-app.exe4j" ).isFile() );
+    }
+
+    private static Variant createVariant( String executableName )
+    {
+        Variant variant = new Variant();
+
+        variant.setExecutableName( executableName );
+
+        return variant;
+    }
+
+    /**
+     * @param variants the variants to generate
+     * @return a mojo compiling with a stub exe4jc that records each config
+     *         file it is given
+     */
+    private Exe4JMojo createMojo( Variant[] variants )
+        throws Exception
+    {
+        File compiled = new File( directory, "compiled" );
+
+        compiled.mkdirs();
+
+        File script = new File( directory, "exe4jc" );
+
+        // the config file is the last argument
+
+        write( script, "#!/bin/sh\nfor config; do :; done\nname=`basename \"$config\"`\n"
+            + "case \"$name\" in broken-*) echo \"broken $name\" >&2; exit 1;; esac\n" + "touch "
+            + compiled.getAbsolutePath() + "/$name\n" );
+
+        script.setExecutable( true );
+
+        File distribution = new File( directory, "target/dist" );
+
+        distribution.mkdirs();
+
+        List list = new ArrayList();
+
+        for ( int i = 0; i < variants.length; i++ )
+        {
+            list.add( variants[i] );
+        }
+
+        Exe4JMojo mojo = new Exe4JMojo();
+
+        set( mojo, "project", project );
+        set( mojo, "exe4jcExe", script.getAbsolutePath() );
+        set( mojo, "executableName", "app" );
+        set( mojo, "distributionSourceDirectory", distribution );
+        set( mojo, "executableDirectory", "bin" );
+        set( mojo, "workingDirectory", "." );
+        set( mojo, "resourcesDirectory", new File( directory, "src/main/resources" ) );
+        set( mojo, "outputConfigFile", new File( directory, "target/app.exe4j" ) );
+        set( mojo, "mainClass", "com.example.Main" );
+        set( mojo, "arguments", new ConfigQuotedString( "--mojo" ) );
+        set( mojo, "executableMode", new ConfigExecutableMode( "gui" ) );
+        set( mojo, "variants", list );
+        set( mojo, "variantThreads", new Integer( 2 ) );
+
+        return mojo;
+    }
+
+    /**
+     * Sets a mojo parameter the way Maven injects it.
+     *
+     * @param mojo the mojo
+     * @param name the parameter name
+     * @param value the value
+     */
+    private static void set( Object mojo, String name, Object value )
+        throws Exception
+    {
+        for ( Class type = mojo.getClass(); type != null; type = type.getSuperclass() )
+        {
+            try
+            {
+                Field field = type.getDeclaredField( name );
+
+                field.setAccessible( true );
+
+                field.set( mojo, value );
+
+                return;
+            }
+            catch ( NoSuchFieldException e )
+            {
+                // declared by a super class
+            }
+        }
+
+        fail( "no such parameter: " + name );
+    }
+
+    private static void write( File file, String content )
+        throws Exception
+    {
+        Writer writer = new FileWriter( file );
+
+        try
+        {
+            writer.write( content );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+}
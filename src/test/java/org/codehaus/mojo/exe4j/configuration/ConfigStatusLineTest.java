@@ -0,0 +1,37 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.configuration;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class ConfigStatusLineTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.configuration.ConfigStatusLine.writeTo(Appendable)'
+     */
+    public final void testWriteTo()
+        throws Exception
+    {
+        ConfigStatusLine statusLine = new ConfigStatusLine( "0.0.0", "Arial", 8, 500, "Say \"hi\" & <wait>", 20, 30 );
+
+        String expected = "<statusLine x=\"20\" y=\"30\" text=\"Say &quot;hi&quot; &amp; &lt;wait&gt;\" font=\"Arial\""
+            + " fontSize=\"8\" fontColor=\"0.0.0\" fontWeight=\"500\"/>";
+
+        StringWriter writer = new StringWriter();
+
+        statusLine.writeTo( writer );
+
+        assertEquals( expected, writer.toString() );
+        assertEquals( expected, statusLine.toString() );
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class CompilerLimiterTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.CompilerLimiter.getInstance(Object, int)'
+     */
+    public final void testGetInstance()
+    {
+        Object session = new Object();
+
+        CompilerLimiter limiter = CompilerLimiter.getInstance( session, 2 );
+
+        assertEquals( 2, limiter.getLimit() );
+        assertSame( limiter, CompilerLimiter.getInstance( session, 5 ) );
+        assertNotSame( limiter, CompilerLimiter.getInstance( new Object(), 2 ) );
+
+        assertTrue( CompilerLimiter.getInstance( new Object(), 0 ).getLimit() >= 1 );
+
+        // only a derived limit is reported, and only once
+
+        assertFalse( limiter.report() );
+
+        limiter = CompilerLimiter.getInstance( new Object(), 0 );
+
+        assertTrue( limiter.report() );
+        assertFalse( limiter.report() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.CompilerLimiter.getDefaultLimit(int, long, long)'
+     */
+    public final void testGetDefaultLimit()
+        throws Exception
+    {
+        long mb = 1024 * 1024;
+
+        assertEquals( 8, CompilerLimiter.getDefaultLimit( 8, -1, 0 ) );
+        assertEquals( 8, CompilerLimiter.getDefaultLimit( 8, 16384 * mb, 1024 * mb ) );
+        assertEquals( 3, CompilerLimiter.getDefaultLimit( 8, 2048 * mb, 512 * mb ) );
+        assertEquals( 1, CompilerLimiter.getDefaultLimit( 8, 256 * mb, 512 * mb ) );
+
+        File file = File.createTempFile( "memory", ".max" );
+
+        Writer writer = new FileWriter( file );
+        writer.write( "max\n" );
+        writer.close();
+
+        assertEquals( -1, CompilerLimiter.readLimit( file ) );
+
+        writer = new FileWriter( file );
+        writer.write( "2147483648\n" );
+        writer.close();
+
+        assertEquals( 2048 * mb, CompilerLimiter.readLimit( file ) );
+
+        file.delete();
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.CompilerLimiter.acquire()'
+     */
+    public final void testAcquire()
+        throws Exception
+    {
+        final CompilerLimiter limiter = new CompilerLimiter( 1 );
+
+        assertTrue( limiter.acquire() < 100 );
+
+        Thread releaser = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep( 300 );
+                }
+                catch ( InterruptedException e )
+                {
+                    // release early
+                }
+
+                limiter.release();
+            }
+        };
+
+        releaser.start();
+
+        assertTrue( limiter.acquire() >= 200 );
+
+        limiter.release();
+
+        releaser.join();
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.mojo.exe4j.util.TempFiles;
+import org.codehaus.mojo.exe4j.util.Timings;
+
+/**
+ * Runs a stub exe4jc shell script that starts a sleeping child process, so
+ * the tests only run where there is a /bin/sh.
+ * 
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class CompilerTaskTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.CompilerTask.execute()'
+     */
+    public final void testTimeout()
+        throws Exception
+    {
+        assertKilled( 1, 0, "exe4jc timed out after 1s", "timeout" );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.CompilerTask.execute()'
+     */
+    public final void testIdleTimeout()
+        throws Exception
+    {
+        assertKilled( 0, 1, "exe4jc produced no output for 1s", "idleTimeout" );
+    }
+
+    private void assertKilled( int timeout, int idleTimeout, String message, String reason )
+        throws Exception
+    {
+        if ( !new File( "/bin/sh" ).canExecute() )
+        {
+            return;
+        }
+
+        File directory = TempFiles.createDirectory( "exe4jc" );
+
+        File pidFile = new File( directory, "sleep.pid" );
+
+        File script = new File( directory, "exe4jc" );
+
+        write( script, "#!/bin/sh\necho started\nsleep 60 &\necho $! > " + pidFile.getAbsolutePath()
+            + "\necho failing >&2\nwait\n" );
+
+        script.setExecutable( true );
+
+        Timings timings = new Timings();
+
+        CompilerTask task = new CompilerTask( "app.exe4j", script.getAbsolutePath(), directory.getAbsolutePath(),
+                                              new SystemStreamLog() );
+        task.setTimings( timings );
+        task.setExecutableName( "app" );
+        task.setTimeout( timeout );
+        task.setIdleTimeout( idleTimeout );
+
+        long start = System.currentTimeMillis();
+
+        try
+        {
+            task.execute();
+
+            fail( "exe4jc wasn't killed" );
+        }
+        catch ( MojoExecutionException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().startsWith( message ) );
+            assertTrue( e.getMessage(), e.getMessage().endsWith( "failing" ) );
+        }
+
+        assertTrue( System.currentTimeMillis() - start < 30000 );
+
+        assertFalse( "the sleeping child is still running", isRunning( read( pidFile ) ) );
+
+        String summary = timings.getSummary();
+
+        assertTrue( summary, summary.indexOf( "app/exe4jc.killReason=" + reason ) >= 0 );
+
+        TempFiles.delete( directory );
+    }
+
+    private static boolean isRunning( String pid )
+        throws IOException
+    {
+        File status = new File( "/proc/" + pid + "/status" );
+
+        if ( !status.exists() )
+        {
+            return false;
+        }
+
+        // a killed orphan may not be reaped in a container
+
+        return read( status ).indexOf( "zombie" ) < 0;
+    }
+
+    private static void write( File file, String content )
+        throws IOException
+    {
+        Writer writer = new FileWriter( file );
+
+        try
+        {
+            writer.write( content );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private static String read( File file )
+        throws IOException
+    {
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+
+        try
+        {
+            StringBuffer buffer = new StringBuffer();
+
+            for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                buffer.append( line );
+            }
+
+            return buffer.toString().trim();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+}
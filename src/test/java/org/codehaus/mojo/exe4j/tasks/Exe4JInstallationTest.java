@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.codehaus.mojo.exe4j.util.TempFiles;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class Exe4JInstallationTest
+    extends TestCase
+{
+    private File directory;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = TempFiles.createDirectory( "exe4j" );
+    }
+
+    protected void tearDown()
+    {
+        TempFiles.delete( directory );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.Exe4JInstallation.getIdentity()'
+     */
+    public final void testGetIdentity()
+        throws Exception
+    {
+        File bin = new File( directory, "bin" );
+
+        bin.mkdirs();
+
+        File exe = new File( bin, "exe4jc.exe" );
+
+        exe.createNewFile();
+
+        File jar = writeCompilerJar( "6.0.2" );
+
+        // exe4jc is found on the path, the compiler jar beside it
+
+        Exe4JInstallation installation = new Exe4JInstallation( "exe4jc.exe", null, "/no/such/directory"
+            + File.pathSeparator + bin.getPath() );
+
+        assertEquals( exe.getAbsoluteFile(), installation.getExecutable() );
+        assertEquals( jar, installation.getCompilerJar() );
+        assertEquals( "6.0.2", installation.getVersion() );
+
+        String identity = installation.getIdentity();
+
+        assertTrue( identity, identity.startsWith( "exe4jc=" + exe.getAbsolutePath() + ":0:" ) );
+        assertTrue( identity, identity.endsWith( " version=6.0.2" ) );
+
+        // an upgrade changes the identity
+
+        writeCompilerJar( "7.0" );
+
+        assertFalse( identity.equals( installation.getIdentity() ) );
+
+        installation = new Exe4JInstallation( "exe4jc.exe", null, "" );
+
+        assertNull( installation.getExecutable() );
+        assertTrue( installation.getIdentity().startsWith( "exe4jc=exe4jc.exe compilerJar=" ) );
+    }
+
+    private File writeCompilerJar( String version )
+        throws Exception
+    {
+        File jar = new File( directory, "lib/exe4j.jar" );
+
+        jar.getParentFile().mkdirs();
+
+        Manifest manifest = new Manifest();
+
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        manifest.getMainAttributes().put( Attributes.Name.IMPLEMENTATION_VERSION, version );
+
+        new JarOutputStream( new FileOutputStream( jar ), manifest ).close();
+
+        return jar;
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+import org.codehaus.mojo.exe4j.util.TempFiles;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class HostCompilerSlotsTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.HostCompilerSlots.acquire(long)'
+     */
+    public final void testAcquire()
+        throws Exception
+    {
+        File directory = TempFiles.createDirectory( "slots" );
+
+        HostCompilerSlots slots = new HostCompilerSlots( directory, 2 );
+
+        HostCompilerSlots.Slot first = slots.acquire( 0 );
+        HostCompilerSlots.Slot second = slots.acquire( 0 );
+
+        assertNotNull( first );
+        assertNotNull( second );
+
+        long start = System.currentTimeMillis();
+
+        assertNull( slots.acquire( 300 ) );
+        assertTrue( System.currentTimeMillis() - start >= 300 );
+
+        first.release();
+        first.release();
+
+        HostCompilerSlots.Slot third = slots.acquire( 1000 );
+
+        assertNotNull( third );
+
+        second.release();
+        third.release();
+
+        // the waiters' tickets are removed
+
+        assertEquals( 0, new File( directory, "queue" ).list().length );
+
+        TempFiles.delete( directory );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.HostCompilerSlots.getRecordedSlots(File, int)'
+     */
+    public final void testGetRecordedSlots()
+        throws Exception
+    {
+        File directory = TempFiles.createDirectory( "slots" );
+
+        // the first build records its number, those that follow use it
+
+        assertEquals( 3, HostCompilerSlots.getRecordedSlots( directory, 3 ) );
+        assertEquals( 3, HostCompilerSlots.getRecordedSlots( directory, 8 ) );
+
+        // an unreadable number is recorded again
+
+        Writer writer = new FileWriter( new File( directory, "slots.count" ) );
+        writer.write( "many\n" );
+        writer.close();
+
+        assertEquals( 8, HostCompilerSlots.getRecordedSlots( directory, 8 ) );
+        assertEquals( 8, HostCompilerSlots.getRecordedSlots( directory, 2 ) );
+
+        TempFiles.delete( directory );
+    }
+
+}
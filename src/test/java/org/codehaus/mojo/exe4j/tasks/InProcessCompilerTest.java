@@ -0,0 +1,121 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class InProcessCompilerTest
+    extends TestCase
+{
+    private static final String STUB_CLASS = "org/codehaus/mojo/exe4j/tasks/StubCompiler.class";
+
+    private File jar;
+
+    protected void setUp()
+        throws Exception
+    {
+        // package the stub compiler class into its own jar
+
+        jar = File.createTempFile( "stub-exe4j", ".jar" );
+
+        JarOutputStream out = new JarOutputStream( new FileOutputStream( jar ) );
+
+        out.putNextEntry( new ZipEntry( STUB_CLASS ) );
+
+        InputStream in = getClass().getClassLoader().getResourceAsStream( STUB_CLASS );
+
+        byte[] buffer = new byte[4096];
+        int count;
+        while ( ( count = in.read( buffer ) ) > 0 )
+        {
+            out.write( buffer, 0, count );
+        }
+
+        in.close();
+
+        out.close();
+    }
+
+    protected void tearDown()
+    {
+        jar.delete();
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.InProcessCompiler.run(String[])'
+     */
+    public final void testRun()
+        throws Exception
+    {
+        if ( !InProcessCompiler.isSupported() )
+        {
+            return;
+        }
+
+        InProcessCompiler compiler = new InProcessCompiler( jar, "org.codehaus.mojo.exe4j.tasks.StubCompiler",
+                                                            new SystemStreamLog() );
+
+        assertEquals( 0, compiler.run( new String[] { "exe4j.xml" } ) );
+
+        assertEquals( 3, compiler.run( new String[] { "--exit", "3", "exe4j.xml" } ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.InProcessCompiler.getJavaVersion(String)'
+     */
+    public final void testGetJavaVersion()
+    {
+        assertEquals( 8, InProcessCompiler.getJavaVersion( "1.8" ) );
+        assertEquals( 17, InProcessCompiler.getJavaVersion( "17" ) );
+        assertEquals( 0, InProcessCompiler.getJavaVersion( null ) );
+
+        if ( InProcessCompiler.getJavaVersion( System.getProperty( "java.specification.version" ) ) > 17 )
+        {
+            assertFalse( InProcessCompiler.isSupported() );
+        }
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.InProcessCompiler.getClassLoader(File)'
+     */
+    public final void testClassLoaderIsolatedAndReused()
+        throws Exception
+    {
+        ClassLoader loader = InProcessCompiler.getClassLoader( jar );
+
+        assertSame( loader, InProcessCompiler.getClassLoader( jar ) );
+
+        assertNotSame( StubCompiler.class, loader.loadClass( StubCompiler.class.getName() ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.InProcessCompiler.getClassLoader(File)'
+     */
+    public final void testClassLoaderReplacedWhenJarChanges()
+        throws Exception
+    {
+        ClassLoader loader = InProcessCompiler.getClassLoader( jar );
+
+        jar.setLastModified( jar.lastModified() - 60000 );
+
+        ClassLoader replacement = InProcessCompiler.getClassLoader( jar );
+
+        assertNotSame( loader, replacement );
+
+        assertSame( replacement, InProcessCompiler.getClassLoader( jar ) );
+    }
+
+}
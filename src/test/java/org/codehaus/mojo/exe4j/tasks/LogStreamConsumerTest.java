@@ -0,0 +1,41 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class LogStreamConsumerTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.LogStreamConsumer.getTail()'
+     */
+    public final void testGetTail()
+    {
+        LogStreamConsumer consumer = new LogStreamConsumer( new SystemStreamLog(), "app", true, 3 );
+
+        consumer.consumeLine( "one" );
+        consumer.consumeLine( "two" );
+
+        assertEquals( Arrays.asList( new String[] { "one", "two" } ), consumer.getTail() );
+        assertEquals( "one\ntwo", consumer.getTailText() );
+
+        consumer.consumeLine( "three" );
+        consumer.consumeLine( "four" );
+        consumer.consumeLine( "five" );
+
+        assertEquals( Arrays.asList( new String[] { "three", "four", "five" } ), consumer.getTail() );
+        assertEquals( "(2 earlier lines omitted)\nthree\nfour\nfive", consumer.getTailText() );
+    }
+
+}
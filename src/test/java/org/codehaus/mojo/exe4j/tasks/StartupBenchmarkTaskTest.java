@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.File;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Runs Application, below, with the java the tests run with, so the run
+ * tests only run on JDK 9 or later.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class StartupBenchmarkTaskTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.StartupBenchmarkTask.parseUptime(String)'
+     */
+    public final void testParseUptime()
+    {
+        assertEquals( 16035128, StartupBenchmarkTask
+            .parseUptime( "[16035128ns] java.lang.Object source: shared objects file" ) );
+        assertEquals( -1, StartupBenchmarkTask.parseUptime( "[0.016s] java.lang.Object source: jrt:/java.base" ) );
+        assertEquals( -1, StartupBenchmarkTask.parseUptime( "java.lang.Object source: jrt:/java.base" ) );
+        assertEquals( -1, StartupBenchmarkTask.parseUptime( "[ns] java.lang.Object" ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.StartupBenchmarkTask.run()'
+     */
+    public final void testRun()
+        throws Exception
+    {
+        if ( System.getProperty( "java.specification.version" ).startsWith( "1." ) )
+        {
+            return;
+        }
+
+        StartupBenchmarkTask task = createTask();
+
+        task.setMarkerClass( Marker.class.getName() );
+
+        StartupBenchmarkTask.Sample sample = task.run();
+
+        assertTrue( sample.getTimeToMain() > 0 );
+        assertTrue( sample.getTimeToMarker() >= sample.getTimeToMain() );
+
+        // without a marker the run ends at main
+
+        sample = createTask().run();
+
+        assertTrue( sample.getTimeToMain() > 0 );
+        assertEquals( -1, sample.getTimeToMarker() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.StartupBenchmarkTask.run()'
+     */
+    public final void testExitBeforeMarker()
+        throws Exception
+    {
+        if ( System.getProperty( "java.specification.version" ).startsWith( "1." ) )
+        {
+            return;
+        }
+
+        StartupBenchmarkTask task = createTask();
+
+        task.setMarkerClass( "com.example.NeverLoaded" );
+
+        try
+        {
+            task.run();
+
+            fail( "the application exits without loading the marker class" );
+        }
+        catch ( MojoExecutionException e )
+        {
+            assertTrue( e.getMessage().indexOf( "exited with code 0 before loading com.example.NeverLoaded" ) > 0 );
+        }
+    }
+
+    private StartupBenchmarkTask createTask()
+    {
+        File classes = new File( getClass().getProtectionDomain().getCodeSource().getLocation().getPath() );
+
+        File java = new File( System.getProperty( "java.home" ), "bin/java" );
+
+        StartupBenchmarkTask task = new StartupBenchmarkTask( java.getPath(), Collections.singletonList( "-Xshare:auto" ),
+                                                              Collections.singletonList( classes ), Application.class
+                                                                  .getName(), new SystemStreamLog() );
+
+        task.setTimeout( 30 );
+
+        return task;
+    }
+
+    public static class Application
+    {
+        public static void main( String[] args )
+        {
+            new Marker();
+        }
+    }
+
+    static class Marker
+    {
+    }
+
+}
@@ -0,0 +1,29 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.tasks;
+
+/**
+ * Stand in for the exe4j compiler with the same entry point shape, it exits
+ * with the status passed after a --exit argument.
+ * 
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class StubCompiler
+{
+
+    public static void main( String[] args )
+    {
+        for ( int i = 0; i < args.length; i++ )
+        {
+            System.out.println( "stub compiler argument: " + args[i] );
+
+            if ( "--exit".equals( args[i] ) )
+            {
+                System.exit( Integer.parseInt( args[i + 1] ) );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * The trace run runs Application, below, with the java the tests run with,
+ * so it only runs on JDK 9 or later.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class TrainingRunTaskTest
+    extends TestCase
+{
+    private static final File ARCHIVE = new File( "/opt/app/app.jsa" ).getAbsoluteFile();
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.TrainingRunTask.getCommand()'
+     */
+    public final void testGetCommand()
+    {
+        List classPath = Arrays.asList( new File[] { new File( "a.jar" ), new File( "b.jar" ) } );
+
+        String path = "a.jar" + File.pathSeparator + "b.jar";
+
+        TrainingRunTask task = new TrainingRunTask( "java", classPath, "com.example.Main", ARCHIVE,
+                                                    new SystemStreamLog() );
+
+        assertEquals( Arrays.asList( new String[] { "java", "-XX:ArchiveClassesAtExit=" + ARCHIVE.getPath(), "-cp",
+            path, "com.example.Main" } ), task.getCommand() );
+
+        // the class loads are only logged to watch for the marker class
+
+        task.setMarkerClass( "com.example.Ready" );
+
+        assertEquals( Arrays.asList( new String[] { "java", "-XX:ArchiveClassesAtExit=" + ARCHIVE.getPath(),
+            "-Xlog:class+load=info:stdout", "-cp", path, "com.example.Main" } ), task.getCommand() );
+
+        task.setMode( TrainingRunTask.AOT_MODE );
+
+        assertEquals( Arrays.asList( new String[] { "java", "-XX:AOTCacheOutput=" + ARCHIVE.getPath(),
+            "-Xlog:class+load=info:stdout", "-cp", path, "com.example.Main" } ), task.getCommand() );
+
+        task.setMode( TrainingRunTask.TRACE_MODE );
+        task.setMarkerClass( null );
+
+        assertEquals( Arrays.asList( new String[] { "java", "-Xshare:off", "-Xlog:class+load=info:stdout", "-cp",
+            path, "com.example.Main" } ), task.getCommand() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.TrainingRunTask.getArchiveOption(String, String)'
+     */
+    public final void testGetArchiveOption()
+    {
+        assertEquals( "app.jsa", TrainingRunTask.getArchiveName( TrainingRunTask.CDS_MODE, "app" ) );
+        assertEquals( "app.aot", TrainingRunTask.getArchiveName( TrainingRunTask.AOT_MODE, "app" ) );
+        assertEquals( "-XX:SharedArchiveFile=app.jsa", TrainingRunTask.getArchiveOption( TrainingRunTask.CDS_MODE,
+                                                                                         "app.jsa" ) );
+        assertEquals( "-XX:AOTCache=app.aot", TrainingRunTask.getArchiveOption( TrainingRunTask.AOT_MODE, "app.aot" ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.tasks.TrainingRunTask.execute()'
+     */
+    public final void testTrace()
+        throws Exception
+    {
+        if ( System.getProperty( "java.specification.version" ).startsWith( "1." ) )
+        {
+            return;
+        }
+
+        File classes = new File( getClass().getProtectionDomain().getCodeSource().getLocation().getPath() );
+
+        File trace = File.createTempFile( "training", ".classtrace" );
+
+        File java = new File( System.getProperty( "java.home" ), "bin/java" );
+
+        TrainingRunTask task = new TrainingRunTask( java.getPath(), Collections.singletonList( classes ),
+                                                    Application.class.getName(), trace, new SystemStreamLog() );
+
+        task.setMode( TrainingRunTask.TRACE_MODE );
+        task.setTimeout( 30 );
+
+        task.execute();
+
+        BufferedReader reader = new BufferedReader( new FileReader( trace ) );
+
+        try
+        {
+            String line = reader.readLine();
+
+            while ( line != null && line.startsWith( "#" ) )
+            {
+                line = reader.readLine();
+            }
+
+            assertEquals( Application.class.getName() + "\t" + classes.getPath(), line );
+        }
+        finally
+        {
+            reader.close();
+
+            trace.delete();
+        }
+    }
+
+    public static class Application
+    {
+        public static void main( String[] args )
+        {
+            // loads nothing else
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class AtomicFileWriterTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.AtomicFileWriter.commit()'
+     */
+    public final void testCommit()
+        throws Exception
+    {
+        File directory = TempFiles.createDirectory( "atomic" );
+
+        File target = new File( directory, "config.xml" );
+
+        write( target, "<config/>" ).commit();
+
+        assertEquals( "<config/>", XmlFiles.read( target ) );
+
+        // replaces the existing file
+
+        write( target, "<config name=\"new\"/>" ).commit();
+
+        assertEquals( "<config name=\"new\"/>", XmlFiles.read( target ) );
+
+        // unchanged content leaves the file alone
+
+        target.setLastModified( 1000000000000L );
+
+        assertFalse( write( target, "<config name=\"new\"/>" ).commitIfChanged() );
+        assertEquals( 1000000000000L, target.lastModified() );
+
+        assertTrue( write( target, "<config/>" ).commitIfChanged() );
+        assertEquals( "<config/>", XmlFiles.read( target ) );
+
+        // closing without committing discards the content
+
+        AtomicFileWriter writer = write( target, "<discarded/>" );
+
+        writer.close();
+        writer.close();
+
+        assertEquals( "<config/>", XmlFiles.read( target ) );
+
+        // only the target is left
+
+        assertEquals( 1, directory.list().length );
+
+        target.delete();
+        directory.delete();
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.AtomicFileWriter.move(File, File)'
+     */
+    public final void testMove()
+        throws Exception
+    {
+        File source = File.createTempFile( "atomic", ".tmp" );
+        File target = File.createTempFile( "atomic", ".xml" );
+
+        write( source, "<config/>" ).commit();
+
+        if ( AtomicFileWriter.move( source, target ) )
+        {
+            assertFalse( source.exists() );
+            assertEquals( "<config/>", XmlFiles.read( target ) );
+        }
+
+        source.delete();
+        target.delete();
+    }
+
+    private static AtomicFileWriter write( File target, String content )
+        throws Exception
+    {
+        AtomicFileWriter writer = new AtomicFileWriter( target, "UTF-8" );
+
+        writer.write( content );
+        writer.flush();
+
+        return writer;
+    }
+
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class BuildCacheTest
+    extends TestCase
+{
+    private File directory;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = TempFiles.createDirectory( "cache" );
+    }
+
+    protected void tearDown()
+    {
+        TempFiles.delete( directory );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.BuildCache.restore(String, File)'
+     */
+    public final void testPublishRestore()
+        throws Exception
+    {
+        BuildCache cache = new BuildCache( new File( directory, "cache" ), 1024 );
+
+        File app = write( new File( directory, "build/app.exe" ), "first" );
+
+        File target = new File( directory, "other/app.exe" );
+
+        assertFalse( cache.restore( "abcdef", target ) );
+        assertFalse( target.exists() );
+
+        cache.publish( "abcdef", app );
+
+        assertTrue( new File( directory, "cache/ab/abcdef/app.exe" ).isFile() );
+
+        // an entry that has been published is left alone
+
+        cache.publish( "abcdef", write( app, "second" ) );
+
+        assertTrue( cache.restore( "abcdef", target ) );
+        assertEquals( "first", XmlFiles.read( target ) );
+
+        // the restored file replaces the target, leaving no temporary files
+
+        write( target, "stale" );
+
+        assertTrue( cache.restore( "abcdef", target ) );
+        assertEquals( "first", XmlFiles.read( target ) );
+        assertEquals( 1, target.getParentFile().list().length );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.BuildCache.evict()'
+     */
+    public final void testEvict()
+        throws Exception
+    {
+        BuildCache cache = new BuildCache( new File( directory, "cache" ), 10 );
+
+        File app = new File( directory, "app.exe" );
+
+        cache.publish( "aa1", write( app, "12345" ) );
+        cache.publish( "bb2", write( app, "12345" ) );
+
+        assertEquals( 0, cache.evict() );
+
+        cache.publish( "cc3", write( app, "12345" ) );
+
+        // restoring aa1 makes bb2 the least recently used
+
+        long now = System.currentTimeMillis();
+
+        new File( directory, "cache/aa/aa1" ).setLastModified( now - 60000 );
+        new File( directory, "cache/bb/bb2" ).setLastModified( now - 120000 );
+        new File( directory, "cache/cc/cc3" ).setLastModified( now - 30000 );
+
+        assertTrue( cache.restore( "aa1", new File( directory, "restored/app.exe" ) ) );
+
+        assertEquals( 1, cache.evict() );
+
+        assertTrue( new File( directory, "cache/aa/aa1" ).isDirectory() );
+        assertFalse( new File( directory, "cache/bb/bb2" ).exists() );
+        assertTrue( new File( directory, "cache/cc/cc3" ).isDirectory() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.BuildCache.evict()'
+     */
+    public final void testEvictAbandoned()
+        throws Exception
+    {
+        BuildCache cache = new BuildCache( new File( directory, "cache" ), 1024 );
+
+        File abandoned = write( new File( directory, "cache/aa/.tmp-1/app.exe" ), "12345" ).getParentFile();
+        File publishing = write( new File( directory, "cache/aa/.tmp-2/app.exe" ), "12345" ).getParentFile();
+
+        abandoned.setLastModified( System.currentTimeMillis() - 2 * 60 * 60 * 1000L );
+
+        assertEquals( 0, cache.evict() );
+
+        assertFalse( abandoned.exists() );
+        assertTrue( publishing.isDirectory() );
+    }
+
+    private static File write( File file, String content )
+        throws Exception
+    {
+        file.getParentFile().mkdirs();
+
+        Writer writer = new FileWriter( file );
+
+        try
+        {
+            writer.write( content );
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        return file;
+    }
+
+}
@@ -0,0 +1,210 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath.ClassPathLocation;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class ClassLoadTraceTest
+    extends TestCase
+{
+    private File directory;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = TempFiles.createDirectory( "trace" );
+    }
+
+    protected void tearDown()
+    {
+        TempFiles.delete( directory );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ClassLoadTrace.order(ConfigClassPath, File)'
+     */
+    public final void testOrder()
+        throws Exception
+    {
+        writeJar( "lib/a.jar", new String[] { "a/A.class", "META-INF/services/x.Service", "META-INF/LICENSE" } );
+        writeJar( "lib/b.jar", new String[] { "b/B.class", "META-INF/LICENSE" } );
+        writeJar( "lib/c.jar", new String[] { "c/C.class", "c/D.class", "META-INF/services/x.Service" } );
+        writeJar( "lib/d.jar", new String[] { "d/D.class", "d/E.class", "d/F.class" } );
+        new File( directory, "classes" ).mkdirs();
+        writeJar( "lib/e.jar", new String[] { "e/E.class" } );
+
+        File trace = new File( directory, "app.classtrace" );
+
+        Writer writer = new OutputStreamWriter( new FileOutputStream( trace ), "UTF-8" );
+
+        try
+        {
+            writer.write( "b.B\t" + new File( directory, "lib/b.jar" ) + "\n" );
+            writer.write( "c.C\t" + new File( directory, "lib/c.jar" ) + "\n" );
+            writer.write( "c.D\t" + new File( directory, "lib/c.jar" ) + "\n" );
+            writer.write( "d.D\t" + new File( directory, "lib/d.jar" ) + "\n" );
+            writer.write( "d.E\t" + new File( directory, "lib/d.jar" ) + "\n" );
+            writer.write( "d.F\t" + new File( directory, "lib/d.jar" ) + "\n" );
+            writer.write( "e.E\t" + new File( directory, "lib/e.jar" ) + "\n" );
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        ClassLoadTrace classLoadTrace = ClassLoadTrace.read( trace );
+
+        assertEquals( 7, classLoadTrace.getClassCount() );
+        assertEquals( 3, classLoadTrace.getClassCount( new File( directory, "lib/../lib/d.jar" ) ) );
+
+        ConfigClassPath classPath = new ConfigClassPath();
+
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "lib/a.jar" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "lib/b.jar" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "lib/c.jar" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "lib/d.jar" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.DIRECTORY_TYPE, "classes" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "lib/e.jar" ) );
+
+        // d.jar moves first, c.jar must stay behind a.jar as they both
+        // declare the same service and e.jar can't move across the directory
+
+        List ordered = getValues( classLoadTrace.order( classPath, directory ) );
+
+        assertEquals( "[lib/d.jar, lib/b.jar, lib/a.jar, lib/c.jar, classes, lib/e.jar]", ordered.toString() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ClassLoadTrace.reorder(File)'
+     */
+    public final void testReorder()
+        throws Exception
+    {
+        File jar = writeJar( "lib/app.jar", new String[] {
+            "META-INF/",
+            "META-INF/MANIFEST.MF",
+            "app/Other.class",
+            "app/Main.class",
+            "app/res.txt",
+            "app/Window.class" } );
+
+        String digest = ClassLoadTrace.digestContent( jar );
+
+        ClassLoadTrace trace = new ClassLoadTrace();
+
+        trace.addClass( "app.Main", jar );
+        trace.addClass( "app.Window", jar );
+        trace.addClass( "app.Missing", jar );
+
+        assertTrue( trace.reorder( jar ) );
+
+        assertEquals( "[META-INF/, META-INF/MANIFEST.MF, app/Main.class, app/Window.class, app/Other.class, "
+            + "app/res.txt]", TempFiles.getNames( jar ).toString() );
+
+        ZipFile zip = new ZipFile( jar );
+
+        try
+        {
+            assertEquals( ZipEntry.STORED, zip.getEntry( "app/Main.class" ).getMethod() );
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        // the content digest doesn't depend on the order
+
+        assertEquals( digest, ClassLoadTrace.digestContent( jar ) );
+
+        long modified = jar.lastModified();
+
+        assertFalse( trace.reorder( jar ) );
+        assertEquals( modified, jar.lastModified() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ClassLoadTrace.reorder(File)'
+     */
+    public final void testReorderSigned()
+        throws Exception
+    {
+        File jar = writeJar( "lib/signed.jar", new String[] {
+            "META-INF/MANIFEST.MF",
+            "app/Other.class",
+            "META-INF/SIGNER.SF",
+            "app/Main.class",
+            "META-INF/SIGNER.RSA",
+            "META-INF/OTHER.dsa",
+            "META-INF/maven/pom.xml",
+            "META-INF/KEY.EC" } );
+
+        ClassLoadTrace trace = new ClassLoadTrace();
+
+        trace.addClass( "app.Main", jar );
+
+        assertTrue( trace.reorder( jar ) );
+
+        // the signature entries follow the manifest, ahead of the classes
+
+        assertEquals( "[META-INF/MANIFEST.MF, META-INF/SIGNER.SF, META-INF/SIGNER.RSA, META-INF/OTHER.dsa, "
+            + "META-INF/KEY.EC, app/Main.class, app/Other.class, META-INF/maven/pom.xml]", TempFiles.getNames( jar )
+            .toString() );
+    }
+
+    private static List getValues( ConfigClassPath classPath )
+    {
+        List values = new ArrayList();
+
+        List locations = classPath.getLocations();
+
+        for ( int i = 0; i < locations.size(); i++ )
+        {
+            values.add( ( (ClassPathLocation) locations.get( i ) ).getValue() );
+        }
+
+        return values;
+    }
+
+    private File writeJar( String path, String[] names )
+        throws Exception
+    {
+        File jar = new File( directory, path );
+
+        ZipOutputStream out = TempFiles.openJar( jar );
+
+        try
+        {
+            for ( int i = 0; i < names.length; i++ )
+            {
+                byte[] content = names[i].endsWith( "/" ) ? new byte[0] : names[i].getBytes();
+
+                TempFiles.putEntry( out, names[i], content, names[i].endsWith( "Main.class" ) );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return jar;
+    }
+
+}
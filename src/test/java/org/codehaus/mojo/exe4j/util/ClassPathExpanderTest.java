@@ -0,0 +1,123 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath;
+import org.codehaus.mojo.exe4j.configuration.ConfigClassPath.ClassPathLocation;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class ClassPathExpanderTest
+    extends TestCase
+{
+    private File directory;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = TempFiles.createDirectory( "expand" );
+
+        String[] files = { "lib/b.jar", "lib/a.jar", "lib/c.zip", "lib/readme.txt", "lib/x/d.jar", "lib/x/y/e.jar",
+            "lib/z/f.jar", "lib/ab.jar" };
+
+        for ( int i = 0; i < files.length; i++ )
+        {
+            File file = new File( directory, files[i] );
+
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+    }
+
+    protected void tearDown()
+    {
+        TempFiles.delete( directory );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ClassPathExpander.expand(ConfigClassPath)'
+     */
+    public final void testExpand()
+        throws Exception
+    {
+        ConfigClassPath classPath = new ConfigClassPath();
+
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "lib/?.jar" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.SCAN_DIRECTORY_TYPE, "lib" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "${EXE4J_EXEDIR}/*.jar" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "missing/*.jar" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.DIRECTORY_TYPE, "classes" ) );
+
+        assertEquals( "[lib/a.jar, lib/b.jar, lib/a.jar, lib/ab.jar, lib/b.jar, lib/c.zip, ${EXE4J_EXEDIR}/*.jar, "
+            + "missing/*.jar, classes]", getValues( new ClassPathExpander( directory, 2 ).expand( classPath ) ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ClassPathExpander.expand(ConfigClassPath)'
+     */
+    public final void testExpandRecursive()
+        throws Exception
+    {
+        ConfigClassPath classPath = new ConfigClassPath();
+
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "lib/**/*.jar" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "lib/x/*/*.jar" ) );
+
+        String expected = "[lib/a.jar, lib/ab.jar, lib/b.jar, lib/x/d.jar, lib/x/y/e.jar, lib/z/f.jar, lib/x/y/e.jar]";
+
+        // the sub directories are walked in parallel, or on the entry's
+        // thread, in the same order
+
+        assertEquals( expected, getValues( new ClassPathExpander( directory, 4 ).expand( classPath ) ) );
+        assertEquals( expected, getValues( new ClassPathExpander( directory, 1 ).expand( classPath ) ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ClassPathExpander.resolve(ConfigClassPath)'
+     */
+    public final void testResolve()
+        throws Exception
+    {
+        ConfigClassPath classPath = new ConfigClassPath();
+
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.SCAN_DIRECTORY_TYPE, "lib" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ENVVAR_TYPE, "CLASSPATH" ) );
+        classPath.addLocation( new ClassPathLocation( ClassPathLocation.ARCHIVE_TYPE, "%APP_HOME%/app.jar" ) );
+
+        File lib = new File( directory, "lib" );
+
+        List expected = new ArrayList();
+
+        expected.add( new File( lib, "a.jar" ) );
+        expected.add( new File( lib, "ab.jar" ) );
+        expected.add( new File( lib, "b.jar" ) );
+        expected.add( new File( lib, "c.zip" ) );
+
+        assertEquals( expected, new ClassPathExpander( directory, 1 ).resolve( classPath ) );
+    }
+
+    private static String getValues( ConfigClassPath classPath )
+    {
+        List values = new ArrayList();
+
+        Iterator itr = classPath.getLocations().iterator();
+
+        while ( itr.hasNext() )
+        {
+            values.add( ( (ClassPathLocation) itr.next() ).getValue() );
+        }
+
+        return values.toString();
+    }
+
+}
@@ -0,0 +1,249 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class ClassShrinkerTest
+    extends TestCase
+{
+    private static final String PREFIX = "org/codehaus/mojo/exe4j/util/ClassShrinkerTest$";
+
+    private File directory;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = TempFiles.createDirectory( "shrink" );
+    }
+
+    protected void tearDown()
+    {
+        TempFiles.delete( directory );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ClassShrinker.shrink(String, List, List)'
+     */
+    public final void testShrink()
+        throws Exception
+    {
+        File app = writeJar( "app.jar", new String[] { "Main", "Used", "Reflected", "Unused", "Kept" }, new String[] {
+            "META-INF/services/org.codehaus.mojo.exe4j.util.ClassShrinkerTest$Service",
+            "org.codehaus.mojo.exe4j.util.ClassShrinkerTest$Provider\n",
+            "META-INF/services/java.sql.Driver",
+            "# the JRE loads these\norg.codehaus.mojo.exe4j.util.ClassShrinkerTest$JreProvider\n",
+            "app/messages.properties",
+            "hello=world\n" } );
+
+        File lib = writeJar( "lib.jar", new String[] { "Service", "Provider", "JreProvider", "Other" }, new String[0] );
+
+        List files = Arrays.asList( new File[] { app, lib } );
+
+        ClassShrinker shrinker = new ClassShrinker( 2 );
+
+        shrinker.setKeepRules( Collections.singletonList( "org.codehaus.mojo.exe4j.util.*$Kept" ) );
+
+        List results = shrinker.shrink( "org.codehaus.mojo.exe4j.util.ClassShrinkerTest$Main", files, Collections
+            .singletonList( app ) );
+
+        ClassShrinker.Result result = (ClassShrinker.Result) results.get( 0 );
+
+        assertEquals( 5, result.getClassesBefore() );
+        assertEquals( 4, result.getClassesAfter() );
+        assertEquals( Collections.singletonList( "org.codehaus.mojo.exe4j.util.ClassShrinkerTest$Unused" ), result
+            .getRemoved() );
+        assertTrue( result.getSizeAfter() < result.getSizeBefore() );
+
+        assertEquals( "[META-INF/services/org.codehaus.mojo.exe4j.util.ClassShrinkerTest$Service, "
+            + "META-INF/services/java.sql.Driver, app/messages.properties, " + PREFIX + "Main.class, " + PREFIX
+            + "Used.class, " + PREFIX + "Reflected.class, " + PREFIX + "Kept.class]", TempFiles.getNames( app ).toString() );
+
+        // lib.jar isn't a target
+
+        assertEquals( 4, TempFiles.getNames( lib ).size() );
+
+        assertEquals( "mainClass", shrinker.getRoots().get( PREFIX + "Main" ) );
+        assertEquals( "keep rule org.codehaus.mojo.exe4j.util.*$Kept", shrinker.getRoots().get( PREFIX + "Kept" ) );
+        assertEquals( "provider of the service org.codehaus.mojo.exe4j.util.ClassShrinkerTest$Service", shrinker
+            .getRoots().get( PREFIX + "Provider" ) );
+        assertEquals( "provider of the JRE service java.sql.Driver", shrinker.getRoots().get( PREFIX + "JreProvider" ) );
+
+        StringWriter report = new StringWriter();
+
+        shrinker.writeReport( results, report );
+
+        assertTrue( report.toString()
+            .indexOf( "\"removed\": [\"org.codehaus.mojo.exe4j.util.ClassShrinkerTest$Unused\"]" ) > 0 );
+
+        // a shrunk archive is left alone
+
+        long modified = app.lastModified();
+
+        result = (ClassShrinker.Result) shrinker.shrink( "org.codehaus.mojo.exe4j.util.ClassShrinkerTest$Main", files,
+                                                         Collections.singletonList( app ) ).get( 0 );
+
+        assertTrue( result.getRemoved().isEmpty() );
+        assertEquals( modified, app.lastModified() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ClassShrinker.setStateDirectory(File)'
+     */
+    public final void testState()
+        throws Exception
+    {
+        File app = writeJar( "app.jar", new String[] { "Main", "Used", "Reflected", "Unused" }, new String[0] );
+
+        File original = new File( directory, "original.jar" );
+
+        BuildCache.copy( app, original );
+
+        List files = Collections.singletonList( app );
+
+        ClassShrinker shrinker = new ClassShrinker( 1 );
+
+        shrinker.setStateDirectory( new File( directory, "state" ) );
+
+        ClassShrinker.Result result = (ClassShrinker.Result) shrinker.shrink( PREFIX.replace( '/', '.' ) + "Main",
+                                                                              files, files ).get( 0 );
+
+        assertFalse( result.isReused() );
+        assertEquals( 3, TempFiles.getNames( app ).size() );
+
+        // unchanged, the recorded classes are kept
+
+        result = (ClassShrinker.Result) shrinker.shrink( PREFIX.replace( '/', '.' ) + "Main", files, files ).get( 0 );
+
+        assertTrue( result.isReused() );
+        assertEquals( 4, result.getClassesBefore() );
+        assertEquals( 1, result.getRemoved().size() );
+
+        // the original copied over the shrunk archive again
+
+        BuildCache.copy( original, app );
+
+        result = (ClassShrinker.Result) shrinker.shrink( PREFIX.replace( '/', '.' ) + "Main", files, files ).get( 0 );
+
+        assertTrue( result.isReused() );
+        assertEquals( 3, TempFiles.getNames( app ).size() );
+
+        // a new keep rule brings the removed class back
+
+        shrinker.setKeepRules( Collections.singletonList( PREFIX.replace( '/', '.' ) + "Unused" ) );
+
+        result = (ClassShrinker.Result) shrinker.shrink( PREFIX.replace( '/', '.' ) + "Main", files, files ).get( 0 );
+
+        assertFalse( result.isReused() );
+        assertTrue( result.getRemoved().isEmpty() );
+        assertEquals( 4, TempFiles.getNames( app ).size() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ClassShrinker.shrink(String, List, List)'
+     */
+    public final void testMissingMainClass()
+        throws Exception
+    {
+        File lib = writeJar( "lib.jar", new String[] { "Other" }, new String[0] );
+
+        try
+        {
+            new ClassShrinker( 1 ).shrink( "com.example.Main", Collections.singletonList( lib ), Collections
+                .singletonList( lib ) );
+
+            fail( "the main class isn't on the class path" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertEquals( 1, TempFiles.getNames( lib ).size() );
+        }
+    }
+
+    private File writeJar( String name, String[] classes, String[] resources )
+        throws Exception
+    {
+        int count = resources.length / 2;
+
+        String[] names = new String[count + classes.length];
+
+        byte[][] contents = new byte[names.length][];
+
+        for ( int i = 0; i < count; i++ )
+        {
+            names[i] = resources[i * 2];
+            contents[i] = resources[i * 2 + 1].getBytes( "UTF-8" );
+        }
+
+        for ( int i = 0; i < classes.length; i++ )
+        {
+            names[count + i] = PREFIX + classes[i] + ".class";
+            contents[count + i] = TempFiles.read( getClass().getResourceAsStream( "ClassShrinkerTest$" + classes[i]
+                + ".class" ) );
+        }
+
+        return TempFiles.writeJar( new File( directory, name ), names, contents );
+    }
+
+    static class Main
+    {
+        public static void main( String[] args )
+            throws Exception
+        {
+            new Used().run();
+        }
+    }
+
+    static class Used
+    {
+        private Service service;
+
+        void run()
+            throws Exception
+        {
+            Class.forName( "org.codehaus.mojo.exe4j.util.ClassShrinkerTest$Reflected" );
+        }
+    }
+
+    static class Reflected
+    {
+    }
+
+    static class Unused
+    {
+        private Main main;
+    }
+
+    static class Kept
+    {
+    }
+
+    interface Service
+    {
+    }
+
+    static class Provider
+        implements Service
+    {
+    }
+
+    static class JreProvider
+    {
+    }
+
+    static class Other
+    {
+    }
+
+}
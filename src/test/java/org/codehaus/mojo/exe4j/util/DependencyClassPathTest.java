@@ -0,0 +1,93 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class DependencyClassPathTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.DependencyClassPath.getArtifacts(MavenProject, String, List, List)'
+     */
+    public final void testGetArtifacts()
+    {
+        Artifact b = createArtifact( "org.b", "b", "runtime", "b.jar" );
+        Artifact a = createArtifact( "org.a", "a", "compile", "a.jar" );
+        Artifact duplicate = createArtifact( "org.c", "c", "compile", "a.jar" );
+        Artifact test = createArtifact( "org.a", "test", "test", "test.jar" );
+        Artifact excluded = createArtifact( "org.x", "x", "compile", "x.jar" );
+
+        Set artifacts = new LinkedHashSet( Arrays.asList( new Artifact[] { b, test, duplicate, excluded, a } ) );
+
+        MavenProject project = new MavenProject( new Model() );
+        project.setArtifacts( artifacts );
+
+        List excludes = Collections.singletonList( "org.x:*" );
+
+        List selected = DependencyClassPath.getArtifacts( project, "runtime", null, excludes );
+
+        // in resolution order, the first artifact to resolve to a file is kept
+
+        assertEquals( Arrays.asList( new Artifact[] { b, duplicate } ), selected );
+        assertSame( selected, DependencyClassPath.getArtifacts( project, "runtime", null, excludes ) );
+
+        assertEquals( Arrays.asList( new Artifact[] { test, a } ), DependencyClassPath
+            .getArtifacts( project, "test", Collections.singletonList( "org.a:*" ), null ) );
+
+        // an equal project, or a project resolved again, has its own selection
+
+        MavenProject other = new MavenProject( new Model() );
+        other.setArtifacts( new LinkedHashSet( Arrays.asList( new Artifact[] { a } ) ) );
+
+        assertEquals( project, other );
+        assertEquals( Collections.singletonList( a ), DependencyClassPath.getArtifacts( other, "runtime", null,
+                                                                                        excludes ) );
+
+        project.setArtifacts( new LinkedHashSet( Arrays.asList( new Artifact[] { a, b } ) ) );
+
+        assertEquals( Arrays.asList( new Artifact[] { a, b } ), DependencyClassPath.getArtifacts( project, "runtime",
+                                                                                                 null, excludes ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.DependencyClassPath.matches(String, String)'
+     */
+    public final void testMatches()
+    {
+        assertTrue( DependencyClassPath.matches( "org.*", "org.codehaus" ) );
+        assertTrue( DependencyClassPath.matches( "*-api", "servlet-api" ) );
+        assertTrue( DependencyClassPath.matches( "*", "" ) );
+        assertFalse( DependencyClassPath.matches( "org.*.mojo", "org.codehaus" ) );
+        assertFalse( DependencyClassPath.matches( "junit", "junit-dep" ) );
+    }
+
+    private static Artifact createArtifact( String groupId, String artifactId, String scope, String fileName )
+    {
+        Artifact artifact = new DefaultArtifact( groupId, artifactId, VersionRange.createFromVersion( "1.0" ), scope,
+                                                 "jar", null, new DefaultArtifactHandler( "jar" ) );
+        artifact.setFile( new File( fileName ) );
+        return artifact;
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class FingerprintTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.Fingerprint.addXmlFile(String, File, Map)'
+     */
+    public final void testAddXmlFile()
+        throws Exception
+    {
+        File first = TempFiles.createDirectory( "first" ).getAbsoluteFile();
+        File second = TempFiles.createDirectory( "second" ).getAbsoluteFile();
+
+        try
+        {
+            assertEquals( getDigest( first ), getDigest( second ) );
+
+            Fingerprint fingerprint = new Fingerprint();
+
+            fingerprint.addXmlFile( "config", new File( first, "missing.exe4j" ), new HashMap() );
+
+            assertEquals( "missing", fingerprint.getDigest( "config" ) );
+        }
+        finally
+        {
+            TempFiles.delete( first );
+            TempFiles.delete( second );
+        }
+    }
+
+    /**
+     * @param basedir the project directory to write a config below
+     * @return the digest of the config with the paths made relative
+     */
+    private static String getDigest( File basedir )
+        throws Exception
+    {
+        File distribution = new File( basedir, "target/dist" );
+
+        distribution.mkdirs();
+
+        File config = new File( basedir, "target/app.exe4j" );
+
+        Writer writer = new FileWriter( config );
+
+        try
+        {
+            writer.write( "<exe4j><application distributionSourceDir=\"" + distribution.getPath()
+                + "\"/><icon file=\"" + new File( basedir, "src/app.ico" ).getPath() + "\"/></exe4j>" );
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        Map roots = new HashMap();
+
+        roots.put( "basedir", basedir );
+        roots.put( "distributionSourceDirectory", distribution );
+
+        Fingerprint fingerprint = new Fingerprint();
+
+        fingerprint.addXmlFile( "config", config, roots );
+
+        return fingerprint.getDigest( "config" );
+    }
+
+}
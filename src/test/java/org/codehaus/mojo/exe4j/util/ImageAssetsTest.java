@@ -0,0 +1,217 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class ImageAssetsTest
+    extends TestCase
+{
+    private File directory;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = TempFiles.createDirectory( "assets" );
+    }
+
+    protected void tearDown()
+    {
+        TempFiles.delete( directory );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ImageAssets.createIcon(File, int[])'
+     */
+    public final void testCreateIcon()
+        throws Exception
+    {
+        File source = writeImage( "app.png", 512, 384 );
+
+        ImageAssets assets = new ImageAssets( new File( directory, "out" ) );
+
+        File icon = assets.createIcon( source, new int[] { 16, 32, 256 } );
+
+        assertEquals( 1, assets.getGenerated() );
+
+        byte[] bytes = readFile( icon );
+
+        // ICONDIR: reserved, type 1 (icon), 3 images
+
+        assertEquals( 0, getShort( bytes, 0 ) );
+        assertEquals( 1, getShort( bytes, 2 ) );
+        assertEquals( 3, getShort( bytes, 4 ) );
+
+        // a 16 pixel 32 bit bitmap with its 40 byte header and mask
+
+        assertEquals( 16, bytes[6] );
+        assertEquals( 32, getShort( bytes, 6 + 6 ) );
+        assertEquals( 40 + 16 * 16 * 4 + 4 * 16, getInt( bytes, 6 + 8 ) );
+        assertEquals( 40, getInt( bytes, getInt( bytes, 6 + 12 ) ) );
+
+        // a 256 pixel PNG
+
+        int entry = 6 + 2 * 16;
+
+        assertEquals( 0, bytes[entry] );
+
+        BufferedImage large = ImageIO.read( new ByteArrayInputStream( bytes, getInt( bytes, entry + 12 ),
+                                                                       getInt( bytes, entry + 8 ) ) );
+
+        assertEquals( 256, large.getWidth() );
+        assertEquals( 256, large.getHeight() );
+
+        // the image is centred, leaving the top row transparent
+
+        assertEquals( 0, large.getRGB( 128, 0 ) >>> 24 );
+        assertEquals( 255, large.getRGB( 128, 128 ) >>> 24 );
+
+        long modified = icon.lastModified();
+
+        assets = new ImageAssets( new File( directory, "out" ) );
+
+        assertEquals( icon, assets.createIcon( source, new int[] { 16, 32, 256 } ) );
+        assertEquals( 0, assets.getGenerated() );
+        assertEquals( 1, assets.getReused() );
+        assertEquals( modified, icon.lastModified() );
+
+        // different settings generate the icon again
+
+        assets.createIcon( source, new int[] { 16 } );
+
+        assertEquals( 1, assets.getGenerated() );
+        assertEquals( 1, getShort( readFile( icon ), 4 ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ImageAssets.createSplashScreen(File, int, int, int)'
+     */
+    public final void testCreateSplashScreen()
+        throws Exception
+    {
+        File source = writeImage( "splash.png", 1200, 600 );
+
+        ImageAssets assets = new ImageAssets( new File( directory, "out" ) );
+
+        File splash = assets.createSplashScreen( source, 400, 300, 16 );
+
+        BufferedImage image = ImageIO.read( splash );
+
+        assertEquals( 400, image.getWidth() );
+        assertEquals( 200, image.getHeight() );
+        assertTrue( image.getColorModel() instanceof IndexColorModel );
+        assertTrue( ( (IndexColorModel) image.getColorModel() ).getMapSize() <= 16 );
+        assertTrue( splash.length() < source.length() );
+
+        // a changed source is processed again
+
+        writeImage( "splash.png", 200, 100 );
+
+        assets.createSplashScreen( source, 400, 300, 16 );
+
+        assertEquals( 2, assets.getGenerated() );
+        assertEquals( 200, ImageIO.read( splash ).getWidth() );
+
+        // restored from the build cache after the assets have been deleted
+
+        BuildCache cache = new BuildCache( new File( directory, "cache" ), Long.MAX_VALUE );
+
+        assets = new ImageAssets( new File( directory, "out" ) );
+        assets.setBuildCache( cache );
+        assets.createSplashScreen( source, 400, 300, 0 );
+
+        TempFiles.delete( new File( directory, "out" ) );
+
+        assets = new ImageAssets( new File( directory, "out" ) );
+        assets.setBuildCache( cache );
+        assets.createSplashScreen( source, 400, 300, 0 );
+
+        assertEquals( 0, assets.getGenerated() );
+        assertEquals( 1, assets.getReused() );
+        assertEquals( 200, ImageIO.read( splash ).getWidth() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.ColorQuantizer.reduce(BufferedImage, int)'
+     */
+    public final void testReduceKeepsExactColors()
+    {
+        BufferedImage image = new BufferedImage( 4, 1, BufferedImage.TYPE_INT_ARGB );
+        image.setRGB( 0, 0, 0xffff0000 );
+        image.setRGB( 1, 0, 0xff00ff00 );
+        image.setRGB( 2, 0, 0xff123456 );
+        image.setRGB( 3, 0, 0x00000000 );
+
+        BufferedImage reduced = ColorQuantizer.reduce( image, 4 );
+
+        assertEquals( 4, ( (IndexColorModel) reduced.getColorModel() ).getMapSize() );
+        assertEquals( 0xffff0000, reduced.getRGB( 0, 0 ) );
+        assertEquals( 0xff00ff00, reduced.getRGB( 1, 0 ) );
+        assertEquals( 0xff123456, reduced.getRGB( 2, 0 ) );
+        assertEquals( 0, reduced.getRGB( 3, 0 ) >>> 24 );
+    }
+
+    private File writeImage( String name, int width, int height )
+        throws Exception
+    {
+        BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+
+        for ( int y = 0; y < height; y++ )
+        {
+            for ( int x = 0; x < width; x++ )
+            {
+                image.setRGB( x, y, ( x * 255 / width ) << 16 | ( y * 255 / height ) << 8 | ( ( x ^ y ) & 0xff ) );
+            }
+        }
+
+        File file = new File( directory, name );
+
+        ImageIO.write( image, "png", file );
+
+        return file;
+    }
+
+    private static byte[] readFile( File file )
+        throws Exception
+    {
+        byte[] bytes = new byte[(int) file.length()];
+
+        DataInputStream in = new DataInputStream( new FileInputStream( file ) );
+
+        try
+        {
+            in.readFully( bytes );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return bytes;
+    }
+
+    private static int getShort( byte[] bytes, int offset )
+    {
+        return ( bytes[offset] & 0xff ) | ( bytes[offset + 1] & 0xff ) << 8;
+    }
+
+    private static int getInt( byte[] bytes, int offset )
+    {
+        return getShort( bytes, offset ) | getShort( bytes, offset + 2 ) << 16;
+    }
+
+}
@@ -0,0 +1,161 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class JarRepackerTest
+    extends TestCase
+{
+    private static final String[] NAMES = {
+        "META-INF/MANIFEST.MF",
+        "com/example/app/",
+        "com/example/app/Main.class",
+        "com/example/app/ui/Window.class",
+        "com/other/Lib.class",
+        "com/example/app/messages.properties" };
+
+    private File directory;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = TempFiles.createDirectory( "repack" );
+    }
+
+    protected void tearDown()
+    {
+        TempFiles.delete( directory );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.JarRepacker.repack(List)'
+     */
+    public final void testRepack()
+        throws Exception
+    {
+        File jar = new File( directory, "lib/app.jar" );
+
+        writeJar( jar );
+
+        JarRepacker repacker = newRepacker();
+
+        List results = repacker.repack( Collections.singletonList( jar ) );
+
+        JarRepacker.Result result = (JarRepacker.Result) results.get( 0 );
+
+        assertFalse( result.isReused() );
+        assertEquals( NAMES.length, result.getEntries() );
+        assertEquals( 3, result.getStoredEntries() );
+
+        ZipFile zip = new ZipFile( jar );
+
+        try
+        {
+            // entries keep their order and content
+
+            List entries = Collections.list( zip.entries() );
+
+            for ( int i = 0; i < NAMES.length; i++ )
+            {
+                ZipEntry entry = (ZipEntry) entries.get( i );
+
+                assertEquals( NAMES[i], entry.getName() );
+                assertTrue( Arrays.equals( getContent( NAMES[i] ), TempFiles.read( zip.getInputStream( entry ) ) ) );
+            }
+
+            assertEquals( ZipEntry.STORED, zip.getEntry( "com/example/app/Main.class" ).getMethod() );
+            assertEquals( ZipEntry.STORED, zip.getEntry( "com/example/app/ui/Window.class" ).getMethod() );
+            assertEquals( ZipEntry.DEFLATED, zip.getEntry( "com/other/Lib.class" ).getMethod() );
+            assertEquals( ZipEntry.DEFLATED, zip.getEntry( "com/example/app/messages.properties" ).getMethod() );
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        long modified = jar.lastModified();
+
+        // a repacked archive is left alone
+
+        result = (JarRepacker.Result) newRepacker().repack( Collections.singletonList( jar ) ).get( 0 );
+
+        assertTrue( result.isReused() );
+        assertEquals( modified, jar.lastModified() );
+        assertTrue( result.getDeflatedBytesAfter() < result.getDeflatedBytesBefore() );
+
+        // a fresh copy of the original is restored from the cache
+
+        writeJar( jar );
+
+        result = (JarRepacker.Result) newRepacker().repack( Collections.singletonList( jar ) ).get( 0 );
+
+        assertTrue( result.isReused() );
+        assertEquals( 3, result.getStoredEntries() );
+
+        StringWriter report = new StringWriter();
+
+        repacker.writeReport( results, report );
+
+        assertTrue( report.toString().indexOf( "\"storedPackages\": [\"com.example.app\"]" ) > 0 );
+        assertTrue( report.toString().indexOf( "\"total\": { \"sizeBefore\": " ) > 0 );
+    }
+
+    private JarRepacker newRepacker()
+    {
+        JarRepacker repacker = new JarRepacker( new BuildCache( new File( directory, "cache" ), Long.MAX_VALUE ),
+                                                new File( directory, "state" ), 2 );
+
+        repacker.setStoredPackages( Collections.singletonList( "com.example.app" ) );
+        repacker.setLevel( 9 );
+
+        return repacker;
+    }
+
+    private static byte[] getContent( String name )
+    {
+        StringBuffer content = new StringBuffer();
+
+        for ( int i = 0; !name.endsWith( "/" ) && i < 200; i++ )
+        {
+            content.append( name ).append( ' ' ).append( i ).append( '\n' );
+        }
+
+        return content.toString().getBytes();
+    }
+
+    private static void writeJar( File jar )
+        throws Exception
+    {
+        ZipOutputStream out = TempFiles.openJar( jar );
+
+        try
+        {
+            out.setLevel( 1 );
+
+            for ( int i = 0; i < NAMES.length; i++ )
+            {
+                TempFiles.putEntry( out, NAMES[i], getContent( NAMES[i] ), false );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+}
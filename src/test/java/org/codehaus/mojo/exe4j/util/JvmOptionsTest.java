@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class JvmOptionsTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.JvmOptions.addProfile(String, String, String)'
+     */
+    public final void testAddProfile()
+    {
+        JvmOptions options = new JvmOptions();
+
+        options.addProfile( JvmOptions.LOW_LATENCY, "21", "23" );
+
+        assertEquals( "-XX:+UseZGC -XX:+ZGenerational -XX:+PerfDisableSharedMem", options.toString() );
+
+        options = new JvmOptions();
+
+        options.addProfile( JvmOptions.LOW_LATENCY, "17", "" );
+
+        assertEquals( "-XX:+UseZGC -XX:+PerfDisableSharedMem", options.toString() );
+
+        options = new JvmOptions();
+
+        options.addProfile( JvmOptions.LOW_LATENCY, "1.8", null );
+
+        assertEquals( "-XX:+UseG1GC -XX:MaxGCPauseMillis=50 -XX:+PerfDisableSharedMem", options.toString() );
+
+        // optional options the versions don't support are left out
+
+        options = new JvmOptions();
+
+        options.addProfile( JvmOptions.SMALL_FOOTPRINT, "1.8", "" );
+
+        assertEquals( "-XX:+UseSerialGC -Xss512k -XX:ReservedCodeCacheSize=32m -XX:TieredStopAtLevel=1", options
+            .toString() );
+        assertEquals( 2, options.getSkipped().size() );
+
+        try
+        {
+            new JvmOptions().addProfile( JvmOptions.LOW_LATENCY, "1.3", "" );
+
+            fail( "G1 needs Java 7" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().indexOf( "needs Java 7 or later" ) > 0 );
+        }
+
+        try
+        {
+            new JvmOptions().addProfile( "fast", "17", "" );
+
+            fail( "there is no such profile" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // expected
+        }
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.JvmOptions.addAll(String)'
+     */
+    public final void testMerge()
+        throws Exception
+    {
+        JvmOptions options = new JvmOptions();
+
+        options.addProfile( JvmOptions.THROUGHPUT, "17", "" );
+        options.addAll( "-Xmx256m -XX:+UseG1GC \"-Dapp.title=My App\" -XX:MaxRAMPercentage=50" );
+        options.addAll( "-Xmx1g -Dapp.title=Other -XX:-PerfDisableSharedMem -Xmx1g" );
+
+        assertEquals( "-XX:+UseG1GC -XX:MaxRAMPercentage=50 -Dapp.title=Other -XX:-PerfDisableSharedMem -Xmx1g",
+                      options.toString() );
+
+        options = new JvmOptions();
+
+        options.addAll( "-XX:+UseConcMarkSweepGC \"-Dapp.title=My App\"" );
+
+        assertEquals( "\"-Dapp.title=My App\"", options.toString().substring( options.toString().indexOf( ' ' ) + 1 ) );
+        assertEquals( 1, options.validate( "11", "" ).size() );
+        assertEquals( 0, options.validate( "1.6", "1.8" ).size() );
+
+        StringWriter writer = new StringWriter();
+
+        options.write( writer, "test" );
+
+        assertEquals( "# test\n-XX:+UseConcMarkSweepGC\n-Dapp.title=My App\n", writer.toString() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.JvmOptions.parseVersion(String, int)'
+     */
+    public final void testParseVersion()
+    {
+        assertEquals( 3, JvmOptions.parseVersion( "1.3", 1 ) );
+        assertEquals( 8, JvmOptions.parseVersion( "1.8.0_402", 1 ) );
+        assertEquals( 17, JvmOptions.parseVersion( "17.0.2", 1 ) );
+        assertEquals( 21, JvmOptions.parseVersion( "21", 1 ) );
+        assertEquals( -1, JvmOptions.parseVersion( " ", -1 ) );
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class LazyPropertiesTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.LazyProperties.get(Object)'
+     */
+    public final void testLookupOrder()
+    {
+        CountingSource first = new CountingSource();
+        CountingSource second = new CountingSource();
+
+        first.values.put( "executableName", "app-console" );
+        second.values.put( "executableName", "app" );
+        second.values.put( "mainClass", "com.example.Main" );
+
+        LazyProperties properties = new LazyProperties( new PropertySource[] { first, second } );
+
+        // the first source to define a property wins, the rest are not asked
+
+        assertEquals( "app-console", properties.get( "executableName" ) );
+        assertEquals( 0, second.getCount( "executableName" ) );
+
+        assertEquals( "com.example.Main", properties.getProperty( "mainClass" ) );
+        assertEquals( 1, first.getCount( "mainClass" ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.LazyProperties.get(Object)'
+     */
+    public final void testMemoisation()
+    {
+        CountingSource source = new CountingSource();
+
+        source.values.put( "mainClass", "com.example.Main" );
+
+        LazyProperties properties = new LazyProperties( new PropertySource[] { source } );
+
+        assertEquals( 0, properties.size() );
+
+        assertEquals( "com.example.Main", properties.get( "mainClass" ) );
+
+        // the source is not asked again, even once its value has changed
+
+        source.values.put( "mainClass", "com.example.Other" );
+
+        assertEquals( "com.example.Main", properties.get( "mainClass" ) );
+        assertEquals( 1, source.getCount( "mainClass" ) );
+
+        // only the values looked up or put are enumerated
+
+        properties.put( "version", "1.0" );
+
+        assertEquals( 2, properties.size() );
+        assertTrue( Collections.list( properties.keys() ).contains( "version" ) );
+        assertTrue( Collections.list( properties.elements() ).contains( "1.0" ) );
+
+        // a value that has been put is not looked up
+
+        assertEquals( "1.0", properties.get( "version" ) );
+        assertEquals( 0, source.getCount( "version" ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.LazyProperties.get(Object)'
+     */
+    public final void testMissing()
+    {
+        CountingSource source = new CountingSource();
+
+        LazyProperties properties = new LazyProperties( new PropertySource[] { source,
+            LazyProperties.asSource( new Properties() ) } );
+
+        assertNull( properties.get( "companyName" ) );
+        assertNull( properties.getProperty( "companyName" ) );
+
+        // a missing value is remembered too, but not enumerated
+
+        assertEquals( 1, source.getCount( "companyName" ) );
+        assertTrue( properties.isEmpty() );
+        assertFalse( properties.keys().hasMoreElements() );
+
+        // a removed value is missing from then on
+
+        source.values.put( "mainClass", "com.example.Main" );
+
+        assertEquals( "com.example.Main", properties.get( "mainClass" ) );
+        assertEquals( "com.example.Main", properties.remove( "mainClass" ) );
+        assertNull( properties.get( "mainClass" ) );
+        assertTrue( properties.isEmpty() );
+    }
+
+    /**
+     * A property source that counts the lookups of each property.
+     */
+    private static class CountingSource
+        implements PropertySource
+    {
+        private Map values = new HashMap();
+
+        private List names = new ArrayList();
+
+        public String getProperty( String name )
+        {
+            names.add( name );
+
+            return (String) values.get( name );
+        }
+
+        int getCount( String name )
+        {
+            return Collections.frequency( names, name );
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The temporary directory and archive helpers the tests share. Archive
+ * entries are all written with the same time so the same entries always
+ * make the same archive.
+ *
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class TempFiles
+{
+    private static final long ENTRY_TIME = 1136073600000L;
+
+    /**
+     * @param prefix the directory name prefix
+     * @return a new empty temporary directory
+     * @throws IOException if the directory cannot be created
+     */
+    public static File createDirectory( String prefix )
+        throws IOException
+    {
+        File directory = File.createTempFile( prefix, "" );
+
+        directory.delete();
+        directory.mkdirs();
+
+        return directory;
+    }
+
+    /**
+     * deletes a file or directory tree
+     *
+     * @param file the file to delete
+     */
+    public static void delete( File file )
+    {
+        File[] children = file.listFiles();
+
+        for ( int i = 0; children != null && i < children.length; i++ )
+        {
+            delete( children[i] );
+        }
+
+        file.delete();
+    }
+
+    /**
+     * writes an archive of deflated entries
+     *
+     * @param jar the archive to write
+     * @param names the entry names
+     * @param contents the entry contents, in the same order as the names
+     * @return the archive
+     * @throws IOException if the archive cannot be written
+     */
+    public static File writeJar( File jar, String[] names, byte[][] contents )
+        throws IOException
+    {
+        ZipOutputStream out = openJar( jar );
+
+        try
+        {
+            for ( int i = 0; i < names.length; i++ )
+            {
+                putEntry( out, names[i], contents[i], false );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return jar;
+    }
+
+    /**
+     * @param jar the archive to write, its directory is created
+     * @return the stream the archive's entries are written to
+     * @throws IOException if the archive cannot be created
+     */
+    public static ZipOutputStream openJar( File jar )
+        throws IOException
+    {
+        jar.getParentFile().mkdirs();
+
+        return new ZipOutputStream( new FileOutputStream( jar ) );
+    }
+
+    /**
+     * writes an archive entry
+     *
+     * @param out the archive
+     * @param name the entry name
+     * @param content the entry content
+     * @param stored store rather than deflate the entry
+     * @throws IOException if the entry cannot be written
+     */
+    public static void putEntry( ZipOutputStream out, String name, byte[] content, boolean stored )
+        throws IOException
+    {
+        ZipEntry entry = new ZipEntry( name );
+
+        entry.setTime( ENTRY_TIME );
+
+        if ( stored )
+        {
+            CRC32 crc = new CRC32();
+            crc.update( content );
+
+            entry.setMethod( ZipEntry.STORED );
+            entry.setSize( content.length );
+            entry.setCrc( crc.getValue() );
+        }
+
+        out.putNextEntry( entry );
+        out.write( content );
+        out.closeEntry();
+    }
+
+    /**
+     * @param jar the archive
+     * @return the names of its entries in archive order
+     * @throws IOException if the archive cannot be read
+     */
+    public static List getNames( File jar )
+        throws IOException
+    {
+        List names = new ArrayList();
+
+        ZipFile zip = new ZipFile( jar );
+
+        try
+        {
+            List entries = Collections.list( zip.entries() );
+
+            for ( int i = 0; i < entries.size(); i++ )
+            {
+                names.add( ( (ZipEntry) entries.get( i ) ).getName() );
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        return names;
+    }
+
+    /**
+     * reads and closes a stream
+     *
+     * @param in the stream
+     * @return its content
+     * @throws IOException if the stream cannot be read
+     */
+    public static byte[] read( InputStream in )
+        throws IOException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ( ( count = in.read( buffer ) ) > 0 )
+            {
+                content.write( buffer, 0, count );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return content.toByteArray();
+    }
+
+}
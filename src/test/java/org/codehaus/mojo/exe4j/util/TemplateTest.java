@@ -0,0 +1,53 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class TemplateTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.Template.render(Dictionary)'
+     */
+    public final void testRender()
+        throws Exception
+    {
+        Template template = Template.compile( "<a x=\"${foo}\" y=\"${bar}\">${foo}${foo.bar}$${baz}</a>" );
+
+        Properties props = new Properties();
+        props.setProperty( "foo", "1" );
+        props.setProperty( "baz", "3" );
+
+        String expected = "<a x=\"1\" y=\"\">1${foo.bar}$3</a>";
+
+        assertEquals( expected, template.render( props ) );
+
+        StringWriter writer = new StringWriter();
+        template.render( props, writer );
+        assertEquals( expected, writer.toString() );
+
+        assertEquals( Arrays.asList( new String[] { "foo", "bar", "baz" } ),
+                      Arrays.asList( template.getPropertyNames().toArray() ) );
+        assertEquals( Arrays.asList( new String[] { "bar" } ), template.getMissingPropertyNames( props ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.Template.compile(String)'
+     */
+    public final void testCompileIsCached()
+    {
+        assertSame( Template.compile( "${a}b" ), Template.compile( new String( "${a}b" ) ) );
+    }
+
+}
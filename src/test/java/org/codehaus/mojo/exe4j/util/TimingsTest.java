@@ -0,0 +1,62 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class TimingsTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.Timings.write(Writer)'
+     */
+    public final void testWrite()
+        throws Exception
+    {
+        Timings timings = new Timings();
+
+        Timings.Phase phase = timings.start( "app/writeConfig" );
+        phase.setBytes( 42 );
+        phase.end();
+        phase.end();
+
+        timings.start( "console/writeConfig" ).end();
+        timings.setValue( "app/exe4jc.exitCode", new Integer( 0 ) );
+        timings.addMarker( "app/Compiling \"launcher\"\t" );
+
+        StringWriter writer = new StringWriter();
+        timings.write( writer );
+        String report = writer.toString();
+
+        assertEquals( 1, count( report, "\"app/writeConfig\"" ) );
+        assertTrue( report.indexOf( "\"bytesWritten\": 42" ) > 0 );
+        assertTrue( report.indexOf( "\"app/exe4jc.exitCode\": 0" ) > 0 );
+        assertTrue( report.indexOf( "\"app/Compiling \\\"launcher\\\"\\u0009\"" ) > 0 );
+
+        String summary = timings.getSummary();
+
+        assertEquals( 1, count( summary, "writeConfig" ) );
+        assertTrue( summary.endsWith( ", app/exe4jc.exitCode=0" ) );
+    }
+
+    private static int count( String text, String substring )
+    {
+        int count = 0;
+
+        for ( int i = text.indexOf( substring ); i >= 0; i = text.indexOf( substring, i + 1 ) )
+        {
+            count++;
+        }
+
+        return count;
+    }
+
+}
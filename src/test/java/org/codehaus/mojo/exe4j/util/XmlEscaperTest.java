@@ -0,0 +1,42 @@
+/**
+ * 
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class XmlEscaperTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.XmlEscaper.append(Appendable, CharSequence)'
+     */
+    public final void testAppend()
+        throws Exception
+    {
+        StringBuilder buffer = new StringBuilder( "x=\"" );
+
+        XmlEscaper.append( buffer, "a & b <c> \"d\" 'e'\tf\ng\rh\u0001i\uFFFE" );
+        XmlEscaper.append( buffer, null );
+
+        assertEquals( "x=\"a &amp; b &lt;c&gt; &quot;d&quot; &apos;e&apos;&#9;f&#10;g&#13;hi", buffer.toString() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.XmlEscaper.escape(String)'
+     */
+    public final void testEscape()
+    {
+        String plain = "lib/app-1.0.jar";
+
+        assertSame( plain, XmlEscaper.escape( plain ) );
+        assertNull( XmlEscaper.escape( null ) );
+        assertEquals( "&amp;&amp;", XmlEscaper.escape( "&&" ) );
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ *
+ */
+package org.codehaus.mojo.exe4j.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:john_h_allen@hotmail.com">John Allen</a>
+ *
+ */
+public class XmlFilesTest
+    extends TestCase
+{
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.XmlFiles.getDeclaredEncoding(String)'
+     */
+    public final void testGetDeclaredEncoding()
+    {
+        assertEquals( "ISO-8859-1", XmlFiles.getDeclaredEncoding( "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" ) );
+        assertEquals( "windows-1252", XmlFiles
+            .getDeclaredEncoding( "<?xml version='1.0' encoding = 'windows-1252' ?>\n<config/>" ) );
+        assertNull( XmlFiles.getDeclaredEncoding( "<?xml version=\"1.0\"?>" ) );
+        assertNull( XmlFiles.getDeclaredEncoding( "<config encoding=\"UTF-16\"/>" ) );
+        assertNull( XmlFiles.getDeclaredEncoding( "<?xml version=\"1.0\" encoding=UTF-8?>" ) );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.XmlFiles.getEncoding(ByteBuffer)'
+     */
+    public final void testGetEncoding()
+        throws Exception
+    {
+        assertEquals( "UTF-8", XmlFiles.getEncoding( ByteBuffer.wrap( "<config/>".getBytes( "UTF-8" ) ) ) );
+        assertEquals( "UTF-16", XmlFiles.getEncoding( ByteBuffer.wrap( "<config/>".getBytes( "UTF-16" ) ) ) );
+        assertEquals( "UTF-16", XmlFiles.getEncoding( ByteBuffer.wrap( new byte[] { (byte) 0xff, (byte) 0xfe } ) ) );
+
+        ByteBuffer bytes = ByteBuffer.wrap( "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>".getBytes( "US-ASCII" ) );
+
+        bytes.position( 0 );
+
+        assertEquals( "ISO-8859-1", XmlFiles.getEncoding( bytes ) );
+        assertEquals( 0, bytes.position() );
+    }
+
+    /*
+     * Test method for 'org.codehaus.mojo.exe4j.util.XmlFiles.decode(ByteBuffer)'
+     */
+    public final void testDecode()
+        throws Exception
+    {
+        String latin = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><name>Caf\u00e9</name>";
+
+        assertEquals( latin, XmlFiles.decode( ByteBuffer.wrap( latin.getBytes( "ISO-8859-1" ) ) ) );
+
+        // the UTF-8 byte order mark is dropped
+
+        byte[] utf8 = "<name>Caf\u00e9</name>".getBytes( "UTF-8" );
+
+        byte[] marked = new byte[utf8.length + 3];
+        marked[0] = (byte) 0xef;
+        marked[1] = (byte) 0xbb;
+        marked[2] = (byte) 0xbf;
+        System.arraycopy( utf8, 0, marked, 3, utf8.length );
+
+        assertEquals( "<name>Caf\u00e9</name>", XmlFiles.read( new ByteArrayInputStream( marked ) ) );
+
+        assertEquals( "<name>Caf\u00e9</name>", XmlFiles.decode( ByteBuffer.wrap( "<name>Caf\u00e9</name>"
+            .getBytes( "UTF-16" ) ) ) );
+
+        // undeclared Latin-1 isn't UTF-8
+
+        try
+        {
+            XmlFiles.decode( ByteBuffer.wrap( "<name>Caf\u00e9</name>".getBytes( "ISO-8859-1" ) ) );
+
+            fail( "malformed UTF-8" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+}